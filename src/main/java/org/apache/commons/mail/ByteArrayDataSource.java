@@ -48,7 +48,7 @@ public class ByteArrayDataSource implements DataSource
     public static final int BUFFER_SIZE = 512;
 
     /** Stream containing the Data. */
-    private ByteArrayOutputStream baos;
+    private SharedByteArrayOutputStream baos;
 
     /** The Content-type. */
     private final String type; // = "application/octet-stream";
@@ -106,7 +106,7 @@ public class ByteArrayDataSource implements DataSource
 
         try
         {
-            baos = new ByteArrayOutputStream();
+            baos = new SharedByteArrayOutputStream();
 
             // Assumption that the string contains only ASCII characters!
             // Else just pass in a charset into this constructor and use it in getBytes().
@@ -133,7 +133,7 @@ public class ByteArrayDataSource implements DataSource
     private void byteArrayDataSource(final InputStream aIs)
         throws IOException
     {
-        baos = new ByteArrayOutputStream();
+        baos = new SharedByteArrayOutputStream();
         try(BufferedInputStream bis = new BufferedInputStream(aIs);
         BufferedOutputStream osWriter = new BufferedOutputStream(baos))
         {
@@ -189,7 +189,7 @@ public class ByteArrayDataSource implements DataSource
         {
             throw new IOException("no data");
         }
-        return new ByteArrayInputStream(baos.toByteArray());
+        return baos.toInputStream();
     }
 
     /**
@@ -224,7 +224,24 @@ public class ByteArrayDataSource implements DataSource
     @Override
     public OutputStream getOutputStream()
     {
-        baos = new ByteArrayOutputStream();
+        baos = new SharedByteArrayOutputStream();
         return baos;
     }
+
+    /**
+     * Collects the data and reads it without copying it.
+     */
+    private static final class SharedByteArrayOutputStream extends ByteArrayOutputStream
+    {
+        /**
+         * Gets a stream reading the data written so far. The data is shared,
+         * not copied; the stream does not see data written afterwards.
+         *
+         * @return the input stream
+         */
+        synchronized InputStream toInputStream()
+        {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+    }
 }
@@ -0,0 +1,371 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import javax.activation.DataSource;
+
+/**
+ * An immutable {@code DataSource} backed by a byte array or a
+ * {@code ByteBuffer}, on the heap or direct. The content is never copied
+ * after construction: every input stream is a view of the shared bytes,
+ * so reading the content several times (as JavaMail does when sending)
+ * costs no allocation.
+ * <p>
+ * The given array or buffer must not be modified afterwards.
+ * <pre>
+ * DataSource ds = new ByteBufferDataSource(pdfBytes, "application/pdf", "invoice.pdf");
+ * email.attach(ds, "invoice.pdf", "Your invoice");
+ * </pre>
+ *
+ * @since 1.6.0
+ */
+public final class ByteBufferDataSource implements DataSource
+{
+    /** the initial buffer size when reading a stream of unknown length */
+    private static final int DEFAULT_CAPACITY = 8192;
+
+    /** the largest initial buffer size, a stream may be shorter than announced */
+    private static final int MAX_INITIAL_CAPACITY = 64 * 1024;
+
+    /** the largest initial buffer size for a length from a trusted source */
+    private static final int MAX_TRUSTED_CAPACITY = 64 * 1024 * 1024;
+
+    /** the largest array the VM can allocate */
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    /** the content if it is in an accessible array, else null */
+    private final byte[] array;
+
+    /** the start of the content in the array */
+    private final int offset;
+
+    /** the content if it is not in an accessible array, else null */
+    private final ByteBuffer buffer;
+
+    /** the size of the content */
+    private final int size;
+
+    /** the content type */
+    private final String type;
+
+    /** the name */
+    private final String name;
+
+    /**
+     * Creates a data source without a name sharing the given array.
+     *
+     * @param data the content
+     * @param type the content type, null for "application/octet-stream"
+     */
+    public ByteBufferDataSource(final byte[] data, final String type)
+    {
+        this(data, 0, data.length, type, "");
+    }
+
+    /**
+     * Creates a data source sharing the given array.
+     *
+     * @param data the content
+     * @param type the content type, null for "application/octet-stream"
+     * @param name the name
+     */
+    public ByteBufferDataSource(final byte[] data, final String type, final String name)
+    {
+        this(data, 0, data.length, type, name);
+    }
+
+    /**
+     * Creates a data source sharing a range of the given array.
+     *
+     * @param data the array holding the content
+     * @param offset the start of the content
+     * @param length the size of the content
+     * @param type the content type, null for "application/octet-stream"
+     * @param name the name
+     */
+    public ByteBufferDataSource(final byte[] data, final int offset, final int length, final String type,
+            final String name)
+    {
+        if (offset < 0 || length < 0 || offset > data.length - length)
+        {
+            throw new IndexOutOfBoundsException("offset " + offset + ", length " + length + ", size " + data.length);
+        }
+        this.array = data;
+        this.offset = offset;
+        this.buffer = null;
+        this.size = length;
+        this.type = type;
+        this.name = name;
+    }
+
+    /**
+     * Creates a data source without a name sharing the remaining bytes of
+     * the given buffer. The position of the buffer is not changed.
+     *
+     * @param buffer the content
+     * @param type the content type, null for "application/octet-stream"
+     */
+    public ByteBufferDataSource(final ByteBuffer buffer, final String type)
+    {
+        this(buffer, type, "");
+    }
+
+    /**
+     * Creates a data source sharing the remaining bytes of the given buffer.
+     * The position of the buffer is not changed.
+     *
+     * @param buffer the content
+     * @param type the content type, null for "application/octet-stream"
+     * @param name the name
+     */
+    public ByteBufferDataSource(final ByteBuffer buffer, final String type, final String name)
+    {
+        if (buffer.hasArray())
+        {
+            this.array = buffer.array();
+            this.offset = buffer.arrayOffset() + buffer.position();
+            this.buffer = null;
+        }
+        else
+        {
+            this.array = null;
+            this.offset = 0;
+            this.buffer = buffer.slice().asReadOnlyBuffer();
+        }
+        this.size = buffer.remaining();
+        this.type = type;
+        this.name = name;
+    }
+
+    /**
+     * Reads a stream of a length announced by an untrusted source, such as
+     * the Content-Length of a HTTP response, into a new data source. The
+     * buffer starts with at most 64 KB and grows while reading, up to the
+     * expected length if it is known, so a wrong length does not allocate a
+     * large buffer up front.
+     *
+     * @param is the content, not closed by this method
+     * @param length the expected length or -1 if unknown
+     * @param type the content type, null for "application/octet-stream"
+     * @param name the name
+     * @return the data source
+     * @throws IOException the stream could not be read
+     * @see #from(InputStream, long, boolean, String, String)
+     */
+    public static ByteBufferDataSource from(final InputStream is, final long length, final String type,
+            final String name) throws IOException
+    {
+        return from(is, length, false, type, name);
+    }
+
+    /**
+     * Reads a stream into a new data source. A length from a trusted source,
+     * such as the size of a file, a class path resource or a MIME part, is
+     * allocated up front up to 64 MB, so the content is read in place. The
+     * data source wraps the buffer as read, keeping a little unused space at
+     * its end rather than copying the content; the buffer is only trimmed if
+     * more than an eighth of it is unused.
+     *
+     * @param is the content, not closed by this method
+     * @param length the expected length or -1 if unknown
+     * @param trusted whether the length comes from a trusted source
+     * @param type the content type, null for "application/octet-stream"
+     * @param name the name
+     * @return the data source
+     * @throws IOException the stream could not be read
+     */
+    public static ByteBufferDataSource from(final InputStream is, final long length, final boolean trusted,
+            final String type, final String name) throws IOException
+    {
+        final int maxInitialCapacity = trusted ? MAX_TRUSTED_CAPACITY : MAX_INITIAL_CAPACITY;
+        byte[] data = new byte[length >= 0 ? (int) Math.min(length, maxInitialCapacity) : DEFAULT_CAPACITY];
+        int count = 0;
+
+        while (true)
+        {
+            if (count == data.length)
+            {
+                // full: only grow if there is more to read
+                final int next = is.read();
+                if (next == -1)
+                {
+                    break;
+                }
+                if (count == MAX_ARRAY_SIZE)
+                {
+                    throw new IOException("Content too large for a ByteBufferDataSource");
+                }
+                long capacity = Math.min(Math.max(2L * count, DEFAULT_CAPACITY), MAX_ARRAY_SIZE);
+                if (length > count)
+                {
+                    capacity = Math.min(capacity, length);
+                }
+                data = Arrays.copyOf(data, (int) capacity);
+                data[count++] = (byte) next;
+            }
+
+            final int n = is.read(data, count, data.length - count);
+            if (n == -1)
+            {
+                break;
+            }
+            count += n;
+        }
+        if (data.length - count > Math.max(count >> 3, DEFAULT_CAPACITY))
+        {
+            data = Arrays.copyOf(data, count);
+        }
+        return new ByteBufferDataSource(data, 0, count, type, name);
+    }
+
+    /**
+     * Gets a new stream reading the shared content.
+     *
+     * @return the input stream
+     */
+    @Override
+    public InputStream getInputStream()
+    {
+        return array != null ? new ByteArrayInputStream(array, offset, size) : new ByteBufferInputStream(buffer.duplicate());
+    }
+
+    /**
+     * Not supported, the data source is immutable.
+     *
+     * @return never
+     * @throws IOException always
+     */
+    @Override
+    public OutputStream getOutputStream() throws IOException
+    {
+        throw new IOException("ByteBufferDataSource is read-only");
+    }
+
+    @Override
+    public String getContentType()
+    {
+        return type == null ? "application/octet-stream" : type;
+    }
+
+    @Override
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * @return the size of the content in bytes
+     */
+    public int getSize()
+    {
+        return size;
+    }
+
+    /**
+     * Gets a read-only view of the content.
+     *
+     * @return a new buffer sharing the content, positioned at its start
+     */
+    public ByteBuffer asByteBuffer()
+    {
+        return array != null
+                ? ByteBuffer.wrap(array, offset, size).slice().asReadOnlyBuffer()
+                : buffer.duplicate();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ByteBufferDataSource[name=" + name + ", type=" + getContentType() + ", size=" + size + "]";
+    }
+
+    /** Reads a buffer without copying it. */
+    private static final class ByteBufferInputStream extends InputStream
+    {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(final ByteBuffer buffer)
+        {
+            this.buffer = buffer;
+            // reset() without mark() goes back to the start
+            ((Buffer) buffer).mark();
+        }
+
+        @Override
+        public int read()
+        {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len)
+        {
+            if (len == 0)
+            {
+                return 0;
+            }
+            if (!buffer.hasRemaining())
+            {
+                return -1;
+            }
+            final int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(final long n)
+        {
+            final int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            // Buffer methods for Java 8, the covariant ByteBuffer overrides do not exist there
+            ((Buffer) buffer).position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available()
+        {
+            return buffer.remaining();
+        }
+
+        @Override
+        public boolean markSupported()
+        {
+            return true;
+        }
+
+        @Override
+        public synchronized void mark(final int readlimit)
+        {
+            ((Buffer) buffer).mark();
+        }
+
+        @Override
+        public synchronized void reset()
+        {
+            ((Buffer) buffer).reset();
+        }
+    }
+}
@@ -16,6 +16,8 @@
  */
 package org.apache.commons.mail;
 
+import java.util.Objects;
+
 import javax.mail.Authenticator;
 import javax.mail.PasswordAuthentication;
 
@@ -55,4 +57,38 @@ public class DefaultAuthenticator extends Authenticator
     {
         return this.authentication;
     }
+
+    /**
+     * Two authenticators are equal if they use the same user name and password.
+     * This allows equal {@link MailSessionConfig}s to share a session.
+     *
+     * @param obj the object to compare to
+     * @return true if the credentials are equal
+     * @since 1.6.0
+     */
+    @Override
+    public boolean equals(final Object obj)
+    {
+        if (this == obj)
+        {
+            return true;
+        }
+        if (obj == null || obj.getClass() != getClass())
+        {
+            return false;
+        }
+        final PasswordAuthentication other = ((DefaultAuthenticator) obj).authentication;
+        return Objects.equals(authentication.getUserName(), other.getUserName())
+                && Objects.equals(authentication.getPassword(), other.getPassword());
+    }
+
+    /**
+     * @return the hash code of the credentials
+     * @since 1.6.0
+     */
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(authentication.getUserName(), authentication.getPassword());
+    }
 }
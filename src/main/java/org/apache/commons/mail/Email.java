@@ -16,15 +16,19 @@
  */
 package org.apache.commons.mail;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.nio.charset.Charset;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
+import javax.mail.Address;
 import javax.mail.Authenticator;
 import javax.mail.Message;
 import javax.mail.MessagingException;
 import javax.mail.Session;
-import javax.mail.Store;
 import javax.mail.Transport;
 import javax.mail.internet.AddressException;
 import javax.mail.internet.InternetAddress;
@@ -34,7 +38,18 @@ import javax.mail.internet.MimeUtility;
 import javax.naming.Context;
 import javax.naming.InitialContext;
 import javax.naming.NamingException;
-
+import javax.net.ssl.SSLSocketFactory;
+
+import org.apache.commons.mail.jfr.EmailEvent;
+import org.apache.commons.mail.jfr.EmailEventType;
+import org.apache.commons.mail.metrics.EmailMetrics;
+import org.apache.commons.mail.metrics.EmailPhase;
+import org.apache.commons.mail.metrics.MeteredMimeMessage;
+import org.apache.commons.mail.transport.PooledTransport;
+import org.apache.commons.mail.transport.PopBeforeSmtpAuthorizer;
+import org.apache.commons.mail.transport.SmtpConnectionPool;
+import org.apache.commons.mail.transport.SmtpRateLimiter;
+import org.apache.commons.mail.transport.SmtpRelayGroup;
 import org.apache.commons.mail.util.IDNEmailAddressConverter;
 
 /**
@@ -260,6 +275,9 @@ public abstract class Email
     /** the password to log into the pop3 server. */
     protected String popPassword;
 
+    /** remembers the pop3 logins, null for the shared default */
+    private PopBeforeSmtpAuthorizer popBeforeSmtpAuthorizer;
+
     /**
      * Does server require TLS encryption for authentication?
      * @deprecated  since 1.3, use setStartTLSEnabled() instead
@@ -321,6 +339,30 @@ public abstract class Email
     /** The Session to mail with. */
     private Session session;
 
+    /** The optional pool of SMTP connections to send with. */
+    private SmtpConnectionPool connectionPool;
+
+    /** the factory sharing mail sessions between emails, may be null */
+    private MailSessionFactory mailSessionFactory;
+
+    /** the relays to send through instead of the configured host, may be null */
+    private SmtpRelayGroup relayGroup;
+
+    /** limits the sends to the configured host, may be null */
+    private SmtpRateLimiter rateLimiter;
+
+    /** creates the SSL sockets for SSL on connect and STARTTLS, null for the JVM default */
+    private SSLSocketFactory sslSocketFactory;
+
+    /** receives the duration of the build and send phases, null to not measure */
+    private EmailMetrics metrics;
+
+    /** true while an {@link EmailTemplate} builds the message, which has no recipients of its own */
+    boolean buildingTemplate;
+
+    /** the resources released when the email is done, such as temporary files */
+    private final List<Closeable> resources = new ArrayList<>();
+
     /**
      * Setting to true will enable the display of debug information.
      *
@@ -630,71 +672,98 @@ public abstract class Email
     {
         if (this.session == null)
         {
-            final Properties properties = new Properties(System.getProperties());
-            properties.setProperty(EmailConstants.MAIL_TRANSPORT_PROTOCOL, EmailConstants.SMTP);
-
-            if (EmailUtils.isEmpty(this.hostName))
-            {
-                this.hostName = properties.getProperty(EmailConstants.MAIL_HOST);
-            }
-
-            if (EmailUtils.isEmpty(this.hostName))
+            if (this.relayGroup != null && EmailUtils.isEmpty(this.hostName)
+                    && EmailUtils.isEmpty(System.getProperty(EmailConstants.MAIL_HOST)))
             {
-                throw new EmailException("Cannot find valid hostname for mail session");
+                // the message is built with the session of the first relay
+                this.session = this.relayGroup.getRelays().get(0).getSession();
+                return this.session;
             }
 
-            properties.setProperty(EmailConstants.MAIL_PORT, this.smtpPort);
-            properties.setProperty(EmailConstants.MAIL_HOST, this.hostName);
-            properties.setProperty(EmailConstants.MAIL_DEBUG, String.valueOf(this.debug));
-
-            properties.setProperty(EmailConstants.MAIL_TRANSPORT_STARTTLS_ENABLE,
-                    isStartTLSEnabled() ? "true" : "false");
-            properties.setProperty(EmailConstants.MAIL_TRANSPORT_STARTTLS_REQUIRED,
-                    isStartTLSRequired() ? "true" : "false");
+            final long start = startPhase();
+            boolean failed = true;
 
-            properties.setProperty(EmailConstants.MAIL_SMTP_SEND_PARTIAL,
-                    isSendPartial() ? "true" : "false");
-            properties.setProperty(EmailConstants.MAIL_SMTPS_SEND_PARTIAL,
-                    isSendPartial() ? "true" : "false");
-
-            if (this.authenticator != null)
+            try
             {
-                properties.setProperty(EmailConstants.MAIL_SMTP_AUTH, "true");
-            }
+                final MailSessionConfig config = createMailSessionConfig();
 
-            if (isSSLOnConnect())
-            {
-                properties.setProperty(EmailConstants.MAIL_PORT, this.sslSmtpPort);
-                properties.setProperty(EmailConstants.MAIL_SMTP_SOCKET_FACTORY_PORT, this.sslSmtpPort);
-                properties.setProperty(EmailConstants.MAIL_SMTP_SOCKET_FACTORY_CLASS, "javax.net.ssl.SSLSocketFactory");
-                properties.setProperty(EmailConstants.MAIL_SMTP_SOCKET_FACTORY_FALLBACK, "false");
+                this.session = this.mailSessionFactory != null
+                        ? this.mailSessionFactory.getSession(config)
+                        : config.createSession();
+                failed = false;
             }
-
-            if ((isSSLOnConnect() || isStartTLSEnabled()) && isSSLCheckServerIdentity())
+            finally
             {
-                properties.setProperty(EmailConstants.MAIL_SMTP_SSL_CHECKSERVERIDENTITY, "true");
+                endPhase(EmailPhase.SESSION, start, failed);
             }
+        }
+        return this.session;
+    }
 
-            if (this.bounceAddress != null)
-            {
-                properties.setProperty(EmailConstants.MAIL_SMTP_FROM, this.bounceAddress);
-            }
+    /**
+     * Captures the session related settings of this email. Emails with equal
+     * settings can share a mail session, see {@link #setMailSessionFactory(MailSessionFactory)}.
+     *
+     * @return the immutable session settings
+     * @throws EmailException if the host name was not set
+     * @since 1.6.0
+     */
+    public MailSessionConfig createMailSessionConfig() throws EmailException
+    {
+        if (EmailUtils.isEmpty(this.hostName))
+        {
+            this.hostName = System.getProperty(EmailConstants.MAIL_HOST);
+        }
 
-            if (this.socketTimeout > 0)
-            {
-                properties.setProperty(EmailConstants.MAIL_SMTP_TIMEOUT, Integer.toString(this.socketTimeout));
-            }
+        if (EmailUtils.isEmpty(this.hostName))
+        {
+            throw new EmailException("Cannot find valid hostname for mail session");
+        }
 
-            if (this.socketConnectionTimeout > 0)
-            {
-                properties.setProperty(EmailConstants.MAIL_SMTP_CONNECTIONTIMEOUT, Integer.toString(this.socketConnectionTimeout));
-            }
+        return MailSessionConfig.builder()
+                .setHostName(this.hostName)
+                .setSmtpPort(this.smtpPort)
+                .setSslSmtpPort(this.sslSmtpPort)
+                .setSSLOnConnect(isSSLOnConnect())
+                .setStartTLSEnabled(isStartTLSEnabled())
+                .setStartTLSRequired(isStartTLSRequired())
+                .setSSLCheckServerIdentity(isSSLCheckServerIdentity())
+                .setSSLSocketFactory(this.sslSocketFactory)
+                .setSendPartial(isSendPartial())
+                .setSocketTimeout(this.socketTimeout)
+                .setSocketConnectionTimeout(this.socketConnectionTimeout)
+                .setAuthenticator(this.authenticator)
+                .setBounceAddress(this.bounceAddress)
+                .setDebug(this.debug)
+                .build();
+    }
 
-            // changed this (back) to getInstance due to security exceptions
-            // caused when testing using maven
-            this.session = Session.getInstance(properties, this.authenticator);
-        }
-        return this.session;
+    /**
+     * Gets the factory sharing mail sessions between emails.
+     *
+     * @return the mail session factory or null if every email creates its own session
+     * @since 1.6.0
+     */
+    public MailSessionFactory getMailSessionFactory()
+    {
+        return this.mailSessionFactory;
+    }
+
+    /**
+     * Sets the factory used to obtain the mail session. Emails using the same
+     * factory and equal session settings share one {@code Session} instead of
+     * creating a new one for every message.
+     *
+     * @param mailSessionFactory the mail session factory, null to create an unshared session
+     * @return An Email.
+     * @throws IllegalStateException if the mail session is already initialized
+     * @since 1.6.0
+     */
+    public Email setMailSessionFactory(final MailSessionFactory mailSessionFactory)
+    {
+        checkSessionAlreadyInitialized();
+        this.mailSessionFactory = mailSessionFactory;
+        return this;
     }
 
     /**
@@ -1391,7 +1460,7 @@ public abstract class Email
                 }
             }
 
-            if (this.toList.size() + this.ccList.size() + this.bccList.size() == 0)
+            if (this.toList.size() + this.ccList.size() + this.bccList.size() == 0 && !this.buildingTemplate)
             {
                 throw new EmailException("At least one receiver address required");
             }
@@ -1440,9 +1509,7 @@ public abstract class Email
 
             if (this.popBeforeSmtp)
             {
-                // TODO Why is this not a Store leak? When to close?
-                final Store store = session.getStore("pop3");
-                store.connect(this.popHost, this.popUsername, this.popPassword);
+                getPopBeforeSmtpAuthorizer().authorize(session, this.popHost, this.popUsername, this.popPassword);
             }
         }
         catch (final MessagingException me)
@@ -1463,20 +1530,309 @@ public abstract class Email
     {
         EmailUtils.notNull(this.message, "MimeMessage has not been created yet");
 
+        final EmailEvent event = EmailEvent.begin(EmailEventType.SEND);
+        final long start = startPhase();
+        Throwable failure = null;
+
         try
         {
-            Transport.send(this.message);
+            if (this.relayGroup != null)
+            {
+                this.message.saveChanges();
+                event.setHost(this.relayGroup.send(this.message, this.connectionPool, createEnvelopeProperties())
+                        .getConfig().getHostName());
+            }
+            else
+            {
+                event.setHost(this.hostName);
+                try (SmtpRateLimiter.Permit permit = this.rateLimiter != null ? this.rateLimiter.acquire() : null)
+                {
+                    if (this.connectionPool != null)
+                    {
+                        this.message.saveChanges();
+                        final long connectStart = startPhase();
+                        final PooledTransport transport = borrow(connectStart);
+                        try
+                        {
+                            transfer(null, transport);
+                        }
+                        finally
+                        {
+                            transport.close();
+                        }
+                    }
+                    else if (this.metrics != null)
+                    {
+                        // same as Transport.send, but with the connection and the transfer measured
+                        this.message.saveChanges();
+                        final Transport transport = this.getMailSession().getTransport();
+                        final long connectStart = startPhase();
+                        boolean connectFailed = true;
+                        try
+                        {
+                            transport.connect();
+                            connectFailed = false;
+                        }
+                        finally
+                        {
+                            endPhase(EmailPhase.CONNECT, connectStart, connectFailed);
+                        }
+                        try
+                        {
+                            transfer(transport, null);
+                        }
+                        finally
+                        {
+                            transport.close();
+                        }
+                    }
+                    else
+                    {
+                        Transport.send(this.message);
+                    }
+                }
+            }
+            event.setMessage(this.message);
+
+            if (this.metrics != null)
+            {
+                final Address[] recipients = this.message.getAllRecipients();
+                this.metrics.messageSent(recipients != null ? recipients.length : 0,
+                        this.message instanceof MeteredMimeMessage
+                                ? ((MeteredMimeMessage) this.message).getBytesWritten() : -1);
+            }
             return this.message.getMessageID();
         }
         catch (final Exception e)
         {
-            final String msg = "Sending the email to the following server failed : "
-                + this.getHostName()
-                + ":"
-                + this.getSmtpPort();
+            failure = e;
+            final String msg = this.relayGroup != null
+                ? "Sending the email to the following servers failed : " + this.relayGroup
+                : "Sending the email to the following server failed : "
+                    + this.getHostName()
+                    + ":"
+                    + this.getSmtpPort();
 
             throw new EmailException(msg, e);
         }
+        finally
+        {
+            endPhase(EmailPhase.SEND, start, failure != null);
+            event.end(failure);
+        }
+    }
+
+    /**
+     * Borrows a connection from the pool, measuring it as the connect phase.
+     *
+     * @param start the start of the phase
+     * @return the connection
+     * @throws MessagingException no connection could be borrowed
+     * @throws EmailException the mail session could not be created
+     */
+    private PooledTransport borrow(final long start) throws MessagingException, EmailException
+    {
+        boolean failed = true;
+        try
+        {
+            final PooledTransport transport = this.connectionPool.borrow(this.getMailSession());
+            failed = false;
+            return transport;
+        }
+        finally
+        {
+            endPhase(EmailPhase.CONNECT, start, failed);
+        }
+    }
+
+    /**
+     * Transfers the message over a connected transport, measuring it as the
+     * transfer phase.
+     *
+     * @param transport the connected transport, null if pooled
+     * @param pooled the pooled transport, null if not pooled
+     * @throws MessagingException the transfer failed
+     */
+    private void transfer(final Transport transport, final PooledTransport pooled) throws MessagingException
+    {
+        final long start = startPhase();
+        boolean failed = true;
+        try
+        {
+            if (pooled != null)
+            {
+                pooled.sendMessage(this.message);
+            }
+            else
+            {
+                transport.sendMessage(this.message, this.message.getAllRecipients());
+            }
+            failed = false;
+        }
+        finally
+        {
+            endPhase(EmailPhase.TRANSFER, start, failed);
+        }
+    }
+
+    /**
+     * Starts measuring a phase.
+     *
+     * @return the start of the phase, 0 if metrics are disabled
+     */
+    long startPhase()
+    {
+        return this.metrics != null ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Reports the end of a phase if metrics are enabled.
+     *
+     * @param phase the phase
+     * @param start the start of the phase as returned by {@link #startPhase()}
+     * @param failed true if the phase ended with an exception
+     */
+    void endPhase(final EmailPhase phase, final long start, final boolean failed)
+    {
+        if (this.metrics != null && start != 0)
+        {
+            this.metrics.phaseCompleted(phase, System.nanoTime() - start, failed);
+        }
+    }
+
+    /**
+     * Gets the receiver of the duration of the build and send phases.
+     *
+     * @return the metrics or null if nothing is measured
+     * @since 1.6.0
+     */
+    public EmailMetrics getMetrics()
+    {
+        return this.metrics;
+    }
+
+    /**
+     * Sets the receiver of the duration of the build and send phases, the
+     * number of recipients and the size of the sent messages. Without metrics
+     * nothing is measured. Set it before building the message so that its
+     * size is known.
+     *
+     * @param metrics the metrics, usually shared by all emails, null to not measure
+     * @return An Email.
+     * @since 1.6.0
+     */
+    public Email setMetrics(final EmailMetrics metrics)
+    {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Gets the pool of SMTP connections used for sending.
+     *
+     * @return the connection pool or null if every message opens its own connection
+     * @since 1.6.0
+     */
+    public SmtpConnectionPool getConnectionPool()
+    {
+        return this.connectionPool;
+    }
+
+    /**
+     * Sets a pool of SMTP connections to send the message with. Without
+     * a pool {@link #sendMimeMessage()} opens a new connection (including
+     * TLS handshake and authentication) for every message.
+     *
+     * @param connectionPool the pool to borrow connections from or null
+     * @return An Email.
+     * @since 1.6.0
+     */
+    public Email setConnectionPool(final SmtpConnectionPool connectionPool)
+    {
+        this.connectionPool = connectionPool;
+        return this;
+    }
+
+    /**
+     * Gets the group of relays this email is sent through.
+     *
+     * @return the relay group or null if the email is sent to the configured host
+     * @since 1.6.0
+     */
+    public SmtpRelayGroup getRelayGroup()
+    {
+        return this.relayGroup;
+    }
+
+    /**
+     * Sends this email through a group of relays instead of the configured
+     * host. The relay is chosen by its observed latency and error rate and
+     * sending fails over to the next relay if it cannot be reached. If no host
+     * name is set, the session of the first relay is used to build the message.
+     * The bounce address and the partial send mode of this email are merged
+     * into the session of the relay.
+     *
+     * @param relayGroup the relay group, null to send to the configured host
+     * @return An Email.
+     * @since 1.6.0
+     */
+    public Email setRelayGroup(final SmtpRelayGroup relayGroup)
+    {
+        this.relayGroup = relayGroup;
+        return this;
+    }
+
+    /**
+     * Captures the settings of this email which apply to the SMTP envelope
+     * rather than to the connection, so they can be merged into the session
+     * of a relay.
+     *
+     * @return the envelope settings, empty if none are set
+     * @see SmtpRelayGroup#send(Message, SmtpConnectionPool, Properties)
+     * @since 1.6.0
+     */
+    public Properties createEnvelopeProperties()
+    {
+        final Properties envelope = new Properties();
+
+        if (EmailUtils.isNotEmpty(this.bounceAddress))
+        {
+            envelope.setProperty(EmailConstants.MAIL_SMTP_FROM, this.bounceAddress);
+        }
+
+        if (this.sendPartial)
+        {
+            envelope.setProperty(EmailConstants.MAIL_SMTP_SEND_PARTIAL, "true");
+            envelope.setProperty(EmailConstants.MAIL_SMTPS_SEND_PARTIAL, "true");
+        }
+        return envelope;
+    }
+
+    /**
+     * Gets the limiter for sends to the configured host.
+     *
+     * @return the rate limiter or null if sends are not limited
+     * @since 1.6.0
+     */
+    public SmtpRateLimiter getRateLimiter()
+    {
+        return this.rateLimiter;
+    }
+
+    /**
+     * Sets a limiter for sends to the configured host, which is honoured
+     * before connecting. Share the limiter between all emails sent to the
+     * same server. Relays of a {@link #setRelayGroup(SmtpRelayGroup) relay
+     * group} use their own limiters.
+     *
+     * @param rateLimiter the rate limiter, null to not limit sends
+     * @return An Email.
+     * @since 1.6.0
+     */
+    public Email setRateLimiter(final SmtpRateLimiter rateLimiter)
+    {
+        this.rateLimiter = rateLimiter;
+        return this;
     }
 
     /**
@@ -1501,8 +1857,112 @@ public abstract class Email
      */
     public String send() throws EmailException
     {
-        this.buildMimeMessage();
-        return this.sendMimeMessage();
+        try
+        {
+            final EmailEvent event = EmailEvent.begin(EmailEventType.BUILD);
+            final long start = startPhase();
+            Throwable failure = null;
+            try
+            {
+                this.buildMimeMessage();
+                event.setHost(this.hostName).setMessage(this.message);
+            }
+            catch (final EmailException | RuntimeException e)
+            {
+                failure = e;
+                throw e;
+            }
+            finally
+            {
+                endPhase(EmailPhase.BUILD, start, failure != null);
+                event.end(failure);
+            }
+            return this.sendMimeMessage();
+        }
+        finally
+        {
+            releaseResources();
+        }
+    }
+
+    /**
+     * Registers a resource of the message, such as the temporary file of an
+     * attachment, to be closed by {@link #releaseResources()}.
+     *
+     * @param resource the resource
+     * @return An Email.
+     * @since 1.6.0
+     */
+    public Email addResource(final Closeable resource)
+    {
+        EmailUtils.notNull(resource, "resource");
+        synchronized (this.resources)
+        {
+            this.resources.add(resource);
+        }
+        return this;
+    }
+
+    /**
+     * Closes the resources of the message when the email is done, ignoring
+     * failures. {@link #send()} calls it after sending, successful or not,
+     * as do the senders which build the email themselves, such as
+     * {@code Mailer}, {@code RetryingSender}, {@code MailSpool} and
+     * {@link EmailTemplate}. Whoever builds and sends the message otherwise
+     * has to call it once the message has been written.
+     *
+     * @since 1.6.0
+     */
+    public void releaseResources()
+    {
+        final List<Closeable> released;
+        synchronized (this.resources)
+        {
+            released = new ArrayList<>(this.resources);
+            this.resources.clear();
+        }
+
+        for (final Closeable resource : released)
+        {
+            try
+            {
+                resource.close();
+            }
+            catch (final IOException e)
+            {
+                // the message is done, a resource failing to close does not change that
+            }
+        }
+    }
+
+    /**
+     * Sends the email asynchronously on the default executor, see
+     * {@link EmailExecutors#getDefaultExecutor()}. The number of concurrent
+     * asynchronous sends is bounded by {@link EmailExecutors#getMaxInFlight()}.
+     *
+     * @return the future message id of the underlying MimeMessage, completed
+     *   exceptionally with an {@link EmailException} if sending failed
+     * @since 1.6.0
+     */
+    public CompletableFuture<String> sendAsync()
+    {
+        return sendAsync(EmailExecutors.getDefaultExecutor());
+    }
+
+    /**
+     * Sends the email asynchronously on the given executor. The number of
+     * concurrent asynchronous sends is bounded by {@link EmailExecutors#getMaxInFlight()}.
+     * The email must not be modified until the returned future is completed.
+     *
+     * @param executor the executor to send the email with
+     * @return the future message id of the underlying MimeMessage, completed
+     *   exceptionally with an {@link EmailException} if sending failed
+     * @throws IllegalArgumentException if the executor is {@code null}
+     * @since 1.6.0
+     */
+    public CompletableFuture<String> sendAsync(final Executor executor)
+    {
+        return EmailExecutors.sendAsync(this, executor);
     }
 
     /**
@@ -1662,6 +2122,32 @@ public abstract class Email
         this.popPassword = newPopPassword;
     }
 
+    /**
+     * Gets the component performing the "pop3 before SMTP" logins.
+     *
+     * @return the authorizer, {@link PopBeforeSmtpAuthorizer#getDefault()} unless set
+     * @since 1.6.0
+     */
+    public PopBeforeSmtpAuthorizer getPopBeforeSmtpAuthorizer()
+    {
+        return this.popBeforeSmtpAuthorizer != null ? this.popBeforeSmtpAuthorizer : PopBeforeSmtpAuthorizer.getDefault();
+    }
+
+    /**
+     * Sets the component performing the "pop3 before SMTP" logins. If the
+     * authorizer has a validity window, a login is reused by all emails
+     * sharing the authorizer until the window expires.
+     *
+     * @param popBeforeSmtpAuthorizer the authorizer, null for the shared default
+     * @return An Email.
+     * @since 1.6.0
+     */
+    public Email setPopBeforeSmtpAuthorizer(final PopBeforeSmtpAuthorizer popBeforeSmtpAuthorizer)
+    {
+        this.popBeforeSmtpAuthorizer = popBeforeSmtpAuthorizer;
+        return this;
+    }
+
     /**
      * Returns whether SSL/TLS encryption for the transport is currently enabled (SMTPS/POPS).
      * See EMAIL-105 for reason of deprecation.
@@ -1744,6 +2230,35 @@ public abstract class Email
         return this;
     }
 
+    /**
+     * Gets the factory creating the SSL sockets.
+     *
+     * @return the factory or null if the JVM default is used
+     * @since 1.6.0
+     */
+    public SSLSocketFactory getSSLSocketFactory()
+    {
+        return sslSocketFactory;
+    }
+
+    /**
+     * Sets the factory creating the SSL sockets for SSL on connect and
+     * STARTTLS. A shared {@link org.apache.commons.mail.transport.CachingSSLSocketFactory}
+     * resumes the TLS sessions of earlier connections and enables the given
+     * protocols and cipher suites without touching system properties.
+     *
+     * @param sslSocketFactory the factory, null to use the JVM default
+     * @return An Email.
+     * @throws IllegalStateException if the mail session is already initialized
+     * @since 1.6.0
+     */
+    public Email setSSLSocketFactory(final SSLSocketFactory sslSocketFactory)
+    {
+        checkSessionAlreadyInitialized();
+        this.sslSocketFactory = sslSocketFactory;
+        return this;
+    }
+
     /**
      * Returns the current SSL port used by the SMTP transport.
      *
@@ -1907,6 +2422,10 @@ public abstract class Email
      */
     protected MimeMessage createMimeMessage(final Session aSession)
     {
+        if (this.metrics != null || EmailEvent.isEnabled(EmailEventType.SEND))
+        {
+            return new MeteredMimeMessage(aSession);
+        }
         return new MimeMessage(aSession);
     }
 
@@ -240,6 +240,22 @@ public final class EmailConstants
      */
     public static final String MAIL_FROM = "mail.from";
 
+    /////////////////////////////////////////////////////////////////////////
+    // since 1.6.0
+    /////////////////////////////////////////////////////////////////////////
+
+    /**
+     * A {@link javax.net.SocketFactory} instance to create smtp sockets.
+     * @since 1.6.0
+     */
+    public static final String MAIL_SMTP_SOCKET_FACTORY = "mail.smtp.socketFactory";
+
+    /**
+     * A {@link javax.net.ssl.SSLSocketFactory} instance to create SMTP SSL sockets, also used by STARTTLS.
+     * @since 1.6.0
+     */
+    public static final String MAIL_SMTP_SSL_SOCKET_FACTORY = "mail.smtp.ssl.socketFactory";
+
 
     /** Hide constructor. */
     private EmailConstants()
@@ -0,0 +1,220 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.mail.util.ResizableSemaphore;
+
+/**
+ * Executors and the global in-flight limit used by {@link Email#sendAsync()}.
+ * <p>
+ * On Java 21 and later the default executor starts a virtual thread per send;
+ * on older runtimes it falls back to a bounded pool of daemon platform threads.
+ * Independent of the executor, at most {@link #getMaxInFlight()} asynchronous
+ * sends talk to SMTP servers at the same time, further sends wait for a free slot.
+ *
+ * @since 1.6.0
+ */
+public final class EmailExecutors
+{
+    /** default maximum number of concurrent asynchronous sends */
+    public static final int DEFAULT_MAX_IN_FLIGHT = 256;
+
+    /** number of threads of the platform thread fallback pool */
+    public static final int DEFAULT_PLATFORM_THREADS = Math.max(8, Runtime.getRuntime().availableProcessors() * 4);
+
+    /** limits the number of concurrent asynchronous sends */
+    private static final ResizableSemaphore IN_FLIGHT = new ResizableSemaphore(DEFAULT_MAX_IN_FLIGHT);
+
+    /** the lazily created default executor */
+    private static volatile ExecutorService defaultExecutor;
+
+    private EmailExecutors()
+    {
+    }
+
+    /**
+     * Gets the executor used by {@link Email#sendAsync()}, creating it on first use.
+     *
+     * @return the default executor
+     */
+    public static Executor getDefaultExecutor()
+    {
+        ExecutorService result = defaultExecutor;
+
+        if (result == null)
+        {
+            synchronized (EmailExecutors.class)
+            {
+                result = defaultExecutor;
+                if (result == null)
+                {
+                    result = createDefaultExecutor();
+                    defaultExecutor = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the maximum number of concurrent asynchronous sends.
+     *
+     * @return the in-flight limit
+     */
+    public static int getMaxInFlight()
+    {
+        return IN_FLIGHT.getMaxPermits();
+    }
+
+    /**
+     * Sets the maximum number of concurrent asynchronous sends. The limit
+     * can be changed at any time.
+     *
+     * @param maxInFlight the in-flight limit
+     * @throws IllegalArgumentException if the limit is &lt; 1
+     */
+    public static void setMaxInFlight(final int maxInFlight)
+    {
+        IN_FLIGHT.setMaxPermits(maxInFlight);
+    }
+
+    /**
+     * Gets the number of asynchronous sends currently talking to an SMTP server.
+     *
+     * @return the number of sends in flight
+     */
+    public static int getInFlight()
+    {
+        return IN_FLIGHT.getUsedPermits();
+    }
+
+    /**
+     * Sends the email on the given executor honouring the in-flight limit.
+     *
+     * @param email the email to send
+     * @param executor the executor to run the send on
+     * @return the future message id
+     */
+    static CompletableFuture<String> sendAsync(final Email email, final Executor executor)
+    {
+        EmailUtils.notNull(executor, "no executor supplied");
+
+        final CompletableFuture<String> future = new CompletableFuture<>();
+
+        try
+        {
+            executor.execute(() -> {
+                try
+                {
+                    future.complete(send(email));
+                }
+                catch (final EmailException | RuntimeException e)
+                {
+                    future.completeExceptionally(e);
+                }
+            });
+        }
+        catch (final RejectedExecutionException e)
+        {
+            future.completeExceptionally(e);
+        }
+
+        return future;
+    }
+
+    /**
+     * Sends the email while holding an in-flight permit.
+     *
+     * @param email the email to send
+     * @return the message id
+     * @throws EmailException sending failed or the thread was interrupted
+     */
+    private static String send(final Email email) throws EmailException
+    {
+        try
+        {
+            IN_FLIGHT.acquire();
+        }
+        catch (final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new EmailException("Interrupted while waiting to send the email", e);
+        }
+
+        try
+        {
+            return email.send();
+        }
+        finally
+        {
+            IN_FLIGHT.release();
+        }
+    }
+
+    /**
+     * Creates a virtual thread per task executor if the runtime supports it,
+     * a bounded pool of platform threads otherwise.
+     *
+     * @return the executor
+     */
+    private static ExecutorService createDefaultExecutor()
+    {
+        try
+        {
+            // Java 21+, looked up reflectively to keep running on Java 8
+            final Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        }
+        catch (final ReflectiveOperationException | RuntimeException e) // NOPMD
+        {
+            // fall back to platform threads
+        }
+
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(DEFAULT_PLATFORM_THREADS, DEFAULT_PLATFORM_THREADS,
+                60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new DaemonThreadFactory());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Creates named daemon threads which do not prevent the JVM from exiting.
+     */
+    private static final class DaemonThreadFactory implements ThreadFactory
+    {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable)
+        {
+            final Thread thread = new Thread(runnable, "commons-email-send-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
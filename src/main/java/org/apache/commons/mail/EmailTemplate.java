@@ -0,0 +1,270 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
+import java.util.Properties;
+
+import javax.mail.Address;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.MimeMessage;
+import javax.mail.util.SharedByteArrayInputStream;
+
+import org.apache.commons.mail.metrics.EmailMetrics;
+import org.apache.commons.mail.metrics.EmailPhase;
+import org.apache.commons.mail.transport.PooledTransport;
+import org.apache.commons.mail.transport.SmtpConnectionPool;
+import org.apache.commons.mail.transport.SmtpRateLimiter;
+import org.apache.commons.mail.transport.SmtpRelayGroup;
+
+/**
+ * A message built and encoded once and sent to many recipients.
+ * <p>
+ * An {@link Email} can only be built once (see {@link Email#buildMimeMessage()}),
+ * so sending the same content to many recipients would embed, attach and
+ * encode everything again for every recipient. A template builds the email
+ * once and keeps the encoded message. Every message created from it shares
+ * these bytes: the parts are neither copied nor encoded again, only the
+ * headers differ.
+ * <pre>
+ * HtmlEmail email = new HtmlEmail();
+ * email.setHostName("mail.myserver.com");
+ * email.setFrom("newsletter@example.com");
+ * email.setSubject("Our newsletter");
+ * email.setHtmlMsg(html);
+ * EmailTemplate template = new EmailTemplate(email);
+ *
+ * for (String subscriber : subscribers)
+ * {
+ *     template.send(new InternetAddress(subscriber));
+ * }
+ * </pre>
+ * The recipients of the email, its Message-ID and its sent date are not
+ * part of the template, the email does not need any recipient. Templates
+ * are immutable and may be shared between threads.
+ *
+ * @since 1.6.0
+ */
+public final class EmailTemplate
+{
+    /** the headers which are set per message */
+    private static final String[] MESSAGE_HEADERS = { "To", "Cc", "Bcc", "Message-ID", "Date" };
+
+    /** the session to send with */
+    private final Session session;
+
+    /** the pool to borrow connections from, may be null */
+    private final SmtpConnectionPool connectionPool;
+
+    /** the limiter honoured before every send, may be null */
+    private final SmtpRateLimiter rateLimiter;
+
+    /** the relays to send through instead of the session, may be null */
+    private final SmtpRelayGroup relayGroup;
+
+    /** the envelope settings merged into the sessions of the relays */
+    private final Properties envelope;
+
+    /** the metrics of the sends, may be null */
+    private final EmailMetrics metrics;
+
+    /** the encoded message without the per message headers */
+    private final byte[] content;
+
+    /**
+     * Builds the email and keeps the encoded message. The email is used up
+     * and cannot be sent itself afterwards. Its session, connection pool,
+     * rate limiter, relay group and metrics are used to send the messages of
+     * the template.
+     *
+     * @param email the email to build
+     * @throws EmailException the email could not be built or encoded
+     */
+    public EmailTemplate(final Email email) throws EmailException
+    {
+        EmailUtils.notNull(email, "email");
+
+        try
+        {
+            email.buildingTemplate = true;
+            try
+            {
+                email.buildMimeMessage();
+            }
+            finally
+            {
+                email.buildingTemplate = false;
+            }
+
+            final MimeMessage message = email.getMimeMessage();
+            message.saveChanges();
+
+            final ByteArrayOutputStream os = new ByteArrayOutputStream();
+            message.writeTo(os, MESSAGE_HEADERS);
+
+            this.content = os.toByteArray();
+            this.session = email.getMailSession();
+            this.connectionPool = email.getConnectionPool();
+            this.rateLimiter = email.getRateLimiter();
+            this.relayGroup = email.getRelayGroup();
+            this.envelope = email.createEnvelopeProperties();
+            this.metrics = email.getMetrics();
+        }
+        catch (final MessagingException | IOException e)
+        {
+            throw new EmailException("Cannot encode the template", e);
+        }
+        finally
+        {
+            email.releaseResources();
+        }
+    }
+
+    /**
+     * Creates a message of this template. More headers may be set on the
+     * message, changing its content encodes it again though.
+     *
+     * @param to the "To" recipients, may be empty
+     * @return the message, ready to be sent
+     * @throws MessagingException the message could not be created
+     */
+    public MimeMessage createMimeMessage(final Address... to) throws MessagingException
+    {
+        final MimeMessage message = new TemplateMimeMessage(this.session, new SharedByteArrayInputStream(this.content));
+
+        if (to.length > 0)
+        {
+            message.setRecipients(Message.RecipientType.TO, to);
+        }
+        message.saveChanges();
+        return message;
+    }
+
+    /**
+     * Sends a message of this template the way the email would have been
+     * sent: through its relay group if it had one, else borrowing a
+     * connection from its connection pool if it had one and honouring its
+     * rate limiter. The send is reported to the metrics of the email.
+     *
+     * @param to the "To" recipients
+     * @return the message id of the sent message
+     * @throws EmailException the sending failed
+     */
+    public String send(final Address... to) throws EmailException
+    {
+        if (to.length == 0)
+        {
+            throw new EmailException("At least one receiver address required");
+        }
+
+        final long start = this.metrics != null ? System.nanoTime() : 0;
+        boolean failed = true;
+        try
+        {
+            final MimeMessage message = createMimeMessage(to);
+
+            if (this.relayGroup != null)
+            {
+                this.relayGroup.send(message, this.connectionPool, this.envelope);
+            }
+            else
+            {
+                try (SmtpRateLimiter.Permit permit = this.rateLimiter != null ? this.rateLimiter.acquire() : null)
+                {
+                    if (this.connectionPool != null)
+                    {
+                        try (PooledTransport transport = this.connectionPool.borrow(this.session))
+                        {
+                            transport.sendMessage(message, to);
+                        }
+                    }
+                    else
+                    {
+                        Transport.send(message, to);
+                    }
+                }
+            }
+            failed = false;
+
+            if (this.metrics != null)
+            {
+                this.metrics.messageSent(to.length, -1);
+            }
+            return message.getMessageID();
+        }
+        catch (final MessagingException e)
+        {
+            throw new EmailException(this.relayGroup != null
+                    ? "Sending the email to the following servers failed : " + this.relayGroup
+                    : "Sending the email to the following server failed : "
+                            + this.session.getProperty(EmailConstants.MAIL_HOST), e);
+        }
+        finally
+        {
+            if (this.metrics != null)
+            {
+                this.metrics.phaseCompleted(EmailPhase.SEND, System.nanoTime() - start, failed);
+            }
+        }
+    }
+
+    /**
+     * @return the session used to send the messages
+     */
+    public Session getMailSession()
+    {
+        return this.session;
+    }
+
+    /**
+     * @return the size of the encoded message in bytes, without the per message headers
+     */
+    public int getSize()
+    {
+        return this.content.length;
+    }
+
+    /**
+     * A message reading its content from the shared bytes of the template.
+     * Saving the changes only updates the headers set per message; the
+     * parts are not parsed, so they are written out as they were encoded.
+     */
+    private static final class TemplateMimeMessage extends MimeMessage
+    {
+        TemplateMimeMessage(final Session session, final InputStream is) throws MessagingException
+        {
+            super(session, is);
+        }
+
+        @Override
+        protected void updateHeaders() throws MessagingException
+        {
+            setHeader("MIME-Version", "1.0");
+            if (getHeader("Date") == null)
+            {
+                setSentDate(new Date());
+            }
+            updateMessageID();
+        }
+    }
+}
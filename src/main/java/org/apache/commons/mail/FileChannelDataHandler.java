@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import javax.activation.DataHandler;
+import javax.activation.FileDataSource;
+
+import org.apache.commons.mail.util.BufferPool;
+
+/**
+ * A {@code DataHandler} for file attachments which writes the file straight
+ * from a {@code FileChannel} into the (transfer-encoding) output stream of
+ * the message with a pooled buffer. Sending a large file therefore only
+ * needs a fixed amount of heap, however large the file is.
+ *
+ * @since 1.6.0
+ */
+final class FileChannelDataHandler extends DataHandler
+{
+    /** the attached file */
+    private final File file;
+
+    /** provides the copy buffers */
+    private final BufferPool bufferPool;
+
+    /**
+     * Constructor.
+     *
+     * @param dataSource the file to attach
+     * @param bufferPool provides the copy buffers
+     */
+    FileChannelDataHandler(final FileDataSource dataSource, final BufferPool bufferPool)
+    {
+        super(dataSource);
+        this.file = dataSource.getFile();
+        this.bufferPool = bufferPool;
+    }
+
+    @Override
+    public void writeTo(final OutputStream os) throws IOException
+    {
+        final byte[] buffer = bufferPool.acquire();
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            final ByteBuffer bb = ByteBuffer.wrap(buffer);
+
+            while (channel.read(bb) != -1)
+            {
+                os.write(buffer, 0, bb.position());
+                // Buffer.clear() for Java 8, ByteBuffer.clear() does not exist there
+                ((Buffer) bb).clear();
+            }
+        }
+        finally
+        {
+            bufferPool.release(buffer);
+        }
+    }
+}
@@ -18,16 +18,14 @@ package org.apache.commons.mail;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 
-import javax.activation.DataHandler;
 import javax.activation.DataSource;
 import javax.activation.FileDataSource;
 import javax.activation.URLDataSource;
@@ -36,6 +34,8 @@ import javax.mail.MessagingException;
 import javax.mail.internet.MimeBodyPart;
 import javax.mail.internet.MimeMultipart;
 
+import org.apache.commons.mail.metrics.EmailPhase;
+
 /**
  * An HTML multipart email.
  *
@@ -110,9 +110,9 @@ public class HtmlEmail extends MultiPartEmail
 
     /**
      * Embedded images Map&lt;String, InlineImage&gt; where the key is the
-     * user-defined image name.
+     * user-defined image name, in the order they were embedded.
      */
-    protected Map<String, InlineImage> inlineEmbeds = new HashMap<>();
+    protected Map<String, InlineImage> inlineEmbeds = new LinkedHashMap<>();
 
     /**
      * Set the text content.
@@ -278,11 +278,14 @@ public class HtmlEmail extends MultiPartEmail
                 + "; existing names cannot be rebound");
         }
 
-        // verify that the URL is valid
-        InputStream is = null;
+        // verify that the URL is valid, or download it with the URL resolver
+        final long start = startPhase();
+        boolean failed = true;
+        final URLDataSource dataSource;
         try
         {
-            is = url.openStream();
+            dataSource = fetch(url);
+            failed = false;
         }
         catch (final IOException e)
         {
@@ -290,18 +293,10 @@ public class HtmlEmail extends MultiPartEmail
         }
         finally
         {
-            try
-            {
-                if (is != null)
-                {
-                    is.close();
-                }
-            }
-            catch (final IOException ioe) // NOPMD
-            { /* sigh */ }
+            endPhase(EmailPhase.RESOLVE, start, failed);
         }
 
-        return embed(new URLDataSource(url), name);
+        return embed(dataSource, name);
     }
 
     /**
@@ -465,14 +460,21 @@ public class HtmlEmail extends MultiPartEmail
             throw new EmailException("name cannot be null or empty");
         }
 
-        final MimeBodyPart mbp = new MimeBodyPart();
-
         try
         {
             // URL encode the cid according to RFC 2392
             final String encodedCid = EmailUtils.encodeUrl(cid);
 
-            mbp.setDataHandler(new DataHandler(dataSource));
+            final MimeBodyPart mbp;
+            if (getAttachmentCache() != null)
+            {
+                mbp = createCachedBodyPart(dataSource);
+            }
+            else
+            {
+                mbp = new MimeBodyPart();
+                mbp.setDataHandler(createDataHandler(dataSource));
+            }
             mbp.setFileName(name);
             mbp.setDisposition(EmailAttachment.INLINE);
             mbp.setContentID("<" + encodedCid + ">");
@@ -486,6 +488,10 @@ public class HtmlEmail extends MultiPartEmail
         {
             throw new EmailException(uee);
         }
+        catch (final IOException e)
+        {
+            throw new EmailException("Cannot read the embedded content " + name, e);
+        }
     }
 
     /**
@@ -0,0 +1,363 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds the resources referenced by an HTML document in a single linear
+ * scan and replaces their locations with "cid:" references. Recognized are
+ * <ul>
+ * <li>the {@code src} attribute of {@code <img>} and {@code <script>} tags,</li>
+ * <li>the {@code background} attribute of any tag,</li>
+ * <li>CSS {@code url(...)} in {@code style} attributes and {@code <style>} elements.</li>
+ * </ul>
+ * Attribute values may be quoted or not. Locations which already are
+ * "cid:" references or inline "data:" URIs are left alone.
+ * <p>
+ * This is a package scoped class used by {@link ImageHtmlEmail}.
+ * </p>
+ *
+ * @since 1.6.0
+ */
+final class HtmlResourceRewriter
+{
+    /** A resource location found in the document. */
+    static final class Reference
+    {
+        /** the start of the location in the document */
+        private final int start;
+
+        /** the end of the location in the document, exclusive */
+        private final int end;
+
+        /** the location */
+        private final String location;
+
+        Reference(final int start, final int end, final String location)
+        {
+            this.start = start;
+            this.end = end;
+            this.location = location;
+        }
+
+        int getStart()
+        {
+            return start;
+        }
+
+        int getEnd()
+        {
+            return end;
+        }
+
+        String getLocation()
+        {
+            return location;
+        }
+    }
+
+    /** the length of "cid:" plus a generated content id, used to size the result */
+    private static final int CID_REFERENCE_LENGTH = 4 + HtmlEmail.CID_LENGTH;
+
+    /** the document */
+    private final String html;
+
+    /** the references in document order */
+    private final List<Reference> references = new ArrayList<>();
+
+    /**
+     * Scans a document.
+     *
+     * @param html the HTML document
+     */
+    HtmlResourceRewriter(final String html)
+    {
+        this.html = html;
+
+        int i = html.indexOf('<');
+        while (i >= 0)
+        {
+            i = html.indexOf('<', scanTag(i + 1));
+        }
+    }
+
+    /**
+     * @return the references in document order
+     */
+    List<Reference> getReferences()
+    {
+        return Collections.unmodifiableList(references);
+    }
+
+    /**
+     * @return the distinct resource locations in the order of their first reference
+     */
+    Set<String> getLocations()
+    {
+        final Set<String> locations = new LinkedHashSet<>();
+        for (final Reference reference : references)
+        {
+            locations.add(reference.location);
+        }
+        return locations;
+    }
+
+    /**
+     * Replaces the locations with "cid:" references.
+     *
+     * @param cids the content ids by location, locations without one are kept
+     * @return the rewritten document
+     */
+    String rewrite(final Map<String, String> cids)
+    {
+        if (references.isEmpty() || cids.isEmpty())
+        {
+            return html;
+        }
+
+        final StringBuilder result = new StringBuilder(html.length() + CID_REFERENCE_LENGTH * references.size());
+        int last = 0;
+
+        for (final Reference reference : references)
+        {
+            final String cid = cids.get(reference.location);
+            if (cid != null)
+            {
+                result.append(html, last, reference.start).append("cid:").append(cid);
+                last = reference.end;
+            }
+        }
+        return result.append(html, last, html.length()).toString();
+    }
+
+    /**
+     * Scans the tag starting at the given position.
+     *
+     * @param start the position after the opening angle bracket
+     * @return the position after the tag
+     */
+    private int scanTag(final int start)
+    {
+        final int length = html.length();
+        int i = start;
+
+        while (i < length && Character.isLetterOrDigit(html.charAt(i)))
+        {
+            i++;
+        }
+        if (i == start)
+        {
+            // an end tag, a comment or no tag at all
+            return i;
+        }
+
+        final boolean hasSrc = isName(start, i, "img") || isName(start, i, "script");
+        final boolean isStyle = isName(start, i, "style");
+
+        while (i < length)
+        {
+            final char c = html.charAt(i);
+
+            if (c == '>')
+            {
+                return isStyle ? scanStyleElement(i + 1) : i + 1;
+            }
+            if (c == '<')
+            {
+                // an unterminated tag, the next one starts here
+                return i;
+            }
+            if (Character.isWhitespace(c) || c == '/')
+            {
+                i++;
+                continue;
+            }
+
+            final int nameStart = i;
+            while (i < length && !isAttributeNameEnd(html.charAt(i)))
+            {
+                i++;
+            }
+            final int nameEnd = i;
+
+            i = skipWhitespace(i, length);
+            if (i >= length || html.charAt(i) != '=')
+            {
+                // an attribute without value
+                continue;
+            }
+            i = skipWhitespace(i + 1, length);
+            if (i >= length)
+            {
+                return i;
+            }
+
+            final int valueStart;
+            final int valueEnd;
+            final char quote = html.charAt(i);
+
+            if (quote == '"' || quote == '\'')
+            {
+                valueStart = i + 1;
+                valueEnd = html.indexOf(quote, valueStart);
+                if (valueEnd < 0)
+                {
+                    return length;
+                }
+                i = valueEnd + 1;
+            }
+            else
+            {
+                valueStart = i;
+                while (i < length && !Character.isWhitespace(html.charAt(i)) && html.charAt(i) != '>')
+                {
+                    i++;
+                }
+                valueEnd = i;
+            }
+
+            if (hasSrc && isName(nameStart, nameEnd, "src") || isName(nameStart, nameEnd, "background"))
+            {
+                addReference(valueStart, valueEnd);
+            }
+            else if (isName(nameStart, nameEnd, "style"))
+            {
+                scanCss(valueStart, valueEnd);
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Scans the content of a {@code <style>} element.
+     *
+     * @param start the position after the start tag
+     * @return the position of the end tag
+     */
+    private int scanStyleElement(final int start)
+    {
+        int end = indexOfIgnoreCase("</style", start, html.length());
+        if (end < 0)
+        {
+            end = html.length();
+        }
+        scanCss(start, end);
+        return end;
+    }
+
+    /**
+     * Finds the {@code url(...)} references of a style sheet.
+     *
+     * @param start the start of the style sheet
+     * @param end the end of the style sheet
+     */
+    private void scanCss(final int start, final int end)
+    {
+        int i = start;
+
+        while ((i = indexOfIgnoreCase("url(", i, end)) >= 0)
+        {
+            i = skipWhitespace(i + 4, end);
+            if (i >= end)
+            {
+                return;
+            }
+
+            final int valueStart;
+            int valueEnd;
+            final char quote = html.charAt(i);
+
+            if (quote == '"' || quote == '\'')
+            {
+                valueStart = i + 1;
+                valueEnd = html.indexOf(quote, valueStart);
+                if (valueEnd < 0 || valueEnd >= end)
+                {
+                    return;
+                }
+                i = valueEnd + 1;
+            }
+            else
+            {
+                valueStart = i;
+                valueEnd = html.indexOf(')', valueStart);
+                if (valueEnd < 0 || valueEnd >= end)
+                {
+                    return;
+                }
+                i = valueEnd + 1;
+                while (valueEnd > valueStart && Character.isWhitespace(html.charAt(valueEnd - 1)))
+                {
+                    valueEnd--;
+                }
+            }
+            addReference(valueStart, valueEnd);
+        }
+    }
+
+    private void addReference(final int start, final int end)
+    {
+        if (end > start
+                && !html.regionMatches(true, start, "cid:", 0, 4)
+                && !html.regionMatches(true, start, "data:", 0, 5))
+        {
+            references.add(new Reference(start, end, html.substring(start, end)));
+        }
+    }
+
+    private boolean isName(final int start, final int end, final String name)
+    {
+        return end - start == name.length() && html.regionMatches(true, start, name, 0, name.length());
+    }
+
+    private static boolean isAttributeNameEnd(final char c)
+    {
+        return c == '=' || c == '>' || c == '/' || c == '<' || Character.isWhitespace(c);
+    }
+
+    private int skipWhitespace(final int start, final int end)
+    {
+        int i = start;
+        while (i < end && Character.isWhitespace(html.charAt(i)))
+        {
+            i++;
+        }
+        return i;
+    }
+
+    private int indexOfIgnoreCase(final String str, final int start, final int end)
+    {
+        final int last = end - str.length();
+        final char first = str.charAt(0);
+
+        for (int i = start; i <= last; i++)
+        {
+            final char c = html.charAt(i);
+            if ((c == first || Character.toLowerCase(c) == first) && html.regionMatches(true, i, str, 0, str.length()))
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
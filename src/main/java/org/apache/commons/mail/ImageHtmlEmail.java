@@ -18,16 +18,34 @@ package org.apache.commons.mail;
 
 import javax.activation.DataSource;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.commons.mail.jfr.EmailEvent;
+import org.apache.commons.mail.jfr.EmailEventType;
+import org.apache.commons.mail.metrics.EmailPhase;
+import org.apache.commons.mail.resolver.DataSourceBaseResolver;
+import org.apache.commons.mail.util.ContentDigest;
 
 /**
  * <p>Small wrapper class on top of HtmlEmail which encapsulates the required logic
  * to retrieve images that are contained in "&lt;img src=../&gt;" elements in the HTML
  * code. This is done by replacing all img-src-elements with "cid:"-entries and
- * embedding images in the email.
+ * embedding images in the email. Likewise "&lt;script src=../&gt;" elements,
+ * "background" attributes and CSS "url(..)" references in style attributes and
+ * style elements are embedded.
  * </p>
  * <p>
  * For local files the class tries to either load them via an absolute path or -
@@ -37,7 +55,17 @@ import java.util.regex.Pattern;
  * </p>
  * <p>
  * The image loading is done by an instance of {@code DataSourceResolver}
- * which has to be provided by the caller.
+ * which has to be provided by the caller. By default the resources are
+ * resolved one after the other; with an executor set by
+ * {@link #setResolveExecutor(Executor)} the distinct resources of a message
+ * are resolved concurrently, at most {@link #getMaxConcurrentResolves()} at a
+ * time and within {@link #getResolveTimeoutMillis()}. The resources are
+ * embedded in document order either way.
+ * </p>
+ * <p>
+ * Resources with identical content, e.g. the same image referenced through
+ * different URLs, are embedded once and all references point to the same
+ * Content-ID, see {@link #setDeduplicateContent(boolean)}.
  * </p>
  *
  * @since 1.3
@@ -59,18 +87,31 @@ public class ImageHtmlEmail extends HtmlEmail
             "(<[Ss][Cc][Rr][Ii][Pp][Tt]\\s*[^>]*?\\s+[Ss][Rr][Cc]\\s*=\\s*['\"])([^'\"]+?)(['\"])";
 
 
-    // this pattern looks for the HTML image tag which indicates embedded images,
-    // the grouping is necessary to allow to replace the element with the CID
-
-    /** pattern for extracting <img> tags */
-    private static final Pattern IMG_PATTERN = Pattern.compile(REGEX_IMG_SRC);
+    /**
+     * default maximum number of resources of a message resolved at the same time
+     * @since 1.6.0
+     */
+    public static final int DEFAULT_MAX_CONCURRENT_RESOLVES = 8;
 
-    /** pattern for extracting <script> tags */
-    private static final Pattern SCRIPT_PATTERN = Pattern.compile(REGEX_SCRIPT_SRC);
+    /**
+     * default time in milliseconds to resolve all resources of a message concurrently
+     * @since 1.6.0
+     */
+    public static final long DEFAULT_RESOLVE_TIMEOUT_MILLIS = 60000;
 
     /** resolve the images and script resources to a DataSource */
     private DataSourceResolver dataSourceResolver;
 
+    /** the executor resolving resources concurrently, null to resolve them one after the other */
+    private Executor resolveExecutor;
+
+    private int maxConcurrentResolves = DEFAULT_MAX_CONCURRENT_RESOLVES;
+
+    private long resolveTimeoutMillis = DEFAULT_RESOLVE_TIMEOUT_MILLIS;
+
+    /** embed resources with identical content only once */
+    private boolean deduplicateContent = true;
+
     /**
      * Get the data source resolver.
      *
@@ -91,6 +132,108 @@ public class ImageHtmlEmail extends HtmlEmail
         this.dataSourceResolver = dataSourceResolver;
     }
 
+    /**
+     * Get the executor resolving the resources concurrently.
+     *
+     * @return the executor or null if the resources are resolved one after the other
+     * @since 1.6.0
+     */
+    public Executor getResolveExecutor()
+    {
+        return resolveExecutor;
+    }
+
+    /**
+     * Set the executor resolving the resources of a message concurrently.
+     * The thread building the message resolves resources as well, so it
+     * makes progress even if every thread of the executor is busy, such as
+     * when the executor also sends the emails. The data source resolver must
+     * be thread-safe, which the resolvers of this library are.
+     *
+     * @param resolveExecutor the executor or null to resolve the resources one after the other
+     * @since 1.6.0
+     */
+    public void setResolveExecutor(final Executor resolveExecutor)
+    {
+        this.resolveExecutor = resolveExecutor;
+    }
+
+    /**
+     * Get the maximum number of resources of a message resolved at the same time.
+     *
+     * @return the maximum number of concurrent resolves
+     * @since 1.6.0
+     */
+    public int getMaxConcurrentResolves()
+    {
+        return maxConcurrentResolves;
+    }
+
+    /**
+     * Set the maximum number of resources of a message resolved at the same time.
+     *
+     * @param maxConcurrentResolves the maximum number of concurrent resolves
+     * @throws IllegalArgumentException if the number is &lt; 1
+     * @since 1.6.0
+     */
+    public void setMaxConcurrentResolves(final int maxConcurrentResolves)
+    {
+        if (maxConcurrentResolves < 1)
+        {
+            throw new IllegalArgumentException("maxConcurrentResolves must be at least 1");
+        }
+        this.maxConcurrentResolves = maxConcurrentResolves;
+    }
+
+    /**
+     * Get the time to resolve all resources of a message concurrently.
+     *
+     * @return the timeout in milliseconds
+     * @since 1.6.0
+     */
+    public long getResolveTimeoutMillis()
+    {
+        return resolveTimeoutMillis;
+    }
+
+    /**
+     * Set the time to resolve all resources of a message concurrently.
+     * Resources not resolved in time are treated as not found if the
+     * resolver is a lenient {@link DataSourceBaseResolver}, otherwise
+     * building the message fails. A resource the building thread is
+     * resolving itself is bounded by the timeouts of the resolver instead.
+     *
+     * @param resolveTimeoutMillis the timeout in milliseconds
+     * @since 1.6.0
+     */
+    public void setResolveTimeoutMillis(final long resolveTimeoutMillis)
+    {
+        this.resolveTimeoutMillis = resolveTimeoutMillis;
+    }
+
+    /**
+     * @return whether resources with identical content are embedded only once
+     * @since 1.6.0
+     */
+    public boolean isDeduplicateContent()
+    {
+        return deduplicateContent;
+    }
+
+    /**
+     * Sets whether resources with identical content are embedded only once.
+     * The content is identified by the SHA-256 hash of its bytes and its
+     * content type; a {@code URLDataSource} is identified by its URL so that
+     * it is not downloaded twice. Enabled by default.
+     *
+     * @param deduplicateContent true to share one part and Content-ID for identical content
+     * @since 1.6.0
+     */
+    public void setDeduplicateContent(final boolean deduplicateContent)
+    {
+        this.deduplicateContent = deduplicateContent;
+    }
+
      /**
       * Does the work of actually building the MimeMessage.
       *
@@ -102,10 +245,11 @@ public class ImageHtmlEmail extends HtmlEmail
     {
         try
         {
-            // embed all the matching image and script resources within the email
-            String temp = replacePattern(super.html, IMG_PATTERN);
-            temp = replacePattern(temp, SCRIPT_PATTERN);
-            setHtmlMsg(temp);
+            // embed all the image, script and style sheet resources within the email
+            if (super.html != null)
+            {
+                setHtmlMsg(replaceResources(super.html));
+            }
             super.buildMimeMessage();
         }
         catch (final IOException e)
@@ -115,88 +259,259 @@ public class ImageHtmlEmail extends HtmlEmail
     }
 
     /**
-     * Replace the regexp matching resource locations with "cid:..." references.
+     * Replace the resource locations with "cid:..." references. The HTML is
+     * scanned once for all kinds of references and every distinct location is
+     * resolved once.
      *
      * @param htmlMessage the HTML message to analyze
-     * @param pattern the regular expression to find resources
      * @return the HTML message containing "cid" references
      * @throws EmailException creating the email failed
      * @throws IOException resolving the resources failed
      */
-    private String replacePattern(final String htmlMessage, final Pattern pattern)
-            throws EmailException, IOException
+    private String replaceResources(final String htmlMessage) throws EmailException, IOException
     {
-        DataSource dataSource;
-        final StringBuffer stringBuffer = new StringBuffer("");
+        final EmailEvent event = EmailEvent.begin(EmailEventType.EMBED).setSize(htmlMessage.length());
+        Throwable failure = null;
 
-        // maps "cid" --> name
-        final Map<String, String> cidCache = new HashMap<>();
+        try
+        {
+            final HtmlResourceRewriter rewriter = new HtmlResourceRewriter(htmlMessage);
 
-        // maps "name" --> dataSource
-        final Map<String, DataSource> dataSourceCache = new HashMap<>();
+            // maps "location" --> cid
+            final Map<String, String> cidByLocation = new HashMap<>();
 
-        // in the String, replace all "img src" with a CID and embed the related
-        // image file if we find it.
-        final Matcher matcher = pattern.matcher(htmlMessage);
+            // maps "name" --> cid
+            final Map<String, String> cidByName = new HashMap<>();
 
-        // the matcher returns all instances one by one
-        while (matcher.find())
-        {
-            // in the RegEx we have the <src> element as second "group"
-            final String resourceLocation = matcher.group(2);
+            // maps content key --> cid
+            final Map<String, String> cidByContent = new HashMap<>();
 
-            // avoid loading the same data source more than once
-            if (dataSourceCache.get(resourceLocation) == null)
+            // in lenient mode resources which were not found are missing
+            for (final Map.Entry<String, DataSource> resolved : resolveAll(rewriter.getLocations()).entrySet())
             {
-                // in lenient mode we might get a 'null' data source if the resource was not found
-                dataSource = getDataSourceResolver().resolve(resourceLocation);
+                final String resourceLocation = resolved.getKey();
+                final DataSource dataSource = resolved.getValue();
 
-                if (dataSource != null)
+                String name = dataSource.getName();
+                if (EmailUtils.isEmpty(name))
+                {
+                    name = resourceLocation;
+                }
+
+                String cid = cidByName.get(name);
+
+                if (cid == null)
                 {
-                    dataSourceCache.put(resourceLocation, dataSource);
+                    // identical content under another name gets the cid of its first occurrence
+                    final String contentKey = deduplicateContent ? ContentDigest.of(dataSource) : null;
+                    cid = contentKey != null ? cidByContent.get(contentKey) : null;
+
+                    if (cid == null)
+                    {
+                        cid = embed(dataSource, name);
+                        if (contentKey != null)
+                        {
+                            cidByContent.put(contentKey, cid);
+                        }
+                    }
+                    cidByName.put(name, cid);
                 }
+                cidByLocation.put(resourceLocation, cid);
             }
-            else
+
+            event.setAttachmentCount(new HashSet<>(cidByName.values()).size());
+            return rewriter.rewrite(cidByLocation);
+        }
+        catch (final EmailException | IOException | RuntimeException e)
+        {
+            failure = e;
+            throw e;
+        }
+        finally
+        {
+            event.end(failure);
+        }
+    }
+
+    /**
+     * Resolves the resource locations, concurrently if an executor is set.
+     *
+     * @param locations the distinct resource locations in document order
+     * @return the data sources found by location in document order
+     * @throws IOException resolving a resource failed
+     */
+    private Map<String, DataSource> resolveAll(final Collection<String> locations) throws IOException
+    {
+        final List<String> pending = new ArrayList<>(locations);
+        final Map<String, DataSource> result = new LinkedHashMap<>();
+
+        if (resolveExecutor == null || pending.size() < 2 || maxConcurrentResolves < 2)
+        {
+            for (final String resourceLocation : pending)
             {
-                dataSource = dataSourceCache.get(resourceLocation);
+                final DataSource dataSource = resolve(resourceLocation);
+                if (dataSource != null)
+                {
+                    result.put(resourceLocation, dataSource);
+                }
             }
+            return result;
+        }
 
+        final DataSource[] dataSources = resolveConcurrently(pending);
+
+        for (int i = 0; i < pending.size(); i++)
+        {
+            final DataSource dataSource = dataSources[i];
             if (dataSource != null)
             {
-                String name = dataSource.getName();
-                if (EmailUtils.isEmpty(name))
+                result.put(pending.get(i), dataSource);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Resolves the resource locations on the executor and this thread. A
+     * failure stops resolving the locations after the failed one, so the
+     * failure reported is the same as when resolving one after the other.
+     *
+     * @param locations the resource locations
+     * @return the data sources by index of their location, null if not found; a copy, as
+     *     workers still running after a lenient timeout may store their results
+     * @throws IOException resolving a resource failed or timed out
+     */
+    private DataSource[] resolveConcurrently(final List<String> locations) throws IOException
+    {
+        final int count = locations.size();
+        final AtomicReferenceArray<DataSource> dataSources = new AtomicReferenceArray<>(count);
+        final AtomicReferenceArray<Exception> failures = new AtomicReferenceArray<>(count);
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicInteger firstFailure = new AtomicInteger(count);
+        final CountDownLatch done = new CountDownLatch(count);
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(resolveTimeoutMillis);
+        final AtomicBoolean timedOut = new AtomicBoolean();
+
+        final Runnable worker = () -> {
+            int i;
+            while ((i = next.getAndIncrement()) < count)
+            {
+                try
                 {
-                    name = resourceLocation;
+                    if (i < firstFailure.get())
+                    {
+                        if (System.nanoTime() - deadline < 0)
+                        {
+                            dataSources.set(i, resolve(locations.get(i)));
+                        }
+                        else
+                        {
+                            timedOut.set(true);
+                        }
+                    }
                 }
-                
-                String cid = cidCache.get(name);
-
-                if (cid == null)
+                catch (final IOException | RuntimeException e)
+                {
+                    failures.set(i, e);
+                    firstFailure.accumulateAndGet(i, Math::min);
+                }
+                finally
                 {
-                    cid = embed(dataSource, name);
-                    cidCache.put(name, cid);
+                    done.countDown();
                 }
+            }
+        };
 
-                // if we embedded something, then we need to replace the URL with
-                // the CID, otherwise the Matcher takes care of adding the
-                // non-replaced text afterwards, so no else is necessary here!
+        final int workers = Math.min(maxConcurrentResolves, count);
+        try
+        {
+            // this thread is a worker too, the executor may be busy running this very send
+            for (int i = 1; i < workers; i++)
+            {
+                resolveExecutor.execute(worker);
+            }
+        }
+        catch (final RejectedExecutionException e)
+        {
+            // this thread resolves the remaining locations
+        }
+        worker.run();
 
-                //Removed the string concatenation in order to don't waste of memory and CPU.
-                StringBuilder concatenation = new StringBuilder(matcher.group(1));
-                concatenation.append("cid:");
-                concatenation.append(matcher.group(3));
+        try
+        {
+            if (!done.await(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS) || timedOut.get())
+            {
+                // skip the locations not started yet
+                firstFailure.set(-1);
 
-                matcher.appendReplacement(stringBuffer,
-                        Matcher.quoteReplacement(concatenation.toString()));
+                if (!isLenient())
+                {
+                    throw new IOException("Resolving the resources took longer than " + resolveTimeoutMillis + " ms");
+                }
+                return toArray(dataSources);
             }
         }
+        catch (final InterruptedException e)
+        {
+            firstFailure.set(-1);
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while resolving the resources", e);
+        }
 
-        // append the remaining items...
-        matcher.appendTail(stringBuffer);
+        final int failed = firstFailure.get();
+        if (failed < count)
+        {
+            final Exception e = failures.get(failed);
+            if (e instanceof IOException)
+            {
+                throw (IOException) e;
+            }
+            throw (RuntimeException) e;
+        }
+        return toArray(dataSources);
+    }
+
+    private static DataSource[] toArray(final AtomicReferenceArray<DataSource> dataSources)
+    {
+        final DataSource[] result = new DataSource[dataSources.length()];
+        for (int i = 0; i < result.length; i++)
+        {
+            result[i] = dataSources.get(i);
+        }
+        return result;
+    }
+
+    private boolean isLenient()
+    {
+        return dataSourceResolver instanceof DataSourceBaseResolver
+                && ((DataSourceBaseResolver) dataSourceResolver).isLenient();
+    }
 
-        cidCache.clear();
-        dataSourceCache.clear();
+    /**
+     * Resolves a resource location recording the time spent.
+     *
+     * @param resourceLocation the resource location
+     * @return the data source or null if it was not found in lenient mode
+     * @throws IOException resolving the resource failed
+     */
+    private DataSource resolve(final String resourceLocation) throws IOException
+    {
+        final EmailEvent resolveEvent = EmailEvent.begin(EmailEventType.RESOLVE).setResource(resourceLocation);
+        final long start = startPhase();
+        final DataSource dataSource;
 
-        return stringBuffer.toString();
+        try
+        {
+            dataSource = getDataSourceResolver().resolve(resourceLocation);
+        }
+        catch (final IOException | RuntimeException e)
+        {
+            endPhase(EmailPhase.RESOLVE, start, true);
+            resolveEvent.end(e);
+            throw e;
+        }
+        endPhase(EmailPhase.RESOLVE, start, false);
+        resolveEvent.end(dataSource != null ? EmailEvent.SUCCESS : "not found");
+        return dataSource;
     }
 }
@@ -0,0 +1,553 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail;
+
+import java.util.Objects;
+import java.util.Properties;
+
+import javax.mail.Authenticator;
+import javax.mail.Session;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * The immutable settings a mail session is created from. Equal settings
+ * result in equivalent sessions, which allows a {@link MailSessionFactory}
+ * to share a single {@code Session} between many emails.
+ * <p>
+ * Instances are created with a {@link Builder}:
+ * <pre>
+ * MailSessionConfig config = MailSessionConfig.builder()
+ *     .setHostName("smtp.example.com")
+ *     .setSmtpPort(587)
+ *     .setStartTLSEnabled(true)
+ *     .setAuthenticator(new DefaultAuthenticator("user", "secret"))
+ *     .build();
+ * </pre>
+ *
+ * @since 1.6.0
+ */
+public final class MailSessionConfig
+{
+    /** the host name of the mail server */
+    private final String hostName;
+
+    /** the port of the mail server */
+    private final String smtpPort;
+
+    /** the port of the SSL enabled mail server */
+    private final String sslSmtpPort;
+
+    /** use SSL/TLS upon connection */
+    private final boolean sslOnConnect;
+
+    /** enable STARTTLS */
+    private final boolean startTlsEnabled;
+
+    /** require STARTTLS */
+    private final boolean startTlsRequired;
+
+    /** check the server identity as specified by RFC 2595 */
+    private final boolean sslCheckServerIdentity;
+
+    /** send to the valid recipients if some are invalid */
+    private final boolean sendPartial;
+
+    /** the factory of SSL sockets, null for the JVM default */
+    private final SSLSocketFactory sslSocketFactory;
+
+    /** socket I/O timeout in milliseconds */
+    private final int socketTimeout;
+
+    /** socket connection timeout in milliseconds */
+    private final int socketConnectionTimeout;
+
+    /** the authenticator, may be null */
+    private final Authenticator authenticator;
+
+    /** the bounce address, may be null */
+    private final String bounceAddress;
+
+    /** session debugging */
+    private final boolean debug;
+
+    /** cached hash code */
+    private final int hash;
+
+    private MailSessionConfig(final Builder builder)
+    {
+        this.hostName = builder.hostName;
+        this.smtpPort = builder.smtpPort;
+        this.sslSmtpPort = builder.sslSmtpPort;
+        this.sslOnConnect = builder.sslOnConnect;
+        this.startTlsEnabled = builder.startTlsEnabled;
+        this.startTlsRequired = builder.startTlsRequired;
+        this.sslCheckServerIdentity = builder.sslCheckServerIdentity;
+        this.sendPartial = builder.sendPartial;
+        this.sslSocketFactory = builder.sslSocketFactory;
+        this.socketTimeout = builder.socketTimeout;
+        this.socketConnectionTimeout = builder.socketConnectionTimeout;
+        this.authenticator = builder.authenticator;
+        this.bounceAddress = builder.bounceAddress;
+        this.debug = builder.debug;
+        this.hash = Objects.hash(hostName, smtpPort, sslSmtpPort, sslOnConnect, startTlsEnabled,
+                startTlsRequired, sslCheckServerIdentity, sendPartial, sslSocketFactory, socketTimeout,
+                socketConnectionTimeout, authenticator, bounceAddress, debug);
+    }
+
+    /**
+     * Creates a new builder with the defaults of {@link Email}.
+     *
+     * @return the builder
+     */
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    /**
+     * Creates the JavaMail properties for these settings. The system
+     * properties serve as defaults.
+     *
+     * @return the session properties
+     */
+    public Properties toProperties()
+    {
+        final Properties properties = new Properties(System.getProperties());
+        properties.setProperty(EmailConstants.MAIL_TRANSPORT_PROTOCOL, EmailConstants.SMTP);
+
+        properties.setProperty(EmailConstants.MAIL_PORT, this.smtpPort);
+        properties.setProperty(EmailConstants.MAIL_HOST, this.hostName);
+        properties.setProperty(EmailConstants.MAIL_DEBUG, String.valueOf(this.debug));
+
+        properties.setProperty(EmailConstants.MAIL_TRANSPORT_STARTTLS_ENABLE,
+                this.startTlsEnabled ? "true" : "false");
+        properties.setProperty(EmailConstants.MAIL_TRANSPORT_STARTTLS_REQUIRED,
+                this.startTlsRequired ? "true" : "false");
+
+        properties.setProperty(EmailConstants.MAIL_SMTP_SEND_PARTIAL,
+                this.sendPartial ? "true" : "false");
+        properties.setProperty(EmailConstants.MAIL_SMTPS_SEND_PARTIAL,
+                this.sendPartial ? "true" : "false");
+
+        if (this.authenticator != null)
+        {
+            properties.setProperty(EmailConstants.MAIL_SMTP_AUTH, "true");
+        }
+
+        if (this.sslOnConnect)
+        {
+            properties.setProperty(EmailConstants.MAIL_PORT, this.sslSmtpPort);
+            properties.setProperty(EmailConstants.MAIL_SMTP_SOCKET_FACTORY_PORT, this.sslSmtpPort);
+            if (this.sslSocketFactory != null)
+            {
+                properties.put(EmailConstants.MAIL_SMTP_SOCKET_FACTORY, this.sslSocketFactory);
+            }
+            else
+            {
+                properties.setProperty(EmailConstants.MAIL_SMTP_SOCKET_FACTORY_CLASS, "javax.net.ssl.SSLSocketFactory");
+            }
+            properties.setProperty(EmailConstants.MAIL_SMTP_SOCKET_FACTORY_FALLBACK, "false");
+        }
+
+        if (this.sslSocketFactory != null && this.startTlsEnabled)
+        {
+            // layers TLS over the connection after STARTTLS
+            properties.put(EmailConstants.MAIL_SMTP_SSL_SOCKET_FACTORY, this.sslSocketFactory);
+        }
+
+        if ((this.sslOnConnect || this.startTlsEnabled) && this.sslCheckServerIdentity)
+        {
+            properties.setProperty(EmailConstants.MAIL_SMTP_SSL_CHECKSERVERIDENTITY, "true");
+        }
+
+        if (this.bounceAddress != null)
+        {
+            properties.setProperty(EmailConstants.MAIL_SMTP_FROM, this.bounceAddress);
+        }
+
+        if (this.socketTimeout > 0)
+        {
+            properties.setProperty(EmailConstants.MAIL_SMTP_TIMEOUT, Integer.toString(this.socketTimeout));
+        }
+
+        if (this.socketConnectionTimeout > 0)
+        {
+            properties.setProperty(EmailConstants.MAIL_SMTP_CONNECTIONTIMEOUT, Integer.toString(this.socketConnectionTimeout));
+        }
+
+        return properties;
+    }
+
+    /**
+     * Creates a new, unshared mail session for these settings.
+     *
+     * @return the session
+     */
+    public Session createSession()
+    {
+        // changed this (back) to getInstance due to security exceptions
+        // caused when testing using maven
+        return Session.getInstance(toProperties(), this.authenticator);
+    }
+
+    /**
+     * @return the host name of the mail server
+     */
+    public String getHostName()
+    {
+        return hostName;
+    }
+
+    /**
+     * @return the port of the mail server
+     */
+    public String getSmtpPort()
+    {
+        return smtpPort;
+    }
+
+    /**
+     * @return the port of the SSL enabled mail server
+     */
+    public String getSslSmtpPort()
+    {
+        return sslSmtpPort;
+    }
+
+    /**
+     * @return true if SSL/TLS is used upon connection
+     */
+    public boolean isSSLOnConnect()
+    {
+        return sslOnConnect;
+    }
+
+    /**
+     * @return true if STARTTLS is enabled
+     */
+    public boolean isStartTLSEnabled()
+    {
+        return startTlsEnabled;
+    }
+
+    /**
+     * @return true if STARTTLS is required
+     */
+    public boolean isStartTLSRequired()
+    {
+        return startTlsRequired;
+    }
+
+    /**
+     * @return true if the server identity is checked
+     */
+    public boolean isSSLCheckServerIdentity()
+    {
+        return sslCheckServerIdentity;
+    }
+
+    /**
+     * @return true if partial sending is enabled
+     */
+    public boolean isSendPartial()
+    {
+        return sendPartial;
+    }
+
+    /**
+     * @return the factory of SSL sockets, null for the JVM default
+     */
+    public SSLSocketFactory getSSLSocketFactory()
+    {
+        return sslSocketFactory;
+    }
+
+    /**
+     * @return the socket I/O timeout in milliseconds
+     */
+    public int getSocketTimeout()
+    {
+        return socketTimeout;
+    }
+
+    /**
+     * @return the socket connection timeout in milliseconds
+     */
+    public int getSocketConnectionTimeout()
+    {
+        return socketConnectionTimeout;
+    }
+
+    /**
+     * @return the authenticator, may be null
+     */
+    public Authenticator getAuthenticator()
+    {
+        return authenticator;
+    }
+
+    /**
+     * @return the bounce address, may be null
+     */
+    public String getBounceAddress()
+    {
+        return bounceAddress;
+    }
+
+    /**
+     * @return true if session debugging is enabled
+     */
+    public boolean isDebug()
+    {
+        return debug;
+    }
+
+    @Override
+    public boolean equals(final Object obj)
+    {
+        if (this == obj)
+        {
+            return true;
+        }
+        if (!(obj instanceof MailSessionConfig))
+        {
+            return false;
+        }
+        final MailSessionConfig that = (MailSessionConfig) obj;
+        return hash == that.hash
+                && sslOnConnect == that.sslOnConnect
+                && startTlsEnabled == that.startTlsEnabled
+                && startTlsRequired == that.startTlsRequired
+                && sslCheckServerIdentity == that.sslCheckServerIdentity
+                && sendPartial == that.sendPartial
+                && socketTimeout == that.socketTimeout
+                && socketConnectionTimeout == that.socketConnectionTimeout
+                && debug == that.debug
+                && Objects.equals(hostName, that.hostName)
+                && Objects.equals(smtpPort, that.smtpPort)
+                && Objects.equals(sslSmtpPort, that.sslSmtpPort)
+                && Objects.equals(sslSocketFactory, that.sslSocketFactory)
+                && Objects.equals(authenticator, that.authenticator)
+                && Objects.equals(bounceAddress, that.bounceAddress);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return hash;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "MailSessionConfig[" + hostName + ":" + (sslOnConnect ? sslSmtpPort : smtpPort)
+                + (sslOnConnect ? ", ssl" : startTlsEnabled ? ", starttls" : "") + "]";
+    }
+
+    /**
+     * Builds {@link MailSessionConfig} instances. The defaults match the ones of {@link Email}.
+     */
+    public static final class Builder
+    {
+        private String hostName;
+        private String smtpPort = "25";
+        private String sslSmtpPort = "465";
+        private boolean sslOnConnect;
+        private boolean startTlsEnabled;
+        private boolean startTlsRequired;
+        private boolean sslCheckServerIdentity;
+        private boolean sendPartial;
+        private SSLSocketFactory sslSocketFactory;
+        private int socketTimeout = EmailConstants.SOCKET_TIMEOUT_MS;
+        private int socketConnectionTimeout = EmailConstants.SOCKET_TIMEOUT_MS;
+        private Authenticator authenticator;
+        private String bounceAddress;
+        private boolean debug;
+
+        private Builder()
+        {
+        }
+
+        /**
+         * @param hostName the host name of the mail server
+         * @return this builder
+         */
+        public Builder setHostName(final String hostName)
+        {
+            this.hostName = hostName;
+            return this;
+        }
+
+        /**
+         * @param smtpPort the port of the mail server
+         * @return this builder
+         */
+        public Builder setSmtpPort(final int smtpPort)
+        {
+            return setSmtpPort(Integer.toString(smtpPort));
+        }
+
+        /**
+         * @param smtpPort the port of the mail server
+         * @return this builder
+         */
+        public Builder setSmtpPort(final String smtpPort)
+        {
+            this.smtpPort = smtpPort;
+            return this;
+        }
+
+        /**
+         * @param sslSmtpPort the port of the SSL enabled mail server
+         * @return this builder
+         */
+        public Builder setSslSmtpPort(final String sslSmtpPort)
+        {
+            this.sslSmtpPort = sslSmtpPort;
+            return this;
+        }
+
+        /**
+         * @param sslOnConnect use SSL/TLS upon connection
+         * @return this builder
+         */
+        public Builder setSSLOnConnect(final boolean sslOnConnect)
+        {
+            this.sslOnConnect = sslOnConnect;
+            return this;
+        }
+
+        /**
+         * @param startTlsEnabled enable STARTTLS
+         * @return this builder
+         */
+        public Builder setStartTLSEnabled(final boolean startTlsEnabled)
+        {
+            this.startTlsEnabled = startTlsEnabled;
+            return this;
+        }
+
+        /**
+         * @param startTlsRequired require STARTTLS
+         * @return this builder
+         */
+        public Builder setStartTLSRequired(final boolean startTlsRequired)
+        {
+            this.startTlsRequired = startTlsRequired;
+            return this;
+        }
+
+        /**
+         * @param sslCheckServerIdentity check the server identity as specified by RFC 2595
+         * @return this builder
+         */
+        public Builder setSSLCheckServerIdentity(final boolean sslCheckServerIdentity)
+        {
+            this.sslCheckServerIdentity = sslCheckServerIdentity;
+            return this;
+        }
+
+        /**
+         * @param sendPartial send to the valid recipients if some are invalid
+         * @return this builder
+         */
+        public Builder setSendPartial(final boolean sendPartial)
+        {
+            this.sendPartial = sendPartial;
+            return this;
+        }
+
+        /**
+         * @param sslSocketFactory the factory of SSL sockets for SSL on connect and STARTTLS,
+         *        null for the JVM default
+         * @return this builder
+         */
+        public Builder setSSLSocketFactory(final SSLSocketFactory sslSocketFactory)
+        {
+            this.sslSocketFactory = sslSocketFactory;
+            return this;
+        }
+
+        /**
+         * @param socketTimeout the socket I/O timeout in milliseconds
+         * @return this builder
+         */
+        public Builder setSocketTimeout(final int socketTimeout)
+        {
+            this.socketTimeout = socketTimeout;
+            return this;
+        }
+
+        /**
+         * @param socketConnectionTimeout the socket connection timeout in milliseconds
+         * @return this builder
+         */
+        public Builder setSocketConnectionTimeout(final int socketConnectionTimeout)
+        {
+            this.socketConnectionTimeout = socketConnectionTimeout;
+            return this;
+        }
+
+        /**
+         * Sets the authenticator. Use {@link DefaultAuthenticator} to allow
+         * sessions to be shared between emails with the same credentials.
+         *
+         * @param authenticator the authenticator, may be null
+         * @return this builder
+         */
+        public Builder setAuthenticator(final Authenticator authenticator)
+        {
+            this.authenticator = authenticator;
+            return this;
+        }
+
+        /**
+         * @param bounceAddress the bounce address, may be null
+         * @return this builder
+         */
+        public Builder setBounceAddress(final String bounceAddress)
+        {
+            this.bounceAddress = bounceAddress;
+            return this;
+        }
+
+        /**
+         * @param debug enable session debugging
+         * @return this builder
+         */
+        public Builder setDebug(final boolean debug)
+        {
+            this.debug = debug;
+            return this;
+        }
+
+        /**
+         * Creates the immutable configuration.
+         *
+         * @return the configuration
+         * @throws IllegalArgumentException if no host name was set
+         */
+        public MailSessionConfig build()
+        {
+            if (EmailUtils.isEmpty(hostName))
+            {
+                throw new IllegalArgumentException("Cannot find valid hostname for mail session");
+            }
+            return new MailSessionConfig(this);
+        }
+    }
+}
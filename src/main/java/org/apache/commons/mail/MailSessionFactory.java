@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.mail.Session;
+
+/**
+ * A thread-safe cache of mail sessions keyed by {@link MailSessionConfig}.
+ * <p>
+ * Creating a {@code Session} copies the system properties and makes JavaMail
+ * load its providers again. Emails configured with the same factory (see
+ * {@link Email#setMailSessionFactory(MailSessionFactory)}) and equal settings
+ * share one session instead.
+ *
+ * @since 1.6.0
+ */
+public class MailSessionFactory
+{
+    /** default maximum number of cached sessions */
+    public static final int DEFAULT_MAX_SESSIONS = 64;
+
+    /** the cached sessions */
+    private final ConcurrentMap<MailSessionConfig, Session> sessions = new ConcurrentHashMap<>();
+
+    /** maximum number of cached sessions */
+    private final int maxSessions;
+
+    /**
+     * Creates a factory caching up to {@link #DEFAULT_MAX_SESSIONS} sessions.
+     */
+    public MailSessionFactory()
+    {
+        this(DEFAULT_MAX_SESSIONS);
+    }
+
+    /**
+     * Creates a factory.
+     *
+     * @param maxSessions maximum number of cached sessions, further
+     *  configurations get unshared sessions
+     */
+    public MailSessionFactory(final int maxSessions)
+    {
+        this.maxSessions = maxSessions;
+    }
+
+    /**
+     * Gets the session for the given settings, creating it on first use.
+     *
+     * @param config the session settings
+     * @return the shared session
+     */
+    public Session getSession(final MailSessionConfig config)
+    {
+        EmailUtils.notNull(config, "no mail session config supplied");
+
+        final Session session = sessions.get(config);
+
+        if (session != null)
+        {
+            return session;
+        }
+        if (sessions.size() >= maxSessions)
+        {
+            return config.createSession();
+        }
+        return sessions.computeIfAbsent(config, MailSessionConfig::createSession);
+    }
+
+    /**
+     * @return the number of cached sessions
+     */
+    public int size()
+    {
+        return sessions.size();
+    }
+
+    /**
+     * Removes all cached sessions.
+     */
+    public void clear()
+    {
+        sessions.clear();
+    }
+}
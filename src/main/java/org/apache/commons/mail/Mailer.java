@@ -0,0 +1,231 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import javax.mail.Address;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+
+import org.apache.commons.mail.transport.PooledTransport;
+import org.apache.commons.mail.transport.SmtpConnectionPool;
+import org.apache.commons.mail.transport.SmtpRateLimiter;
+
+/**
+ * Sends batches of emails over a single SMTP session per server.
+ * <p>
+ * {@link Email#send()} connects, authenticates and quits for every message.
+ * The mailer builds each message with {@link Email#buildMimeMessage()} and
+ * sends it over a connection borrowed from a pool, which keeps the
+ * connection open for the next message of the batch. A message whose
+ * connection breaks before it was accepted is sent once more over a new
+ * connection. A failing message does not abort the batch, the outcome of
+ * every message is reported as a {@link SendResult}.
+ *
+ * @since 1.6.0
+ */
+public class Mailer
+{
+    /** the session applied to every email, may be null */
+    private final Session session;
+
+    /** the pool to borrow connections from, may be null */
+    private final SmtpConnectionPool connectionPool;
+
+    /**
+     * Creates a mailer which sends every email with its own mail session
+     * settings. Emails sharing the same SMTP server share a connection.
+     */
+    public Mailer()
+    {
+        this(null, null);
+    }
+
+    /**
+     * Creates a mailer which sends all emails using the given mail session.
+     *
+     * @param session the mail session applied to every email
+     */
+    public Mailer(final Session session)
+    {
+        this(session, null);
+    }
+
+    /**
+     * Creates a mailer.
+     *
+     * @param session the mail session applied to every email, or null to use
+     *  the session settings of each email
+     * @param connectionPool the pool to borrow connections from, or null to
+     *  open dedicated connections for each batch
+     */
+    public Mailer(final Session session, final SmtpConnectionPool connectionPool)
+    {
+        this.session = session;
+        this.connectionPool = connectionPool;
+    }
+
+    /**
+     * Sends the given emails. The emails must not have been built yet.
+     *
+     * @param emails the emails to send
+     * @return the result of every email in iteration order
+     */
+    public List<SendResult> sendAll(final Collection<? extends Email> emails)
+    {
+        EmailUtils.notNull(emails, "no emails supplied");
+
+        final List<SendResult> results = new ArrayList<>(emails.size());
+
+        if (connectionPool != null)
+        {
+            sendAll(emails, connectionPool, results);
+        }
+        else
+        {
+            try (SmtpConnectionPool batchPool = new SmtpConnectionPool())
+            {
+                batchPool.setMaxMessagesPerConnection(Integer.MAX_VALUE);
+                sendAll(emails, batchPool, results);
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Sends the given emails. Every message borrows a connection from the
+     * pool and returns it afterwards, so the pool keeps one connection per
+     * SMTP server open across the batch while its limits, like the maximum
+     * number of messages per connection, still apply.
+     *
+     * @param emails the emails to send
+     * @param pool the pool to borrow the connections from
+     * @param results collects the results
+     */
+    private void sendAll(final Collection<? extends Email> emails, final SmtpConnectionPool pool,
+            final List<SendResult> results)
+    {
+        for (final Email email : emails)
+        {
+            results.add(send(email, pool));
+        }
+    }
+
+    /**
+     * Builds and sends a single email.
+     *
+     * @param email the email
+     * @param pool the pool to borrow a connection from
+     * @return the result
+     */
+    private SendResult send(final Email email, final SmtpConnectionPool pool)
+    {
+        try
+        {
+            if (session != null)
+            {
+                email.setMailSession(session);
+            }
+
+            email.buildMimeMessage();
+
+            final MimeMessage message = email.getMimeMessage();
+            message.saveChanges();
+
+            if (email.getRelayGroup() != null)
+            {
+                // the pool keeps the connections to the relays open
+                email.getRelayGroup().send(message, pool, email.createEnvelopeProperties());
+                return SendResult.sent(email, message.getMessageID());
+            }
+
+            final SmtpRateLimiter rateLimiter = email.getRateLimiter();
+            try (SmtpRateLimiter.Permit permit = rateLimiter != null ? rateLimiter.acquire() : null)
+            {
+                send(pool, email.getMailSession(), message);
+            }
+            return SendResult.sent(email, message.getMessageID());
+        }
+        catch (final EmailException e)
+        {
+            return SendResult.failed(email, e);
+        }
+        catch (final MessagingException | RuntimeException e)
+        {
+            final String msg = "Sending the email to the following server failed : "
+                + email.getHostName()
+                + ":"
+                + email.getSmtpPort();
+
+            return SendResult.failed(email, new EmailException(msg, e));
+        }
+        finally
+        {
+            email.releaseResources();
+        }
+    }
+
+    /**
+     * Sends a message over a pooled connection. If the connection breaks
+     * before any recipient accepted the message, it is sent once more over
+     * a new connection.
+     *
+     * @param pool the pool to borrow the connection from
+     * @param mailSession the session of the email
+     * @param message the message
+     * @throws MessagingException sending the message failed
+     */
+    private static void send(final SmtpConnectionPool pool, final Session mailSession, final MimeMessage message)
+            throws MessagingException
+    {
+        for (int attempt = 1;; attempt++)
+        {
+            try (PooledTransport transport = pool.borrow(mailSession))
+            {
+                try
+                {
+                    transport.sendMessage(message);
+                    return;
+                }
+                catch (final MessagingException | RuntimeException e)
+                {
+                    if (attempt > 1 || !transport.isInvalid() || isPartiallySent(e))
+                    {
+                        throw e;
+                    }
+                    // the invalid connection is destroyed when it is returned
+                }
+            }
+        }
+    }
+
+    private static boolean isPartiallySent(final Exception e)
+    {
+        if (e instanceof SendFailedException)
+        {
+            final Address[] sent = ((SendFailedException) e).getValidSentAddresses();
+            return sent != null && sent.length > 0;
+        }
+        return false;
+    }
+}
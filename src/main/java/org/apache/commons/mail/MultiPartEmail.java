@@ -33,6 +33,10 @@ import javax.mail.internet.MimeMultipart;
 import javax.mail.internet.MimePart;
 import javax.mail.internet.MimeUtility;
 
+import org.apache.commons.mail.cache.AttachmentCache;
+import org.apache.commons.mail.resolver.DataSourceHttpResolver;
+import org.apache.commons.mail.util.BufferPool;
+
 /**
  * A multipart email.
  *
@@ -62,6 +66,12 @@ public class MultiPartEmail extends Email
     /** Indicates if attachments have been added to the message. */
     private boolean boolHasAttachments;
 
+    /** Downloads attached and embedded URLs, null to stream them when the message is written. */
+    private DataSourceHttpResolver urlResolver;
+
+    /** Keeps the encoded attachments, may be null. */
+    private AttachmentCache attachmentCache;
+
     /**
      * Set the MIME subtype of the email.
      *
@@ -383,17 +393,17 @@ public class MultiPartEmail extends Email
         final String disposition)
         throws EmailException
     {
-        // verify that the URL is valid
-       try
-       {
-           url.openStream().close();
-       }
-       catch (final IOException e)
-       {
-           throw new EmailException("Invalid URL set:" + url, e);
-       }
-
-       return attach(new URLDataSource(url), name, description, disposition);
+        final URLDataSource ds;
+        try
+        {
+            ds = fetch(url);
+        }
+        catch (final IOException e)
+        {
+            throw new EmailException("Invalid URL set:" + url, e);
+        }
+
+        return attach(ds, name, description, disposition);
     }
 
     /**
@@ -455,13 +465,21 @@ public class MultiPartEmail extends Email
         {
             name = ds.getName();
         }
-        final BodyPart bodyPart = createBodyPart();
         try
         {
+            final BodyPart bodyPart;
+            if (this.attachmentCache != null)
+            {
+                bodyPart = createCachedBodyPart(ds);
+            }
+            else
+            {
+                bodyPart = createBodyPart();
+                bodyPart.setDataHandler(createDataHandler(ds));
+            }
             bodyPart.setDisposition(disposition);
             bodyPart.setFileName(MimeUtility.encodeText(name));
             bodyPart.setDescription(description);
-            bodyPart.setDataHandler(new DataHandler(ds));
 
             getContainer().addBodyPart(bodyPart);
         }
@@ -470,11 +488,56 @@ public class MultiPartEmail extends Email
             // in case the file name could not be encoded
             throw new EmailException(me);
         }
+        catch (final IOException e)
+        {
+            throw new EmailException("Cannot read the attachment " + name, e);
+        }
         setBoolHasAttachments(true);
 
         return this;
     }
 
+    /**
+     * Creates a body part from the attachment cache, which is released with
+     * the other resources of the email.
+     *
+     * @param ds the content
+     * @return the body part
+     * @throws IOException the content could not be read or cached
+     * @throws MessagingException the body part could not be created
+     */
+    MimeBodyPart createCachedBodyPart(final DataSource ds) throws IOException, MessagingException
+    {
+        final AttachmentCache cache = this.attachmentCache;
+        final MimeBodyPart part = cache.createBodyPart(ds);
+        addResource(() -> cache.release(part));
+        return part;
+    }
+
+    /**
+     * Gets the cache of encoded attachments.
+     *
+     * @return the cache or null if attachments are encoded for every message
+     * @since 1.6.0
+     */
+    public AttachmentCache getAttachmentCache()
+    {
+        return this.attachmentCache;
+    }
+
+    /**
+     * Sets a cache of encoded attachments, usually shared by many emails.
+     * Attachments and embedded content added afterwards are read and
+     * encoded only the first time the same content is attached.
+     *
+     * @param attachmentCache the cache or null to encode attachments for every message
+     * @since 1.6.0
+     */
+    public void setAttachmentCache(final AttachmentCache attachmentCache)
+    {
+        this.attachmentCache = attachmentCache;
+    }
+
     /**
      * Gets first body part of the message.
      *
@@ -525,6 +588,74 @@ public class MultiPartEmail extends Email
         return new MimeBodyPart();
     }
 
+    /**
+     * Gets the data source of an URL to attach or embed. Without a
+     * {@link #setUrlResolver(DataSourceHttpResolver) URL resolver} the URL is
+     * checked and its content streamed when the message is written, else it
+     * is downloaded once and the data source is backed by the downloaded bytes.
+     *
+     * @param url the URL
+     * @return the data source
+     * @throws IOException the URL could not be opened or its content not be downloaded
+     * @since 1.6.0
+     */
+    protected URLDataSource fetch(final URL url) throws IOException
+    {
+        if (this.urlResolver != null)
+        {
+            return this.urlResolver.fetch(url.openConnection());
+        }
+
+        // verify that the URL is valid
+        url.openStream().close();
+        return new URLDataSource(url);
+    }
+
+    /**
+     * Gets the resolver downloading attached and embedded URLs.
+     *
+     * @return the resolver or null if URLs are streamed when the message is written
+     * @since 1.6.0
+     */
+    public DataSourceHttpResolver getUrlResolver()
+    {
+        return this.urlResolver;
+    }
+
+    /**
+     * Sets a resolver downloading attached and embedded URLs once, instead
+     * of reading them when checking them and again when writing the message.
+     * The downloaded content is kept on the heap until the email is done.
+     * Emails may share a resolver to reuse its revalidated responses.
+     *
+     * @param urlResolver the resolver, null to stream URLs when the message is written
+     * @return A MultiPartEmail.
+     * @since 1.6.0
+     */
+    public MultiPartEmail setUrlResolver(final DataSourceHttpResolver urlResolver)
+    {
+        this.urlResolver = urlResolver;
+        return this;
+    }
+
+    /**
+     * Creates the data handler of an attachment. Files are copied from a
+     * {@code FileChannel} with a pooled buffer when the message is written.
+     * Can be overridden to handle other data sources.
+     *
+     * @param ds the content of the attachment
+     * @return the data handler
+     * @since 1.6.0
+     */
+    protected DataHandler createDataHandler(final DataSource ds)
+    {
+        if (ds instanceof FileDataSource)
+        {
+            return new FileChannelDataHandler((FileDataSource) ds, BufferPool.getDefault());
+        }
+        return new DataHandler(ds);
+    }
+
     /**
      * Creates a mime multipart object.
      *
@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail;
+
+/**
+ * The outcome of sending a single email as part of a batch, either
+ * the message id or the exception which caused the failure.
+ *
+ * @see Mailer#sendAll(java.util.Collection)
+ * @since 1.6.0
+ */
+public final class SendResult
+{
+    /** the email */
+    private final Email email;
+
+    /** the message id if the email was sent */
+    private final String messageId;
+
+    /** the failure if the email was not sent */
+    private final EmailException exception;
+
+    /**
+     * Constructor.
+     *
+     * @param email the email
+     * @param messageId the message id if the email was sent
+     * @param exception the failure if the email was not sent
+     */
+    private SendResult(final Email email, final String messageId, final EmailException exception)
+    {
+        this.email = email;
+        this.messageId = messageId;
+        this.exception = exception;
+    }
+
+    /**
+     * Creates the result of a successfully sent email.
+     *
+     * @param email the email
+     * @param messageId the message id
+     * @return the result
+     */
+    public static SendResult sent(final Email email, final String messageId)
+    {
+        return new SendResult(email, messageId, null);
+    }
+
+    /**
+     * Creates the result of an email which could not be sent.
+     *
+     * @param email the email
+     * @param exception the failure
+     * @return the result
+     */
+    public static SendResult failed(final Email email, final EmailException exception)
+    {
+        return new SendResult(email, null, exception);
+    }
+
+    /**
+     * @return the email
+     */
+    public Email getEmail()
+    {
+        return email;
+    }
+
+    /**
+     * @return the message id or null if the email was not sent
+     */
+    public String getMessageId()
+    {
+        return messageId;
+    }
+
+    /**
+     * @return the failure or null if the email was sent
+     */
+    public EmailException getException()
+    {
+        return exception;
+    }
+
+    /**
+     * @return true if the email was sent
+     */
+    public boolean isSent()
+    {
+        return exception == null;
+    }
+
+    @Override
+    public String toString()
+    {
+        return isSent() ? "sent " + messageId : "failed " + exception.getMessage();
+    }
+}
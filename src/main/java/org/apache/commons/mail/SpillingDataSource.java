@@ -0,0 +1,274 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import javax.activation.DataSource;
+
+import org.apache.commons.mail.util.BufferPool;
+
+/**
+ * A {@code DataSource} reading a stream which keeps the content on the heap
+ * up to a threshold and in a temporary file above it, so that large
+ * uploads do not need heap of their size. The temporary file is read
+ * through a {@code FileChannel}.
+ * <p>
+ * The data source is closed by the caller, who may hand it over to an email
+ * with {@link Email#addResource(java.io.Closeable)}: it is then closed, and its
+ * temporary file deleted, when the email is done, see
+ * {@link Email#releaseResources()}. The temporary file is only deleted on
+ * exit if deleting it on close failed.
+ * <pre>
+ * SpillingDataSource scan = new SpillingDataSource(upload.getInputStream(), "application/pdf", "scan.pdf");
+ * email.attach(scan, "scan.pdf", "The scanned document");
+ * email.addResource(scan);
+ * email.send();
+ * </pre>
+ *
+ * @since 1.6.0
+ */
+public final class SpillingDataSource implements DataSource, Closeable
+{
+    /** default size above which the content is kept in a temporary file */
+    public static final int DEFAULT_THRESHOLD = 1024 * 1024;
+
+    /** the initial size of the heap buffer */
+    private static final int INITIAL_CAPACITY = 8192;
+
+    /** the content if it is on the heap */
+    private final byte[] data;
+
+    /** the temporary file if the content spilled */
+    private final File file;
+
+    /** the size of the content */
+    private final long size;
+
+    /** the content type */
+    private final String type;
+
+    /** the name */
+    private final String name;
+
+    /** true after the temporary file has been deleted */
+    private volatile boolean closed;
+
+    /**
+     * Reads a stream with the default threshold and temporary directory.
+     *
+     * @param is the content, not closed by this constructor
+     * @param type the content type, null for "application/octet-stream"
+     * @param name the name
+     * @throws IOException the stream could not be read or the temporary file not be written
+     */
+    public SpillingDataSource(final InputStream is, final String type, final String name) throws IOException
+    {
+        this(is, type, name, DEFAULT_THRESHOLD, null);
+    }
+
+    /**
+     * Reads a stream.
+     *
+     * @param is the content, not closed by this constructor
+     * @param type the content type, null for "application/octet-stream"
+     * @param name the name
+     * @param threshold the size above which the content is kept in a temporary file
+     * @param directory the directory of the temporary file, null for the default temporary directory
+     * @throws IOException the stream could not be read or the temporary file not be written
+     */
+    public SpillingDataSource(final InputStream is, final String type, final String name, final int threshold,
+            final File directory) throws IOException
+    {
+        this.type = type;
+        this.name = name;
+
+        byte[] buffer = new byte[Math.min(threshold, INITIAL_CAPACITY)];
+        int count = 0;
+        int next = -1;
+
+        while (true)
+        {
+            if (count == buffer.length)
+            {
+                if (count >= threshold)
+                {
+                    // full: spill only if there is more to read
+                    next = is.read();
+                    break;
+                }
+                buffer = Arrays.copyOf(buffer, (int) Math.min(2L * count, threshold));
+            }
+            final int n = is.read(buffer, count, buffer.length - count);
+            if (n == -1)
+            {
+                break;
+            }
+            count += n;
+        }
+
+        if (next == -1)
+        {
+            // everything fits below the threshold
+            this.data = buffer;
+            this.file = null;
+            this.size = count;
+        }
+        else
+        {
+            this.data = null;
+            this.file = File.createTempFile("commons-email-", ".tmp", directory);
+            this.size = spill(buffer, count, next, is);
+        }
+    }
+
+    /**
+     * Writes the content read so far and the rest of the stream to the temporary file.
+     *
+     * @param head the content read so far
+     * @param count the size of the content read so far
+     * @param next the byte following the content read so far
+     * @param is the rest of the content
+     * @return the size of the content
+     * @throws IOException the stream could not be read or the file not be written
+     */
+    private long spill(final byte[] head, final int count, final int next, final InputStream is) throws IOException
+    {
+        final byte[] buffer = BufferPool.getDefault().acquire();
+        long written = count + 1;
+
+        try (OutputStream os = Channels.newOutputStream(FileChannel.open(file.toPath(), StandardOpenOption.WRITE)))
+        {
+            os.write(head, 0, count);
+            os.write(next);
+
+            int n;
+            while ((n = is.read(buffer)) != -1)
+            {
+                os.write(buffer, 0, n);
+                written += n;
+            }
+        }
+        catch (final IOException | RuntimeException e)
+        {
+            close();
+            throw e;
+        }
+        finally
+        {
+            BufferPool.getDefault().release(buffer);
+        }
+        return written;
+    }
+
+    /**
+     * Gets a new stream reading the content.
+     *
+     * @return the input stream
+     * @throws IOException the temporary file could not be opened or the data source is closed
+     */
+    @Override
+    public InputStream getInputStream() throws IOException
+    {
+        if (data != null)
+        {
+            return new ByteArrayInputStream(data, 0, (int) size);
+        }
+        if (closed)
+        {
+            throw new IOException("The temporary file of " + name + " has already been deleted");
+        }
+        return Channels.newInputStream(FileChannel.open(file.toPath(), StandardOpenOption.READ));
+    }
+
+    /**
+     * Not supported, the content is given when constructing the data source.
+     *
+     * @return never
+     * @throws IOException always
+     */
+    @Override
+    public OutputStream getOutputStream() throws IOException
+    {
+        throw new IOException("SpillingDataSource is read-only");
+    }
+
+    @Override
+    public String getContentType()
+    {
+        return type == null ? "application/octet-stream" : type;
+    }
+
+    @Override
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * @return the size of the content in bytes
+     */
+    public long getSize()
+    {
+        return size;
+    }
+
+    /**
+     * @return the temporary file holding the content or null if the content is on the heap
+     */
+    public File getFile()
+    {
+        return file;
+    }
+
+    /**
+     * @return true if the content is kept in a temporary file
+     */
+    public boolean isSpilled()
+    {
+        return file != null;
+    }
+
+    /**
+     * Deletes the temporary file. Content on the heap stays readable.
+     */
+    @Override
+    public void close()
+    {
+        closed = true;
+        if (file != null && !file.delete() && file.exists())
+        {
+            file.deleteOnExit();
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "SpillingDataSource[name=" + name + ", type=" + getContentType() + ", size=" + size
+                + (file != null ? ", file=" + file : "") + "]";
+    }
+}
@@ -0,0 +1,620 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.cache;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.activation.DataSource;
+import javax.activation.FileDataSource;
+import javax.mail.MessagingException;
+import javax.mail.internet.InternetHeaders;
+import javax.mail.internet.MimeBodyPart;
+import javax.mail.internet.MimeUtility;
+import javax.mail.util.SharedFileInputStream;
+
+import org.apache.commons.mail.util.ContentDigest;
+
+/**
+ * Keeps the transfer-encoded content of attachments so that attaching the
+ * same content again neither reads nor encodes it again. The body parts
+ * created by the cache share the encoded bytes and write them out verbatim.
+ * <p>
+ * Entries are looked up by
+ * <ul>
+ * <li>the canonical path, modification time and length for a {@code FileDataSource},</li>
+ * <li>the URL for a streaming {@code URLDataSource},</li>
+ * <li>the SHA-256 hash of the content for any other {@code DataSource}.</li>
+ * </ul>
+ * Encoded content larger than the spill threshold is kept in a temporary
+ * file instead of the heap, which is read by the body parts of the entry.
+ * The least recently used entries are evicted when the memory or disk limit
+ * is exceeded. A temporary file is deleted once its entry is evicted and all
+ * body parts reading it were {@link #release(MimeBodyPart) released}, so a
+ * message built before the eviction can still be written. Emails release the
+ * body parts they created in {@code releaseResources()}.
+ * <pre>
+ * AttachmentCache cache = new AttachmentCache();
+ * MultiPartEmail email = new MultiPartEmail();
+ * email.setAttachmentCache(cache);
+ * email.attach(new File("terms.pdf"));
+ * </pre>
+ * Instances are thread-safe and meant to be shared by all emails.
+ *
+ * @since 1.6.0
+ */
+public final class AttachmentCache
+{
+    /** default limit of the encoded content kept on the heap */
+    public static final long DEFAULT_MAX_MEMORY_BYTES = 64L * 1024 * 1024;
+
+    /** default limit of the encoded content kept in temporary files */
+    public static final long DEFAULT_MAX_DISK_BYTES = 1024L * 1024 * 1024;
+
+    /** default size above which encoded content is kept in a temporary file */
+    public static final int DEFAULT_SPILL_THRESHOLD = 1024 * 1024;
+
+    /** the buffer size used for copying */
+    private static final int BUFFER_SIZE = 8192;
+
+    /** the entries in access order, guarded by this */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** the encoded bytes on the heap, guarded by this */
+    private long memoryBytes;
+
+    /** the encoded bytes in temporary files, guarded by this */
+    private long diskBytes;
+
+    private long hitCount;
+
+    private long missCount;
+
+    private volatile long maxMemoryBytes = DEFAULT_MAX_MEMORY_BYTES;
+
+    private volatile long maxDiskBytes = DEFAULT_MAX_DISK_BYTES;
+
+    private volatile int spillThreshold = DEFAULT_SPILL_THRESHOLD;
+
+    /** the directory of the temporary files, null for the default temporary directory */
+    private volatile File directory;
+
+    /**
+     * Creates a body part with the encoded content of the data source,
+     * encoding it only if it is not cached yet. The caller sets the file
+     * name, disposition and other headers of the part, and releases it
+     * once the message has been written.
+     *
+     * @param dataSource the content
+     * @return a new body part sharing the cached encoded content
+     * @throws IOException the content could not be read or cached
+     * @throws MessagingException the body part could not be created
+     */
+    public MimeBodyPart createBodyPart(final DataSource dataSource) throws IOException, MessagingException
+    {
+        final String key = getKey(dataSource);
+        final String contentType = dataSource.getContentType();
+        final MimeBodyPart part = get(key, contentType);
+
+        return part != null ? part : put(key, encode(dataSource), contentType);
+    }
+
+    /**
+     * Releases a body part created by the cache once its message has been
+     * written, so that the temporary file it reads can be deleted after its
+     * entry is evicted. Releasing a part twice or a part created elsewhere
+     * does nothing.
+     *
+     * @param part the body part
+     */
+    public synchronized void release(final MimeBodyPart part)
+    {
+        if (part instanceof FileBodyPart && ((FileBodyPart) part).cache == this)
+        {
+            ((FileBodyPart) part).release();
+        }
+    }
+
+    private synchronized MimeBodyPart get(final String key, final String contentType) throws MessagingException
+    {
+        final Entry entry = entries.get(key);
+
+        if (entry == null)
+        {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return createBodyPart(entry, contentType);
+    }
+
+    /**
+     * Adds an entry unless another thread added one for the same key meanwhile.
+     *
+     * @param key the key
+     * @param entry the new entry
+     * @param contentType the content type of the body part
+     * @return a body part of the cached entry
+     * @throws MessagingException the body part could not be created
+     */
+    private synchronized MimeBodyPart put(final String key, final Entry entry, final String contentType)
+            throws MessagingException
+    {
+        final Entry existing = entries.get(key);
+
+        if (existing != null)
+        {
+            entry.delete();
+            return createBodyPart(existing, contentType);
+        }
+
+        entries.put(key, entry);
+        if (entry.isOnDisk())
+        {
+            diskBytes += entry.size;
+        }
+        else
+        {
+            memoryBytes += entry.size;
+        }
+
+        // referenced before evicting, so an entry exceeding the limits on its own stays readable
+        final MimeBodyPart part = createBodyPart(entry, contentType);
+        evict();
+        return part;
+    }
+
+    /**
+     * Creates a body part of an entry, counting the parts reading a temporary file.
+     *
+     * @param entry the entry
+     * @param contentType the content type
+     * @return the new body part
+     * @throws MessagingException the body part could not be created
+     */
+    private MimeBodyPart createBodyPart(final Entry entry, final String contentType) throws MessagingException
+    {
+        final InternetHeaders headers = new InternetHeaders();
+        headers.setHeader("Content-Type", contentType);
+        headers.setHeader("Content-Transfer-Encoding", entry.encoding);
+
+        if (!entry.isOnDisk())
+        {
+            return new MimeBodyPart(headers, entry.content);
+        }
+        entry.references++;
+        return new FileBodyPart(headers, entry);
+    }
+
+    /**
+     * Deletes the temporary file of a removed entry, or marks it to be
+     * deleted when its last body part is released.
+     *
+     * @param entry the removed entry
+     */
+    private void retire(final Entry entry)
+    {
+        entry.evicted = true;
+        if (entry.references == 0)
+        {
+            entry.delete();
+        }
+    }
+
+    /**
+     * Removes the least recently used entries until both limits are met.
+     */
+    private void evict()
+    {
+        final Iterator<Entry> it = entries.values().iterator();
+
+        while ((memoryBytes > maxMemoryBytes || diskBytes > maxDiskBytes) && it.hasNext())
+        {
+            final Entry entry = it.next();
+
+            if (entry.isOnDisk() && diskBytes > maxDiskBytes)
+            {
+                it.remove();
+                diskBytes -= entry.size;
+                retire(entry);
+            }
+            else if (!entry.isOnDisk() && memoryBytes > maxMemoryBytes)
+            {
+                it.remove();
+                memoryBytes -= entry.size;
+            }
+        }
+    }
+
+    /**
+     * Removes all entries and deletes their temporary files, or deletes them
+     * once the body parts still reading them are released.
+     */
+    public synchronized void clear()
+    {
+        for (final Entry entry : entries.values())
+        {
+            retire(entry);
+        }
+        entries.clear();
+        memoryBytes = 0;
+        diskBytes = 0;
+    }
+
+    /**
+     * Encodes the content of a data source with the transfer encoding
+     * JavaMail would choose for it.
+     *
+     * @param dataSource the content
+     * @return the new entry
+     * @throws IOException the content could not be read or written
+     */
+    private Entry encode(final DataSource dataSource) throws IOException
+    {
+        final String encoding = MimeUtility.getEncoding(dataSource);
+        final SpillingOutputStream spill = new SpillingOutputStream(spillThreshold, directory);
+
+        try
+        {
+            try (InputStream is = dataSource.getInputStream();
+                 OutputStream os = MimeUtility.encode(spill, encoding))
+            {
+                final byte[] buffer = new byte[BUFFER_SIZE];
+                int n;
+                while ((n = is.read(buffer)) != -1)
+                {
+                    os.write(buffer, 0, n);
+                }
+            }
+            catch (final MessagingException e)
+            {
+                throw new IOException(e);
+            }
+        }
+        catch (final IOException | RuntimeException e)
+        {
+            spill.delete();
+            throw e;
+        }
+
+        return spill.file != null
+                ? new Entry(encoding, spill.file, spill.size)
+                : new Entry(encoding, spill.memory.toByteArray());
+    }
+
+    /**
+     * Gets the key of the content of a data source.
+     *
+     * @param dataSource the content
+     * @return the key
+     * @throws IOException the content could not be read
+     */
+    static String getKey(final DataSource dataSource) throws IOException
+    {
+        if (dataSource instanceof FileDataSource)
+        {
+            // the chosen transfer encoding depends on the content type
+            final File file = ((FileDataSource) dataSource).getFile();
+            return "file:" + file.getCanonicalPath() + "@" + file.lastModified() + "/" + file.length() + ";"
+                    + dataSource.getContentType();
+        }
+        return ContentDigest.of(dataSource);
+    }
+
+    /**
+     * @return the number of cached attachments
+     */
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * @return the encoded bytes kept on the heap
+     */
+    public synchronized long getMemoryBytes()
+    {
+        return memoryBytes;
+    }
+
+    /**
+     * @return the encoded bytes kept in temporary files
+     */
+    public synchronized long getDiskBytes()
+    {
+        return diskBytes;
+    }
+
+    /**
+     * @return the number of attachments found in the cache
+     */
+    public synchronized long getHitCount()
+    {
+        return hitCount;
+    }
+
+    /**
+     * @return the number of attachments which had to be encoded
+     */
+    public synchronized long getMissCount()
+    {
+        return missCount;
+    }
+
+    /**
+     * @return the limit of the encoded content kept on the heap
+     */
+    public long getMaxMemoryBytes()
+    {
+        return maxMemoryBytes;
+    }
+
+    /**
+     * @param maxMemoryBytes the limit of the encoded content kept on the heap
+     */
+    public synchronized void setMaxMemoryBytes(final long maxMemoryBytes)
+    {
+        this.maxMemoryBytes = maxMemoryBytes;
+        evict();
+    }
+
+    /**
+     * @return the limit of the encoded content kept in temporary files
+     */
+    public long getMaxDiskBytes()
+    {
+        return maxDiskBytes;
+    }
+
+    /**
+     * @param maxDiskBytes the limit of the encoded content kept in temporary files
+     */
+    public synchronized void setMaxDiskBytes(final long maxDiskBytes)
+    {
+        this.maxDiskBytes = maxDiskBytes;
+        evict();
+    }
+
+    /**
+     * @return the size above which encoded content is kept in a temporary file
+     */
+    public int getSpillThreshold()
+    {
+        return spillThreshold;
+    }
+
+    /**
+     * @param spillThreshold the size above which encoded content is kept in a temporary file
+     */
+    public void setSpillThreshold(final int spillThreshold)
+    {
+        this.spillThreshold = spillThreshold;
+    }
+
+    /**
+     * @return the directory of the temporary files, null for the default temporary directory
+     */
+    public File getDirectory()
+    {
+        return directory;
+    }
+
+    /**
+     * @param directory the directory of the temporary files, null for the default temporary directory
+     */
+    public void setDirectory(final File directory)
+    {
+        this.directory = directory;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return "AttachmentCache[entries=" + entries.size() + ", memory=" + memoryBytes + ", disk=" + diskBytes
+                + ", hits=" + hitCount + ", misses=" + missCount + "]";
+    }
+
+    /** The encoded content of an attachment, on the heap or in a temporary file. */
+    private static final class Entry
+    {
+        /** the transfer encoding */
+        private final String encoding;
+
+        /** the encoded content, null if it is in a file */
+        private final byte[] content;
+
+        /** the temporary file or null */
+        private final File file;
+
+        /** the stream shared by all body parts reading the file */
+        private final SharedFileInputStream stream;
+
+        /** the size of the encoded content */
+        private final long size;
+
+        /** the unreleased body parts reading the file, guarded by the cache */
+        private int references;
+
+        /** whether the entry was removed from the cache, guarded by the cache */
+        private boolean evicted;
+
+        Entry(final String encoding, final byte[] content)
+        {
+            this.encoding = encoding;
+            this.content = content;
+            this.file = null;
+            this.stream = null;
+            this.size = content.length;
+        }
+
+        Entry(final String encoding, final File file, final long size) throws IOException
+        {
+            this.encoding = encoding;
+            this.content = null;
+            this.file = file;
+            this.stream = new SharedFileInputStream(file);
+            this.size = size;
+        }
+
+        boolean isOnDisk()
+        {
+            return file != null;
+        }
+
+        /**
+         * Closes the file shared by the body parts of the entry and deletes
+         * it, or deletes it on exit if that fails.
+         */
+        void delete()
+        {
+            if (file == null)
+            {
+                return;
+            }
+
+            try
+            {
+                // closes the file for the body parts as well
+                stream.close();
+            }
+            catch (final IOException e)
+            {
+                // the file is deleted anyway
+            }
+            if (!file.delete())
+            {
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    /** A body part reading its encoded content from a cached temporary file. */
+    private final class FileBodyPart extends MimeBodyPart
+    {
+        /** the cache which created the part */
+        private final AttachmentCache cache = AttachmentCache.this;
+
+        /** the entry, null once released */
+        private Entry entry;
+
+        FileBodyPart(final InternetHeaders headers, final Entry entry)
+        {
+            this.headers = headers;
+            this.contentStream = entry.stream.newStream(0, -1);
+            this.entry = entry;
+        }
+
+        /**
+         * Drops the reference to the entry, deleting its file if it was the
+         * last part of an evicted entry. Called with the cache locked.
+         */
+        void release()
+        {
+            if (entry != null && --entry.references == 0 && entry.evicted)
+            {
+                entry.delete();
+            }
+            entry = null;
+        }
+    }
+
+    /** Collects the encoded content on the heap, switching to a temporary file above the threshold. */
+    private static final class SpillingOutputStream extends OutputStream
+    {
+        private final int threshold;
+
+        private final File directory;
+
+        private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+
+        private File file;
+
+        private OutputStream out = memory;
+
+        private long size;
+
+        SpillingOutputStream(final int threshold, final File directory)
+        {
+            this.threshold = threshold;
+            this.directory = directory;
+        }
+
+        @Override
+        public void write(final int b) throws IOException
+        {
+            reserve(1);
+            out.write(b);
+            size++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException
+        {
+            reserve(len);
+            out.write(b, off, len);
+            size += len;
+        }
+
+        private void reserve(final int len) throws IOException
+        {
+            if (file == null && size + len > threshold)
+            {
+                // deleted explicitly, deleteOnExit() would keep the name until the JVM exits
+                file = File.createTempFile("commons-email-", ".cache", directory);
+                out = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE);
+                memory.writeTo(out);
+                memory = null;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException
+        {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            out.close();
+        }
+
+        void delete()
+        {
+            try
+            {
+                close();
+            }
+            catch (final IOException e)
+            {
+                // the file is deleted anyway
+            }
+            if (file != null && !file.delete())
+            {
+                file.deleteOnExit();
+            }
+        }
+    }
+}
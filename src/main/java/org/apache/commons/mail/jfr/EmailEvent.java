@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.jfr;
+
+import javax.mail.internet.MimeMessage;
+
+/**
+ * A Java Flight Recorder event in progress, carrying the host, the message
+ * size, the attachment count and the outcome of the operation:
+ * <pre>
+ * EmailEvent event = EmailEvent.begin(EmailEventType.SEND);
+ * Throwable failure = null;
+ * try
+ * {
+ *     ...
+ *     event.setHost(host).setMessage(message);
+ * }
+ * catch (Exception e)
+ * {
+ *     failure = e;
+ *     throw e;
+ * }
+ * finally
+ * {
+ *     event.end(failure);
+ * }
+ * </pre>
+ * On runtimes without JFR, and while no recording is interested in the
+ * event type, {@link #begin(EmailEventType)} returns a shared instance
+ * which does nothing, so the events can be left in place at no real cost.
+ * The JFR classes are only loaded when they are available, keeping this
+ * class usable on any Java 8 runtime.
+ *
+ * @since 1.6.0
+ */
+public class EmailEvent
+{
+    /** the outcome of an operation which completed normally */
+    public static final String SUCCESS = "success";
+
+    /** the event doing nothing */
+    static final EmailEvent DISABLED = new EmailEvent();
+
+    /** the name of the factory using JFR */
+    private static final String JFR_FACTORY = "org.apache.commons.mail.jfr.JfrEmailEventFactory";
+
+    /** the factory or null if JFR is not available */
+    private static final EmailEventFactory FACTORY = createFactory();
+
+    /**
+     * Only the disabled event and subclasses are created.
+     */
+    EmailEvent()
+    {
+    }
+
+    /**
+     * Starts an event.
+     *
+     * @param type the type of the event
+     * @return the event, which does nothing if the type is not recorded
+     */
+    public static EmailEvent begin(final EmailEventType type)
+    {
+        return FACTORY != null ? FACTORY.begin(type) : DISABLED;
+    }
+
+    /**
+     * @param type the type of the event
+     * @return true if events of the type are currently recorded
+     */
+    public static boolean isEnabled(final EmailEventType type)
+    {
+        return FACTORY != null && FACTORY.isEnabled(type);
+    }
+
+    private static EmailEventFactory createFactory()
+    {
+        try
+        {
+            Class.forName("jdk.jfr.Event");
+            return (EmailEventFactory) Class.forName(JFR_FACTORY).getDeclaredConstructor().newInstance();
+        }
+        catch (final ReflectiveOperationException | LinkageError | RuntimeException e)
+        {
+            // JFR is not available
+            return null;
+        }
+    }
+
+    /**
+     * @param host the host of the mail server
+     * @return this event
+     */
+    public EmailEvent setHost(final String host)
+    {
+        return this;
+    }
+
+    /**
+     * @param size the size in bytes of the processed message or content
+     * @return this event
+     */
+    public EmailEvent setSize(final long size)
+    {
+        return this;
+    }
+
+    /**
+     * @param attachmentCount the number of attachments and embedded resources
+     * @return this event
+     */
+    public EmailEvent setAttachmentCount(final int attachmentCount)
+    {
+        return this;
+    }
+
+    /**
+     * Sets the size and the attachment count from a message. They are only
+     * determined if the event is committed.
+     *
+     * @param message the processed message
+     * @return this event
+     */
+    public EmailEvent setMessage(final MimeMessage message)
+    {
+        return this;
+    }
+
+    /**
+     * @param resource the location of the resolved resource
+     * @return this event
+     */
+    public EmailEvent setResource(final String resource)
+    {
+        return this;
+    }
+
+    /**
+     * Ends and commits the event.
+     *
+     * @param failure the exception the operation ended with, null if it succeeded
+     */
+    public void end(final Throwable failure)
+    {
+        end(failure == null ? SUCCESS : failure.getClass().getName());
+    }
+
+    /**
+     * Ends and commits the event.
+     *
+     * @param outcome the outcome of the operation, for example {@link #SUCCESS}
+     */
+    public void end(final String outcome)
+    {
+        // disabled
+    }
+}
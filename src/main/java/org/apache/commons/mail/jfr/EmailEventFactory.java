@@ -0,0 +1,39 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.jfr;
+
+/**
+ * Creates the events of a recorder.
+ *
+ * @since 1.6.0
+ */
+interface EmailEventFactory
+{
+    /**
+     * Starts an event.
+     *
+     * @param type the type of the event
+     * @return the event or {@link EmailEvent#DISABLED} if the type is not recorded
+     */
+    EmailEvent begin(EmailEventType type);
+
+    /**
+     * @param type the type of the event
+     * @return true if events of the type are currently recorded
+     */
+    boolean isEnabled(EmailEventType type);
+}
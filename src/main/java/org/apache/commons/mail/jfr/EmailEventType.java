@@ -0,0 +1,40 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.jfr;
+
+/**
+ * The operations recorded as Java Flight Recorder events.
+ *
+ * @since 1.6.0
+ */
+public enum EmailEventType
+{
+    /** building the MIME message of an email */
+    BUILD,
+
+    /** sending a built message */
+    SEND,
+
+    /** embedding the resources referenced by the HTML of an {@code ImageHtmlEmail} */
+    EMBED,
+
+    /** resolving a single resource to a data source */
+    RESOLVE,
+
+    /** parsing a message with {@code MimeMessageParser} */
+    PARSE
+}
@@ -0,0 +1,238 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.jfr;
+
+import java.io.IOException;
+
+import javax.mail.MessagingException;
+import javax.mail.Multipart;
+import javax.mail.Part;
+import javax.mail.internet.MimeMessage;
+
+import org.apache.commons.mail.metrics.MeteredMimeMessage;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * An {@link EmailEvent} backed by a JFR event. Only loaded if JFR is available.
+ *
+ * @since 1.6.0
+ */
+final class JfrEmailEvent extends EmailEvent
+{
+    /** The fields shared by all events. */
+    @Category({ "Apache Commons Email" })
+    @StackTrace(false)
+    abstract static class BaseEvent extends Event
+    {
+        @Label("Host")
+        String host;
+
+        @Label("Message Size")
+        @DataAmount
+        long size;
+
+        @Label("Attachments")
+        int attachmentCount;
+
+        @Label("Outcome")
+        String outcome;
+    }
+
+    /** See {@link EmailEventType#BUILD}. */
+    @Name("org.apache.commons.mail.Build")
+    @Label("Build Email")
+    @Description("Building the MIME message of an email")
+    static final class BuildEvent extends BaseEvent
+    {
+    }
+
+    /** See {@link EmailEventType#SEND}. */
+    @Name("org.apache.commons.mail.Send")
+    @Label("Send Email")
+    @Description("Sending a message to the mail server")
+    static final class SendEvent extends BaseEvent
+    {
+    }
+
+    /** See {@link EmailEventType#EMBED}. */
+    @Name("org.apache.commons.mail.Embed")
+    @Label("Embed Resources")
+    @Description("Embedding the resources referenced by the HTML of an email")
+    static final class EmbedEvent extends BaseEvent
+    {
+    }
+
+    /** See {@link EmailEventType#RESOLVE}. */
+    @Name("org.apache.commons.mail.Resolve")
+    @Label("Resolve Resource")
+    @Description("Resolving a resource to a data source")
+    static final class ResolveEvent extends BaseEvent
+    {
+        @Label("Resource")
+        String resource;
+    }
+
+    /** See {@link EmailEventType#PARSE}. */
+    @Name("org.apache.commons.mail.Parse")
+    @Label("Parse Message")
+    @Description("Parsing a MIME message")
+    static final class ParseEvent extends BaseEvent
+    {
+    }
+
+    /** the recorded event */
+    private final BaseEvent event;
+
+    /** the message to take the size and attachment count from, may be null */
+    private MimeMessage message;
+
+    /**
+     * @param event the started event
+     */
+    JfrEmailEvent(final BaseEvent event)
+    {
+        this.event = event;
+    }
+
+    /**
+     * Creates an event which is not started yet.
+     *
+     * @param type the type of the event
+     * @return the event
+     */
+    static BaseEvent create(final EmailEventType type)
+    {
+        switch (type)
+        {
+            case BUILD:
+                return new BuildEvent();
+            case SEND:
+                return new SendEvent();
+            case EMBED:
+                return new EmbedEvent();
+            case RESOLVE:
+                return new ResolveEvent();
+            default:
+                return new ParseEvent();
+        }
+    }
+
+    @Override
+    public EmailEvent setHost(final String host)
+    {
+        event.host = host;
+        return this;
+    }
+
+    @Override
+    public EmailEvent setSize(final long size)
+    {
+        if (size >= 0)
+        {
+            event.size = size;
+        }
+        return this;
+    }
+
+    @Override
+    public EmailEvent setAttachmentCount(final int attachmentCount)
+    {
+        event.attachmentCount = attachmentCount;
+        return this;
+    }
+
+    @Override
+    public EmailEvent setMessage(final MimeMessage message)
+    {
+        this.message = message;
+        return this;
+    }
+
+    @Override
+    public EmailEvent setResource(final String resource)
+    {
+        if (event instanceof ResolveEvent)
+        {
+            ((ResolveEvent) event).resource = resource;
+        }
+        return this;
+    }
+
+    @Override
+    public void end(final String outcome)
+    {
+        event.end();
+
+        if (event.shouldCommit())
+        {
+            event.outcome = outcome;
+            if (message != null)
+            {
+                setMessageFields(message);
+            }
+            event.commit();
+        }
+    }
+
+    private void setMessageFields(final MimeMessage mimeMessage)
+    {
+        try
+        {
+            final long size = mimeMessage instanceof MeteredMimeMessage
+                    ? ((MeteredMimeMessage) mimeMessage).getBytesWritten()
+                    : mimeMessage.getSize();
+            if (size >= 0)
+            {
+                event.size = size;
+            }
+            event.attachmentCount = countAttachments(mimeMessage);
+        }
+        catch (final MessagingException | IOException e)
+        {
+            // leave the fields unset
+        }
+    }
+
+    /**
+     * Counts the parts which are attachments or embedded resources, that is
+     * the parts with a disposition or a file name.
+     *
+     * @param part the part to search
+     * @return the number of attachments
+     */
+    private static int countAttachments(final Part part) throws MessagingException, IOException
+    {
+        if (part.isMimeType("multipart/*"))
+        {
+            final Multipart multipart = (Multipart) part.getContent();
+            int count = 0;
+            for (int i = 0; i < multipart.getCount(); i++)
+            {
+                count += countAttachments(multipart.getBodyPart(i));
+            }
+            return count;
+        }
+        return part.getDisposition() != null || part.getFileName() != null ? 1 : 0;
+    }
+}
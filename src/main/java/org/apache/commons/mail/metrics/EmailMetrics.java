@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.metrics;
+
+/**
+ * Receives the duration of the phases of building and sending emails. An
+ * instance is set with {@link org.apache.commons.mail.Email#setMetrics(EmailMetrics)}
+ * and usually shared by all emails; without one nothing is measured.
+ * <p>
+ * Implementations are called on the sending threads and must be thread-safe
+ * and fast, see {@link HistogramEmailMetrics}.
+ *
+ * @since 1.6.0
+ */
+public interface EmailMetrics
+{
+    /**
+     * Reports the end of a phase.
+     *
+     * @param phase the phase
+     * @param elapsedNanos the duration of the phase in nanoseconds
+     * @param failed true if the phase ended with an exception
+     */
+    void phaseCompleted(EmailPhase phase, long elapsedNanos, boolean failed);
+
+    /**
+     * Reports a message accepted by the server.
+     *
+     * @param recipients the number of recipients
+     * @param bytes the size of the message as transferred, -1 if unknown
+     */
+    void messageSent(int recipients, long bytes);
+}
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The default {@link EmailMetrics}, keeping a {@link LatencyHistogram} and a
+ * failure count per phase as well as the number of messages, recipients
+ * and bytes sent. It has no dependencies and is cheap enough to be left on
+ * in production:
+ * <pre>
+ * HistogramEmailMetrics metrics = new HistogramEmailMetrics();
+ * email.setMetrics(metrics);
+ * email.send();
+ * long p99 = metrics.getHistogram(EmailPhase.TRANSFER).getValueAtPercentile(99);
+ * </pre>
+ *
+ * @since 1.6.0
+ */
+public class HistogramEmailMetrics implements EmailMetrics
+{
+    /** the histograms by phase, filled on construction and never changed */
+    private final Map<EmailPhase, LatencyHistogram> histograms = new EnumMap<>(EmailPhase.class);
+
+    /** the failures by phase, filled on construction and never changed */
+    private final Map<EmailPhase, LongAdder> failures = new EnumMap<>(EmailPhase.class);
+
+    private final LongAdder messageCount = new LongAdder();
+
+    private final LongAdder recipientCount = new LongAdder();
+
+    private final LongAdder byteCount = new LongAdder();
+
+    /**
+     * Creates empty metrics.
+     */
+    public HistogramEmailMetrics()
+    {
+        for (final EmailPhase phase : EmailPhase.values())
+        {
+            histograms.put(phase, new LatencyHistogram());
+            failures.put(phase, new LongAdder());
+        }
+    }
+
+    @Override
+    public void phaseCompleted(final EmailPhase phase, final long elapsedNanos, final boolean failed)
+    {
+        histograms.get(phase).record(elapsedNanos);
+        if (failed)
+        {
+            failures.get(phase).increment();
+        }
+    }
+
+    @Override
+    public void messageSent(final int recipients, final long bytes)
+    {
+        messageCount.increment();
+        recipientCount.add(recipients);
+        if (bytes > 0)
+        {
+            byteCount.add(bytes);
+        }
+    }
+
+    /**
+     * Gets the durations of a phase, including the failed ones.
+     *
+     * @param phase the phase
+     * @return the histogram of the phase
+     */
+    public LatencyHistogram getHistogram(final EmailPhase phase)
+    {
+        return histograms.get(phase);
+    }
+
+    /**
+     * @param phase the phase
+     * @return the number of times the phase ended with an exception
+     */
+    public long getFailureCount(final EmailPhase phase)
+    {
+        return failures.get(phase).sum();
+    }
+
+    /**
+     * @return the number of messages accepted by the server
+     */
+    public long getMessageCount()
+    {
+        return messageCount.sum();
+    }
+
+    /**
+     * @return the number of recipients of the messages accepted by the server
+     */
+    public long getRecipientCount()
+    {
+        return recipientCount.sum();
+    }
+
+    /**
+     * @return the number of bytes of the messages accepted by the server, as far as known
+     */
+    public long getByteCount()
+    {
+        return byteCount.sum();
+    }
+
+    @Override
+    public String toString()
+    {
+        final StringBuilder builder = new StringBuilder("HistogramEmailMetrics[messages=")
+                .append(getMessageCount())
+                .append(", recipients=").append(getRecipientCount())
+                .append(", bytes=").append(getByteCount());
+
+        for (final EmailPhase phase : EmailPhase.values())
+        {
+            final LatencyHistogram histogram = histograms.get(phase);
+            if (histogram.getCount() > 0)
+            {
+                builder.append(", ").append(phase).append("={").append(histogram)
+                        .append(", failed=").append(getFailureCount(phase)).append('}');
+            }
+        }
+        return builder.append(']').toString();
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of durations in nanoseconds in the style of
+ * HdrHistogram: values are counted in buckets whose width grows with the
+ * value, so that every recorded value is known within a relative error of
+ * about 1.6% while the histogram has a fixed size of a few kilobytes.
+ * Recording is a handful of arithmetic operations and an atomic increment.
+ * <p>
+ * Values up to about 2.4 hours are tracked; larger values are counted as
+ * the largest trackable value.
+ *
+ * @since 1.6.0
+ */
+public class LatencyHistogram
+{
+    /** the number of bits of precision kept for every value */
+    private static final int SUB_BUCKET_BITS = 7;
+
+    /** the number of values counted exactly */
+    private static final int LINEAR_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /** the number of buckets per doubling of the value */
+    private static final int HALF_COUNT = LINEAR_COUNT >> 1;
+
+    /** the number of bits of the largest trackable value */
+    private static final int MAX_VALUE_BITS = 43;
+
+    /** the largest trackable value */
+    private static final long MAX_VALUE = (1L << MAX_VALUE_BITS) - 1;
+
+    /** the counts by bucket */
+    private final AtomicLongArray counts = new AtomicLongArray(indexOf(MAX_VALUE) + 1);
+
+    private final LongAdder totalCount = new LongAdder();
+
+    private final LongAdder totalNanos = new LongAdder();
+
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos the duration in nanoseconds, negative values are recorded as 0
+     */
+    public void record(final long nanos)
+    {
+        final long value = Math.min(Math.max(nanos, 0), MAX_VALUE);
+
+        counts.incrementAndGet(indexOf(value));
+        totalCount.increment();
+        totalNanos.add(value);
+
+        long max = maxNanos.get();
+        while (value > max && !maxNanos.compareAndSet(max, value))
+        {
+            max = maxNanos.get();
+        }
+    }
+
+    /**
+     * Gets the bucket of a value.
+     *
+     * @param value the value between 0 and {@link #MAX_VALUE}
+     * @return the index of the bucket
+     */
+    static int indexOf(final long value)
+    {
+        if (value < LINEAR_COUNT)
+        {
+            return (int) value;
+        }
+        final int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return LINEAR_COUNT + (shift - 1) * HALF_COUNT + (int) (value >>> shift) - HALF_COUNT;
+    }
+
+    /**
+     * Gets the largest value counted in a bucket.
+     *
+     * @param index the index of the bucket
+     * @return the largest value of the bucket
+     */
+    static long highestValueAt(final int index)
+    {
+        if (index < LINEAR_COUNT)
+        {
+            return index;
+        }
+        final int shift = (index - LINEAR_COUNT) / HALF_COUNT + 1;
+        final long subBucket = (index - LINEAR_COUNT) % HALF_COUNT + HALF_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * @return the number of recorded values
+     */
+    public long getCount()
+    {
+        return totalCount.sum();
+    }
+
+    /**
+     * @return the largest recorded value in nanoseconds
+     */
+    public long getMax()
+    {
+        return maxNanos.get();
+    }
+
+    /**
+     * @return the mean of the recorded values in nanoseconds, 0 if there are none
+     */
+    public double getMean()
+    {
+        final long count = totalCount.sum();
+        return count == 0 ? 0 : (double) totalNanos.sum() / count;
+    }
+
+    /**
+     * Gets the value below or at which the given percentage of the recorded
+     * values fall, for example 99 for the 99th percentile.
+     *
+     * @param percentile the percentile between 0 and 100
+     * @return the value in nanoseconds, 0 if there are no values
+     */
+    public long getValueAtPercentile(final double percentile)
+    {
+        if (percentile < 0 || percentile > 100)
+        {
+            throw new IllegalArgumentException("percentile must be between 0 and 100");
+        }
+
+        final long[] snapshot = new long[counts.length()];
+        long count = 0;
+        for (int i = 0; i < snapshot.length; i++)
+        {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+
+        final long target = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++)
+        {
+            seen += snapshot[i];
+            if (seen >= target)
+            {
+                return Math.min(highestValueAt(i), getMax());
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "count=" + getCount()
+                + ", mean=" + toMillis(getMean())
+                + "ms, p50=" + toMillis(getValueAtPercentile(50))
+                + "ms, p99=" + toMillis(getValueAtPercentile(99))
+                + "ms, max=" + toMillis(getMax()) + "ms";
+    }
+
+    private static String toMillis(final double nanos)
+    {
+        return String.format("%.3f", Double.valueOf(nanos / TimeUnit.MILLISECONDS.toNanos(1)));
+    }
+}
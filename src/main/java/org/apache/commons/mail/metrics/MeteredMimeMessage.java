@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.metrics;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+
+/**
+ * A MIME message remembering how many bytes its last
+ * {@link #writeTo(OutputStream, String[])} wrote, which is how the transport
+ * sends it to the server. Created instead of a plain {@code MimeMessage}
+ * when metrics are enabled.
+ *
+ * @since 1.6.0
+ */
+public class MeteredMimeMessage extends MimeMessage
+{
+    /** Counts the bytes written through it. */
+    private static final class CountingOutputStream extends FilterOutputStream
+    {
+        private long count;
+
+        CountingOutputStream(final OutputStream out)
+        {
+            super(out);
+        }
+
+        @Override
+        public void write(final int b) throws IOException
+        {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException
+        {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    /** the size of the last write, -1 before the first */
+    private volatile long bytesWritten = -1;
+
+    /**
+     * Creates an empty message.
+     *
+     * @param session the session
+     */
+    public MeteredMimeMessage(final Session session)
+    {
+        super(session);
+    }
+
+    @Override
+    public void writeTo(final OutputStream os, final String[] ignoreList) throws IOException, MessagingException
+    {
+        final CountingOutputStream counter = new CountingOutputStream(os);
+        super.writeTo(counter, ignoreList);
+        bytesWritten = counter.count;
+    }
+
+    /**
+     * @return the number of bytes written by the last write, -1 if it was never written
+     */
+    public long getBytesWritten()
+    {
+        return bytesWritten;
+    }
+}
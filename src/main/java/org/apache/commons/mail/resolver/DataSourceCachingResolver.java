@@ -0,0 +1,432 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.resolver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.activation.DataSource;
+import javax.activation.FileDataSource;
+
+import org.apache.commons.mail.ByteBufferDataSource;
+import org.apache.commons.mail.DataSourceResolver;
+
+/**
+ * Caches the data sources resolved by another resolver, so that images
+ * and other resources used by many emails are fetched once. The content and
+ * the content type are kept in memory and handed out as immutable
+ * {@link ByteBufferDataSource}s sharing the cached bytes.
+ * <p>
+ * Entries expire after {@link #getTtlMillis()} and the least recently used
+ * ones are evicted when the cached content exceeds {@link #getMaxBytes()}.
+ * Resources which were not found are not cached.
+ * </p>
+ * <p>
+ * The resolver is safe for concurrent use. Threads asking for a location
+ * which is being resolved wait for that result instead of resolving it again.
+ * </p>
+ * <pre>
+ * DataSourceResolver resolver = new DataSourceCachingResolver(new DataSourceUrlResolver(baseUrl, true));
+ * email.setDataSourceResolver(resolver);
+ * </pre>
+ *
+ * @since 1.6.0
+ */
+public class DataSourceCachingResolver extends DataSourceBaseResolver
+{
+    /** default maximum size of the cached content in bytes */
+    public static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+
+    /** default time in milliseconds an entry is kept */
+    public static final long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    /** the resolver to cache */
+    private final DataSourceResolver dataSourceResolver;
+
+    /** the entries by location in access order, guarded by this */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** the resolves in progress by location */
+    private final ConcurrentMap<String, CompletableFuture<DataSource>> loading = new ConcurrentHashMap<>();
+
+    /** the size of the cached content, guarded by this */
+    private long bytes;
+
+    private long hitCount;
+
+    private long missCount;
+
+    private long evictionCount;
+
+    private volatile long maxBytes = DEFAULT_MAX_BYTES;
+
+    private volatile long ttlMillis = DEFAULT_TTL_MILLIS;
+
+    /**
+     * Constructor. The cache is lenient if the given resolver is.
+     *
+     * @param dataSourceResolver the resolver to cache
+     */
+    public DataSourceCachingResolver(final DataSourceResolver dataSourceResolver)
+    {
+        super(dataSourceResolver instanceof DataSourceBaseResolver
+                && ((DataSourceBaseResolver) dataSourceResolver).isLenient());
+        if (dataSourceResolver == null)
+        {
+            throw new IllegalArgumentException("dataSourceResolver must not be null");
+        }
+        this.dataSourceResolver = dataSourceResolver;
+    }
+
+    /**
+     * Get the underlying data source resolver.
+     *
+     * @return the cached resolver
+     */
+    public DataSourceResolver getDataSourceResolver()
+    {
+        return dataSourceResolver;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public DataSource resolve(final String resourceLocation) throws IOException
+    {
+        return resolve(resourceLocation, isLenient());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public DataSource resolve(final String resourceLocation, final boolean isLenient) throws IOException
+    {
+        final DataSource cached = get(resourceLocation);
+
+        if (cached != null)
+        {
+            return cached;
+        }
+
+        final CompletableFuture<DataSource> future = new CompletableFuture<>();
+        final CompletableFuture<DataSource> running = loading.putIfAbsent(resourceLocation, future);
+
+        if (running != null)
+        {
+            return await(resourceLocation, running, isLenient);
+        }
+
+        try
+        {
+            final DataSource dataSource = load(resourceLocation, isLenient);
+            future.complete(dataSource);
+            return dataSource;
+        }
+        catch (final IOException | RuntimeException e)
+        {
+            future.completeExceptionally(e);
+            throw e;
+        }
+        finally
+        {
+            loading.remove(resourceLocation, future);
+        }
+    }
+
+    /**
+     * Resolves a location with the underlying resolver and caches the result.
+     *
+     * @param resourceLocation the location
+     * @param isLenient shall we ignore resources not found or throw an exception?
+     * @return the cached data source or null if the resource was not found in lenient mode
+     * @throws IOException resolving the resource failed
+     */
+    private DataSource load(final String resourceLocation, final boolean isLenient) throws IOException
+    {
+        synchronized (this)
+        {
+            missCount++;
+        }
+
+        final DataSource dataSource = dataSourceResolver.resolve(resourceLocation, isLenient);
+
+        if (dataSource == null)
+        {
+            return null;
+        }
+
+        final ByteBufferDataSource content;
+
+        if (dataSource instanceof ByteBufferDataSource)
+        {
+            // already immutable and in memory
+            content = (ByteBufferDataSource) dataSource;
+        }
+        else
+        {
+            final long length = dataSource instanceof FileDataSource
+                    ? ((FileDataSource) dataSource).getFile().length() : -1;
+
+            try (InputStream is = dataSource.getInputStream())
+            {
+                content = ByteBufferDataSource.from(is, length, true, dataSource.getContentType(),
+                        dataSource.getName());
+            }
+        }
+
+        put(resourceLocation, content);
+        return content;
+    }
+
+    /**
+     * Waits for a resolve in progress by another thread.
+     *
+     * @param resourceLocation the location
+     * @param running the resolve in progress
+     * @param isLenient shall we ignore resources not found or throw an exception?
+     * @return the data source or null if the resource was not found in lenient mode
+     * @throws IOException resolving the resource failed
+     */
+    private DataSource await(final String resourceLocation, final CompletableFuture<DataSource> running,
+            final boolean isLenient) throws IOException
+    {
+        synchronized (this)
+        {
+            hitCount++;
+        }
+
+        final DataSource dataSource;
+
+        try
+        {
+            dataSource = running.get();
+        }
+        catch (final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the resource : " + resourceLocation, e);
+        }
+        catch (final ExecutionException e)
+        {
+            if (isLenient)
+            {
+                return null;
+            }
+            if (e.getCause() instanceof IOException)
+            {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("The following resource could not be resolved : " + resourceLocation, e.getCause());
+        }
+
+        if (dataSource == null && !isLenient)
+        {
+            throw new IOException("The following resource was not found : " + resourceLocation);
+        }
+        return dataSource;
+    }
+
+    /**
+     * Looks up a location, dropping it if it expired.
+     *
+     * @param resourceLocation the location
+     * @return the cached data source or null
+     */
+    private synchronized DataSource get(final String resourceLocation)
+    {
+        final Entry entry = entries.get(resourceLocation);
+
+        if (entry != null)
+        {
+            if (!entry.isExpired(System.nanoTime()))
+            {
+                hitCount++;
+                return entry.dataSource;
+            }
+            remove(resourceLocation);
+            evictionCount++;
+        }
+        return null;
+    }
+
+    private synchronized void put(final String resourceLocation, final ByteBufferDataSource dataSource)
+    {
+        final long size = dataSource.getSize();
+
+        if (size > maxBytes)
+        {
+            return;
+        }
+
+        remove(resourceLocation);
+
+        final long ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        entries.put(resourceLocation, new Entry(dataSource, ttlNanos > 0 ? System.nanoTime() + ttlNanos : 0));
+        bytes += size;
+        evict();
+    }
+
+    private void remove(final String resourceLocation)
+    {
+        final Entry entry = entries.remove(resourceLocation);
+
+        if (entry != null)
+        {
+            bytes -= entry.dataSource.getSize();
+        }
+    }
+
+    /**
+     * Evicts expired entries and then the least recently used ones until
+     * the content fits into the maximum size.
+     */
+    private void evict()
+    {
+        final long now = System.nanoTime();
+
+        for (final Iterator<Entry> it = entries.values().iterator(); it.hasNext();)
+        {
+            final Entry entry = it.next();
+            if (bytes > maxBytes || entry.isExpired(now))
+            {
+                it.remove();
+                bytes -= entry.dataSource.getSize();
+                evictionCount++;
+            }
+        }
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public synchronized void clear()
+    {
+        entries.clear();
+        bytes = 0;
+    }
+
+    /**
+     * @return the number of cached resources
+     */
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * @return the size of the cached content in bytes
+     */
+    public synchronized long getBytes()
+    {
+        return bytes;
+    }
+
+    /**
+     * @return the number of resolves answered from the cache or by waiting for another thread
+     */
+    public synchronized long getHitCount()
+    {
+        return hitCount;
+    }
+
+    /**
+     * @return the number of resolves passed to the underlying resolver
+     */
+    public synchronized long getMissCount()
+    {
+        return missCount;
+    }
+
+    /**
+     * @return the number of entries evicted because they expired or did not fit
+     */
+    public synchronized long getEvictionCount()
+    {
+        return evictionCount;
+    }
+
+    /**
+     * @return the maximum size of the cached content in bytes
+     */
+    public long getMaxBytes()
+    {
+        return maxBytes;
+    }
+
+    /**
+     * Sets the maximum size of the cached content. Larger resources are
+     * resolved but not cached.
+     *
+     * @param maxBytes the maximum size in bytes
+     */
+    public synchronized void setMaxBytes(final long maxBytes)
+    {
+        this.maxBytes = maxBytes;
+        evict();
+    }
+
+    /**
+     * @return the time in milliseconds an entry is kept
+     */
+    public long getTtlMillis()
+    {
+        return ttlMillis;
+    }
+
+    /**
+     * Sets the time an entry is kept. Applies to entries cached afterwards.
+     *
+     * @param ttlMillis the time in milliseconds, 0 to keep entries until they are evicted
+     */
+    public void setTtlMillis(final long ttlMillis)
+    {
+        this.ttlMillis = ttlMillis;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return "DataSourceCachingResolver[" + dataSourceResolver + ", entries=" + entries.size() + ", bytes=" + bytes
+                + ", hits=" + hitCount + ", misses=" + missCount + ", evictions=" + evictionCount + "]";
+    }
+
+    /** A cached resource. */
+    private static final class Entry
+    {
+        /** the immutable content */
+        private final ByteBufferDataSource dataSource;
+
+        /** the expiry time as of {@link System#nanoTime()}, 0 if it does not expire */
+        private final long expiresAt;
+
+        Entry(final ByteBufferDataSource dataSource, final long expiresAt)
+        {
+            this.dataSource = dataSource;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(final long now)
+        {
+            return expiresAt != 0 && now - expiresAt >= 0;
+        }
+    }
+}
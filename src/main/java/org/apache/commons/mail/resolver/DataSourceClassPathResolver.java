@@ -18,10 +18,13 @@ package org.apache.commons.mail.resolver;
 
 import javax.activation.DataSource;
 import javax.activation.FileTypeMap;
-import javax.mail.util.ByteArrayDataSource;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+
+import org.apache.commons.mail.ByteBufferDataSource;
 
 /**
  * Creates a {@code DataSource} based on an class path.
@@ -88,19 +91,23 @@ public class DataSourceClassPathResolver extends DataSourceBaseResolver
             {
                 final String mimeType = FileTypeMap.getDefaultFileTypeMap().getContentType(resourceLocation);
                 final String resourceName = getResourceName(resourceLocation);
-                try (InputStream is = DataSourceClassPathResolver.class.getResourceAsStream(resourceName)){
-                    if (is == null) {
-                        if (isLenient)
-                        {
-                            return null;
-                        }
-                        throw new IOException("The following class path resource was not found : " + resourceLocation);
+                final URL url = DataSourceClassPathResolver.class.getResource(resourceName);
+                if (url == null)
+                {
+                    if (isLenient)
+                    {
+                        return null;
                     }
-                    final ByteArrayDataSource ds = new ByteArrayDataSource(is, mimeType);
+                    throw new IOException("The following class path resource was not found : " + resourceLocation);
+                }
+                // the content length lets the data source read the resource without copying it
+                final URLConnection connection = url.openConnection();
+                try (InputStream is = connection.getInputStream())
+                {
                     // EMAIL-125: set the name of the DataSource to the normalized resource URL
                     // similar to other DataSource implementations, e.g. FileDataSource, URLDataSource
-                    ds.setName(DataSourceClassPathResolver.class.getResource(resourceName).toString());
-                    return ds;
+                    return ByteBufferDataSource.from(is, connection.getContentLengthLong(), true, mimeType,
+                            url.toString());
                 }
             }
             return null;
@@ -83,10 +83,8 @@ public class DataSourceCompositeResolver extends DataSourceBaseResolver
     @Override
     public DataSource resolve(final String resourceLocation, final boolean isLenient) throws IOException
     {
-        int l = getDataSourceResolvers().length;
-        for (int i = 0; i < l; ++i)
+        for (final DataSourceResolver dataSourceResolver : dataSourceResolvers)
         {
-            final DataSourceResolver dataSourceResolver = getDataSourceResolvers()[i];
             final DataSource dataSource = dataSourceResolver.resolve(resourceLocation, isLenient);
 
             if (dataSource != null)
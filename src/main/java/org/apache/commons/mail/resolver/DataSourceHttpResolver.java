@@ -0,0 +1,423 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.resolver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.activation.DataSource;
+import javax.activation.URLDataSource;
+
+import org.apache.commons.mail.ByteBufferDataSource;
+import org.apache.commons.mail.EmailConstants;
+
+/**
+ * Creates a {@code DataSource} based on an URL downloading the content
+ * exactly once. Unlike {@link DataSourceUrlResolver}, which checks the URL
+ * when resolving and reads it again when the email is written, the returned
+ * data source is backed by the downloaded bytes.
+ * <p>
+ * HTTP downloads honour a connect and a read timeout and are read to the end,
+ * so the connection is kept alive and reused for the next request to the same
+ * server. Responses carrying an {@code ETag} or {@code Last-Modified} header
+ * are remembered and revalidated with a conditional GET the next time, a
+ * {@code 304 Not Modified} answer reuses the remembered content.
+ * </p>
+ * <p>
+ * The resolver is safe for concurrent use and may be shared, as the
+ * remembered responses are kept per instance. They are bounded by number
+ * and by their total size on the heap.
+ * </p>
+ *
+ * @since 1.6.0
+ */
+public class DataSourceHttpResolver extends DataSourceUrlResolver
+{
+    /** default connect timeout in milliseconds */
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = EmailConstants.SOCKET_TIMEOUT_MS;
+
+    /** default read timeout in milliseconds */
+    public static final int DEFAULT_READ_TIMEOUT_MILLIS = EmailConstants.SOCKET_TIMEOUT_MS;
+
+    /** default maximum number of responses remembered for revalidation */
+    public static final int DEFAULT_MAX_REVALIDATED = 256;
+
+    /** default maximum size of the responses remembered for revalidation */
+    public static final long DEFAULT_MAX_REVALIDATED_BYTES = 16L * 1024 * 1024;
+
+    /** the buffer size used to drain error responses */
+    private static final int BUFFER_SIZE = 4096;
+
+    /** the responses which can be revalidated by URL in access order, guarded by itself */
+    private final LinkedHashMap<String, Validated> validated = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** the size of the remembered responses, guarded by validated */
+    private long validatedBytes;
+
+    /** number of downloads */
+    private final AtomicLong fetchCount = new AtomicLong();
+
+    /** number of responses revalidated with "304 Not Modified" */
+    private final AtomicLong notModifiedCount = new AtomicLong();
+
+    private volatile int connectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+
+    private volatile int readTimeoutMillis = DEFAULT_READ_TIMEOUT_MILLIS;
+
+    private volatile int maxRevalidated = DEFAULT_MAX_REVALIDATED;
+
+    private volatile long maxRevalidatedBytes = DEFAULT_MAX_REVALIDATED_BYTES;
+
+    /**
+     * Constructor.
+     *
+     * @param baseUrl the base URL used for resolving relative resource locations
+     */
+    public DataSourceHttpResolver(final URL baseUrl)
+    {
+        super(baseUrl);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param baseUrl the base URL used for resolving relative resource locations
+     * @param lenient shall we ignore resources not found or complain with an exception
+     */
+    public DataSourceHttpResolver(final URL baseUrl, final boolean lenient)
+    {
+        super(baseUrl, lenient);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public DataSource resolve(final String resourceLocation, final boolean isLenient) throws IOException
+    {
+        try
+        {
+            return isCid(resourceLocation) ? null : fetch(createUrl(resourceLocation));
+        }
+        catch (final IOException e)
+        {
+            if (isLenient)
+            {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Downloads the content of an URL, revalidating a remembered response
+     * if possible.
+     *
+     * @param url the URL
+     * @return the data source backed by the downloaded content
+     * @throws IOException the content could not be downloaded
+     */
+    public URLDataSource fetch(final URL url) throws IOException
+    {
+        return fetch(url.openConnection());
+    }
+
+    /**
+     * Downloads the content of an URL, revalidating a remembered response
+     * if possible.
+     *
+     * @param connection the unconnected connection to the URL
+     * @return the data source backed by the downloaded content
+     * @throws IOException the content could not be downloaded
+     */
+    public URLDataSource fetch(final URLConnection connection) throws IOException
+    {
+        final URL url = connection.getURL();
+        connection.setConnectTimeout(connectTimeoutMillis);
+        connection.setReadTimeout(readTimeoutMillis);
+
+        final String key = url.toExternalForm();
+        HttpURLConnection http = null;
+        Validated cached = null;
+
+        if (connection instanceof HttpURLConnection)
+        {
+            http = (HttpURLConnection) connection;
+            cached = getValidated(key);
+
+            if (cached != null)
+            {
+                if (cached.etag != null)
+                {
+                    http.setRequestProperty("If-None-Match", cached.etag);
+                }
+                if (cached.lastModified != null)
+                {
+                    http.setRequestProperty("If-Modified-Since", cached.lastModified);
+                }
+            }
+
+            final int status = http.getResponseCode();
+
+            if (status == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null)
+            {
+                drain(http.getErrorStream());
+                http.getInputStream().close();
+                notModifiedCount.incrementAndGet();
+                return new DownloadedDataSource(url, cached.content);
+            }
+            if (status >= HttpURLConnection.HTTP_BAD_REQUEST)
+            {
+                // reading the error response keeps the connection reusable
+                drain(http.getErrorStream());
+                throw new IOException("The following resource could not be fetched, HTTP status " + status + " : " + url);
+            }
+        }
+
+        final ByteBufferDataSource content;
+        try (InputStream is = connection.getInputStream())
+        {
+            content = ByteBufferDataSource.from(is, connection.getContentLengthLong(), connection.getContentType(),
+                    url.getFile());
+        }
+        fetchCount.incrementAndGet();
+
+        if (http != null)
+        {
+            final String etag = http.getHeaderField("ETag");
+            final String lastModified = http.getHeaderField("Last-Modified");
+
+            if (etag != null || lastModified != null)
+            {
+                putValidated(key, new Validated(etag, lastModified, content));
+            }
+            else if (cached != null)
+            {
+                removeValidated(key);
+            }
+        }
+        return new DownloadedDataSource(url, content);
+    }
+
+    private Validated getValidated(final String key)
+    {
+        synchronized (validated)
+        {
+            return validated.get(key);
+        }
+    }
+
+    private void putValidated(final String key, final Validated response)
+    {
+        if (response.content.getSize() > maxRevalidatedBytes)
+        {
+            // not remembered, and the response remembered before is outdated
+            removeValidated(key);
+            return;
+        }
+
+        synchronized (validated)
+        {
+            final Validated previous = validated.put(key, response);
+            if (previous != null)
+            {
+                validatedBytes -= previous.content.getSize();
+            }
+            validatedBytes += response.content.getSize();
+
+            final Iterator<Validated> it = validated.values().iterator();
+            while ((validated.size() > maxRevalidated || validatedBytes > maxRevalidatedBytes) && it.hasNext())
+            {
+                validatedBytes -= it.next().content.getSize();
+                it.remove();
+            }
+        }
+    }
+
+    private void removeValidated(final String key)
+    {
+        synchronized (validated)
+        {
+            final Validated previous = validated.remove(key);
+            if (previous != null)
+            {
+                validatedBytes -= previous.content.getSize();
+            }
+        }
+    }
+
+    private static void drain(final InputStream is) throws IOException
+    {
+        if (is != null)
+        {
+            try (InputStream in = is)
+            {
+                final byte[] buffer = new byte[BUFFER_SIZE];
+                while (in.read(buffer) >= 0)
+                {
+                    // discard
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the connect timeout in milliseconds
+     */
+    public int getConnectTimeoutMillis()
+    {
+        return connectTimeoutMillis;
+    }
+
+    /**
+     * @param connectTimeoutMillis the connect timeout in milliseconds, 0 to wait forever
+     */
+    public void setConnectTimeoutMillis(final int connectTimeoutMillis)
+    {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    /**
+     * @return the read timeout in milliseconds
+     */
+    public int getReadTimeoutMillis()
+    {
+        return readTimeoutMillis;
+    }
+
+    /**
+     * @param readTimeoutMillis the read timeout in milliseconds, 0 to wait forever
+     */
+    public void setReadTimeoutMillis(final int readTimeoutMillis)
+    {
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
+    /**
+     * @return the maximum number of responses remembered for revalidation
+     */
+    public int getMaxRevalidated()
+    {
+        return maxRevalidated;
+    }
+
+    /**
+     * @param maxRevalidated the maximum number of responses remembered for revalidation, 0 to disable it
+     */
+    public void setMaxRevalidated(final int maxRevalidated)
+    {
+        this.maxRevalidated = maxRevalidated;
+    }
+
+    /**
+     * @return the maximum size in bytes of the responses remembered for revalidation
+     */
+    public long getMaxRevalidatedBytes()
+    {
+        return maxRevalidatedBytes;
+    }
+
+    /**
+     * @param maxRevalidatedBytes the maximum size in bytes of the responses remembered for revalidation,
+     *     larger responses are not remembered
+     */
+    public void setMaxRevalidatedBytes(final long maxRevalidatedBytes)
+    {
+        this.maxRevalidatedBytes = maxRevalidatedBytes;
+    }
+
+    /**
+     * @return the number of downloads
+     */
+    public long getFetchCount()
+    {
+        return fetchCount.get();
+    }
+
+    /**
+     * @return the number of remembered responses reused after a "304 Not Modified"
+     */
+    public long getNotModifiedCount()
+    {
+        return notModifiedCount.get();
+    }
+
+    /** A response which can be revalidated. */
+    private static final class Validated
+    {
+        /** the entity tag or null */
+        private final String etag;
+
+        /** the last modification date or null */
+        private final String lastModified;
+
+        /** the content */
+        private final ByteBufferDataSource content;
+
+        Validated(final String etag, final String lastModified, final ByteBufferDataSource content)
+        {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.content = content;
+        }
+    }
+
+    /**
+     * An {@code URLDataSource} backed by downloaded content, so it can be
+     * used wherever an {@code URLDataSource} is expected.
+     */
+    private static final class DownloadedDataSource extends URLDataSource
+    {
+        /** the content */
+        private final ByteBufferDataSource content;
+
+        DownloadedDataSource(final URL url, final ByteBufferDataSource content)
+        {
+            super(url);
+            this.content = content;
+        }
+
+        @Override
+        public InputStream getInputStream()
+        {
+            return content.getInputStream();
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException
+        {
+            throw new IOException("The downloaded content of " + getURL() + " cannot be written");
+        }
+
+        @Override
+        public String getContentType()
+        {
+            return content.getContentType();
+        }
+
+        @Override
+        public String getName()
+        {
+            return content.getName();
+        }
+    }
+}
@@ -0,0 +1,543 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.resolver;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.activation.DataSource;
+import javax.activation.FileDataSource;
+import javax.activation.FileTypeMap;
+
+import org.apache.commons.mail.ByteBufferDataSource;
+
+/**
+ * Creates a {@code DataSource} based on the files of a base directory which
+ * is indexed once. Resolving a location is a hash lookup in the index,
+ * without touching the file system; the content of small files is kept in
+ * memory within {@link #getMaxMemoryBytes()} so that frequently used assets
+ * are read from disk once.
+ * <p>
+ * A {@link WatchService} keeps the index up to date: created, modified and
+ * deleted files are picked up shortly after the change, and their cached
+ * content is dropped. Locations are resolved relative to the base directory;
+ * locations outside of it are not found.
+ * </p>
+ * <p>
+ * The resolver is safe for concurrent use. It runs a daemon thread watching
+ * the directory, which is stopped by {@link #close()}.
+ * </p>
+ *
+ * @since 1.6.0
+ */
+public class DataSourceIndexedFileResolver extends DataSourceBaseResolver implements Closeable
+{
+    /** default maximum size of the content kept in memory */
+    public static final long DEFAULT_MAX_MEMORY_BYTES = 32L * 1024 * 1024;
+
+    /** default maximum size of a single file kept in memory */
+    public static final long DEFAULT_MAX_FILE_BYTES = 1024L * 1024;
+
+    /** counts the watcher threads for their names */
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    /** the base directory */
+    private final Path baseDir;
+
+    /** the indexed files by location relative to the base directory, using '/', replaced when reindexing */
+    private volatile Map<String, Entry> index = new ConcurrentHashMap<>();
+
+    /** the content of hot files by location in access order, guarded by itself */
+    private final LinkedHashMap<String, ByteBufferDataSource> contents = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** the watched directories */
+    private final Map<WatchKey, Path> watchedDirs = new ConcurrentHashMap<>();
+
+    /** the watch service */
+    private final WatchService watchService;
+
+    /** the thread processing the watch events */
+    private final Thread watcher;
+
+    /** the size of the content kept in memory, guarded by contents */
+    private long memoryBytes;
+
+    private volatile long maxMemoryBytes = DEFAULT_MAX_MEMORY_BYTES;
+
+    private volatile long maxFileBytes = DEFAULT_MAX_FILE_BYTES;
+
+    /**
+     * Constructor indexing the base directory and starting to watch it.
+     *
+     * @param baseDir the base directory of the resources
+     * @param lenient shall we ignore resources not found or complain with an exception
+     * @throws IOException the directory could not be indexed or watched
+     */
+    public DataSourceIndexedFileResolver(final File baseDir, final boolean lenient) throws IOException
+    {
+        super(lenient);
+        this.baseDir = baseDir.toPath().toAbsolutePath().normalize();
+
+        if (!Files.isDirectory(this.baseDir))
+        {
+            throw new IOException("Not a directory : " + this.baseDir);
+        }
+
+        this.watchService = this.baseDir.getFileSystem().newWatchService();
+        try
+        {
+            indexTree(this.baseDir, this.index);
+        }
+        catch (final IOException e)
+        {
+            watchService.close();
+            throw e;
+        }
+
+        this.watcher = new Thread(this::watch, "commons-email-file-watcher-" + THREAD_COUNTER.incrementAndGet());
+        this.watcher.setDaemon(true);
+        this.watcher.start();
+    }
+
+    /**
+     * Get the base directory used for resolving relative resource locations.
+     *
+     * @return the base directory
+     */
+    public File getBaseDir()
+    {
+        return baseDir.toFile();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public DataSource resolve(final String resourceLocation) throws IOException
+    {
+        return resolve(resourceLocation, isLenient());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public DataSource resolve(final String resourceLocation, final boolean isLenient) throws IOException
+    {
+        if (isCid(resourceLocation))
+        {
+            return null;
+        }
+
+        final String key = toKey(resourceLocation);
+        final Entry entry = key != null ? index.get(key) : null;
+
+        if (entry == null)
+        {
+            if (isLenient)
+            {
+                return null;
+            }
+            throw new IOException("Cant resolve the following file resource :" + resourceLocation);
+        }
+
+        synchronized (contents)
+        {
+            final ByteBufferDataSource content = contents.get(key);
+            if (content != null)
+            {
+                return content;
+            }
+        }
+
+        if (entry.size > maxFileBytes || entry.size > maxMemoryBytes)
+        {
+            return new FileDataSource(entry.path.toFile());
+        }
+        return load(key, entry);
+    }
+
+    /**
+     * Reads a file into memory and keeps it unless it changed meanwhile.
+     *
+     * @param key the location
+     * @param entry the indexed file
+     * @return the content
+     * @throws IOException the file could not be read
+     */
+    private DataSource load(final String key, final Entry entry) throws IOException
+    {
+        final ByteBufferDataSource content;
+        try (InputStream is = Files.newInputStream(entry.path))
+        {
+            content = ByteBufferDataSource.from(is, entry.size, true, entry.contentType,
+                    entry.path.getFileName().toString());
+        }
+
+        synchronized (contents)
+        {
+            // a watch event may have replaced or removed the entry while reading
+            if (index.get(key) == entry)
+            {
+                final ByteBufferDataSource previous = contents.put(key, content);
+                if (previous != null)
+                {
+                    memoryBytes -= previous.getSize();
+                }
+                memoryBytes += content.getSize();
+                evict();
+            }
+        }
+        return content;
+    }
+
+    /**
+     * Evicts the least recently used content until it fits into the budget.
+     */
+    private void evict()
+    {
+        final Iterator<ByteBufferDataSource> it = contents.values().iterator();
+
+        while (memoryBytes > maxMemoryBytes && it.hasNext())
+        {
+            memoryBytes -= it.next().getSize();
+            it.remove();
+        }
+    }
+
+    /**
+     * Converts a location into an index key.
+     *
+     * @param resourceLocation the location
+     * @return the key or null if the location is outside of the base directory
+     */
+    private String toKey(final String resourceLocation)
+    {
+        try
+        {
+            final Path path = baseDir.resolve(resourceLocation).normalize();
+            return path.startsWith(baseDir) ? toKey(path) : null;
+        }
+        catch (final InvalidPathException e)
+        {
+            return null;
+        }
+    }
+
+    private String toKey(final Path path)
+    {
+        final StringBuilder key = new StringBuilder();
+
+        for (final Path name : baseDir.relativize(path))
+        {
+            if (key.length() > 0)
+            {
+                key.append('/');
+            }
+            key.append(name);
+        }
+        return key.toString();
+    }
+
+    /**
+     * Indexes the files of a directory tree and watches its directories.
+     *
+     * @param dir the directory
+     * @param target the index to add the files to
+     * @throws IOException the directory could not be read
+     */
+    private void indexTree(final Path dir, final Map<String, Entry> target) throws IOException
+    {
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>()
+        {
+            @Override
+            public FileVisitResult preVisitDirectory(final Path directory, final BasicFileAttributes attrs)
+                    throws IOException
+            {
+                watchedDirs.put(directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY), directory);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs)
+            {
+                if (attrs.isRegularFile())
+                {
+                    put(target, file, attrs.size());
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(final Path file, final IOException e)
+            {
+                // a file deleted while indexing
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void put(final Map<String, Entry> target, final Path file, final long size)
+    {
+        final String key = toKey(file);
+        final String contentType = FileTypeMap.getDefaultFileTypeMap().getContentType(file.getFileName().toString());
+
+        synchronized (contents)
+        {
+            target.put(key, new Entry(file, size, contentType));
+            invalidate(key);
+        }
+    }
+
+    /**
+     * Removes a file or a directory tree from the index.
+     *
+     * @param path the path
+     */
+    private void remove(final Path path)
+    {
+        final String key = toKey(path);
+        final String prefix = key + "/";
+
+        synchronized (contents)
+        {
+            index.remove(key);
+            invalidate(key);
+
+            for (final Iterator<String> it = index.keySet().iterator(); it.hasNext();)
+            {
+                final String indexed = it.next();
+                if (indexed.startsWith(prefix))
+                {
+                    it.remove();
+                    invalidate(indexed);
+                }
+            }
+        }
+    }
+
+    private void invalidate(final String key)
+    {
+        final ByteBufferDataSource previous = contents.remove(key);
+        if (previous != null)
+        {
+            memoryBytes -= previous.getSize();
+        }
+    }
+
+    /**
+     * Processes the watch events until the resolver is closed.
+     */
+    private void watch()
+    {
+        try
+        {
+            while (true)
+            {
+                final WatchKey key = watchService.take();
+                final Path dir = watchedDirs.get(key);
+
+                for (final WatchEvent<?> event : key.pollEvents())
+                {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+                    {
+                        reindex();
+                    }
+                    else if (dir != null)
+                    {
+                        handle(event.kind(), dir.resolve((Path) event.context()));
+                    }
+                }
+
+                if (!key.reset())
+                {
+                    watchedDirs.remove(key);
+                }
+            }
+        }
+        catch (final InterruptedException | ClosedWatchServiceException e)
+        {
+            // closed
+        }
+    }
+
+    private void handle(final WatchEvent.Kind<?> kind, final Path path)
+    {
+        if (kind == StandardWatchEventKinds.ENTRY_DELETE)
+        {
+            remove(path);
+            return;
+        }
+
+        try
+        {
+            final BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+
+            if (attrs.isDirectory())
+            {
+                if (kind == StandardWatchEventKinds.ENTRY_CREATE)
+                {
+                    indexTree(path, index);
+                }
+            }
+            else if (attrs.isRegularFile())
+            {
+                put(index, path, attrs.size());
+            }
+        }
+        catch (final IOException e)
+        {
+            // deleted meanwhile, a delete event follows
+            remove(path);
+        }
+    }
+
+    /**
+     * Rebuilds the index after watch events were lost. The current index keeps
+     * serving lookups until the new one is complete and replaces it.
+     */
+    void reindex()
+    {
+        Map<String, Entry> rebuilt = new ConcurrentHashMap<>();
+
+        try
+        {
+            indexTree(baseDir, rebuilt);
+        }
+        catch (final IOException e)
+        {
+            // the base directory is gone, nothing can be resolved
+            rebuilt = new ConcurrentHashMap<>();
+        }
+
+        synchronized (contents)
+        {
+            index = rebuilt;
+            contents.clear();
+            memoryBytes = 0;
+        }
+    }
+
+    /**
+     * Stops watching the base directory. The index is no longer updated.
+     *
+     * @throws IOException closing the watch service failed
+     */
+    @Override
+    public void close() throws IOException
+    {
+        watchService.close();
+        watcher.interrupt();
+    }
+
+    /**
+     * @return the number of indexed files
+     */
+    public int size()
+    {
+        return index.size();
+    }
+
+    /**
+     * @return the size of the content kept in memory in bytes
+     */
+    public long getMemoryBytes()
+    {
+        synchronized (contents)
+        {
+            return memoryBytes;
+        }
+    }
+
+    /**
+     * @return the maximum size of the content kept in memory in bytes
+     */
+    public long getMaxMemoryBytes()
+    {
+        return maxMemoryBytes;
+    }
+
+    /**
+     * @param maxMemoryBytes the maximum size of the content kept in memory in bytes, 0 to read files every time
+     */
+    public void setMaxMemoryBytes(final long maxMemoryBytes)
+    {
+        synchronized (contents)
+        {
+            this.maxMemoryBytes = maxMemoryBytes;
+            evict();
+        }
+    }
+
+    /**
+     * @return the maximum size of a single file kept in memory in bytes
+     */
+    public long getMaxFileBytes()
+    {
+        return maxFileBytes;
+    }
+
+    /**
+     * @param maxFileBytes the maximum size of a single file kept in memory in bytes
+     */
+    public void setMaxFileBytes(final long maxFileBytes)
+    {
+        this.maxFileBytes = maxFileBytes;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "DataSourceIndexedFileResolver[" + baseDir + ", files=" + size() + ", memoryBytes=" + getMemoryBytes()
+                + "]";
+    }
+
+    /** An indexed file. */
+    private static final class Entry
+    {
+        /** the file */
+        private final Path path;
+
+        /** the size when it was indexed */
+        private final long size;
+
+        /** the content type derived from the file name */
+        private final String contentType;
+
+        Entry(final Path path, final long size, final String contentType)
+        {
+            this.path = path;
+            this.size = size;
+            this.contentType = contentType;
+        }
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.resolver;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.activation.DataSource;
+
+import org.apache.commons.mail.ByteBufferDataSource;
+
+/**
+ * Creates a {@code DataSource} from a resource pack written at build time by
+ * {@link ResourcePackWriter}. The pack is memory-mapped, or read once if it
+ * is not a file, and its index is parsed when the resolver is created.
+ * Resolving a location is a lookup returning a data source which shares
+ * the bytes of the pack, so nothing is read or copied per message.
+ * <pre>
+ * DataSourceResolver resolver = DataSourcePackResolver.fromClassPath("/templates.pack", false);
+ * email.setDataSourceResolver(resolver);
+ * </pre>
+ * Locations are relative to the directory the pack was built from; a
+ * leading "/" or "./" is ignored.
+ *
+ * @since 1.6.0
+ */
+public class DataSourcePackResolver extends DataSourceBaseResolver
+{
+    /** the magic number starting a pack, "CEPK" */
+    static final int MAGIC = 0x4345504B;
+
+    /** the version of the pack format */
+    static final int VERSION = 1;
+
+    /** the size of the header preceding the index */
+    static final int HEADER_SIZE = 16;
+
+    /** the resources by location */
+    private final Map<String, ByteBufferDataSource> resources;
+
+    /**
+     * Constructor memory-mapping a pack file.
+     *
+     * @param pack the pack file
+     * @param lenient shall we ignore resources not found or throw an exception?
+     * @throws IOException the pack could not be read or is invalid
+     */
+    public DataSourcePackResolver(final File pack, final boolean lenient) throws IOException
+    {
+        this(map(pack), lenient);
+    }
+
+    /**
+     * Constructor using a pack already in memory. The buffer is shared and
+     * must not be modified afterwards.
+     *
+     * @param pack the content of the pack
+     * @param lenient shall we ignore resources not found or throw an exception?
+     * @throws IOException the pack is invalid
+     */
+    public DataSourcePackResolver(final ByteBuffer pack, final boolean lenient) throws IOException
+    {
+        super(lenient);
+        this.resources = Collections.unmodifiableMap(parse(pack.slice()));
+    }
+
+    /**
+     * Creates a resolver for a pack on the class path. A pack in a directory
+     * is memory-mapped, a pack in a jar is read into memory once.
+     *
+     * @param resourceName the absolute name of the pack, e.g. "/templates.pack"
+     * @param lenient shall we ignore resources not found or throw an exception?
+     * @return the resolver
+     * @throws IOException the pack was not found, could not be read or is invalid
+     */
+    public static DataSourcePackResolver fromClassPath(final String resourceName, final boolean lenient)
+            throws IOException
+    {
+        final URL url = DataSourcePackResolver.class.getResource(resourceName);
+
+        if (url == null)
+        {
+            throw new IOException("The following class path resource was not found : " + resourceName);
+        }
+
+        if ("file".equals(url.getProtocol()))
+        {
+            try
+            {
+                return new DataSourcePackResolver(new File(url.toURI()), lenient);
+            }
+            catch (final URISyntaxException e)
+            {
+                // not a valid file URI, read it as a stream
+            }
+        }
+
+        final URLConnection connection = url.openConnection();
+        try (InputStream is = connection.getInputStream())
+        {
+            final ByteBufferDataSource pack = ByteBufferDataSource.from(is, connection.getContentLengthLong(), true,
+                    null, resourceName);
+            return new DataSourcePackResolver(pack.asByteBuffer(), lenient);
+        }
+    }
+
+    private static ByteBuffer map(final File pack) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(pack.toPath(), StandardOpenOption.READ))
+        {
+            if (channel.size() > Integer.MAX_VALUE)
+            {
+                throw new IOException("Resource pack too large : " + pack);
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Parses the index of a pack and creates a data source for every resource.
+     *
+     * @param pack the pack positioned at its start
+     * @return the resources by location
+     * @throws IOException the pack is invalid
+     */
+    private static Map<String, ByteBufferDataSource> parse(final ByteBuffer pack) throws IOException
+    {
+        if (pack.remaining() < HEADER_SIZE || pack.getInt(0) != MAGIC)
+        {
+            throw new IOException("Not a resource pack");
+        }
+        if (pack.getInt(4) != VERSION)
+        {
+            throw new IOException("Unsupported resource pack version : " + pack.getInt(4));
+        }
+
+        final int count = pack.getInt(8);
+        final int indexSize = pack.getInt(12);
+        final int dataStart = HEADER_SIZE + indexSize;
+
+        if (count < 0 || indexSize < 0 || dataStart > pack.limit() || dataStart < 0)
+        {
+            throw new IOException("Corrupt resource pack index");
+        }
+
+        final ByteBuffer index = pack.duplicate();
+        ((Buffer) index).position(HEADER_SIZE).limit(dataStart);
+
+        final Map<String, ByteBufferDataSource> resources = new HashMap<>(count * 4 / 3 + 1);
+
+        try (DataInputStream in = new DataInputStream(new ByteBufferDataSource(index, null).getInputStream()))
+        {
+            for (int i = 0; i < count; i++)
+            {
+                final String name = in.readUTF();
+                final String type = in.readUTF();
+                final int offset = in.readInt();
+                final int length = in.readInt();
+
+                if (offset < 0 || length < 0 || (long) dataStart + offset + length > pack.limit())
+                {
+                    throw new IOException("Corrupt resource pack entry : " + name);
+                }
+
+                final ByteBuffer content = pack.duplicate();
+                ((Buffer) content).position(dataStart + offset).limit(dataStart + offset + length);
+                resources.put(name, new ByteBufferDataSource(content, type, name));
+            }
+        }
+        return resources;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public DataSource resolve(final String resourceLocation) throws IOException
+    {
+        return resolve(resourceLocation, isLenient());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public DataSource resolve(final String resourceLocation, final boolean isLenient) throws IOException
+    {
+        if (isCid(resourceLocation) || isHttpUrl(resourceLocation))
+        {
+            return null;
+        }
+
+        final DataSource result = resources.get(getResourceName(resourceLocation));
+
+        if (result == null && !isLenient)
+        {
+            throw new IOException("The following packed resource was not found : " + resourceLocation);
+        }
+        return result;
+    }
+
+    /**
+     * Strips the leading "/" and "./" of a location.
+     *
+     * @param resourceLocation the location
+     * @return the name in the pack
+     */
+    private static String getResourceName(final String resourceLocation)
+    {
+        int start = 0;
+
+        while (true)
+        {
+            if (resourceLocation.startsWith("/", start))
+            {
+                start++;
+            }
+            else if (resourceLocation.startsWith("./", start))
+            {
+                start += 2;
+            }
+            else
+            {
+                return resourceLocation.substring(start);
+            }
+        }
+    }
+
+    /**
+     * @return the number of resources in the pack
+     */
+    public int size()
+    {
+        return resources.size();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "DataSourcePackResolver[resources=" + size() + "]";
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.resolver;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.activation.DataSource;
+
+import org.apache.commons.mail.DataSourceResolver;
+
+/**
+ * A composite data source resolver dispatching by the scheme of the resource
+ * location. Unlike {@link DataSourceCompositeResolver}, which asks every
+ * resolver in turn, a location is passed to the single resolver registered
+ * for its scheme, found by a hash lookup:
+ * <pre>
+ * DataSourceRoutingResolver resolver = new DataSourceRoutingResolver(true);
+ * DataSourceResolver http = new DataSourceHttpResolver(null, true);
+ * resolver.addRoute("http", http);
+ * resolver.addRoute("https", http);
+ * resolver.addPrefixRoute("classpath", new DataSourceClassPathResolver("/", true));
+ * resolver.setRelativeResolver(new DataSourceFileResolver(new File("templates"), true));
+ * </pre>
+ * Locations without a scheme, such as "images/logo.gif" or "/logo.gif",
+ * go to the relative resolver. Locations no route matches are passed to the
+ * fallback resolvers in order, like a {@link DataSourceCompositeResolver}.
+ * "cid:" references are not resolved unless a route is registered for them.
+ * <p>
+ * Routes can be changed at any time and the resolver is safe for concurrent use.
+ * </p>
+ *
+ * @since 1.6.0
+ */
+public class DataSourceRoutingResolver extends DataSourceBaseResolver
+{
+    /** the routes by lower case scheme */
+    private final ConcurrentMap<String, Route> routes = new ConcurrentHashMap<>();
+
+    /** the resolvers tried in order if no route matches */
+    private final DataSourceResolver[] fallbackResolvers;
+
+    /** the number of locations passed to the fallback resolvers */
+    private final LongAdder fallbackCount = new LongAdder();
+
+    /** the route of locations without a scheme, may be null */
+    private volatile Route relativeRoute;
+
+    /**
+     * Constructor.
+     *
+     * @param lenient shall we ignore resources not found or throw an exception?
+     */
+    public DataSourceRoutingResolver(final boolean lenient)
+    {
+        this(new DataSourceResolver[0], lenient);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param fallbackResolvers the resolvers tried in order if no route matches
+     * @param lenient shall we ignore resources not found or throw an exception?
+     */
+    public DataSourceRoutingResolver(final DataSourceResolver[] fallbackResolvers, final boolean lenient)
+    {
+        super(lenient);
+        this.fallbackResolvers = fallbackResolvers.clone();
+    }
+
+    /**
+     * Routes the locations with the given scheme to a resolver, passing them unchanged.
+     *
+     * @param scheme the scheme such as "https", without the colon
+     * @param dataSourceResolver the resolver
+     * @return this resolver
+     */
+    public DataSourceRoutingResolver addRoute(final String scheme, final DataSourceResolver dataSourceResolver)
+    {
+        routes.put(toKey(scheme), new Route(dataSourceResolver, false));
+        return this;
+    }
+
+    /**
+     * Routes the locations with the given scheme to a resolver, passing them
+     * without the scheme, so "classpath:images/logo.gif" is resolved as "images/logo.gif".
+     *
+     * @param scheme the scheme such as "classpath", without the colon
+     * @param dataSourceResolver the resolver
+     * @return this resolver
+     */
+    public DataSourceRoutingResolver addPrefixRoute(final String scheme, final DataSourceResolver dataSourceResolver)
+    {
+        routes.put(toKey(scheme), new Route(dataSourceResolver, true));
+        return this;
+    }
+
+    /**
+     * Removes the route of a scheme.
+     *
+     * @param scheme the scheme
+     * @return this resolver
+     */
+    public DataSourceRoutingResolver removeRoute(final String scheme)
+    {
+        routes.remove(toKey(scheme));
+        return this;
+    }
+
+    /**
+     * Set the resolver of the locations without a scheme.
+     *
+     * @param dataSourceResolver the resolver, null to pass them to the fallback resolvers
+     */
+    public void setRelativeResolver(final DataSourceResolver dataSourceResolver)
+    {
+        this.relativeRoute = dataSourceResolver != null ? new Route(dataSourceResolver, false) : null;
+    }
+
+    /**
+     * Get the resolver of the locations without a scheme.
+     *
+     * @return the resolver or null
+     */
+    public DataSourceResolver getRelativeResolver()
+    {
+        final Route route = relativeRoute;
+        return route != null ? route.dataSourceResolver : null;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public DataSource resolve(final String resourceLocation) throws IOException
+    {
+        return resolve(resourceLocation, isLenient());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public DataSource resolve(final String resourceLocation, final boolean isLenient) throws IOException
+    {
+        final int colon = getSchemeEnd(resourceLocation);
+        final Route route = colon < 0
+                ? relativeRoute
+                : routes.get(resourceLocation.substring(0, colon).toLowerCase(Locale.ENGLISH));
+
+        if (route != null)
+        {
+            route.hits.increment();
+            return route.dataSourceResolver.resolve(
+                    route.stripScheme ? resourceLocation.substring(colon + 1) : resourceLocation, isLenient);
+        }
+
+        if (isCid(resourceLocation))
+        {
+            return null;
+        }
+
+        fallbackCount.increment();
+
+        // a resolver not finding the resource must not stop the next one from trying
+        for (final DataSourceResolver dataSourceResolver : fallbackResolvers)
+        {
+            final DataSource dataSource = dataSourceResolver.resolve(resourceLocation, true);
+
+            if (dataSource != null)
+            {
+                return dataSource;
+            }
+        }
+
+        if (isLenient)
+        {
+            return null;
+        }
+        throw new IOException("The following resource was not found : " + resourceLocation);
+    }
+
+    /**
+     * Finds the colon ending the scheme of a location. Single letters
+     * are not taken as a scheme, so Windows paths like "C:\logo.gif" are relative.
+     *
+     * @param resourceLocation the location
+     * @return the index of the colon or -1 if there is no scheme
+     */
+    private static int getSchemeEnd(final String resourceLocation)
+    {
+        final int length = resourceLocation.length();
+
+        if (length == 0 || !Character.isLetter(resourceLocation.charAt(0)))
+        {
+            return -1;
+        }
+
+        for (int i = 1; i < length; i++)
+        {
+            final char c = resourceLocation.charAt(i);
+
+            if (c == ':')
+            {
+                return i > 1 ? i : -1;
+            }
+            if (!Character.isLetterOrDigit(c) && c != '+' && c != '-' && c != '.')
+            {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private static String toKey(final String scheme)
+    {
+        if (scheme == null || scheme.isEmpty())
+        {
+            throw new IllegalArgumentException("scheme must not be empty");
+        }
+        return scheme.toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Get the number of locations passed to the route of a scheme.
+     *
+     * @param scheme the scheme or null for the locations without a scheme
+     * @return the number of locations, 0 if there is no such route
+     */
+    public long getHitCount(final String scheme)
+    {
+        final Route route = scheme == null ? relativeRoute : routes.get(toKey(scheme));
+        return route != null ? route.hits.sum() : 0;
+    }
+
+    /**
+     * Get the number of locations no route matched.
+     *
+     * @return the number of locations passed to the fallback resolvers
+     */
+    public long getFallbackCount()
+    {
+        return fallbackCount.sum();
+    }
+
+    /** A resolver and how locations are passed to it. */
+    private static final class Route
+    {
+        /** the resolver */
+        private final DataSourceResolver dataSourceResolver;
+
+        /** pass the locations without the scheme */
+        private final boolean stripScheme;
+
+        /** the number of locations passed to the resolver */
+        private final LongAdder hits = new LongAdder();
+
+        Route(final DataSourceResolver dataSourceResolver, final boolean stripScheme)
+        {
+            if (dataSourceResolver == null)
+            {
+                throw new IllegalArgumentException("dataSourceResolver must not be null");
+            }
+            this.dataSourceResolver = dataSourceResolver;
+            this.stripScheme = stripScheme;
+        }
+    }
+}
@@ -23,7 +23,9 @@ import java.net.MalformedURLException;
 import java.net.URL;
 
 /**
- * Creates a {@code DataSource} based on an URL.
+ * Creates a {@code DataSource} based on an URL. The URL is opened once to
+ * check it and once more when the email is written, see
+ * {@link DataSourceHttpResolver} for a resolver downloading it once.
  *
  * @since 1.3
  */
@@ -83,7 +85,8 @@ public class DataSourceUrlResolver extends DataSourceBaseResolver
             {
                 final URL url = createUrl(resourceLocation);
                 result = new URLDataSource(url);
-                result.getInputStream();
+                // check that the resource exists, it is read again when the email is written
+                result.getInputStream().close();
             }
 
             return result;
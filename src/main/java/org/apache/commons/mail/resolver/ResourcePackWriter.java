@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.resolver;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.activation.FileTypeMap;
+
+/**
+ * Bundles the files of a directory into a single resource pack read by
+ * {@link DataSourcePackResolver}. The content types are determined once when
+ * the pack is written.
+ * <p>
+ * The writer is meant to run during the build, for example with the
+ * exec-maven-plugin after the resources were copied:
+ * <pre>
+ * &lt;execution&gt;
+ *   &lt;phase&gt;process-classes&lt;/phase&gt;
+ *   &lt;goals&gt;&lt;goal&gt;java&lt;/goal&gt;&lt;/goals&gt;
+ *   &lt;configuration&gt;
+ *     &lt;mainClass&gt;org.apache.commons.mail.resolver.ResourcePackWriter&lt;/mainClass&gt;
+ *     &lt;arguments&gt;
+ *       &lt;argument&gt;${project.basedir}/src/main/templates&lt;/argument&gt;
+ *       &lt;argument&gt;${project.build.outputDirectory}/templates.pack&lt;/argument&gt;
+ *     &lt;/arguments&gt;
+ *   &lt;/configuration&gt;
+ * &lt;/execution&gt;
+ * </pre>
+ * The pack consists of a header (magic, version, number of resources, size
+ * of the index), the index (name, content type, offset and length of every
+ * resource) and the contents. The files are sorted by name, so the same
+ * directory always gives the same pack.
+ *
+ * @since 1.6.0
+ */
+public final class ResourcePackWriter
+{
+    private ResourcePackWriter()
+    {
+    }
+
+    /**
+     * Writes a pack, see {@link #write(File, File)}.
+     *
+     * @param args the directory to pack and the pack file to write
+     * @throws IOException the files could not be read or the pack could not be written
+     */
+    public static void main(final String[] args) throws IOException
+    {
+        if (args.length != 2)
+        {
+            throw new IllegalArgumentException("Usage: ResourcePackWriter <directory> <pack file>");
+        }
+        write(new File(args[0]), new File(args[1]));
+    }
+
+    /**
+     * Writes the files of a directory and its subdirectories into a pack.
+     * The resources are named by their path relative to the directory,
+     * separated by "/".
+     *
+     * @param baseDir the directory to pack
+     * @param pack the pack file to write
+     * @throws IOException the files could not be read or the pack could not be written
+     */
+    public static void write(final File baseDir, final File pack) throws IOException
+    {
+        final Path base = baseDir.toPath();
+        final List<Path> files;
+
+        try (Stream<Path> paths = Files.walk(base))
+        {
+            files = paths.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+
+        final List<String> names = new ArrayList<>(files.size());
+        for (final Path file : files)
+        {
+            names.add(base.relativize(file).toString().replace(File.separatorChar, '/'));
+        }
+        Collections.sort(names);
+
+        final ByteArrayOutputStream index = new ByteArrayOutputStream();
+        final DataOutputStream indexOut = new DataOutputStream(index);
+        long offset = 0;
+
+        for (final String name : names)
+        {
+            final long length = Files.size(base.resolve(name));
+
+            if (offset + length > Integer.MAX_VALUE)
+            {
+                throw new IOException("Resources too large for a pack : " + baseDir);
+            }
+            indexOut.writeUTF(name);
+            indexOut.writeUTF(FileTypeMap.getDefaultFileTypeMap().getContentType(name));
+            indexOut.writeInt((int) offset);
+            indexOut.writeInt((int) length);
+            offset += length;
+        }
+
+        final File parent = pack.getAbsoluteFile().getParentFile();
+        if (parent != null)
+        {
+            Files.createDirectories(parent.toPath());
+        }
+
+        try (OutputStream os = Files.newOutputStream(pack.toPath());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os)))
+        {
+            out.writeInt(DataSourcePackResolver.MAGIC);
+            out.writeInt(DataSourcePackResolver.VERSION);
+            out.writeInt(names.size());
+            out.writeInt(index.size());
+            index.writeTo(out);
+
+            for (final String name : names)
+            {
+                Files.copy(base.resolve(name), out);
+            }
+        }
+    }
+}
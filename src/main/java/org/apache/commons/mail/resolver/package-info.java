@@ -18,8 +18,12 @@
  * Contains implementation classes to resolve data sources from the following locations:
  * <ul>
  *   <li>class path</li>
- *   <li>file system</li>
+ *   <li>file system, optionally through an index kept up to date by a
+ *       {@link org.apache.commons.mail.resolver.DataSourceIndexedFileResolver}</li>
  *   <li>URL</li>
+ *   <li>a resource pack written at build time by {@link org.apache.commons.mail.resolver.ResourcePackWriter}</li>
  * </ul>
+ * A {@link org.apache.commons.mail.resolver.DataSourceRoutingResolver} dispatches locations to
+ * resolvers by their scheme. The results of any resolver can be cached by a {@link org.apache.commons.mail.resolver.DataSourceCachingResolver}.
  */
 package org.apache.commons.mail.resolver;
@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.retry;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.mail.Address;
+
+/**
+ * The outcome of delivering a message with {@link RetryingSender}.
+ *
+ * @since 1.6.0
+ */
+public final class DeliveryReport
+{
+    /** the message id */
+    private final String messageId;
+
+    /** the recipients which accepted the message */
+    private final List<Address> delivered;
+
+    /** the last failure of every recipient which did not */
+    private final Map<Address, SmtpFailure> failures;
+
+    /** the number of attempts made */
+    private final int attempts;
+
+    DeliveryReport(final String messageId, final List<Address> delivered,
+            final Map<Address, SmtpFailure> failures, final int attempts)
+    {
+        this.messageId = messageId;
+        this.delivered = Collections.unmodifiableList(delivered);
+        this.failures = Collections.unmodifiableMap(failures);
+        this.attempts = attempts;
+    }
+
+    /**
+     * @return the message id
+     */
+    public String getMessageId()
+    {
+        return messageId;
+    }
+
+    /**
+     * @return the recipients which accepted the message
+     */
+    public List<Address> getDelivered()
+    {
+        return delivered;
+    }
+
+    /**
+     * Gets the recipients the message could not be delivered to. Transient
+     * failures are only reported after the retries or the retry budget are
+     * exhausted.
+     *
+     * @return the last failure by recipient
+     */
+    public Map<Address, SmtpFailure> getFailures()
+    {
+        return failures;
+    }
+
+    /**
+     * @return the number of attempts made
+     */
+    public int getAttempts()
+    {
+        return attempts;
+    }
+
+    /**
+     * @return true if all recipients accepted the message
+     */
+    public boolean isComplete()
+    {
+        return failures.isEmpty();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "DeliveryReport[" + messageId + ", delivered=" + delivered + ", failures=" + failures
+                + ", attempts=" + attempts + "]";
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.retry;
+
+/**
+ * Limits the retries sent to one destination relative to the number of
+ * messages sent to it. Every message deposits a fraction of a token, every
+ * retry withdraws a whole one, so in the long run at most
+ * {@code retryRatio} retries are made per message. A full budget allows a
+ * burst of {@code maxBalance} retries.
+ * <p>
+ * This keeps a degraded relay from being hit by a retry storm: once the
+ * budget is used up, transient failures are reported instead of retried.
+ *
+ * @since 1.6.0
+ */
+public final class RetryBudget
+{
+    /** the tokens deposited per message */
+    private final double retryRatio;
+
+    /** the maximum number of tokens */
+    private final double maxBalance;
+
+    /** the available tokens */
+    private double balance;
+
+    /**
+     * Constructor.
+     *
+     * @param retryRatio the retries allowed per message, e.g. 0.2
+     * @param maxBalance the maximum burst of retries, the budget starts full
+     * @throws IllegalArgumentException if a value is negative
+     */
+    public RetryBudget(final double retryRatio, final int maxBalance)
+    {
+        if (retryRatio < 0 || maxBalance < 0)
+        {
+            throw new IllegalArgumentException("retryRatio and maxBalance must not be negative");
+        }
+        this.retryRatio = retryRatio;
+        this.maxBalance = maxBalance;
+        this.balance = maxBalance;
+    }
+
+    /**
+     * Records a message sent to the destination.
+     */
+    public synchronized void deposit()
+    {
+        balance = Math.min(maxBalance, balance + retryRatio);
+    }
+
+    /**
+     * Withdraws a token for a retry.
+     *
+     * @return true if the retry is allowed
+     */
+    public synchronized boolean tryAcquire()
+    {
+        if (balance >= 1)
+        {
+            balance--;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of retries currently allowed
+     */
+    public synchronized int getAvailableRetries()
+    {
+        return (int) balance;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return "RetryBudget[balance=" + balance + ", max=" + maxBalance + ", ratio=" + retryRatio + "]";
+    }
+}
@@ -0,0 +1,514 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.retry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.mail.Address;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.MimeMessage;
+
+import org.apache.commons.mail.Email;
+import org.apache.commons.mail.EmailException;
+import org.apache.commons.mail.transport.PooledTransport;
+import org.apache.commons.mail.transport.SmtpConnectionKey;
+import org.apache.commons.mail.transport.SmtpConnectionPool;
+import org.apache.commons.mail.transport.SmtpRateLimiter;
+import org.apache.commons.mail.transport.SmtpRelay;
+import org.apache.commons.mail.transport.SmtpRelayGroup;
+
+/**
+ * Sends emails and retries transient failures.
+ * <p>
+ * Failures are classified by their SMTP reply code (see {@link SmtpFailure}):
+ * recipients rejected with a 5xx reply are given up immediately, while 4xx
+ * replies and I/O errors are retried, and only for the recipients which have
+ * not accepted the message yet. The delay between attempts grows
+ * exponentially and is randomized by a jitter so that many senders do not
+ * retry in lockstep. Every destination (host and port) has a
+ * {@link RetryBudget} limiting its retries relative to its traffic.
+ * <pre>
+ * RetryingSender sender = new RetryingSender();
+ * DeliveryReport report = sender.send(email);
+ * if (!report.isComplete())
+ * {
+ *     // report.getFailures() tells which recipients failed and why
+ * }
+ * </pre>
+ * Instances are thread-safe and meant to be shared, as the retry budgets
+ * are kept per instance.
+ *
+ * @since 1.6.0
+ */
+public class RetryingSender
+{
+    /** default maximum number of attempts per message */
+    public static final int DEFAULT_MAX_ATTEMPTS = 5;
+
+    /** default delay before the first retry */
+    public static final long DEFAULT_INITIAL_DELAY_MILLIS = 1000;
+
+    /** default upper bound of the delay between attempts */
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 60000;
+
+    /** default fraction of the delay which is randomized */
+    public static final double DEFAULT_JITTER = 0.5;
+
+    /** default retries allowed per message and destination */
+    public static final double DEFAULT_RETRY_RATIO = 0.2;
+
+    /** default burst of retries allowed per destination */
+    public static final int DEFAULT_RETRY_BURST = 20;
+
+    /** the retry budgets by destination */
+    private final ConcurrentMap<String, RetryBudget> budgets = new ConcurrentHashMap<>();
+
+    private volatile int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+
+    private volatile long initialDelayMillis = DEFAULT_INITIAL_DELAY_MILLIS;
+
+    private volatile long maxDelayMillis = DEFAULT_MAX_DELAY_MILLIS;
+
+    private volatile double jitter = DEFAULT_JITTER;
+
+    private volatile double retryRatio = DEFAULT_RETRY_RATIO;
+
+    private volatile int retryBurst = DEFAULT_RETRY_BURST;
+
+    /**
+     * Builds and sends the email, retrying transient failures. The email's
+     * connection pool and rate limiter are used if it has them, and its
+     * relay group instead of its session if it has one.
+     *
+     * @param email the email to send
+     * @return the outcome of the delivery
+     * @throws EmailException the email could not be built
+     */
+    public DeliveryReport send(final Email email) throws EmailException
+    {
+        try
+        {
+            email.buildMimeMessage();
+
+            final MimeMessage message = email.getMimeMessage();
+            message.saveChanges();
+
+            if (email.getRelayGroup() != null)
+            {
+                return send(email.getRelayGroup(), message, email.getConnectionPool(),
+                        email.createEnvelopeProperties());
+            }
+            return send(email.getMailSession(), message, email.getConnectionPool(), email.getRateLimiter());
+        }
+        catch (final MessagingException e)
+        {
+            throw new EmailException(e);
+        }
+        finally
+        {
+            email.releaseResources();
+        }
+    }
+
+    /**
+     * Sends the message to all its recipients, retrying transient failures.
+     *
+     * @param session the session describing the destination
+     * @param message the message, {@code saveChanges()} must have been called
+     * @param connectionPool the pool to borrow connections from, null to open a connection per attempt
+     * @return the outcome of the delivery
+     * @throws MessagingException the recipients of the message could not be determined
+     */
+    public DeliveryReport send(final Session session, final MimeMessage message, final SmtpConnectionPool connectionPool)
+            throws MessagingException
+    {
+        return send(session, message, connectionPool, null);
+    }
+
+    /**
+     * Sends the message to all its recipients, retrying transient failures.
+     * Every attempt obtains a permit of the rate limiter first.
+     *
+     * @param session the session describing the destination
+     * @param message the message, {@code saveChanges()} must have been called
+     * @param connectionPool the pool to borrow connections from, null to open a connection per attempt
+     * @param rateLimiter the limiter for sends to the destination, null to not limit the attempts
+     * @return the outcome of the delivery
+     * @throws MessagingException the recipients of the message could not be determined
+     */
+    public DeliveryReport send(final Session session, final MimeMessage message, final SmtpConnectionPool connectionPool,
+            final SmtpRateLimiter rateLimiter) throws MessagingException
+    {
+        return send(message, getRetryBudget(getDestination(session)),
+                recipients -> sendOnce(session, message, connectionPool, rateLimiter, recipients));
+    }
+
+    /**
+     * Sends the message to all its recipients through a relay group,
+     * retrying transient failures. Every attempt fails over to the next
+     * relay of the group, and the retries of all relays share one budget.
+     *
+     * @param relayGroup the relays to send through
+     * @param message the message, {@code saveChanges()} must have been called
+     * @param connectionPool the pool to borrow connections from, null to open a connection per attempt
+     * @param envelope the envelope settings of the message, null for none
+     * @return the outcome of the delivery
+     * @throws MessagingException the recipients of the message could not be determined
+     * @see SmtpRelayGroup#send(Message, Address[], SmtpConnectionPool, Properties)
+     */
+    public DeliveryReport send(final SmtpRelayGroup relayGroup, final MimeMessage message,
+            final SmtpConnectionPool connectionPool, final Properties envelope) throws MessagingException
+    {
+        return send(message, getRetryBudget(getDestination(relayGroup)),
+                recipients -> relayGroup.send(message, recipients, connectionPool, envelope));
+    }
+
+    /**
+     * Runs the attempts until every recipient accepted the message or
+     * failed for good.
+     *
+     * @param message the message
+     * @param budget the retry budget of the destination
+     * @param attempt sends the message to the given recipients once
+     * @return the outcome of the delivery
+     * @throws MessagingException the recipients of the message could not be determined
+     */
+    private DeliveryReport send(final MimeMessage message, final RetryBudget budget, final Attempt attempt)
+            throws MessagingException
+    {
+        final Address[] recipients = message.getAllRecipients();
+        final List<Address> delivered = new ArrayList<>();
+        final Map<Address, SmtpFailure> failures = new LinkedHashMap<>();
+
+        List<Address> remaining = recipients == null ? Collections.<Address>emptyList() : Arrays.asList(recipients);
+        int attempts = 0;
+
+        budget.deposit();
+
+        while (!remaining.isEmpty())
+        {
+            attempts++;
+
+            final Map<Address, SmtpFailure> attemptFailures = attempt(attempt, remaining, delivered);
+            final List<Address> retry = new ArrayList<>();
+
+            for (final Map.Entry<Address, SmtpFailure> failure : attemptFailures.entrySet())
+            {
+                if (failure.getValue().isTransient())
+                {
+                    retry.add(failure.getKey());
+                }
+                else
+                {
+                    failures.put(failure.getKey(), failure.getValue());
+                }
+            }
+
+            if (!retry.isEmpty() && (attempts >= maxAttempts || !budget.tryAcquire() || !sleep(attempts)))
+            {
+                for (final Address address : retry)
+                {
+                    failures.put(address, attemptFailures.get(address));
+                }
+                retry.clear();
+            }
+
+            remaining = retry;
+        }
+
+        return new DeliveryReport(message.getMessageID(), delivered, failures, attempts);
+    }
+
+    /**
+     * Makes a single attempt to send the message.
+     *
+     * @param attempt sends the message
+     * @param recipients the recipients to send to
+     * @param delivered receives the recipients which accepted the message
+     * @return the failures by recipient
+     */
+    private static Map<Address, SmtpFailure> attempt(final Attempt attempt, final List<Address> recipients,
+            final List<Address> delivered)
+    {
+        try
+        {
+            attempt.send(recipients.toArray(new Address[0]));
+            delivered.addAll(recipients);
+            return Collections.emptyMap();
+        }
+        catch (final SendFailedException e)
+        {
+            final Map<Address, SmtpFailure> failures = SmtpFailure.classifyUndelivered(e, recipients);
+
+            for (final Address address : recipients)
+            {
+                if (!failures.containsKey(address))
+                {
+                    delivered.add(address);
+                }
+            }
+            return failures;
+        }
+        catch (final MessagingException | RuntimeException e)
+        {
+            final SmtpFailure failure = SmtpFailure.classify(e);
+            final Map<Address, SmtpFailure> failures = new LinkedHashMap<>();
+
+            for (final Address address : recipients)
+            {
+                failures.put(address, failure);
+            }
+            return failures;
+        }
+    }
+
+    /**
+     * Sends the message to a single destination.
+     *
+     * @param session the session describing the destination
+     * @param message the message
+     * @param connectionPool the pool or null
+     * @param rateLimiter the limiter or null
+     * @param addresses the recipients to send to
+     * @throws MessagingException the message was not sent to all recipients
+     */
+    private static void sendOnce(final Session session, final MimeMessage message,
+            final SmtpConnectionPool connectionPool, final SmtpRateLimiter rateLimiter, final Address[] addresses)
+            throws MessagingException
+    {
+        try (SmtpRateLimiter.Permit permit = rateLimiter != null ? rateLimiter.acquire() : null)
+        {
+            if (connectionPool != null)
+            {
+                try (PooledTransport transport = connectionPool.borrow(session))
+                {
+                    transport.sendMessage(message, addresses);
+                }
+            }
+            else
+            {
+                final Transport transport = session.getTransport();
+                transport.connect();
+                try
+                {
+                    transport.sendMessage(message, addresses);
+                }
+                finally
+                {
+                    transport.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits before the next attempt.
+     *
+     * @param attempts the number of attempts made so far
+     * @return false if the thread was interrupted
+     */
+    private boolean sleep(final int attempts)
+    {
+        try
+        {
+            Thread.sleep(getDelayMillis(attempts));
+            return true;
+        }
+        catch (final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Computes the delay after the given number of attempts: the initial
+     * delay doubled for every further attempt, capped at the maximum, with
+     * the jitter fraction of it randomized.
+     *
+     * @param attempts the number of attempts made so far
+     * @return the delay in milliseconds
+     */
+    long getDelayMillis(final int attempts)
+    {
+        final long max = maxDelayMillis;
+        final long exponential = initialDelayMillis << Math.min(attempts - 1, 30);
+        final long delay = exponential < 0 || exponential > max ? max : exponential;
+        final double randomized = delay * jitter * ThreadLocalRandom.current().nextDouble();
+        return delay - (long) randomized;
+    }
+
+    /**
+     * Gets the retry budget of a destination, creating it on first use.
+     *
+     * @param destination the destination as "host:port"
+     * @return the retry budget
+     */
+    public RetryBudget getRetryBudget(final String destination)
+    {
+        return budgets.computeIfAbsent(destination, d -> new RetryBudget(retryRatio, retryBurst));
+    }
+
+    private static String getDestination(final Session session)
+    {
+        final SmtpConnectionKey key = SmtpConnectionKey.of(session);
+        return key.getHost() + ":" + key.getPort();
+    }
+
+    private static String getDestination(final SmtpRelayGroup relayGroup)
+    {
+        final StringBuilder destination = new StringBuilder();
+
+        for (final SmtpRelay relay : relayGroup.getRelays())
+        {
+            final SmtpConnectionKey key = SmtpConnectionKey.of(relay.getSession());
+            destination.append(destination.length() == 0 ? "" : ",").append(key.getHost()).append(':')
+                    .append(key.getPort());
+        }
+        return destination.toString();
+    }
+
+    /**
+     * @return the maximum number of attempts per message
+     */
+    public int getMaxAttempts()
+    {
+        return maxAttempts;
+    }
+
+    /**
+     * @param maxAttempts the maximum number of attempts per message, including the first
+     */
+    public void setMaxAttempts(final int maxAttempts)
+    {
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * @return the delay before the first retry in milliseconds
+     */
+    public long getInitialDelayMillis()
+    {
+        return initialDelayMillis;
+    }
+
+    /**
+     * @param initialDelayMillis the delay before the first retry in milliseconds
+     */
+    public void setInitialDelayMillis(final long initialDelayMillis)
+    {
+        this.initialDelayMillis = initialDelayMillis;
+    }
+
+    /**
+     * @return the upper bound of the delay between attempts in milliseconds
+     */
+    public long getMaxDelayMillis()
+    {
+        return maxDelayMillis;
+    }
+
+    /**
+     * @param maxDelayMillis the upper bound of the delay between attempts in milliseconds
+     */
+    public void setMaxDelayMillis(final long maxDelayMillis)
+    {
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    /**
+     * @return the fraction of the delay which is randomized
+     */
+    public double getJitter()
+    {
+        return jitter;
+    }
+
+    /**
+     * Sets the fraction of the delay which is randomized: 0 waits exactly the
+     * exponential delay, 1 waits anything between 0 and the exponential delay.
+     *
+     * @param jitter the fraction between 0 and 1
+     */
+    public void setJitter(final double jitter)
+    {
+        if (jitter < 0 || jitter > 1)
+        {
+            throw new IllegalArgumentException("jitter must be between 0 and 1");
+        }
+        this.jitter = jitter;
+    }
+
+    /**
+     * @return the retries allowed per message and destination
+     */
+    public double getRetryRatio()
+    {
+        return retryRatio;
+    }
+
+    /**
+     * Sets the retries allowed per message and destination. Applies to
+     * destinations seen for the first time afterwards.
+     *
+     * @param retryRatio the retries allowed per message
+     */
+    public void setRetryRatio(final double retryRatio)
+    {
+        this.retryRatio = retryRatio;
+    }
+
+    /**
+     * @return the burst of retries allowed per destination
+     */
+    public int getRetryBurst()
+    {
+        return retryBurst;
+    }
+
+    /**
+     * Sets the burst of retries allowed per destination. Applies to
+     * destinations seen for the first time afterwards.
+     *
+     * @param retryBurst the burst of retries
+     */
+    public void setRetryBurst(final int retryBurst)
+    {
+        this.retryBurst = retryBurst;
+    }
+
+    /**
+     * Sends the message once.
+     */
+    private interface Attempt
+    {
+        void send(Address[] recipients) throws MessagingException;
+    }
+}
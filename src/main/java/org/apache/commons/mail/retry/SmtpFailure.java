@@ -0,0 +1,250 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.retry;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.mail.Address;
+import javax.mail.AuthenticationFailedException;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+
+import com.sun.mail.smtp.SMTPAddressFailedException;
+import com.sun.mail.smtp.SMTPSendFailedException;
+
+/**
+ * A failure to deliver a message or to deliver it to a single recipient,
+ * classified by its SMTP reply code. 4xx replies and I/O errors are
+ * transient, everything else is considered permanent.
+ *
+ * @since 1.6.0
+ */
+public final class SmtpFailure
+{
+    /** the reply code used when the server did not send one */
+    public static final int UNKNOWN_RETURN_CODE = -1;
+
+    /** the SMTP reply code or {@link #UNKNOWN_RETURN_CODE} */
+    private final int returnCode;
+
+    /** whether a later attempt may succeed */
+    private final boolean transientFailure;
+
+    /** the message of the underlying exception */
+    private final String message;
+
+    /**
+     * Constructor.
+     *
+     * @param returnCode the SMTP reply code or {@link #UNKNOWN_RETURN_CODE}
+     * @param transientFailure whether a later attempt may succeed
+     * @param message the description of the failure
+     */
+    public SmtpFailure(final int returnCode, final boolean transientFailure, final String message)
+    {
+        this.returnCode = returnCode;
+        this.transientFailure = transientFailure;
+        this.message = message;
+    }
+
+    /**
+     * Classifies a failure to send a message. The cause chain, including the
+     * {@link MessagingException#getNextException() next exceptions}, is
+     * searched for an SMTP reply code or an I/O error. An {@code EmailException}
+     * thrown by {@code Email.send()} can be passed directly.
+     *
+     * @param throwable the failure
+     * @return the classified failure
+     */
+    public static SmtpFailure classify(final Throwable throwable)
+    {
+        final Set<Throwable> seen = new HashSet<>();
+        Throwable current = throwable;
+
+        while (current != null && seen.add(current))
+        {
+            if (current instanceof SMTPAddressFailedException)
+            {
+                return ofReturnCode(((SMTPAddressFailedException) current).getReturnCode(), current);
+            }
+            if (current instanceof SMTPSendFailedException
+                    && ((SMTPSendFailedException) current).getReturnCode() > 0)
+            {
+                return ofReturnCode(((SMTPSendFailedException) current).getReturnCode(), current);
+            }
+            if (current instanceof AuthenticationFailedException)
+            {
+                return new SmtpFailure(UNKNOWN_RETURN_CODE, false, current.getMessage());
+            }
+            if (current instanceof IOException)
+            {
+                return new SmtpFailure(UNKNOWN_RETURN_CODE, true, current.getMessage());
+            }
+            current = next(current);
+        }
+
+        return new SmtpFailure(UNKNOWN_RETURN_CODE, false, throwable == null ? null : throwable.getMessage());
+    }
+
+    /**
+     * Classifies the failure of every recipient which did not receive the
+     * message. Recipients with a failed {@code RCPT TO} are classified by its
+     * reply code. Valid recipients the message was not sent to, for example
+     * because another recipient was rejected, share the reply code of the
+     * message or are transient if there is none.
+     *
+     * @param exception the failure
+     * @return the failures by recipient in the order reported by the server
+     */
+    public static Map<Address, SmtpFailure> classifyRecipients(final SendFailedException exception)
+    {
+        final Map<Address, SmtpFailure> failures = new LinkedHashMap<>();
+        final Set<Exception> seen = new HashSet<>();
+        Exception current = exception;
+
+        while (current instanceof MessagingException && seen.add(current))
+        {
+            if (current instanceof SMTPAddressFailedException)
+            {
+                final SMTPAddressFailedException failed = (SMTPAddressFailedException) current;
+                failures.putIfAbsent(failed.getAddress(), ofReturnCode(failed.getReturnCode(), failed));
+            }
+            current = ((MessagingException) current).getNextException();
+        }
+
+        if (exception.getInvalidAddresses() != null)
+        {
+            for (final Address address : exception.getInvalidAddresses())
+            {
+                failures.putIfAbsent(address, new SmtpFailure(UNKNOWN_RETURN_CODE, false, exception.getMessage()));
+            }
+        }
+
+        if (exception.getValidUnsentAddresses() != null)
+        {
+            final SmtpFailure unsent = exception instanceof SMTPSendFailedException
+                    && ((SMTPSendFailedException) exception).getReturnCode() > 0
+                    ? classify(exception)
+                    : new SmtpFailure(UNKNOWN_RETURN_CODE, true, exception.getMessage());
+
+            for (final Address address : exception.getValidUnsentAddresses())
+            {
+                failures.putIfAbsent(address, unsent);
+            }
+        }
+
+        return failures;
+    }
+
+    /**
+     * Classifies the failure of every given recipient which did not receive
+     * the message. Recipients without a failure of their own share the
+     * failure of the message.
+     *
+     * @param exception the failure
+     * @param recipients the recipients the message was sent to
+     * @return the failures by recipient in the order of the given recipients,
+     *  recipients which received the message are missing
+     */
+    public static Map<Address, SmtpFailure> classifyUndelivered(final SendFailedException exception,
+            final Collection<? extends Address> recipients)
+    {
+        final Set<Address> sent = new HashSet<>();
+        if (exception.getValidSentAddresses() != null)
+        {
+            sent.addAll(Arrays.asList(exception.getValidSentAddresses()));
+        }
+
+        final Map<Address, SmtpFailure> byRecipient = classifyRecipients(exception);
+        final SmtpFailure fallback = classify(exception);
+        final Map<Address, SmtpFailure> failures = new LinkedHashMap<>();
+
+        for (final Address address : recipients)
+        {
+            if (!sent.contains(address))
+            {
+                final SmtpFailure failure = byRecipient.get(address);
+                failures.put(address, failure != null ? failure : fallback);
+            }
+        }
+        return failures;
+    }
+
+    private static SmtpFailure ofReturnCode(final int returnCode, final Throwable throwable)
+    {
+        return new SmtpFailure(returnCode, returnCode >= 400 && returnCode < 500, throwable.getMessage());
+    }
+
+    private static Throwable next(final Throwable throwable)
+    {
+        if (throwable.getCause() != null)
+        {
+            return throwable.getCause();
+        }
+        if (throwable instanceof MessagingException)
+        {
+            return ((MessagingException) throwable).getNextException();
+        }
+        return null;
+    }
+
+    /**
+     * @return the SMTP reply code or {@link #UNKNOWN_RETURN_CODE}
+     */
+    public int getReturnCode()
+    {
+        return returnCode;
+    }
+
+    /**
+     * @return true if a later attempt may succeed
+     */
+    public boolean isTransient()
+    {
+        return transientFailure;
+    }
+
+    /**
+     * @return true if retrying will not help
+     */
+    public boolean isPermanent()
+    {
+        return !transientFailure;
+    }
+
+    /**
+     * @return the description of the failure
+     */
+    public String getMessage()
+    {
+        return message;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "SmtpFailure[" + (transientFailure ? "transient" : "permanent")
+                + (returnCode == UNKNOWN_RETURN_CODE ? "" : ", " + returnCode)
+                + ", " + message + "]";
+    }
+}
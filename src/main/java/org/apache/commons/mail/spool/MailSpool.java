@@ -0,0 +1,1091 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.spool;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.mail.Address;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+
+import org.apache.commons.mail.Email;
+import org.apache.commons.mail.EmailException;
+import org.apache.commons.mail.retry.SmtpFailure;
+import org.apache.commons.mail.transport.PooledTransport;
+import org.apache.commons.mail.transport.SmtpConnectionPool;
+import org.apache.commons.mail.util.MimeMessageUtils;
+
+/**
+ * A durable outbound spool. Enqueued messages are appended to segment files
+ * and tracked in a memory-mapped index, so they survive restarts and SMTP
+ * outages without being kept on the heap. Worker threads deliver due
+ * messages through the spool's mail session and retry transient failures
+ * with an exponential backoff, permanent failures (see {@link SmtpFailure})
+ * are marked failed right away. After a partial delivery only the
+ * recipients with a transient failure are spooled again, so the recipients
+ * which accepted the message do not receive it twice.
+ * <p>
+ * Concurrent enqueues share a single {@code fsync} (group commit): once
+ * {@link #enqueue(MimeMessage)} returns, the message and its index entry are
+ * on disk. State changes after the enqueue are flushed lazily, a crash may
+ * therefore lead to a message being delivered again (at-least-once delivery).
+ * <p>
+ * Delivered messages are removed by {@link #compact()}, which rewrites the
+ * index and deletes segment files no longer referenced. It runs automatically
+ * every {@link #getCompactionThreshold()} deliveries.
+ * <pre>
+ * try (MailSpool spool = new MailSpool(new File("spool"), session))
+ * {
+ *     spool.setParallelism(4);
+ *     spool.start();
+ *     spool.enqueue(email);
+ * }
+ * </pre>
+ *
+ * @since 1.6.0
+ */
+public class MailSpool implements AutoCloseable
+{
+    /** default number of worker threads */
+    public static final int DEFAULT_PARALLELISM = 2;
+
+    /** default maximum number of delivery attempts */
+    public static final int DEFAULT_MAX_ATTEMPTS = 10;
+
+    /** default delay before the first retry */
+    public static final long DEFAULT_INITIAL_RETRY_DELAY_MILLIS = 60000;
+
+    /** default upper bound of the retry delay */
+    public static final long DEFAULT_MAX_RETRY_DELAY_MILLIS = 3600000;
+
+    /** default size at which a new segment file is started */
+    public static final long DEFAULT_MAX_SEGMENT_SIZE = 64L * 1024 * 1024;
+
+    /** default number of deliveries triggering a compaction */
+    public static final int DEFAULT_COMPACTION_THRESHOLD = 10000;
+
+    /** the name of the index file */
+    static final String INDEX_FILE_NAME = "spool.idx";
+
+    /** the header keeping the remaining recipients of a partially delivered message, removed before sending */
+    static final String RECIPIENTS_HEADER = "X-Commons-Email-Spool-Recipients";
+
+    /** the names of the segment files */
+    private static final Pattern SEGMENT_FILE_NAME = Pattern.compile("segment-(\\d+)\\.log");
+
+    /** how long idle workers wait before checking whether the spool was closed */
+    private static final long POLL_MILLIS = 100;
+
+    /** the spool directory */
+    private final File directory;
+
+    /** the session used for delivery */
+    private final Session session;
+
+    /** the entries of the index, guarded by this */
+    private List<SpoolEntry> entries;
+
+    /** the memory-mapped index, guarded by this */
+    private SpoolIndex index;
+
+    /** the ids of all segment files, guarded by this */
+    private final TreeSet<Integer> segments = new TreeSet<>();
+
+    /** channels for reading segments */
+    private final Map<Integer, FileChannel> readers = new ConcurrentHashMap<>();
+
+    /** the entries waiting for delivery ordered by their next attempt */
+    private final DelayQueue<SpoolEntry> queue = new DelayQueue<>();
+
+    /** the number of entries per state, guarded by this */
+    private final int[] counts = new int[SpoolState.values().length];
+
+    /** serializes group commits and compactions */
+    private final Object commitLock = new Object();
+
+    /** the segment currently appended to, guarded by this */
+    private FileChannel activeSegment;
+
+    /** the id of the segment currently appended to, guarded by this */
+    private int activeSegmentId;
+
+    /** the number of enqueued messages, guarded by this */
+    private long appendedCount;
+
+    /** the number of enqueued messages known to be on disk, guarded by commitLock */
+    private long committedCount;
+
+    /** the number of deliveries since the last compaction, guarded by this */
+    private int sentSinceCompaction;
+
+    /** the pool used for delivery */
+    private SmtpConnectionPool connectionPool;
+
+    /** whether the pool was created by and is closed with this spool */
+    private boolean ownsConnectionPool;
+
+    /** the worker threads */
+    private final List<Thread> workers = new ArrayList<>();
+
+    private volatile boolean running;
+
+    private volatile boolean closed;
+
+    private int parallelism = DEFAULT_PARALLELISM;
+
+    private volatile int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+
+    private volatile long initialRetryDelayMillis = DEFAULT_INITIAL_RETRY_DELAY_MILLIS;
+
+    private volatile long maxRetryDelayMillis = DEFAULT_MAX_RETRY_DELAY_MILLIS;
+
+    private volatile long maxSegmentSize = DEFAULT_MAX_SEGMENT_SIZE;
+
+    private volatile int compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+
+    /**
+     * Opens the spool in the given directory, creating it if required.
+     * Messages which were being delivered when the spool was last closed
+     * are scheduled for delivery again.
+     *
+     * @param directory the spool directory
+     * @param session the session used to deliver the messages
+     * @throws IOException the spool could not be opened
+     */
+    public MailSpool(final File directory, final Session session) throws IOException
+    {
+        if (directory == null || session == null)
+        {
+            throw new IllegalArgumentException("directory and session must not be null");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs())
+        {
+            throw new IOException("Failed to create the spool directory " + directory);
+        }
+
+        this.directory = directory;
+        this.session = session;
+        this.index = new SpoolIndex(new File(directory, INDEX_FILE_NAME));
+        this.entries = new ArrayList<>(index.readEntries());
+
+        final File[] files = directory.listFiles();
+        if (files != null)
+        {
+            for (final File file : files)
+            {
+                final Matcher matcher = SEGMENT_FILE_NAME.matcher(file.getName());
+                if (matcher.matches())
+                {
+                    segments.add(Integer.valueOf(matcher.group(1)));
+                }
+            }
+        }
+
+        // a crash may have left a partially written message at the end of
+        // the last segment, so new messages always go to a new segment
+        this.activeSegmentId = segments.isEmpty() ? 0 : segments.last().intValue();
+
+        for (final SpoolEntry entry : entries)
+        {
+            if (entry.state == SpoolState.IN_FLIGHT)
+            {
+                entry.state = SpoolState.PENDING;
+                index.write(entry);
+            }
+            counts[entry.state.ordinal()]++;
+            if (entry.state == SpoolState.PENDING)
+            {
+                queue.add(entry);
+            }
+        }
+    }
+
+    /**
+     * Starts the worker threads delivering the spooled messages.
+     *
+     * @throws IllegalStateException if the spool was already started or closed
+     */
+    public synchronized void start()
+    {
+        checkOpen();
+        if (running)
+        {
+            throw new IllegalStateException("The spool is already started");
+        }
+
+        if (connectionPool == null)
+        {
+            connectionPool = new SmtpConnectionPool();
+            ownsConnectionPool = true;
+        }
+
+        running = true;
+        for (int i = 0; i < parallelism; i++)
+        {
+            final Thread worker = new Thread(this::work, "commons-email-spool-" + (i + 1));
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    /**
+     * Builds the email and appends it to the spool.
+     *
+     * @param email the email to spool
+     * @throws EmailException the email could not be built or written
+     */
+    public void enqueue(final Email email) throws EmailException
+    {
+        try
+        {
+            email.buildMimeMessage();
+            enqueue(email.getMimeMessage());
+        }
+        catch (final IOException | MessagingException e)
+        {
+            throw new EmailException("Spooling the email failed", e);
+        }
+        finally
+        {
+            // the message is on disk, the resources are not needed anymore
+            email.releaseResources();
+        }
+    }
+
+    /**
+     * Appends a message to the spool. When this method returns the message
+     * is on disk.
+     *
+     * @param message the message to spool
+     * @throws IOException the message could not be written
+     * @throws MessagingException the message could not be serialized
+     */
+    public void enqueue(final MimeMessage message) throws IOException, MessagingException
+    {
+        final SpoolEntry entry;
+        final long sequence;
+
+        synchronized (this)
+        {
+            checkOpen();
+            entry = append(message, 0, System.currentTimeMillis());
+            sequence = appendedCount;
+        }
+
+        commit(sequence);
+        queue.add(entry);
+    }
+
+    /**
+     * Writes a message to the active segment and adds its entry to the index.
+     * The caller holds the lock of this spool and commits afterwards.
+     *
+     * @param message the message to spool
+     * @param attempts the number of failed delivery attempts so far
+     * @param nextAttemptMillis the earliest time of the next delivery attempt
+     * @return the new entry
+     * @throws IOException the message could not be written
+     * @throws MessagingException the message could not be serialized
+     */
+    private SpoolEntry append(final MimeMessage message, final int attempts, final long nextAttemptMillis)
+            throws IOException, MessagingException
+    {
+        if (activeSegment == null || activeSegment.position() >= maxSegmentSize)
+        {
+            rollSegment();
+        }
+
+        final long offset = activeSegment.position();
+
+        try
+        {
+            // the output stream is not closed as this would close the segment
+            final OutputStream os = new BufferedOutputStream(Channels.newOutputStream(activeSegment));
+            message.writeTo(os);
+            os.flush();
+        }
+        catch (final IOException | MessagingException | RuntimeException e)
+        {
+            activeSegment.truncate(offset);
+            activeSegment.position(offset);
+            throw e;
+        }
+
+        final long length = activeSegment.position() - offset;
+        if (length > Integer.MAX_VALUE)
+        {
+            activeSegment.truncate(offset);
+            activeSegment.position(offset);
+            throw new IOException("Message too large to spool: " + length + " bytes");
+        }
+
+        final SpoolEntry entry = new SpoolEntry(getSlotCount(), activeSegmentId, offset, (int) length,
+                SpoolState.PENDING, attempts, nextAttemptMillis);
+        index.write(entry);
+        entries.add(entry);
+        counts[SpoolState.PENDING.ordinal()]++;
+        ++appendedCount;
+        return entry;
+    }
+
+    /**
+     * Removes delivered messages: the index is rewritten without them and
+     * segment files no longer referenced are deleted.
+     *
+     * @throws IOException the index could not be rewritten
+     */
+    public void compact() throws IOException
+    {
+        synchronized (commitLock)
+        {
+            synchronized (this)
+            {
+                if (closed)
+                {
+                    return;
+                }
+
+                final List<SpoolEntry> live = new ArrayList<>(entries.size());
+                final TreeSet<Integer> referenced = new TreeSet<>();
+
+                for (final SpoolEntry entry : entries)
+                {
+                    if (entry.state != SpoolState.SENT)
+                    {
+                        live.add(entry);
+                        referenced.add(Integer.valueOf(entry.segment));
+                    }
+                }
+
+                if (activeSegment != null)
+                {
+                    activeSegment.force(false);
+                    referenced.add(Integer.valueOf(activeSegmentId));
+                }
+
+                final File indexFile = new File(directory, INDEX_FILE_NAME);
+                index.close();
+                try
+                {
+                    index = SpoolIndex.rewrite(indexFile, live);
+                }
+                catch (final IOException e)
+                {
+                    // the old index is still in place and the entries keep their slots
+                    index = new SpoolIndex(indexFile);
+                    throw e;
+                }
+
+                for (int slot = 0; slot < live.size(); slot++)
+                {
+                    live.get(slot).slot = slot;
+                }
+                entries = live;
+                counts[SpoolState.SENT.ordinal()] = 0;
+                committedCount = appendedCount;
+                sentSinceCompaction = 0;
+
+                for (final Iterator<Integer> it = segments.iterator(); it.hasNext();)
+                {
+                    final Integer segment = it.next();
+                    if (!referenced.contains(segment))
+                    {
+                        final FileChannel reader = readers.remove(segment);
+                        if (reader != null)
+                        {
+                            reader.close();
+                        }
+                        Files.deleteIfExists(segmentFile(segment.intValue()).toPath());
+                        it.remove();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the number of messages in the spool with the given state. Delivered
+     * messages are only counted until the next compaction.
+     *
+     * @param state the state
+     * @return the number of messages
+     */
+    public synchronized int getCount(final SpoolState state)
+    {
+        return counts[state.ordinal()];
+    }
+
+    /**
+     * @return the number of segment files
+     */
+    public synchronized int getSegmentCount()
+    {
+        return segments.size();
+    }
+
+    /**
+     * Stops the workers, waiting for the deliveries in progress, and closes the spool.
+     *
+     * @throws IOException the spool could not be flushed
+     */
+    @Override
+    public void close() throws IOException
+    {
+        final List<Thread> stopping;
+        synchronized (this)
+        {
+            if (closed)
+            {
+                return;
+            }
+            running = false;
+            stopping = new ArrayList<>(workers);
+            workers.clear();
+        }
+
+        for (final Thread worker : stopping)
+        {
+            try
+            {
+                worker.join();
+            }
+            catch (final InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        synchronized (commitLock)
+        {
+            synchronized (this)
+            {
+                closed = true;
+                queue.clear();
+
+                if (activeSegment != null)
+                {
+                    activeSegment.force(false);
+                    activeSegment.close();
+                    activeSegment = null;
+                }
+                index.setCommittedCount(getSlotCount());
+                index.close();
+
+                for (final FileChannel reader : readers.values())
+                {
+                    reader.close();
+                }
+                readers.clear();
+
+                if (ownsConnectionPool)
+                {
+                    connectionPool.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Forces all messages appended up to the given sequence to disk. Threads
+     * arriving while another thread is forcing share the next force.
+     *
+     * @param sequence the sequence number of the message
+     * @throws IOException forcing the files failed
+     */
+    private void commit(final long sequence) throws IOException
+    {
+        synchronized (commitLock)
+        {
+            if (committedCount >= sequence)
+            {
+                return;
+            }
+
+            final long target;
+            final int count;
+            final FileChannel segment;
+            final SpoolIndex currentIndex;
+
+            synchronized (this)
+            {
+                target = appendedCount;
+                count = getSlotCount();
+                segment = activeSegment;
+                currentIndex = index;
+            }
+
+            try
+            {
+                segment.force(false);
+            }
+            catch (final ClosedChannelException e) // NOPMD
+            {
+                // the segment was rolled meanwhile, which forces it
+            }
+            currentIndex.force();
+
+            synchronized (this)
+            {
+                currentIndex.setCommittedCount(count);
+            }
+
+            currentIndex.force();
+            committedCount = target;
+        }
+    }
+
+    /**
+     * Starts a new segment file, the previous one is forced to disk first.
+     *
+     * @throws IOException the segment could not be created
+     */
+    private void rollSegment() throws IOException
+    {
+        if (activeSegment != null)
+        {
+            activeSegment.force(false);
+            activeSegment.close();
+        }
+
+        activeSegmentId++;
+        activeSegment = FileChannel.open(segmentFile(activeSegmentId).toPath(),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        segments.add(Integer.valueOf(activeSegmentId));
+    }
+
+    /**
+     * @return the number of used index slots, guarded by this
+     */
+    private int getSlotCount()
+    {
+        return entries.isEmpty() ? 0 : entries.get(entries.size() - 1).slot + 1;
+    }
+
+    private File segmentFile(final int segment)
+    {
+        return new File(directory, String.format("segment-%08d.log", Integer.valueOf(segment)));
+    }
+
+    private void work()
+    {
+        while (running)
+        {
+            final SpoolEntry entry;
+            try
+            {
+                entry = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            }
+            catch (final InterruptedException e)
+            {
+                return;
+            }
+
+            if (entry != null)
+            {
+                deliver(entry);
+            }
+        }
+    }
+
+    private void deliver(final SpoolEntry entry)
+    {
+        synchronized (this)
+        {
+            if (closed || entry.state != SpoolState.PENDING)
+            {
+                return;
+            }
+            if (!update(entry, SpoolState.IN_FLIGHT))
+            {
+                return;
+            }
+        }
+
+        boolean sent = false;
+        boolean permanent = false;
+        MimeMessage message = null;
+        Address[] recipients = null;
+        Map<Address, SmtpFailure> undelivered = null;
+
+        try
+        {
+            message = load(entry);
+            recipients = takeRecipients(message);
+
+            try (PooledTransport transport = connectionPool.borrow(session))
+            {
+                transport.sendMessage(message, recipients);
+            }
+            sent = true;
+        }
+        catch (final SendFailedException e)
+        {
+            if (recipients == null || recipients.length == 0)
+            {
+                permanent = true;
+            }
+            else
+            {
+                undelivered = SmtpFailure.classifyUndelivered(e, Arrays.asList(recipients));
+                permanent = isPermanent(undelivered.values());
+            }
+        }
+        catch (final IOException | MessagingException | RuntimeException e)
+        {
+            permanent = SmtpFailure.classify(e).isPermanent();
+        }
+
+        if (undelivered != null && undelivered.size() < recipients.length)
+        {
+            // some recipients accepted the message, only the others are retried
+            sent = respool(entry, message, undelivered);
+        }
+
+        boolean compact = false;
+
+        synchronized (this)
+        {
+            if (sent)
+            {
+                update(entry, SpoolState.SENT);
+                compact = ++sentSinceCompaction >= compactionThreshold;
+            }
+            else
+            {
+                entry.attempts++;
+                if (permanent || entry.attempts >= maxAttempts)
+                {
+                    update(entry, SpoolState.FAILED);
+                }
+                else
+                {
+                    entry.nextAttemptMillis = System.currentTimeMillis() + getRetryDelayMillis(entry.attempts);
+                    if (update(entry, SpoolState.PENDING))
+                    {
+                        queue.add(entry);
+                    }
+                }
+            }
+        }
+
+        if (compact)
+        {
+            try
+            {
+                compact();
+            }
+            catch (final IOException e) // NOPMD
+            {
+                // retried after the next delivery
+            }
+        }
+    }
+
+    /**
+     * Spools a message again for the recipients with a transient failure, so
+     * that the recipients which accepted it do not receive it twice.
+     *
+     * @param entry the entry of the partially delivered message
+     * @param message the message
+     * @param undelivered the failures by recipient which did not receive the message
+     * @return true if the entry is done, false if it is to be retried as a whole
+     */
+    private boolean respool(final SpoolEntry entry, final MimeMessage message,
+            final Map<Address, SmtpFailure> undelivered)
+    {
+        final List<Address> remaining = new ArrayList<>();
+        for (final Map.Entry<Address, SmtpFailure> failure : undelivered.entrySet())
+        {
+            if (failure.getValue().isTransient())
+            {
+                remaining.add(failure.getKey());
+            }
+        }
+
+        final int attempts = entry.attempts + 1;
+        if (remaining.isEmpty() || attempts >= maxAttempts)
+        {
+            // the recipients which failed permanently or too often are given up
+            return true;
+        }
+
+        final SpoolEntry retry;
+        final long sequence;
+
+        try
+        {
+            message.setHeader(RECIPIENTS_HEADER, InternetAddress.toString(remaining.toArray(new Address[0]),
+                    RECIPIENTS_HEADER.length() + 2));
+
+            synchronized (this)
+            {
+                if (closed)
+                {
+                    return false;
+                }
+                retry = append(message, attempts, System.currentTimeMillis() + getRetryDelayMillis(attempts));
+                sequence = appendedCount;
+            }
+            commit(sequence);
+        }
+        catch (final IOException | MessagingException | RuntimeException e)
+        {
+            return false;
+        }
+
+        queue.add(retry);
+        return true;
+    }
+
+    /**
+     * Gets the envelope recipients of a spooled message: the recipients left
+     * after a partial delivery, or all recipients of the message.
+     *
+     * @param message the message, the spool header is removed
+     * @return the recipients
+     * @throws MessagingException the recipients could not be read
+     */
+    private static Address[] takeRecipients(final MimeMessage message) throws MessagingException
+    {
+        final String header = message.getHeader(RECIPIENTS_HEADER, ",");
+
+        if (header == null)
+        {
+            return message.getAllRecipients();
+        }
+        message.removeHeader(RECIPIENTS_HEADER);
+        return InternetAddress.parseHeader(header, false);
+    }
+
+    private static boolean isPermanent(final Collection<SmtpFailure> failures)
+    {
+        for (final SmtpFailure failure : failures)
+        {
+            if (failure.isTransient())
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Changes the state of an entry and writes it to the index.
+     *
+     * @param entry the entry
+     * @param state the new state
+     * @return false if the index could not be written
+     */
+    private boolean update(final SpoolEntry entry, final SpoolState state)
+    {
+        if (closed)
+        {
+            return false;
+        }
+
+        counts[entry.state.ordinal()]--;
+        entry.state = state;
+        counts[state.ordinal()]++;
+
+        try
+        {
+            index.write(entry);
+            return true;
+        }
+        catch (final IOException e)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Reads a spooled message.
+     *
+     * @param entry the entry of the message
+     * @return the message
+     * @throws IOException reading the segment failed
+     * @throws MessagingException parsing the message failed
+     */
+    private MimeMessage load(final SpoolEntry entry) throws IOException, MessagingException
+    {
+        final Integer segment = Integer.valueOf(entry.segment);
+        FileChannel reader = readers.get(segment);
+
+        if (reader == null)
+        {
+            synchronized (this)
+            {
+                reader = readers.get(segment);
+                if (reader == null)
+                {
+                    reader = FileChannel.open(segmentFile(entry.segment).toPath(), StandardOpenOption.READ);
+                    readers.put(segment, reader);
+                }
+            }
+        }
+
+        try (InputStream is = new SegmentInputStream(reader, entry.offset, entry.length))
+        {
+            return MimeMessageUtils.createMimeMessage(session, is);
+        }
+    }
+
+    /**
+     * Computes the delay before the next attempt doubling the initial delay
+     * for every failed attempt.
+     *
+     * @param attempts the number of failed attempts
+     * @return the delay in milliseconds
+     */
+    private long getRetryDelayMillis(final int attempts)
+    {
+        final long max = maxRetryDelayMillis;
+        final int shift = Math.min(attempts - 1, 30);
+        final long delay = initialRetryDelayMillis << shift;
+        return delay < 0 || delay > max ? max : delay;
+    }
+
+    private void checkOpen()
+    {
+        if (closed)
+        {
+            throw new IllegalStateException("The spool is closed");
+        }
+    }
+
+    /**
+     * @return the spool directory
+     */
+    public File getDirectory()
+    {
+        return directory;
+    }
+
+    /**
+     * @return the number of worker threads
+     */
+    public synchronized int getParallelism()
+    {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of worker threads delivering messages concurrently.
+     *
+     * @param parallelism the number of worker threads
+     * @throws IllegalStateException if the spool is already started
+     * @throws IllegalArgumentException if the number is &lt; 1
+     */
+    public synchronized void setParallelism(final int parallelism)
+    {
+        if (running)
+        {
+            throw new IllegalStateException("The spool is already started");
+        }
+        if (parallelism < 1)
+        {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @return the connection pool used for delivery, null before the spool is started
+     */
+    public synchronized SmtpConnectionPool getConnectionPool()
+    {
+        return connectionPool;
+    }
+
+    /**
+     * Sets the connection pool used for delivery. By default the spool
+     * creates its own pool when it is started.
+     *
+     * @param connectionPool the connection pool, not closed by this spool
+     * @throws IllegalStateException if the spool is already started
+     */
+    public synchronized void setConnectionPool(final SmtpConnectionPool connectionPool)
+    {
+        if (running)
+        {
+            throw new IllegalStateException("The spool is already started");
+        }
+        this.connectionPool = connectionPool;
+        this.ownsConnectionPool = false;
+    }
+
+    /**
+     * @return the maximum number of delivery attempts
+     */
+    public int getMaxAttempts()
+    {
+        return maxAttempts;
+    }
+
+    /**
+     * Sets the number of delivery attempts after which a message is marked failed.
+     *
+     * @param maxAttempts the maximum number of delivery attempts
+     */
+    public void setMaxAttempts(final int maxAttempts)
+    {
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * @return the delay before the first retry in milliseconds
+     */
+    public long getInitialRetryDelayMillis()
+    {
+        return initialRetryDelayMillis;
+    }
+
+    /**
+     * Sets the delay before the first retry, it doubles with every further attempt.
+     *
+     * @param initialRetryDelayMillis the delay in milliseconds
+     */
+    public void setInitialRetryDelayMillis(final long initialRetryDelayMillis)
+    {
+        this.initialRetryDelayMillis = initialRetryDelayMillis;
+    }
+
+    /**
+     * @return the upper bound of the retry delay in milliseconds
+     */
+    public long getMaxRetryDelayMillis()
+    {
+        return maxRetryDelayMillis;
+    }
+
+    /**
+     * @param maxRetryDelayMillis the upper bound of the retry delay in milliseconds
+     */
+    public void setMaxRetryDelayMillis(final long maxRetryDelayMillis)
+    {
+        this.maxRetryDelayMillis = maxRetryDelayMillis;
+    }
+
+    /**
+     * @return the size at which a new segment file is started
+     */
+    public long getMaxSegmentSize()
+    {
+        return maxSegmentSize;
+    }
+
+    /**
+     * @param maxSegmentSize the size in bytes at which a new segment file is started
+     */
+    public void setMaxSegmentSize(final long maxSegmentSize)
+    {
+        this.maxSegmentSize = maxSegmentSize;
+    }
+
+    /**
+     * @return the number of deliveries triggering a compaction
+     */
+    public int getCompactionThreshold()
+    {
+        return compactionThreshold;
+    }
+
+    /**
+     * @param compactionThreshold the number of deliveries triggering a compaction
+     */
+    public void setCompactionThreshold(final int compactionThreshold)
+    {
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    /**
+     * Reads a region of a segment using positional reads, so concurrent
+     * readers can share the channel.
+     */
+    private static final class SegmentInputStream extends InputStream
+    {
+        private final FileChannel channel;
+        private long position;
+        private final long end;
+
+        SegmentInputStream(final FileChannel channel, final long offset, final int length)
+        {
+            this.channel = channel;
+            this.position = offset;
+            this.end = offset + length;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            final byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException
+        {
+            if (position >= end)
+            {
+                return -1;
+            }
+
+            final int max = (int) Math.min(len, end - position);
+            final int read = channel.read(ByteBuffer.wrap(b, off, max), position);
+
+            if (read < 0)
+            {
+                return -1;
+            }
+            position += read;
+            return read;
+        }
+
+        @Override
+        public int available()
+        {
+            return (int) Math.min(Integer.MAX_VALUE, end - position);
+        }
+    }
+}
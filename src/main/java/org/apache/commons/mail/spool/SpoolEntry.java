@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.spool;
+
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The in-memory copy of an index entry. Its fields are guarded by the owning
+ * {@link MailSpool} and must not change while the entry is queued.
+ *
+ * @since 1.6.0
+ */
+final class SpoolEntry implements Delayed
+{
+    /** the position in the index */
+    int slot;
+
+    /** the segment containing the message */
+    final int segment;
+
+    /** the offset of the message in the segment */
+    final long offset;
+
+    /** the length of the message in bytes */
+    final int length;
+
+    /** the delivery state */
+    SpoolState state;
+
+    /** the number of failed delivery attempts */
+    int attempts;
+
+    /** the earliest time of the next delivery attempt */
+    long nextAttemptMillis;
+
+    SpoolEntry(final int slot, final int segment, final long offset, final int length,
+            final SpoolState state, final int attempts, final long nextAttemptMillis)
+    {
+        this.slot = slot;
+        this.segment = segment;
+        this.offset = offset;
+        this.length = length;
+        this.state = state;
+        this.attempts = attempts;
+        this.nextAttemptMillis = nextAttemptMillis;
+    }
+
+    @Override
+    public long getDelay(final TimeUnit unit)
+    {
+        return unit.convert(nextAttemptMillis - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public int compareTo(final Delayed other)
+    {
+        if (other instanceof SpoolEntry)
+        {
+            return Long.compare(nextAttemptMillis, ((SpoolEntry) other).nextAttemptMillis);
+        }
+        return Long.compare(getDelay(TimeUnit.MILLISECONDS), other.getDelay(TimeUnit.MILLISECONDS));
+    }
+
+    @Override
+    public String toString()
+    {
+        return "SpoolEntry[slot=" + slot + ", segment=" + segment + ", offset=" + offset
+                + ", length=" + length + ", state=" + state + ", attempts=" + attempts + "]";
+    }
+}
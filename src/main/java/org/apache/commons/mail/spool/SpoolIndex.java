@@ -0,0 +1,266 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.spool;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The memory-mapped index of a {@link MailSpool}. The file starts with a
+ * header followed by fixed size entries:
+ * <pre>
+ * header: magic (int), version (int), committed entry count (int), reserved (int)
+ * entry:  state (byte), reserved (3 bytes), attempts (int), segment (int),
+ *         length (int), offset (long), next attempt millis (long)
+ * </pre>
+ * Only the first "committed entry count" entries are valid, the count is
+ * written after the entries and their messages have been forced to disk.
+ * Access is not synchronized, the owning spool serializes all writes.
+ *
+ * @since 1.6.0
+ */
+final class SpoolIndex implements Closeable
+{
+    /** identifies an index file */
+    static final int MAGIC = 0x434d5350;
+
+    /** the file format version */
+    static final int VERSION = 1;
+
+    /** the size of the header in bytes */
+    static final int HEADER_SIZE = 16;
+
+    /** the size of an entry in bytes */
+    static final int ENTRY_SIZE = 32;
+
+    /** the number of entries a new index has room for */
+    static final int INITIAL_CAPACITY = 1024;
+
+    private static final int COUNT_OFFSET = 8;
+
+    /** the index file */
+    private final File file;
+
+    /** the channel the buffer was mapped from */
+    private final FileChannel channel;
+
+    /** the mapped index file, replaced when the index grows */
+    private volatile MappedByteBuffer buffer;
+
+    /** the number of entries the mapped region has room for */
+    private int capacity;
+
+    /**
+     * Opens an existing index or creates a new one.
+     *
+     * @param file the index file
+     * @throws IOException the file could not be mapped or is not an index
+     */
+    SpoolIndex(final File file) throws IOException
+    {
+        this.file = file;
+        final boolean exists = file.length() >= HEADER_SIZE;
+        this.channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        try
+        {
+            if (exists)
+            {
+                this.capacity = (int) ((channel.size() - HEADER_SIZE) / ENTRY_SIZE);
+                this.buffer = map(capacity);
+
+                if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+                {
+                    throw new IOException("Not a spool index: " + file);
+                }
+            }
+            else
+            {
+                this.capacity = INITIAL_CAPACITY;
+                this.buffer = map(capacity);
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, VERSION);
+                buffer.putInt(COUNT_OFFSET, 0);
+            }
+        }
+        catch (final IOException e)
+        {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the number of valid entries
+     */
+    int getCommittedCount()
+    {
+        return Math.min(buffer.getInt(COUNT_OFFSET), capacity);
+    }
+
+    /**
+     * Sets the number of valid entries, the caller must have forced the entries first.
+     *
+     * @param count the number of valid entries
+     */
+    void setCommittedCount(final int count)
+    {
+        buffer.putInt(COUNT_OFFSET, count);
+    }
+
+    /**
+     * Reads all valid entries.
+     *
+     * @return the entries in slot order
+     */
+    List<SpoolEntry> readEntries()
+    {
+        final int count = getCommittedCount();
+        final List<SpoolEntry> entries = new ArrayList<>(count);
+
+        for (int slot = 0; slot < count; slot++)
+        {
+            final int position = HEADER_SIZE + slot * ENTRY_SIZE;
+            final SpoolState state = SpoolState.valueOf(buffer.get(position));
+
+            if (state != null)
+            {
+                entries.add(new SpoolEntry(slot,
+                        buffer.getInt(position + 8),
+                        buffer.getLong(position + 16),
+                        buffer.getInt(position + 12),
+                        state,
+                        buffer.getInt(position + 4),
+                        buffer.getLong(position + 24)));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Writes an entry to its slot, growing the index if required.
+     *
+     * @param entry the entry
+     * @throws IOException the index could not be grown
+     */
+    void write(final SpoolEntry entry) throws IOException
+    {
+        write(entry, entry.slot);
+    }
+
+    /**
+     * Writes an entry to the given slot, growing the index if required.
+     *
+     * @param entry the entry
+     * @param slot the slot
+     * @throws IOException the index could not be grown
+     */
+    private void write(final SpoolEntry entry, final int slot) throws IOException
+    {
+        if (slot >= capacity)
+        {
+            grow(slot + 1);
+        }
+
+        final MappedByteBuffer current = buffer;
+        final int position = HEADER_SIZE + slot * ENTRY_SIZE;
+        current.put(position, entry.state.getCode());
+        current.putInt(position + 4, entry.attempts);
+        current.putInt(position + 8, entry.segment);
+        current.putInt(position + 12, entry.length);
+        current.putLong(position + 16, entry.offset);
+        current.putLong(position + 24, entry.nextAttemptMillis);
+    }
+
+    /**
+     * Forces the mapped index to disk.
+     */
+    void force()
+    {
+        buffer.force();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        force();
+        channel.close();
+    }
+
+    /**
+     * Atomically replaces an index file with one containing the given entries.
+     * The entries are written to the slots 0 to n - 1 in list order, their
+     * own slots are not changed.
+     *
+     * @param file the index file
+     * @param entries the entries to keep
+     * @return the new index
+     * @throws IOException writing the new index failed
+     */
+    static SpoolIndex rewrite(final File file, final List<SpoolEntry> entries) throws IOException
+    {
+        final File tmp = new File(file.getPath() + ".tmp");
+        Files.deleteIfExists(tmp.toPath());
+
+        try (SpoolIndex index = new SpoolIndex(tmp))
+        {
+            for (int slot = 0; slot < entries.size(); slot++)
+            {
+                index.write(entries.get(slot), slot);
+            }
+            index.force();
+            index.setCommittedCount(entries.size());
+        }
+
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return new SpoolIndex(file);
+    }
+
+    private void grow(final int minCapacity) throws IOException
+    {
+        buffer.force();
+
+        int newCapacity = Math.max(capacity, INITIAL_CAPACITY);
+        while (newCapacity < minCapacity)
+        {
+            newCapacity *= 2;
+        }
+
+        buffer = map(newCapacity);
+        capacity = newCapacity;
+    }
+
+    private MappedByteBuffer map(final int entries) throws IOException
+    {
+        return channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) entries * ENTRY_SIZE);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "SpoolIndex[" + file + ", capacity=" + capacity + "]";
+    }
+}
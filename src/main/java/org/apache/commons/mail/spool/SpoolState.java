@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.spool;
+
+/**
+ * The delivery state of a spooled message.
+ *
+ * @since 1.6.0
+ */
+public enum SpoolState
+{
+    /** waiting for its next delivery attempt */
+    PENDING(1),
+
+    /** currently being delivered */
+    IN_FLIGHT(2),
+
+    /** delivered, removed by the next compaction */
+    SENT(3),
+
+    /** delivery failed permanently */
+    FAILED(4);
+
+    /** the persistent representation */
+    private final byte code;
+
+    SpoolState(final int code)
+    {
+        this.code = (byte) code;
+    }
+
+    /**
+     * @return the persistent representation
+     */
+    byte getCode()
+    {
+        return code;
+    }
+
+    /**
+     * Gets the state for a persistent representation.
+     *
+     * @param code the persistent representation
+     * @return the state or null if the code is unknown
+     */
+    static SpoolState valueOf(final byte code)
+    {
+        for (final SpoolState state : values())
+        {
+            if (state.code == code)
+            {
+                return state;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * An {@link SSLSocketFactory} whose sockets share one {@link SSLContext}, so
+ * that connections to a server seen before resume the cached TLS session
+ * instead of paying for a full handshake. Both SSL on connect and STARTTLS
+ * connections use it once it is set on the email:
+ * <pre>
+ * CachingSSLSocketFactory factory = CachingSSLSocketFactory.getDefault();
+ * email.setSSLSocketFactory(factory);
+ * </pre>
+ * The protocols and cipher suites enabled on every socket can be given up
+ * front instead of setting system properties such as
+ * {@code mail.smtp.ssl.protocols}. Share one instance between all emails,
+ * as the session cache lives in its context.
+ *
+ * @since 1.6.0
+ */
+public class CachingSSLSocketFactory extends SSLSocketFactory
+{
+    /** default maximum number of cached TLS sessions */
+    public static final int DEFAULT_SESSION_CACHE_SIZE = 1000;
+
+    /** default lifetime of a cached TLS session in seconds */
+    public static final int DEFAULT_SESSION_TIMEOUT_SECONDS = 3600;
+
+    /** the lazily created default instance */
+    private static volatile CachingSSLSocketFactory defaultFactory;
+
+    /** the context holding the session cache */
+    private final SSLContext context;
+
+    /** the factory of the context */
+    private final SSLSocketFactory delegate;
+
+    /** the protocols to enable, null for the defaults of the context */
+    private final String[] protocols;
+
+    /** the cipher suites to enable, null for the defaults of the context */
+    private final String[] cipherSuites;
+
+    /**
+     * Creates a factory enabling the given protocols and cipher suites on a
+     * new context with the default key and trust managers.
+     *
+     * @param protocols the protocols to enable, for example {@code "TLSv1.2"}, null for the defaults
+     * @param cipherSuites the cipher suites to enable, null for the defaults
+     * @return the factory
+     * @throws IllegalStateException if no TLS context is available
+     */
+    public static CachingSSLSocketFactory create(final String[] protocols, final String[] cipherSuites)
+    {
+        try
+        {
+            final SSLContext context = SSLContext.getInstance("TLS");
+            context.init(null, null, null);
+            return new CachingSSLSocketFactory(context, protocols, cipherSuites);
+        }
+        catch (final GeneralSecurityException e)
+        {
+            throw new IllegalStateException("Cannot create a TLS context", e);
+        }
+    }
+
+    /**
+     * Gets a shared factory using the default protocols and cipher suites.
+     *
+     * @return the shared factory
+     * @throws IllegalStateException if no TLS context is available
+     */
+    public static CachingSSLSocketFactory getDefault()
+    {
+        CachingSSLSocketFactory result = defaultFactory;
+
+        if (result == null)
+        {
+            synchronized (CachingSSLSocketFactory.class)
+            {
+                result = defaultFactory;
+                if (result == null)
+                {
+                    result = create(null, null);
+                    defaultFactory = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Creates a factory for an initialized context, for example one trusting
+     * a private certificate authority. The session cache of the context is
+     * set to {@link #DEFAULT_SESSION_CACHE_SIZE} sessions kept for
+     * {@link #DEFAULT_SESSION_TIMEOUT_SECONDS} seconds.
+     *
+     * @param context the initialized context
+     * @param protocols the protocols to enable, null for the defaults of the context
+     * @param cipherSuites the cipher suites to enable, null for the defaults of the context
+     */
+    public CachingSSLSocketFactory(final SSLContext context, final String[] protocols, final String[] cipherSuites)
+    {
+        if (context == null)
+        {
+            throw new IllegalArgumentException("context must not be null");
+        }
+        this.context = context;
+        this.delegate = context.getSocketFactory();
+        this.protocols = protocols != null ? protocols.clone() : null;
+        this.cipherSuites = cipherSuites != null ? cipherSuites.clone() : null;
+
+        final SSLSessionContext sessions = context.getClientSessionContext();
+        sessions.setSessionCacheSize(DEFAULT_SESSION_CACHE_SIZE);
+        sessions.setSessionTimeout(DEFAULT_SESSION_TIMEOUT_SECONDS);
+    }
+
+    /**
+     * @return the context holding the session cache
+     */
+    public SSLContext getContext()
+    {
+        return context;
+    }
+
+    /**
+     * Gets the client session cache, whose size and timeout can be changed.
+     *
+     * @return the client session context
+     */
+    public SSLSessionContext getSessionContext()
+    {
+        return context.getClientSessionContext();
+    }
+
+    /**
+     * @return the protocols enabled on every socket, null for the defaults of the context
+     */
+    public String[] getProtocols()
+    {
+        return protocols != null ? protocols.clone() : null;
+    }
+
+    /**
+     * @return the cipher suites enabled on every socket, null for the defaults of the context
+     */
+    public String[] getCipherSuites()
+    {
+        return cipherSuites != null ? cipherSuites.clone() : null;
+    }
+
+    @Override
+    public String[] getDefaultCipherSuites()
+    {
+        return cipherSuites != null ? cipherSuites.clone() : delegate.getDefaultCipherSuites();
+    }
+
+    @Override
+    public String[] getSupportedCipherSuites()
+    {
+        return delegate.getSupportedCipherSuites();
+    }
+
+    @Override
+    public Socket createSocket() throws IOException
+    {
+        return configure(delegate.createSocket());
+    }
+
+    @Override
+    public Socket createSocket(final String host, final int port) throws IOException
+    {
+        return configure(delegate.createSocket(host, port));
+    }
+
+    @Override
+    public Socket createSocket(final String host, final int port, final InetAddress localHost, final int localPort)
+            throws IOException
+    {
+        return configure(delegate.createSocket(host, port, localHost, localPort));
+    }
+
+    @Override
+    public Socket createSocket(final InetAddress host, final int port) throws IOException
+    {
+        return configure(delegate.createSocket(host, port));
+    }
+
+    @Override
+    public Socket createSocket(final InetAddress address, final int port, final InetAddress localAddress,
+            final int localPort) throws IOException
+    {
+        return configure(delegate.createSocket(address, port, localAddress, localPort));
+    }
+
+    /**
+     * Layers TLS over a connected socket, as done by STARTTLS. The host and
+     * port identify the cached session to resume.
+     */
+    @Override
+    public Socket createSocket(final Socket socket, final String host, final int port, final boolean autoClose)
+            throws IOException
+    {
+        return configure(delegate.createSocket(socket, host, port, autoClose));
+    }
+
+    @Override
+    public Socket createSocket(final Socket socket, final InputStream consumed, final boolean autoClose)
+            throws IOException
+    {
+        return configure(delegate.createSocket(socket, consumed, autoClose));
+    }
+
+    private Socket configure(final Socket socket)
+    {
+        if (socket instanceof SSLSocket)
+        {
+            final SSLSocket sslSocket = (SSLSocket) socket;
+            if (protocols != null)
+            {
+                sslSocket.setEnabledProtocols(protocols);
+            }
+            if (cipherSuites != null)
+            {
+                sslSocket.setEnabledCipherSuites(cipherSuites);
+            }
+        }
+        return socket;
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.transport;
+
+import javax.mail.Address;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Transport;
+
+/**
+ * A connected {@code Transport} borrowed from a {@link SmtpConnectionPool}.
+ * Closing it hands the connection back to the pool; it must not be used
+ * afterwards.
+ * <p>
+ * Instances are not thread-safe, a borrowed connection belongs to a single
+ * thread until it is closed.
+ *
+ * @since 1.6.0
+ */
+public final class PooledTransport implements AutoCloseable
+{
+    /** the owning pool */
+    private final SmtpConnectionPool pool;
+
+    /** the key this connection was created for */
+    private final SmtpConnectionKey key;
+
+    /** the connected transport */
+    private final Transport transport;
+
+    /** creation time stamp in milliseconds */
+    private final long createdAt;
+
+    /** time stamp of the last return to the pool in milliseconds */
+    private volatile long lastUsedAt;
+
+    /** the number of messages sent over this connection */
+    private int messageCount;
+
+    /** set when the connection must not be reused */
+    private boolean invalid;
+
+    /** set while the connection is handed out */
+    private boolean borrowed;
+
+    /**
+     * Constructor.
+     *
+     * @param pool the owning pool
+     * @param key the key this connection was created for
+     * @param transport the connected transport
+     */
+    PooledTransport(final SmtpConnectionPool pool, final SmtpConnectionKey key, final Transport transport)
+    {
+        this.pool = pool;
+        this.key = key;
+        this.transport = transport;
+        this.createdAt = System.currentTimeMillis();
+        this.lastUsedAt = this.createdAt;
+    }
+
+    /**
+     * Sends the message to all its recipients over the pooled connection.
+     * The caller is expected to have invoked {@code saveChanges()} on the message.
+     *
+     * @param message the message to send
+     * @throws MessagingException sending the message failed
+     */
+    public void sendMessage(final Message message) throws MessagingException
+    {
+        final Address[] recipients = message.getAllRecipients();
+
+        if (recipients == null || recipients.length == 0)
+        {
+            throw new SendFailedException("No recipient addresses");
+        }
+
+        sendMessage(message, recipients);
+    }
+
+    /**
+     * Sends the message to the given recipients over the pooled connection.
+     *
+     * @param message the message to send
+     * @param recipients the envelope recipients
+     * @throws MessagingException sending the message failed
+     */
+    public void sendMessage(final Message message, final Address[] recipients) throws MessagingException
+    {
+        try
+        {
+            transport.sendMessage(message, recipients);
+            messageCount++;
+        }
+        catch (final SendFailedException e)
+        {
+            messageCount++;
+            // the server rejected some recipients but the SMTP dialog is intact,
+            // unless it dropped the connection, e.g. with a 421 reply
+            if (!transport.isConnected())
+            {
+                invalid = true;
+            }
+            throw e;
+        }
+        catch (final MessagingException | RuntimeException e)
+        {
+            invalid = true;
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the underlying transport.
+     *
+     * @return the connected transport
+     */
+    public Transport getTransport()
+    {
+        return transport;
+    }
+
+    /**
+     * Gets the key this connection was created for.
+     *
+     * @return the connection key
+     */
+    public SmtpConnectionKey getKey()
+    {
+        return key;
+    }
+
+    /**
+     * Gets the number of messages sent over this connection.
+     *
+     * @return the message count
+     */
+    public int getMessageCount()
+    {
+        return messageCount;
+    }
+
+    /**
+     * Marks this connection as broken so it is closed instead of being
+     * returned to the pool.
+     */
+    public void invalidate()
+    {
+        invalid = true;
+    }
+
+    /**
+     * Returns the connection to the pool.
+     */
+    @Override
+    public void close()
+    {
+        if (borrowed)
+        {
+            borrowed = false;
+            pool.release(this);
+        }
+    }
+
+    /**
+     * Is this connection broken or otherwise unfit for reuse?
+     *
+     * @return true if the connection will be closed instead of being reused
+     */
+    public boolean isInvalid()
+    {
+        return invalid;
+    }
+
+    long getCreatedAt()
+    {
+        return createdAt;
+    }
+
+    long getLastUsedAt()
+    {
+        return lastUsedAt;
+    }
+
+    void markBorrowed()
+    {
+        borrowed = true;
+    }
+
+    void markReturned(final long now)
+    {
+        lastUsedAt = now;
+    }
+}
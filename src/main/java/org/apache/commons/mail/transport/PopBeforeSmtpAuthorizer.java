@@ -0,0 +1,219 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.transport;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Store;
+
+/**
+ * Performs the POP3 login required by relays using "POP before SMTP" and
+ * remembers it for a validity window, so that the messages sent within the
+ * window do not log in again. The POP3 store is closed right after the
+ * login; the relay only needs to have seen it.
+ * <p>
+ * Windows are opt-in: by default every message logs in. Once a validity is
+ * set, windows are kept per POP3 host, user and password, so a wrong
+ * password never rides on the login of the right one; only a salted hash of
+ * the password is kept. Concurrent senders share the windows: while one
+ * sender logs in the others wait for it instead of logging in themselves.
+ * The validity should be shorter than the window configured on the relay.
+ *
+ * @since 1.6.0
+ */
+public class PopBeforeSmtpAuthorizer
+{
+    /** default time in milliseconds a login is considered valid, every message logs in */
+    public static final long DEFAULT_VALIDITY_MILLIS = 0;
+
+    /** the POP3 protocol name */
+    private static final String POP3 = "pop3";
+
+    /** the instance shared by all emails without an authorizer of their own */
+    private static final PopBeforeSmtpAuthorizer DEFAULT = new PopBeforeSmtpAuthorizer();
+
+    /** The authorization window of a host and user. */
+    private static final class Window
+    {
+        /** the System.nanoTime() the login expires, guarded by this */
+        private long expiresAt;
+
+        /** true once a login succeeded, guarded by this */
+        private boolean authorized;
+    }
+
+    /** the windows by host, user and password hash */
+    private final ConcurrentMap<String, Window> windows = new ConcurrentHashMap<>();
+
+    /** the number of POP3 logins performed */
+    private final AtomicLong loginCount = new AtomicLong();
+
+    /** the salt of the password hashes */
+    private final byte[] salt = new byte[16];
+
+    private volatile long validityMillis = DEFAULT_VALIDITY_MILLIS;
+
+    /**
+     * Creates an authorizer logging in for every message until a validity is set.
+     */
+    public PopBeforeSmtpAuthorizer()
+    {
+        new SecureRandom().nextBytes(salt);
+    }
+
+    /**
+     * @return the authorizer shared by all emails without an authorizer of their own
+     */
+    public static PopBeforeSmtpAuthorizer getDefault()
+    {
+        return DEFAULT;
+    }
+
+    /**
+     * Logs into the POP3 server unless a login of the same user with the
+     * same password is still within its validity window.
+     *
+     * @param session the session providing the POP3 store
+     * @param host the POP3 host
+     * @param userName the POP3 user name
+     * @param password the POP3 password
+     * @throws MessagingException the login failed
+     */
+    public void authorize(final Session session, final String host, final String userName, final String password)
+            throws MessagingException
+    {
+        final Window window = windows.computeIfAbsent(getKey(host, userName) + hash(password), k -> new Window());
+
+        synchronized (window)
+        {
+            final long now = System.nanoTime();
+
+            if (window.authorized && now - window.expiresAt < 0)
+            {
+                return;
+            }
+
+            window.authorized = false;
+            login(session, host, userName, password);
+            window.expiresAt = now + TimeUnit.MILLISECONDS.toNanos(validityMillis);
+            window.authorized = true;
+        }
+    }
+
+    /**
+     * Forgets the login of a user, for example after the relay refused to
+     * relay, so that the next send logs in again.
+     *
+     * @param host the POP3 host
+     * @param userName the POP3 user name
+     */
+    public void invalidate(final String host, final String userName)
+    {
+        final String prefix = getKey(host, userName);
+        windows.keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    /**
+     * Forgets all logins.
+     */
+    public void clear()
+    {
+        windows.clear();
+    }
+
+    private void login(final Session session, final String host, final String userName, final String password)
+            throws MessagingException
+    {
+        final Store store = session.getStore(POP3);
+        store.connect(host, userName, password);
+        loginCount.incrementAndGet();
+
+        try
+        {
+            store.close();
+        }
+        catch (final MessagingException e)
+        {
+            // the login has been seen by the server, which is all that counts
+        }
+    }
+
+    private static String getKey(final String host, final String userName)
+    {
+        return host + '\u0000' + userName + '\u0000';
+    }
+
+    private String hash(final String password)
+    {
+        try
+        {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(salt);
+            if (password != null)
+            {
+                digest.update(password.getBytes(StandardCharsets.UTF_8));
+            }
+            return Base64.getEncoder().encodeToString(digest.digest());
+        }
+        catch (final NoSuchAlgorithmException e)
+        {
+            // every Java platform supports SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return the time in milliseconds a login is considered valid
+     */
+    public long getValidityMillis()
+    {
+        return validityMillis;
+    }
+
+    /**
+     * Sets the time a login is considered valid, which enables the reuse of
+     * logins. Applies to logins made afterwards.
+     *
+     * @param validityMillis the time in milliseconds, 0 to log in for every message
+     */
+    public void setValidityMillis(final long validityMillis)
+    {
+        if (validityMillis < 0)
+        {
+            throw new IllegalArgumentException("validityMillis must not be negative");
+        }
+        this.validityMillis = validityMillis;
+    }
+
+    /**
+     * @return the number of POP3 logins performed
+     */
+    public long getLoginCount()
+    {
+        return loginCount.get();
+    }
+}
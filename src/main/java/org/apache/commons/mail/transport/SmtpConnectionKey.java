@@ -0,0 +1,259 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.transport;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import javax.mail.PasswordAuthentication;
+import javax.mail.Session;
+import javax.net.ssl.SSLSocketFactory;
+
+import org.apache.commons.mail.EmailConstants;
+
+/**
+ * Identifies the SMTP server a pooled connection is bound to. Two sessions
+ * producing equal keys can safely share a connected {@code Transport}.
+ * <p>
+ * A connected {@code Transport} keeps using the session which opened it, so
+ * besides the server and the credentials the key contains all "mail.*"
+ * properties of the session: the envelope sender ("mail.smtp.from"),
+ * partial sending, socket factories, timeouts and server identity checks
+ * all change the SMTP dialogue.
+ * </p>
+ *
+ * @since 1.6.0
+ */
+public final class SmtpConnectionKey
+{
+    /** the prefix of the session properties which are part of the key */
+    private static final String MAIL_PREFIX = "mail.";
+
+    /** the host name of the SMTP server */
+    private final String host;
+
+    /** the port of the SMTP server */
+    private final int port;
+
+    /** is SSL/TLS used upon connection */
+    private final boolean sslOnConnect;
+
+    /** is STARTTLS enabled */
+    private final boolean startTls;
+
+    /** the user name used for authentication, may be null */
+    private final String userName;
+
+    /** the password used for authentication, may be null */
+    private final String password;
+
+    /** the "mail.*" properties of the session by name */
+    private final Map<String, Object> properties;
+
+    /**
+     * Constructor.
+     *
+     * @param host the host name of the SMTP server
+     * @param port the port of the SMTP server
+     * @param sslOnConnect is SSL/TLS used upon connection
+     * @param startTls is STARTTLS enabled
+     * @param userName the user name used for authentication, may be null
+     * @param password the password used for authentication, may be null
+     */
+    public SmtpConnectionKey(final String host, final int port, final boolean sslOnConnect,
+            final boolean startTls, final String userName, final String password)
+    {
+        this(host, port, sslOnConnect, startTls, userName, password, Collections.<String, Object>emptyMap());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param host the host name of the SMTP server
+     * @param port the port of the SMTP server
+     * @param sslOnConnect is SSL/TLS used upon connection
+     * @param startTls is STARTTLS enabled
+     * @param userName the user name used for authentication, may be null
+     * @param password the password used for authentication, may be null
+     * @param properties the session properties changing the SMTP dialogue
+     */
+    public SmtpConnectionKey(final String host, final int port, final boolean sslOnConnect,
+            final boolean startTls, final String userName, final String password,
+            final Map<String, Object> properties)
+    {
+        this.host = host;
+        this.port = port;
+        this.sslOnConnect = sslOnConnect;
+        this.startTls = startTls;
+        this.userName = userName;
+        this.password = password;
+        this.properties = Collections.unmodifiableMap(new TreeMap<>(properties));
+    }
+
+    /**
+     * Derives the key from the properties and the authenticator of a mail session.
+     *
+     * @param session the mail session
+     * @return the key
+     */
+    public static SmtpConnectionKey of(final Session session)
+    {
+        final Properties properties = session.getProperties();
+        final String host = properties.getProperty(EmailConstants.MAIL_HOST);
+        final int port = Integer.parseInt(properties.getProperty(EmailConstants.MAIL_PORT, "25"));
+        final boolean sslOnConnect = "true".equalsIgnoreCase(properties.getProperty(EmailConstants.MAIL_SMTP_SSL_ENABLE))
+                || properties.getProperty(EmailConstants.MAIL_SMTP_SOCKET_FACTORY_CLASS) != null
+                || properties.get(EmailConstants.MAIL_SMTP_SOCKET_FACTORY) instanceof SSLSocketFactory;
+        final boolean startTls = "true".equalsIgnoreCase(
+                properties.getProperty(EmailConstants.MAIL_TRANSPORT_STARTTLS_ENABLE));
+
+        String userName = properties.getProperty(EmailConstants.MAIL_SMTP_USER);
+        String password = null;
+
+        if ("true".equalsIgnoreCase(properties.getProperty(EmailConstants.MAIL_SMTP_AUTH)))
+        {
+            final PasswordAuthentication authentication =
+                    session.requestPasswordAuthentication(null, port, EmailConstants.SMTP, null, userName);
+            if (authentication != null)
+            {
+                userName = authentication.getUserName();
+                password = authentication.getPassword();
+            }
+        }
+
+        return new SmtpConnectionKey(host, port, sslOnConnect, startTls, userName, password,
+                getMailProperties(properties));
+    }
+
+    /**
+     * Collects the "mail.*" properties, including the defaults of the given
+     * properties and values which are not strings, e.g. socket factories.
+     *
+     * @param properties the session properties
+     * @return the mail properties by name
+     */
+    private static Map<String, Object> getMailProperties(final Properties properties)
+    {
+        final Map<String, Object> result = new TreeMap<>();
+
+        for (final String name : properties.stringPropertyNames())
+        {
+            if (name.startsWith(MAIL_PREFIX))
+            {
+                result.put(name, properties.getProperty(name));
+            }
+        }
+        for (final Map.Entry<Object, Object> entry : properties.entrySet())
+        {
+            if (entry.getKey() instanceof String && ((String) entry.getKey()).startsWith(MAIL_PREFIX))
+            {
+                result.put((String) entry.getKey(), entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the host name of the SMTP server
+     */
+    public String getHost()
+    {
+        return host;
+    }
+
+    /**
+     * @return the port of the SMTP server
+     */
+    public int getPort()
+    {
+        return port;
+    }
+
+    /**
+     * @return true if SSL/TLS is used upon connection
+     */
+    public boolean isSslOnConnect()
+    {
+        return sslOnConnect;
+    }
+
+    /**
+     * @return true if STARTTLS is enabled
+     */
+    public boolean isStartTls()
+    {
+        return startTls;
+    }
+
+    /**
+     * @return the user name used for authentication, may be null
+     */
+    public String getUserName()
+    {
+        return userName;
+    }
+
+    /**
+     * @return the "mail.*" properties of the session by name
+     */
+    public Map<String, Object> getProperties()
+    {
+        return properties;
+    }
+
+    @Override
+    public boolean equals(final Object obj)
+    {
+        if (this == obj)
+        {
+            return true;
+        }
+        if (!(obj instanceof SmtpConnectionKey))
+        {
+            return false;
+        }
+        final SmtpConnectionKey that = (SmtpConnectionKey) obj;
+        return port == that.port
+                && sslOnConnect == that.sslOnConnect
+                && startTls == that.startTls
+                && Objects.equals(host, that.host)
+                && Objects.equals(userName, that.userName)
+                && Objects.equals(password, that.password)
+                && properties.equals(that.properties);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(host, port, sslOnConnect, startTls, userName, password, properties);
+    }
+
+    /**
+     * The password is deliberately left out.
+     *
+     * @return a string representation of the key
+     */
+    @Override
+    public String toString()
+    {
+        return (userName != null ? userName + "@" : "") + host + ":" + port
+                + (sslOnConnect ? " (ssl)" : startTls ? " (starttls)" : "");
+    }
+}
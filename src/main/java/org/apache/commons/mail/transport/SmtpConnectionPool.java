@@ -0,0 +1,525 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.transport;
+
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+
+/**
+ * A thread-safe, bounded pool of connected SMTP transports.
+ * <p>
+ * {@code Transport.send()} opens a new connection, performs the TLS handshake
+ * and authenticates for every single message. The pool keeps connections
+ * open between messages and hands them out per {@link SmtpConnectionKey}, i.e.
+ * per host, port, TLS mode and credentials.
+ * <ul>
+ *   <li>at most {@link #getMaxConnectionsPerKey()} connections are open per key,
+ *   callers wait up to {@link #getBorrowTimeoutMillis()} for a free one</li>
+ *   <li>connections idle for longer than {@link #getValidationIntervalMillis()}
+ *   are validated with a NOOP before being handed out</li>
+ *   <li>connections idle for longer than {@link #getMaxIdleMillis()} are closed</li>
+ *   <li>a connection is closed after {@link #getMaxMessagesPerConnection()} messages</li>
+ * </ul>
+ * <p>
+ * Typical usage:
+ * <pre>
+ * SmtpConnectionPool pool = new SmtpConnectionPool();
+ * ...
+ * email.setConnectionPool(pool);
+ * email.send();
+ * ...
+ * pool.close();
+ * </pre>
+ *
+ * @since 1.6.0
+ */
+public class SmtpConnectionPool implements AutoCloseable
+{
+    /** default maximum number of connections per key */
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_KEY = 8;
+
+    /** default maximum number of messages sent over a single connection */
+    public static final int DEFAULT_MAX_MESSAGES_PER_CONNECTION = 100;
+
+    /** default time in milliseconds an idle connection is kept open */
+    public static final long DEFAULT_MAX_IDLE_MILLIS = 30000;
+
+    /** default idle time in milliseconds after which a connection is validated before use */
+    public static final long DEFAULT_VALIDATION_INTERVAL_MILLIS = 2000;
+
+    /** default time in milliseconds to wait for a free connection */
+    public static final long DEFAULT_BORROW_TIMEOUT_MILLIS = 60000;
+
+    /** the connections grouped by key, keys without connections or borrowers are removed */
+    private final ConcurrentMap<SmtpConnectionKey, KeyedPool> pools = new ConcurrentHashMap<>();
+
+    /** maximum number of connections per key */
+    private volatile int maxConnectionsPerKey = DEFAULT_MAX_CONNECTIONS_PER_KEY;
+
+    /** maximum number of messages sent over a single connection */
+    private volatile int maxMessagesPerConnection = DEFAULT_MAX_MESSAGES_PER_CONNECTION;
+
+    /** time in milliseconds an idle connection is kept open */
+    private volatile long maxIdleMillis = DEFAULT_MAX_IDLE_MILLIS;
+
+    /** idle time in milliseconds after which a connection is validated before use */
+    private volatile long validationIntervalMillis = DEFAULT_VALIDATION_INTERVAL_MILLIS;
+
+    /** time in milliseconds to wait for a free connection */
+    private volatile long borrowTimeoutMillis = DEFAULT_BORROW_TIMEOUT_MILLIS;
+
+    /** set once the pool is closed */
+    private volatile boolean closed;
+
+    /** number of connections opened */
+    private final AtomicLong createdCount = new AtomicLong();
+
+    /** number of connections closed */
+    private final AtomicLong destroyedCount = new AtomicLong();
+
+    /** number of successful borrows */
+    private final AtomicLong borrowedCount = new AtomicLong();
+
+    /**
+     * Borrows a connected transport for the SMTP server described by the session.
+     * The returned transport must be closed to hand it back to the pool.
+     *
+     * @param session the mail session
+     * @return a connected transport
+     * @throws MessagingException connecting failed, the pool is closed or no
+     *  connection became available in time
+     */
+    public PooledTransport borrow(final Session session) throws MessagingException
+    {
+        if (closed)
+        {
+            throw new MessagingException("The SMTP connection pool is closed");
+        }
+
+        final SmtpConnectionKey key = SmtpConnectionKey.of(session);
+        final KeyedPool keyedPool = pools.compute(key, (k, p) -> {
+            final KeyedPool result = p != null ? p : new KeyedPool(maxConnectionsPerKey);
+            result.users++;
+            return result;
+        });
+
+        try
+        {
+            if (!keyedPool.permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS))
+            {
+                leave(key);
+                throw new MessagingException("Timed out waiting for an SMTP connection to " + key);
+            }
+        }
+        catch (final InterruptedException e)
+        {
+            leave(key);
+            Thread.currentThread().interrupt();
+            throw new MessagingException("Interrupted while waiting for an SMTP connection to " + key, e);
+        }
+
+        try
+        {
+            final long now = System.currentTimeMillis();
+            evictExpired(keyedPool, now);
+
+            PooledTransport pooled;
+            while ((pooled = keyedPool.idle.pollFirst()) != null)
+            {
+                if (isReusable(pooled, now))
+                {
+                    break;
+                }
+                destroy(pooled);
+            }
+
+            if (pooled == null)
+            {
+                pooled = create(session, key);
+            }
+
+            pooled.markBorrowed();
+            borrowedCount.incrementAndGet();
+            return pooled;
+        }
+        catch (final MessagingException | RuntimeException e)
+        {
+            keyedPool.permits.release();
+            leave(key);
+            throw e;
+        }
+    }
+
+    /**
+     * Closes all connections that have been idle for longer than
+     * {@link #getMaxIdleMillis()} and forgets the keys left without
+     * connections. Stale connections are also evicted lazily while
+     * borrowing, so calling this method periodically is only needed to
+     * release server resources of keys which are no longer used.
+     */
+    public void evictIdleConnections()
+    {
+        final long now = System.currentTimeMillis();
+
+        for (final Map.Entry<SmtpConnectionKey, KeyedPool> entry : pools.entrySet())
+        {
+            evictExpired(entry.getValue(), now);
+            pools.computeIfPresent(entry.getKey(), (k, p) -> p.isUnused() ? null : p);
+        }
+    }
+
+    /**
+     * Closes the pool and all idle connections. Borrowed connections are
+     * closed as soon as they are handed back.
+     */
+    @Override
+    public void close()
+    {
+        closed = true;
+
+        for (final KeyedPool keyedPool : pools.values())
+        {
+            PooledTransport pooled;
+            while ((pooled = keyedPool.idle.pollFirst()) != null)
+            {
+                destroy(pooled);
+            }
+        }
+    }
+
+    /**
+     * Hands a connection back to the pool.
+     *
+     * @param pooled the connection
+     */
+    void release(final PooledTransport pooled)
+    {
+        final KeyedPool keyedPool = pools.get(pooled.getKey());
+
+        if (closed || keyedPool == null || pooled.isInvalid()
+                || pooled.getMessageCount() >= maxMessagesPerConnection)
+        {
+            destroy(pooled);
+        }
+        else
+        {
+            pooled.markReturned(System.currentTimeMillis());
+            // LIFO keeps the most recently used connections hot, stale ones
+            // sink to the tail where they get evicted
+            keyedPool.idle.offerFirst(pooled);
+        }
+
+        if (keyedPool != null)
+        {
+            keyedPool.permits.release();
+            leave(pooled.getKey());
+        }
+    }
+
+    /**
+     * Ends the use of a key by a borrower and forgets the key if it has no
+     * connections left.
+     *
+     * @param key the connection key
+     */
+    private void leave(final SmtpConnectionKey key)
+    {
+        pools.computeIfPresent(key, (k, p) -> {
+            p.users--;
+            return p.isUnused() ? null : p;
+        });
+    }
+
+    /**
+     * Is the idle connection still usable?
+     *
+     * @param pooled the connection
+     * @param now the current time in milliseconds
+     * @return true if the connection can be handed out
+     */
+    private boolean isReusable(final PooledTransport pooled, final long now)
+    {
+        final long idleMillis = now - pooled.getLastUsedAt();
+
+        if (idleMillis > maxIdleMillis)
+        {
+            return false;
+        }
+        if (idleMillis >= validationIntervalMillis)
+        {
+            // SMTPTransport sends a NOOP to check the connection
+            return pooled.getTransport().isConnected();
+        }
+        return true;
+    }
+
+    /**
+     * Closes the idle connections at the tail of the deque which have been
+     * idle for too long.
+     *
+     * @param keyedPool the pool of a single key
+     * @param now the current time in milliseconds
+     */
+    private void evictExpired(final KeyedPool keyedPool, final long now)
+    {
+        final Iterator<PooledTransport> it = keyedPool.idle.descendingIterator();
+
+        while (it.hasNext())
+        {
+            final PooledTransport pooled = it.next();
+
+            if (now - pooled.getLastUsedAt() <= maxIdleMillis)
+            {
+                break;
+            }
+            if (keyedPool.idle.removeLastOccurrence(pooled))
+            {
+                destroy(pooled);
+            }
+        }
+    }
+
+    /**
+     * Opens a new connection.
+     *
+     * @param session the mail session
+     * @param key the connection key
+     * @return the connection
+     * @throws MessagingException connecting failed
+     */
+    private PooledTransport create(final Session session, final SmtpConnectionKey key) throws MessagingException
+    {
+        final Transport transport = session.getTransport();
+        transport.connect();
+        createdCount.incrementAndGet();
+        return new PooledTransport(this, key, transport);
+    }
+
+    /**
+     * Closes a connection quietly.
+     *
+     * @param pooled the connection
+     */
+    private void destroy(final PooledTransport pooled)
+    {
+        destroyedCount.incrementAndGet();
+
+        try
+        {
+            pooled.getTransport().close();
+        }
+        catch (final MessagingException e) // NOPMD
+        {
+            // the connection is discarded anyway
+        }
+    }
+
+    /**
+     * @return the maximum number of connections per key
+     */
+    public int getMaxConnectionsPerKey()
+    {
+        return maxConnectionsPerKey;
+    }
+
+    /**
+     * Sets the maximum number of connections per key. Only affects keys
+     * that have not been used yet.
+     *
+     * @param maxConnectionsPerKey the maximum number of connections per key
+     * @throws IllegalArgumentException if the value is &lt; 1
+     */
+    public void setMaxConnectionsPerKey(final int maxConnectionsPerKey)
+    {
+        if (maxConnectionsPerKey < 1)
+        {
+            throw new IllegalArgumentException("maxConnectionsPerKey must be at least 1");
+        }
+        this.maxConnectionsPerKey = maxConnectionsPerKey;
+    }
+
+    /**
+     * @return the maximum number of messages sent over a single connection
+     */
+    public int getMaxMessagesPerConnection()
+    {
+        return maxMessagesPerConnection;
+    }
+
+    /**
+     * Sets the maximum number of messages sent over a single connection
+     * before it is closed.
+     *
+     * @param maxMessagesPerConnection the maximum number of messages
+     * @throws IllegalArgumentException if the value is &lt; 1
+     */
+    public void setMaxMessagesPerConnection(final int maxMessagesPerConnection)
+    {
+        if (maxMessagesPerConnection < 1)
+        {
+            throw new IllegalArgumentException("maxMessagesPerConnection must be at least 1");
+        }
+        this.maxMessagesPerConnection = maxMessagesPerConnection;
+    }
+
+    /**
+     * @return the time in milliseconds an idle connection is kept open
+     */
+    public long getMaxIdleMillis()
+    {
+        return maxIdleMillis;
+    }
+
+    /**
+     * Sets the time in milliseconds an idle connection is kept open.
+     *
+     * @param maxIdleMillis the maximum idle time
+     */
+    public void setMaxIdleMillis(final long maxIdleMillis)
+    {
+        this.maxIdleMillis = maxIdleMillis;
+    }
+
+    /**
+     * @return the idle time in milliseconds after which a connection is validated before use
+     */
+    public long getValidationIntervalMillis()
+    {
+        return validationIntervalMillis;
+    }
+
+    /**
+     * Sets the idle time in milliseconds after which a connection is validated
+     * before use. Use 0 to validate on every borrow.
+     *
+     * @param validationIntervalMillis the validation interval
+     */
+    public void setValidationIntervalMillis(final long validationIntervalMillis)
+    {
+        this.validationIntervalMillis = validationIntervalMillis;
+    }
+
+    /**
+     * @return the time in milliseconds to wait for a free connection
+     */
+    public long getBorrowTimeoutMillis()
+    {
+        return borrowTimeoutMillis;
+    }
+
+    /**
+     * Sets the time in milliseconds to wait for a free connection.
+     *
+     * @param borrowTimeoutMillis the borrow timeout
+     */
+    public void setBorrowTimeoutMillis(final long borrowTimeoutMillis)
+    {
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+    }
+
+    /**
+     * @return the number of connections opened by this pool
+     */
+    public long getCreatedCount()
+    {
+        return createdCount.get();
+    }
+
+    /**
+     * @return the number of connections closed by this pool
+     */
+    public long getDestroyedCount()
+    {
+        return destroyedCount.get();
+    }
+
+    /**
+     * @return the number of connections handed out by this pool
+     */
+    public long getBorrowedCount()
+    {
+        return borrowedCount.get();
+    }
+
+    /**
+     * @return the number of idle connections over all keys
+     */
+    public int getIdleCount()
+    {
+        int result = 0;
+        for (final KeyedPool keyedPool : pools.values())
+        {
+            result += keyedPool.idle.size();
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of keys with idle or borrowed connections
+     */
+    public int getKeyCount()
+    {
+        return pools.size();
+    }
+
+    /**
+     * @return true if the pool has been closed
+     */
+    public boolean isClosed()
+    {
+        return closed;
+    }
+
+    /**
+     * The idle connections and the connection limit of a single key.
+     */
+    private static final class KeyedPool
+    {
+        /** the idle connections, most recently used first */
+        private final Deque<PooledTransport> idle = new ConcurrentLinkedDeque<>();
+
+        /** bounds the number of open connections */
+        private final Semaphore permits;
+
+        /** number of borrowers waiting for or holding a connection, only changed while computing the map entry */
+        private int users;
+
+        KeyedPool(final int maxConnections)
+        {
+            this.permits = new Semaphore(maxConnections, true);
+        }
+
+        /**
+         * @return true if the key can be forgotten, must be called while computing the map entry
+         */
+        private boolean isUnused()
+        {
+            return users == 0 && idle.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.transport;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.mail.MessagingException;
+
+import org.apache.commons.mail.util.ResizableSemaphore;
+
+/**
+ * Limits the sends to an SMTP server before a connection is made: a token
+ * bucket caps the messages per second, a semaphore the number of concurrent
+ * sends. Both limits can be changed at any time, for example after the
+ * server started answering with 421.
+ * <p>
+ * A new limiter is unlimited. A send obtains a {@link Permit} which must be
+ * closed when the send is done:
+ * <pre>
+ * SmtpRateLimiter limiter = new SmtpRateLimiter();
+ * limiter.setRatePerSecond(10);
+ * limiter.setMaxConcurrent(2);
+ * email.setRateLimiter(limiter);
+ * </pre>
+ *
+ * @since 1.6.0
+ */
+public final class SmtpRateLimiter
+{
+    /** A granted send, closing it frees the concurrency slot. */
+    public final class Permit implements AutoCloseable
+    {
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit()
+        {
+        }
+
+        @Override
+        public void close()
+        {
+            if (released.compareAndSet(false, true))
+            {
+                concurrency.release();
+            }
+        }
+    }
+
+    /** default time in milliseconds to wait for a permit */
+    public static final long DEFAULT_ACQUIRE_TIMEOUT_MILLIS = 60000;
+
+    /** limits the concurrent sends */
+    private final ResizableSemaphore concurrency = new ResizableSemaphore(Integer.MAX_VALUE);
+
+    /** the messages per second, 0 for unlimited, guarded by this */
+    private double ratePerSecond;
+
+    /** the maximum number of tokens, guarded by this */
+    private double burst = 1;
+
+    /** the available tokens, guarded by this */
+    private double tokens = 1;
+
+    /** the last refill of the bucket, guarded by this */
+    private long refilledAt = System.nanoTime();
+
+    private volatile long acquireTimeoutMillis = DEFAULT_ACQUIRE_TIMEOUT_MILLIS;
+
+    /** number of permits granted */
+    private final AtomicLong acquiredCount = new AtomicLong();
+
+    /** number of permits which were delayed or refused */
+    private final AtomicLong throttledCount = new AtomicLong();
+
+    /**
+     * Gets a permit without waiting.
+     *
+     * @return the permit or null if a limit is reached
+     */
+    public Permit tryAcquire()
+    {
+        if (!concurrency.tryAcquire())
+        {
+            throttledCount.incrementAndGet();
+            return null;
+        }
+        if (!tryTakeToken())
+        {
+            concurrency.release();
+            throttledCount.incrementAndGet();
+            return null;
+        }
+        acquiredCount.incrementAndGet();
+        return new Permit();
+    }
+
+    /**
+     * Gets a permit waiting up to {@link #getAcquireTimeoutMillis()}.
+     *
+     * @return the permit
+     * @throws MessagingException the timeout elapsed or the thread was interrupted
+     */
+    public Permit acquire() throws MessagingException
+    {
+        final Permit permit = tryAcquire();
+
+        if (permit != null)
+        {
+            return permit;
+        }
+
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(acquireTimeoutMillis);
+
+        try
+        {
+            if (!concurrency.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS))
+            {
+                throw new MessagingException("Timed out waiting for a free connection slot: " + this);
+            }
+
+            long waitNanos;
+            while ((waitNanos = takeTokenOrGetWait()) > 0)
+            {
+                if (System.nanoTime() + waitNanos > deadline)
+                {
+                    concurrency.release();
+                    throw new MessagingException("Timed out waiting for the send rate limit: " + this);
+                }
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+        }
+        catch (final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new MessagingException("Interrupted while waiting for the send rate limit", e);
+        }
+
+        acquiredCount.incrementAndGet();
+        return new Permit();
+    }
+
+    private synchronized boolean tryTakeToken()
+    {
+        return takeTokenOrGetWait() == 0;
+    }
+
+    /**
+     * Takes a token if one is available.
+     *
+     * @return 0 if a token was taken, otherwise the nanoseconds until the next token
+     */
+    private synchronized long takeTokenOrGetWait()
+    {
+        if (ratePerSecond <= 0)
+        {
+            return 0;
+        }
+
+        refill();
+
+        if (tokens >= 1)
+        {
+            tokens--;
+            return 0;
+        }
+        return Math.max(1, (long) ((1 - tokens) / ratePerSecond * TimeUnit.SECONDS.toNanos(1)));
+    }
+
+    private void refill()
+    {
+        final long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - refilledAt) * ratePerSecond / TimeUnit.SECONDS.toNanos(1));
+        refilledAt = now;
+    }
+
+    /**
+     * @return the messages per second, 0 if unlimited
+     */
+    public synchronized double getRatePerSecond()
+    {
+        return ratePerSecond;
+    }
+
+    /**
+     * Sets the sustained number of messages per second.
+     *
+     * @param ratePerSecond the messages per second, 0 for unlimited
+     */
+    public synchronized void setRatePerSecond(final double ratePerSecond)
+    {
+        if (ratePerSecond < 0)
+        {
+            throw new IllegalArgumentException("ratePerSecond must not be negative");
+        }
+        refill();
+        this.ratePerSecond = ratePerSecond;
+    }
+
+    /**
+     * @return the number of messages which may be sent at once after an idle period
+     */
+    public synchronized int getBurst()
+    {
+        return (int) burst;
+    }
+
+    /**
+     * Sets the capacity of the token bucket.
+     *
+     * @param burst the number of messages which may be sent at once after an idle period
+     */
+    public synchronized void setBurst(final int burst)
+    {
+        if (burst < 1)
+        {
+            throw new IllegalArgumentException("burst must be at least 1");
+        }
+        refill();
+        this.burst = burst;
+        this.tokens = Math.min(tokens, burst);
+    }
+
+    /**
+     * @return the number of tokens currently available
+     */
+    public synchronized double getAvailableTokens()
+    {
+        if (ratePerSecond > 0)
+        {
+            refill();
+        }
+        return tokens;
+    }
+
+    /**
+     * @return the maximum number of concurrent sends
+     */
+    public int getMaxConcurrent()
+    {
+        return concurrency.getMaxPermits();
+    }
+
+    /**
+     * Sets the maximum number of concurrent sends. Lowering the limit does
+     * not affect sends in progress.
+     *
+     * @param maxConcurrent the maximum number of concurrent sends
+     */
+    public void setMaxConcurrent(final int maxConcurrent)
+    {
+        concurrency.setMaxPermits(maxConcurrent);
+    }
+
+    /**
+     * @return the number of sends in progress
+     */
+    public int getInFlight()
+    {
+        return concurrency.getUsedPermits();
+    }
+
+    /**
+     * @return the time in milliseconds to wait for a permit
+     */
+    public long getAcquireTimeoutMillis()
+    {
+        return acquireTimeoutMillis;
+    }
+
+    /**
+     * @param acquireTimeoutMillis the time in milliseconds to wait for a permit
+     */
+    public void setAcquireTimeoutMillis(final long acquireTimeoutMillis)
+    {
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+    }
+
+    /**
+     * @return the number of permits granted
+     */
+    public long getAcquiredCount()
+    {
+        return acquiredCount.get();
+    }
+
+    /**
+     * @return the number of permits which were delayed or refused
+     */
+    public long getThrottledCount()
+    {
+        return throttledCount.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        final double rate = getRatePerSecond();
+        final int maxConcurrent = getMaxConcurrent();
+        return "SmtpRateLimiter[rate=" + (rate > 0 ? rate + "/s" : "unlimited")
+                + ", tokens=" + (rate > 0 ? String.format("%.2f", Double.valueOf(getAvailableTokens())) : "-")
+                + ", inFlight=" + getInFlight()
+                + ", maxConcurrent=" + (maxConcurrent == Integer.MAX_VALUE ? "unlimited" : Integer.toString(maxConcurrent))
+                + ", throttled=" + getThrottledCount() + "]";
+    }
+}
@@ -0,0 +1,400 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.transport;
+
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.mail.Session;
+
+import org.apache.commons.mail.MailSessionConfig;
+import org.apache.commons.mail.MailSessionFactory;
+
+/**
+ * An SMTP relay of a {@link SmtpRelayGroup} together with its observed health.
+ * <p>
+ * Every send updates an exponentially weighted moving average (EWMA) of the
+ * latency and the error rate of the relay. Consecutive failures open a
+ * circuit breaker which takes the relay out of rotation; after
+ * {@link #getOpenMillis()} a single probe is let through and closes the
+ * breaker again if it succeeds.
+ * <p>
+ * Each relay also has a {@link SmtpRateLimiter}, unlimited by default, which
+ * is honoured before connecting to it.
+ *
+ * @since 1.6.0
+ */
+public final class SmtpRelay
+{
+    /** The states of the circuit breaker. */
+    public enum CircuitState
+    {
+        /** the relay is used */
+        CLOSED,
+
+        /** the relay failed and is skipped */
+        OPEN,
+
+        /** a probe is being sent to the failed relay */
+        HALF_OPEN
+    }
+
+    /** default weight of a new sample in the moving averages */
+    public static final double DEFAULT_EWMA_ALPHA = 0.3;
+
+    /** default number of consecutive failures opening the circuit breaker */
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+
+    /** default time in milliseconds the circuit breaker stays open */
+    public static final long DEFAULT_OPEN_MILLIS = 30000;
+
+    /** the penalty factor applied to the error rate when scoring */
+    private static final double ERROR_PENALTY = 10;
+
+    /** the session settings of this relay */
+    private final MailSessionConfig config;
+
+    /** the lazily created session */
+    private volatile Session session;
+
+    /** the sessions with envelope settings, keyed by a copy of the settings */
+    private final ConcurrentMap<Properties, Session> envelopeSessions = new ConcurrentHashMap<>();
+
+    /** limits the sends to this relay */
+    private final SmtpRateLimiter rateLimiter = new SmtpRateLimiter();
+
+    /** the average latency of successful sends in milliseconds, 0 before the first sample */
+    private double latencyMillis;
+
+    /** the average error rate between 0 and 1 */
+    private double errorRate;
+
+    private CircuitState circuitState = CircuitState.CLOSED;
+
+    private int consecutiveFailures;
+
+    private long openedAt;
+
+    private long sentCount;
+
+    private long failedCount;
+
+    private volatile double ewmaAlpha = DEFAULT_EWMA_ALPHA;
+
+    private volatile int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+
+    private volatile long openMillis = DEFAULT_OPEN_MILLIS;
+
+    /**
+     * Creates a relay sending with the given session settings.
+     *
+     * @param config the session settings
+     */
+    public SmtpRelay(final MailSessionConfig config)
+    {
+        if (config == null)
+        {
+            throw new IllegalArgumentException("config must not be null");
+        }
+        this.config = config;
+    }
+
+    /**
+     * Creates a relay for a plain SMTP server.
+     *
+     * @param hostName the host name
+     * @param port the port
+     */
+    public SmtpRelay(final String hostName, final int port)
+    {
+        this(MailSessionConfig.builder().setHostName(hostName).setSmtpPort(port).build());
+    }
+
+    /**
+     * @return the session settings of this relay
+     */
+    public MailSessionConfig getConfig()
+    {
+        return config;
+    }
+
+    /**
+     * Gets the limiter of this relay. Its limits can be changed at any time
+     * and its getters report the current state.
+     *
+     * @return the rate limiter
+     */
+    public SmtpRateLimiter getRateLimiter()
+    {
+        return rateLimiter;
+    }
+
+    /**
+     * Gets the session used to send through this relay, creating it on first use.
+     *
+     * @return the session
+     */
+    public Session getSession()
+    {
+        Session result = session;
+
+        if (result == null)
+        {
+            synchronized (this)
+            {
+                result = session;
+                if (result == null)
+                {
+                    result = config.createSession();
+                    session = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets a session to send a message through this relay, with the envelope
+     * settings of the message (for example its bounce address) taking
+     * precedence over the settings of this relay.
+     *
+     * The sessions of up to {@link MailSessionFactory#DEFAULT_MAX_SESSIONS}
+     * distinct envelope settings are cached, further settings get unshared
+     * sessions.
+     *
+     * @param envelope the envelope settings of the message, null or empty for none
+     * @return the session of this relay, or the session for the envelope settings if given
+     */
+    public Session getSession(final Properties envelope)
+    {
+        if (envelope == null || envelope.isEmpty())
+        {
+            return getSession();
+        }
+
+        final Session cached = envelopeSessions.get(envelope);
+
+        if (cached != null)
+        {
+            return cached;
+        }
+        if (envelopeSessions.size() >= MailSessionFactory.DEFAULT_MAX_SESSIONS)
+        {
+            return createSession(envelope);
+        }
+
+        final Properties key = new Properties();
+        key.putAll(envelope);
+        return envelopeSessions.computeIfAbsent(key, this::createSession);
+    }
+
+    private Session createSession(final Properties envelope)
+    {
+        final Properties properties = config.toProperties();
+        properties.putAll(envelope);
+        return Session.getInstance(properties, config.getAuthenticator());
+    }
+
+    /**
+     * Tells whether the relay may currently be used without changing its state.
+     *
+     * @return false if the circuit breaker is open or a probe is in progress
+     */
+    synchronized boolean isAvailable()
+    {
+        switch (circuitState)
+        {
+            case CLOSED:
+                return true;
+            case OPEN:
+                return System.nanoTime() - openedAt >= TimeUnit.MILLISECONDS.toNanos(openMillis);
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Requests to send through this relay. An open circuit breaker whose
+     * open time has elapsed lets a single probe through.
+     *
+     * @return true if the caller may send
+     */
+    synchronized boolean tryAcquire()
+    {
+        if (circuitState == CircuitState.CLOSED)
+        {
+            return true;
+        }
+        if (circuitState == CircuitState.OPEN
+                && System.nanoTime() - openedAt >= TimeUnit.MILLISECONDS.toNanos(openMillis))
+        {
+            circuitState = CircuitState.HALF_OPEN;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Records a successful send.
+     *
+     * @param elapsedNanos the duration of the send
+     */
+    synchronized void recordSuccess(final long elapsedNanos)
+    {
+        final double millis = elapsedNanos / 1e6;
+        latencyMillis = sentCount == 0 ? millis : ewma(latencyMillis, millis);
+        errorRate = ewma(errorRate, 0);
+        consecutiveFailures = 0;
+        circuitState = CircuitState.CLOSED;
+        sentCount++;
+    }
+
+    /**
+     * Records a failed send, opening the circuit breaker after too many
+     * consecutive failures or a failed probe.
+     */
+    synchronized void recordFailure()
+    {
+        errorRate = ewma(errorRate, 1);
+        consecutiveFailures++;
+        failedCount++;
+
+        if (circuitState == CircuitState.HALF_OPEN || consecutiveFailures >= failureThreshold)
+        {
+            circuitState = CircuitState.OPEN;
+            openedAt = System.nanoTime();
+        }
+    }
+
+    /**
+     * Gets the score used to rank relays, lower is better. Relays without
+     * samples score 0 so they are tried early.
+     *
+     * @return the average latency penalized by the error rate
+     */
+    synchronized double getScore()
+    {
+        return latencyMillis * (1 + ERROR_PENALTY * errorRate) + ERROR_PENALTY * errorRate;
+    }
+
+    private double ewma(final double average, final double sample)
+    {
+        return average + ewmaAlpha * (sample - average);
+    }
+
+    /**
+     * @return the moving average of the send latency in milliseconds
+     */
+    public synchronized double getLatencyMillis()
+    {
+        return latencyMillis;
+    }
+
+    /**
+     * @return the moving average of the error rate between 0 and 1
+     */
+    public synchronized double getErrorRate()
+    {
+        return errorRate;
+    }
+
+    /**
+     * @return the state of the circuit breaker
+     */
+    public synchronized CircuitState getCircuitState()
+    {
+        return circuitState;
+    }
+
+    /**
+     * @return the number of messages sent through this relay
+     */
+    public synchronized long getSentCount()
+    {
+        return sentCount;
+    }
+
+    /**
+     * @return the number of failed sends
+     */
+    public synchronized long getFailedCount()
+    {
+        return failedCount;
+    }
+
+    /**
+     * @return the weight of a new sample in the moving averages
+     */
+    public double getEwmaAlpha()
+    {
+        return ewmaAlpha;
+    }
+
+    /**
+     * @param ewmaAlpha the weight of a new sample in the moving averages, between 0 and 1
+     */
+    public void setEwmaAlpha(final double ewmaAlpha)
+    {
+        if (ewmaAlpha <= 0 || ewmaAlpha > 1)
+        {
+            throw new IllegalArgumentException("ewmaAlpha must be greater than 0 and at most 1");
+        }
+        this.ewmaAlpha = ewmaAlpha;
+    }
+
+    /**
+     * @return the number of consecutive failures opening the circuit breaker
+     */
+    public int getFailureThreshold()
+    {
+        return failureThreshold;
+    }
+
+    /**
+     * @param failureThreshold the number of consecutive failures opening the circuit breaker
+     */
+    public void setFailureThreshold(final int failureThreshold)
+    {
+        this.failureThreshold = failureThreshold;
+    }
+
+    /**
+     * @return the time in milliseconds the circuit breaker stays open
+     */
+    public long getOpenMillis()
+    {
+        return openMillis;
+    }
+
+    /**
+     * @param openMillis the time in milliseconds the circuit breaker stays open
+     */
+    public void setOpenMillis(final long openMillis)
+    {
+        this.openMillis = openMillis;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return config.getHostName() + ":" + (config.isSSLOnConnect() ? config.getSslSmtpPort() : config.getSmtpPort())
+                + "[" + circuitState + ", latency=" + Math.round(latencyMillis) + "ms, errors="
+                + Math.round(errorRate * 100) + "%, " + rateLimiter + "]";
+    }
+}
@@ -0,0 +1,378 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.transport;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.mail.Address;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.Transport;
+
+import org.apache.commons.mail.retry.SmtpFailure;
+
+/**
+ * A group of interchangeable SMTP relays. Messages are sent through the
+ * relay with the best observed latency and error rate and fail over to the
+ * next relay when a relay cannot be reached or answers with a transient
+ * error. Relays failing repeatedly are taken out of rotation by their
+ * circuit breaker, see {@link SmtpRelay}.
+ * <p>
+ * The first relay is chosen by comparing two random relays and taking the
+ * one with the lower score ("power of two choices"), which prefers fast
+ * relays without sending all traffic to a single one. Relays at the limit
+ * of their {@link SmtpRateLimiter} are only waited for if no other relay
+ * accepted the message.
+ * <p>
+ * The envelope settings of an email, such as its bounce address, are merged
+ * into the session of the relay it is sent through.
+ * <pre>
+ * SmtpRelayGroup relays = new SmtpRelayGroup(
+ *     new SmtpRelay("smtp1.example.com", 25),
+ *     new SmtpRelay("smtp2.example.com", 25));
+ * email.setRelayGroup(relays);
+ * email.send();
+ * </pre>
+ *
+ * @since 1.6.0
+ */
+public class SmtpRelayGroup
+{
+    /** the relays in the order they were given */
+    private final List<SmtpRelay> relays;
+
+    /**
+     * Creates a group of relays.
+     *
+     * @param relays the relays
+     * @throws IllegalArgumentException if no relay is given
+     */
+    public SmtpRelayGroup(final SmtpRelay... relays)
+    {
+        this(Arrays.asList(relays));
+    }
+
+    /**
+     * Creates a group of relays.
+     *
+     * @param relays the relays
+     * @throws IllegalArgumentException if no relay is given
+     */
+    public SmtpRelayGroup(final List<SmtpRelay> relays)
+    {
+        if (relays == null || relays.isEmpty())
+        {
+            throw new IllegalArgumentException("At least one relay is required");
+        }
+        this.relays = Collections.unmodifiableList(new ArrayList<>(relays));
+    }
+
+    /**
+     * Sends a message opening a new connection for every attempt.
+     *
+     * @param message the message, {@code saveChanges()} must have been called
+     * @return the relay which accepted the message
+     * @throws MessagingException the message was rejected permanently or no relay accepted it
+     */
+    public SmtpRelay send(final Message message) throws MessagingException
+    {
+        return send(message, null);
+    }
+
+    /**
+     * Sends a message to all its recipients, failing over to the next relay
+     * on connection errors and transient failures. Permanent failures and
+     * partial deliveries are not retried on another relay.
+     *
+     * @param message the message, {@code saveChanges()} must have been called
+     * @param connectionPool the pool to borrow connections from, null to open a connection per attempt
+     * @return the relay which accepted the message
+     * @throws MessagingException the message was rejected permanently or no relay accepted it
+     */
+    public SmtpRelay send(final Message message, final SmtpConnectionPool connectionPool) throws MessagingException
+    {
+        return send(message, connectionPool, null);
+    }
+
+    /**
+     * Sends a message to all its recipients, failing over to the next relay
+     * on connection errors and transient failures. Permanent failures and
+     * partial deliveries are not retried on another relay.
+     *
+     * @param message the message, {@code saveChanges()} must have been called
+     * @param connectionPool the pool to borrow connections from, null to open a connection per attempt
+     * @param envelope the envelope settings of the message merged into the session of every relay,
+     *     for example {@code mail.smtp.from}, null for none
+     * @return the relay which accepted the message
+     * @throws MessagingException the message was rejected permanently or no relay accepted it
+     * @see SmtpRelay#getSession(Properties)
+     */
+    public SmtpRelay send(final Message message, final SmtpConnectionPool connectionPool, final Properties envelope)
+            throws MessagingException
+    {
+        return send(message, message.getAllRecipients(), connectionPool, envelope);
+    }
+
+    /**
+     * Sends a message to the given recipients, failing over to the next
+     * relay on connection errors and transient failures. Permanent failures
+     * and partial deliveries are not retried on another relay.
+     *
+     * @param message the message, {@code saveChanges()} must have been called
+     * @param recipients the recipients to send to, for example those of the message not reached yet
+     * @param connectionPool the pool to borrow connections from, null to open a connection per attempt
+     * @param envelope the envelope settings of the message merged into the session of every relay, null for none
+     * @return the relay which accepted the message
+     * @throws MessagingException the message was rejected permanently or no relay accepted it
+     */
+    public SmtpRelay send(final Message message, final Address[] recipients, final SmtpConnectionPool connectionPool,
+            final Properties envelope) throws MessagingException
+    {
+        if (recipients == null || recipients.length == 0)
+        {
+            throw new SendFailedException("No recipient addresses");
+        }
+
+        final List<SmtpRelay> throttled = new ArrayList<>();
+        final List<MessagingException> failures = new ArrayList<>();
+
+        // relays at their rate limit are skipped first and waited for last
+        for (final SmtpRelay relay : select())
+        {
+            final SmtpRateLimiter.Permit permit = relay.getRateLimiter().tryAcquire();
+
+            if (permit == null)
+            {
+                throttled.add(relay);
+            }
+            else if (attempt(relay, permit, message, recipients, connectionPool, envelope, failures))
+            {
+                return relay;
+            }
+        }
+
+        for (final SmtpRelay relay : throttled)
+        {
+            final SmtpRateLimiter.Permit permit;
+            try
+            {
+                permit = relay.getRateLimiter().acquire();
+            }
+            catch (final MessagingException e)
+            {
+                failures.add(e);
+                continue;
+            }
+
+            if (attempt(relay, permit, message, recipients, connectionPool, envelope, failures))
+            {
+                return relay;
+            }
+        }
+
+        if (failures.isEmpty())
+        {
+            throw new MessagingException("No SMTP relay available: " + relays);
+        }
+
+        final MessagingException failure = failures.get(0);
+        for (int i = 1; i < failures.size(); i++)
+        {
+            failure.addSuppressed(failures.get(i));
+        }
+        throw failure;
+    }
+
+    /**
+     * Sends the message through a relay.
+     *
+     * @param relay the relay
+     * @param permit the permit of the relay's rate limiter, closed by this method
+     * @param message the message
+     * @param recipients the recipients
+     * @param connectionPool the pool or null
+     * @param envelope the envelope settings or null
+     * @param failures collects the failures which justify trying the next relay
+     * @return true if the message was sent
+     * @throws MessagingException the message was rejected permanently
+     */
+    private static boolean attempt(final SmtpRelay relay, final SmtpRateLimiter.Permit permit,
+            final Message message, final Address[] recipients, final SmtpConnectionPool connectionPool,
+            final Properties envelope, final List<MessagingException> failures) throws MessagingException
+    {
+        try (SmtpRateLimiter.Permit granted = permit)
+        {
+            if (!relay.tryAcquire())
+            {
+                return false;
+            }
+
+            final long start = System.nanoTime();
+            boolean healthy = false;
+
+            // every outcome is recorded, a probe would otherwise keep the circuit half open
+            try
+            {
+                send(relay.getSession(envelope), message, recipients, connectionPool);
+                healthy = true;
+                return true;
+            }
+            catch (final MessagingException e)
+            {
+                if (!isFailover(e))
+                {
+                    // the relay works, it is the message which is rejected
+                    healthy = true;
+                    throw e;
+                }
+
+                failures.add(e);
+                return false;
+            }
+            finally
+            {
+                if (healthy)
+                {
+                    relay.recordSuccess(System.nanoTime() - start);
+                }
+                else
+                {
+                    relay.recordFailure();
+                }
+            }
+        }
+    }
+
+    /**
+     * Orders the available relays: the better one of two random relays
+     * first, the others by ascending score.
+     *
+     * @return the relays to try in order
+     */
+    List<SmtpRelay> select()
+    {
+        final List<SmtpRelay> available = new ArrayList<>(relays.size());
+
+        for (final SmtpRelay relay : relays)
+        {
+            if (relay.isAvailable())
+            {
+                available.add(relay);
+            }
+        }
+
+        if (available.size() < 2)
+        {
+            return available;
+        }
+
+        // scores change concurrently, sorting needs a stable snapshot
+        final Map<SmtpRelay, Double> scores = new IdentityHashMap<>();
+        for (final SmtpRelay relay : available)
+        {
+            scores.put(relay, Double.valueOf(relay.getScore()));
+        }
+        final Comparator<SmtpRelay> byScore = Comparator.comparingDouble(scores::get);
+
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final int first = random.nextInt(available.size());
+        int second = random.nextInt(available.size() - 1);
+        if (second >= first)
+        {
+            second++;
+        }
+
+        final SmtpRelay a = available.get(first);
+        final SmtpRelay b = available.get(second);
+        final SmtpRelay chosen = byScore.compare(a, b) <= 0 ? a : b;
+
+        available.remove(chosen);
+        available.sort(byScore);
+        available.add(0, chosen);
+        return available;
+    }
+
+    private static void send(final Session session, final Message message, final Address[] recipients,
+            final SmtpConnectionPool connectionPool) throws MessagingException
+    {
+        if (connectionPool != null)
+        {
+            try (PooledTransport transport = connectionPool.borrow(session))
+            {
+                transport.sendMessage(message, recipients);
+            }
+        }
+        else
+        {
+            final Transport transport = session.getTransport();
+            transport.connect();
+            try
+            {
+                transport.sendMessage(message, recipients);
+            }
+            finally
+            {
+                transport.close();
+            }
+        }
+    }
+
+    /**
+     * Tells whether a failure justifies trying the next relay: the relay
+     * could not be reached or answered with a transient error, and no
+     * recipient has received the message yet.
+     *
+     * @param e the failure
+     * @return true to fail over
+     */
+    private static boolean isFailover(final MessagingException e)
+    {
+        if (e instanceof SendFailedException)
+        {
+            final Address[] sent = ((SendFailedException) e).getValidSentAddresses();
+            if (sent != null && sent.length > 0)
+            {
+                return false;
+            }
+        }
+        return SmtpFailure.classify(e).isTransient();
+    }
+
+    /**
+     * @return the relays of this group
+     */
+    public List<SmtpRelay> getRelays()
+    {
+        return relays;
+    }
+
+    @Override
+    public String toString()
+    {
+        return relays.toString();
+    }
+}
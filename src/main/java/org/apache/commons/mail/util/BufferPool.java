@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A pool of byte buffers of a fixed size used to copy content without
+ * allocating a buffer for every copy. At most {@link #getMaxPooled()}
+ * buffers are kept; when the pool is empty a new buffer is allocated.
+ * <pre>
+ * byte[] buffer = BufferPool.getDefault().acquire();
+ * try
+ * {
+ *     // copy with the buffer
+ * }
+ * finally
+ * {
+ *     BufferPool.getDefault().release(buffer);
+ * }
+ * </pre>
+ *
+ * @since 1.6.0
+ */
+public final class BufferPool
+{
+    /** default size of the buffers */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /** the pool shared by default */
+    private static final BufferPool DEFAULT =
+            new BufferPool(DEFAULT_BUFFER_SIZE, 2 * Runtime.getRuntime().availableProcessors());
+
+    /** the size of the buffers */
+    private final int bufferSize;
+
+    /** the free buffers */
+    private final BlockingQueue<byte[]> buffers;
+
+    /**
+     * Constructor.
+     *
+     * @param bufferSize the size of the buffers
+     * @param maxPooled the maximum number of free buffers kept
+     */
+    public BufferPool(final int bufferSize, final int maxPooled)
+    {
+        if (bufferSize < 1 || maxPooled < 1)
+        {
+            throw new IllegalArgumentException("bufferSize and maxPooled must be at least 1");
+        }
+        this.bufferSize = bufferSize;
+        this.buffers = new ArrayBlockingQueue<>(maxPooled);
+    }
+
+    /**
+     * @return the pool shared by default
+     */
+    public static BufferPool getDefault()
+    {
+        return DEFAULT;
+    }
+
+    /**
+     * Takes a buffer from the pool or allocates a new one.
+     *
+     * @return a buffer of {@link #getBufferSize()} bytes
+     */
+    public byte[] acquire()
+    {
+        final byte[] buffer = buffers.poll();
+        return buffer != null ? buffer : new byte[bufferSize];
+    }
+
+    /**
+     * Returns a buffer to the pool. Buffers of a different size and buffers
+     * exceeding the pool size are left to the garbage collector.
+     *
+     * @param buffer the buffer, must not be used afterwards
+     */
+    public void release(final byte[] buffer)
+    {
+        if (buffer != null && buffer.length == bufferSize)
+        {
+            buffers.offer(buffer);
+        }
+    }
+
+    /**
+     * @return the size of the buffers
+     */
+    public int getBufferSize()
+    {
+        return bufferSize;
+    }
+
+    /**
+     * @return the maximum number of free buffers kept
+     */
+    public int getMaxPooled()
+    {
+        return buffers.size() + buffers.remainingCapacity();
+    }
+
+    /**
+     * @return the number of free buffers in the pool
+     */
+    public int getPooled()
+    {
+        return buffers.size();
+    }
+}
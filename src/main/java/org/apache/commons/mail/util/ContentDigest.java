@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import javax.activation.DataSource;
+import javax.activation.URLDataSource;
+
+import org.apache.commons.mail.ByteBufferDataSource;
+
+/**
+ * Computes keys identifying the content of a {@code DataSource}, used to
+ * embed identical content only once and to look up cached attachments.
+ *
+ * @since 1.6.0
+ */
+public final class ContentDigest
+{
+    /** the buffer size used for reading */
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * Instances should NOT be constructed in standard programming.
+     */
+    private ContentDigest()
+    {
+    }
+
+    /**
+     * Gets the key of the content of a data source: the SHA-256 hash of the
+     * bytes together with the content type. A {@code URLDataSource} is keyed
+     * by its URL instead, as hashing would download the content a second time.
+     *
+     * @param dataSource the content
+     * @return the key
+     * @throws IOException the content could not be read
+     */
+    public static String of(final DataSource dataSource) throws IOException
+    {
+        final String type = dataSource.getContentType();
+
+        if (dataSource.getClass() == URLDataSource.class)
+        {
+            return "url:" + ((URLDataSource) dataSource).getURL().toExternalForm() + ";" + type;
+        }
+
+        final MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (final NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+
+        if (dataSource instanceof ByteBufferDataSource)
+        {
+            // hash the shared bytes without copying them
+            digest.update(((ByteBufferDataSource) dataSource).asByteBuffer());
+        }
+        else
+        {
+            try (InputStream is = dataSource.getInputStream())
+            {
+                final byte[] buffer = new byte[BUFFER_SIZE];
+                int n;
+                while ((n = is.read(buffer)) != -1)
+                {
+                    digest.update(buffer, 0, n);
+                }
+            }
+        }
+
+        final byte[] hash = digest.digest();
+        final StringBuilder key = new StringBuilder("sha-256:");
+        for (final byte b : hash)
+        {
+            key.append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+        }
+        return key.append(';').append(type).toString();
+    }
+}
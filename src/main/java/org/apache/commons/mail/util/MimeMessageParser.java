@@ -16,9 +16,6 @@
  */
 package org.apache.commons.mail.util;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
@@ -43,7 +40,10 @@ import javax.mail.internet.MimeMessage;
 import javax.mail.internet.MimePart;
 import javax.mail.internet.MimeUtility;
 import javax.mail.internet.ParseException;
-import javax.mail.util.ByteArrayDataSource;
+
+import org.apache.commons.mail.ByteBufferDataSource;
+import org.apache.commons.mail.jfr.EmailEvent;
+import org.apache.commons.mail.jfr.EmailEventType;
 
 /**
  * Parses a MimeMessage and stores the individual parts such a plain text,
@@ -94,7 +94,22 @@ public class MimeMessageParser
      */
     public MimeMessageParser parse() throws MessagingException, IOException 
     {
-        this.parse(null, mimeMessage);
+        final EmailEvent event = EmailEvent.begin(EmailEventType.PARSE);
+        Throwable failure = null;
+        try
+        {
+            this.parse(null, mimeMessage);
+            event.setSize(mimeMessage.getSize()).setAttachmentCount(attachmentList.size());
+        }
+        catch (final MessagingException | IOException | RuntimeException e)
+        {
+            failure = e;
+            throw e;
+        }
+        finally
+        {
+            event.end(failure);
+        }
         return this;
     }
 
@@ -272,15 +287,31 @@ public class MimeMessageParser
         final DataHandler dataHandler = part.getDataHandler();
         final DataSource dataSource = dataHandler.getDataSource();
         final String contentType = getBaseMimeType(dataSource.getContentType());
-        byte[] content;
-        try (InputStream inputStream = dataSource.getInputStream()) 
+        final String dataSourceName = getDataSourceName(part, dataSource);
+        try (InputStream inputStream = dataSource.getInputStream())
         {
-            content = this.getContent(inputStream);
+            return ByteBufferDataSource.from(inputStream, getDecodedSize(part), true, contentType, dataSourceName);
         }
-        final ByteArrayDataSource result = new ByteArrayDataSource(content, contentType);
-        final String dataSourceName = getDataSourceName(part, dataSource);
-        result.setName(dataSourceName);
-        return result;
+    }
+
+    /**
+     * Estimates the size of the decoded content of a part from its encoded
+     * size, so that the content can be read into a buffer of the right size.
+     *
+     * @param part the part
+     * @return the estimated size or -1 if unknown
+     * @throws MessagingException the part could not be read
+     */
+    private static long getDecodedSize(final MimePart part) throws MessagingException
+    {
+        final int size = part.getSize();
+
+        if (size < 0)
+        {
+            return -1;
+        }
+        // base64 encodes three bytes in four characters, the line breaks make it a slight overestimate
+        return "base64".equalsIgnoreCase(part.getEncoding()) ? size / 4L * 3 + 3 : size;
     }
 
     /** @return Returns the mimeMessage. */
@@ -412,29 +443,6 @@ public class MimeMessageParser
         return result;
     }
 
-    /**
-     * Read the content of the input stream.
-     *
-     * @param is the input stream to process
-     * @return the content of the input stream
-     * @throws IOException reading the input stream failed
-     */
-    private byte[] getContent(final InputStream is)
-        throws IOException
-    {
-        final ByteArrayOutputStream os = new ByteArrayOutputStream();
-        final BufferedInputStream isReader = new BufferedInputStream(is);
-        try (BufferedOutputStream osWriter = new BufferedOutputStream(os)) {
-            int ch;
-            while ((ch = isReader.read()) != -1)
-            {
-                osWriter.write(ch);
-            }
-            osWriter.flush();
-            return os.toByteArray();
-        }
-    }
-
     /**
      * Parses the mimeType.
      *
@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.util;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * A semaphore whose number of permits can be changed at runtime. Shrinking
+ * the limit does not interrupt current holders, new acquirers simply have to
+ * wait until enough permits have been released.
+ *
+ * @since 1.6.0
+ */
+public final class ResizableSemaphore extends Semaphore
+{
+    /** Serializable version identifier. */
+    private static final long serialVersionUID = 2064522839176394752L;
+
+    /** the current limit */
+    private int maxPermits;
+
+    /**
+     * Constructor.
+     *
+     * @param maxPermits the initial number of permits
+     * @throws IllegalArgumentException if the number of permits is &lt; 1
+     */
+    public ResizableSemaphore(final int maxPermits)
+    {
+        super(checkPermits(maxPermits), true);
+        this.maxPermits = maxPermits;
+    }
+
+    /**
+     * Gets the current limit.
+     *
+     * @return the number of permits
+     */
+    public synchronized int getMaxPermits()
+    {
+        return maxPermits;
+    }
+
+    /**
+     * Changes the limit.
+     *
+     * @param newMaxPermits the new number of permits
+     * @throws IllegalArgumentException if the number of permits is &lt; 1
+     */
+    public synchronized void setMaxPermits(final int newMaxPermits)
+    {
+        checkPermits(newMaxPermits);
+        final int delta = newMaxPermits - maxPermits;
+
+        if (delta > 0)
+        {
+            release(delta);
+        }
+        else if (delta < 0)
+        {
+            reducePermits(-delta);
+        }
+
+        maxPermits = newMaxPermits;
+    }
+
+    /**
+     * Gets the number of permits currently held.
+     *
+     * @return the number of permits in use
+     */
+    public synchronized int getUsedPermits()
+    {
+        return maxPermits - availablePermits();
+    }
+
+    private static int checkPermits(final int permits)
+    {
+        if (permits < 1)
+        {
+            throw new IllegalArgumentException("The number of permits must be at least 1 but was " + permits);
+        }
+        return permits;
+    }
+}
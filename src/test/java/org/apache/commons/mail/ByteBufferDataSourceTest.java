@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+/**
+ * JUnit test case for ByteBufferDataSource.
+ *
+ * @since 1.6.0
+ */
+public class ByteBufferDataSourceTest
+{
+    private static final byte[] DATA = "Hello ByteBufferDataSource".getBytes();
+
+    @Test
+    public void testArrayIsShared() throws Exception
+    {
+        final byte[] data = DATA.clone();
+        final ByteBufferDataSource ds = new ByteBufferDataSource(data, 6, 10, "text/plain", "hello.txt");
+
+        assertEquals(10, ds.getSize());
+        assertEquals("ByteBuffer", new String(IOUtils.toByteArray(ds.getInputStream())));
+        assertTrue(ds.asByteBuffer().isReadOnly());
+
+        // a second read sees the same shared bytes
+        data[6] = 'b';
+        assertEquals("byteBuffer", new String(IOUtils.toByteArray(ds.getInputStream())));
+    }
+
+    @Test
+    public void testDirectBuffer() throws Exception
+    {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(DATA.length);
+        buffer.put(DATA);
+        buffer.flip();
+
+        final ByteBufferDataSource ds = new ByteBufferDataSource(buffer, null);
+        assertEquals(0, buffer.position());
+        assertEquals("application/octet-stream", ds.getContentType());
+
+        final InputStream is = ds.getInputStream();
+        assertEquals('H', is.read());
+        is.mark(100);
+        assertEquals(5, is.skip(5));
+        assertEquals(DATA.length - 6, is.available());
+        is.reset();
+        assertEquals('e', is.read());
+
+        assertArrayEquals(DATA, IOUtils.toByteArray(ds.getInputStream()));
+        assertArrayEquals(DATA, IOUtils.toByteArray(ds.getInputStream()));
+    }
+
+    @Test
+    public void testFromStream() throws Exception
+    {
+        // exact, overestimated, underestimated and unknown lengths
+        for (final long length : new long[] { DATA.length, 1000, 3, 0, -1 })
+        {
+            final ByteBufferDataSource ds =
+                    ByteBufferDataSource.from(new ByteArrayInputStream(DATA), length, "text/plain", "x");
+            assertEquals(DATA.length, ds.getSize());
+            assertArrayEquals(DATA, IOUtils.toByteArray(ds.getInputStream()));
+        }
+
+        assertEquals(0, ByteBufferDataSource.from(new ByteArrayInputStream(new byte[0]), -1, null, null).getSize());
+    }
+
+    @Test
+    public void testFromLargeStream() throws Exception
+    {
+        final byte[] data = new byte[200000];
+        new Random(42).nextBytes(data);
+
+        // an announced length far beyond the content does not allocate it up front
+        for (final long length : new long[] { data.length, Integer.MAX_VALUE, 70000, -1 })
+        {
+            final ByteBufferDataSource ds =
+                    ByteBufferDataSource.from(new ByteArrayInputStream(data), length, null, "x");
+            assertEquals(data.length, ds.getSize());
+            assertArrayEquals(data, IOUtils.toByteArray(ds.getInputStream()));
+        }
+    }
+
+    @Test
+    public void testFromTrustedLengthReadsInPlace() throws Exception
+    {
+        final byte[] data = new byte[1024 * 1024];
+        new Random(42).nextBytes(data);
+
+        // the estimated size of a base64 part includes its line breaks
+        for (final long length : new long[] { data.length, data.length + data.length / 40 })
+        {
+            final Set<byte[]> buffers = Collections.newSetFromMap(new IdentityHashMap<>());
+            final InputStream is = new ByteArrayInputStream(data)
+            {
+                @Override
+                public synchronized int read(final byte[] b, final int off, final int len)
+                {
+                    buffers.add(b);
+                    return super.read(b, off, len);
+                }
+            };
+
+            final ByteBufferDataSource ds = ByteBufferDataSource.from(is, length, true, null, "x");
+            assertEquals(data.length, ds.getSize());
+            assertArrayEquals(data, IOUtils.toByteArray(ds.getInputStream()));
+
+            // read into one buffer which the data source wraps without copying it
+            assertEquals(1, buffers.size());
+            final byte[] buffer = buffers.iterator().next();
+            buffer[0]++;
+            assertEquals(buffer[0], (byte) ds.getInputStream().read());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadOnly() throws Exception
+    {
+        new ByteBufferDataSource(DATA, "text/plain").getOutputStream();
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * JUnit test case for Email.sendAsync() and EmailExecutors.
+ *
+ * @since 1.6.0
+ */
+public class EmailExecutorsTest extends AbstractEmailTest
+{
+    @After
+    public void tearDownEmailExecutorsTest()
+    {
+        EmailExecutors.setMaxInFlight(EmailExecutors.DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    @Test
+    public void testSendAsync() throws Exception
+    {
+        this.getMailServer();
+
+        final String messageId = createEmail().sendAsync().get(30, TimeUnit.SECONDS);
+
+        assertNotNull(messageId);
+        assertEquals(1, this.fakeMailServer.getMessages().size());
+        assertEquals(0, EmailExecutors.getInFlight());
+    }
+
+    @Test
+    public void testSendAsyncWithExecutor() throws Exception
+    {
+        this.getMailServer();
+        final AtomicInteger executions = new AtomicInteger();
+
+        final String messageId = createEmail().sendAsync(command -> {
+            executions.incrementAndGet();
+            command.run();
+        }).get();
+
+        assertNotNull(messageId);
+        assertEquals(1, executions.get());
+        assertEquals(1, this.fakeMailServer.getMessages().size());
+    }
+
+    @Test
+    public void testSendAsyncWithinInFlightLimit() throws Exception
+    {
+        this.getMailServer();
+        EmailExecutors.setMaxInFlight(2);
+
+        final List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+        {
+            futures.add(createEmail().sendAsync());
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+
+        assertEquals(10, this.fakeMailServer.getMessages().size());
+        assertEquals(0, EmailExecutors.getInFlight());
+    }
+
+    @Test
+    public void testSendAsyncFailure() throws Exception
+    {
+        final Email email = new SimpleEmail();
+        email.setHostName(this.strTestMailServer);
+        email.addTo(this.strTestMailTo);
+
+        try
+        {
+            email.sendAsync(Runnable::run).get();
+            fail("Should have thrown an exception");
+        }
+        catch (final ExecutionException e)
+        {
+            assertTrue(e.getCause() instanceof EmailException);
+            assertEquals("From address required", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void testSendAsyncRejected() throws Exception
+    {
+        final RejectedExecutionException rejected = new RejectedExecutionException("full");
+
+        try
+        {
+            createEmail().sendAsync(command -> {
+                throw rejected;
+            }).get();
+            fail("Should have thrown an exception");
+        }
+        catch (final ExecutionException e)
+        {
+            assertSame(rejected, e.getCause());
+        }
+    }
+
+    @Test
+    public void testMaxInFlight()
+    {
+        EmailExecutors.setMaxInFlight(5);
+        assertEquals(5, EmailExecutors.getMaxInFlight());
+        EmailExecutors.setMaxInFlight(1);
+        assertEquals(1, EmailExecutors.getMaxInFlight());
+        assertEquals(0, EmailExecutors.getInFlight());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaxInFlight()
+    {
+        EmailExecutors.setMaxInFlight(0);
+    }
+
+    private Email createEmail() throws EmailException
+    {
+        final Email email = new SimpleEmail();
+        email.setHostName(this.strTestMailServer);
+        email.setSmtpPort(this.getMailServerPort());
+        email.setFrom(this.strTestMailFrom);
+        email.addTo(this.strTestMailTo);
+        email.setSubject("Asynchronous message");
+        email.setMsg("Test Msg Body");
+        return email;
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.mail.Message;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.mail.metrics.EmailMetrics;
+import org.apache.commons.mail.metrics.EmailPhase;
+import org.apache.commons.mail.transport.SmtpRateLimiter;
+import org.apache.commons.mail.transport.SmtpRelay;
+import org.apache.commons.mail.transport.SmtpRelayGroup;
+import org.apache.commons.mail.util.MimeMessageParser;
+import org.junit.Test;
+import org.subethamail.wiser.WiserMessage;
+
+/**
+ * JUnit test case for EmailTemplate.
+ *
+ * @since 1.6.0
+ */
+public class EmailTemplateTest extends AbstractEmailTest
+{
+    private static final File ATTACHMENT = new File("./src/test/resources/attachments/logo.pdf");
+
+    @Test
+    public void testSendToSeveralRecipients() throws Exception
+    {
+        this.getMailServer();
+        final EmailTemplate template = new EmailTemplate(createEmail());
+
+        final Set<String> messageIds = new HashSet<>();
+        for (int i = 0; i < 3; i++)
+        {
+            messageIds.add(template.send(new InternetAddress("recipient" + i + "@example.com")));
+        }
+        assertEquals(3, messageIds.size());
+
+        final List<WiserMessage> messages = this.fakeMailServer.getMessages();
+        assertEquals(3, messages.size());
+
+        for (int i = 0; i < 3; i++)
+        {
+            final MimeMessage message = messages.get(i).getMimeMessage();
+            assertEquals("recipient" + i + "@example.com", messages.get(i).getEnvelopeReceiver());
+            assertEquals("recipient" + i + "@example.com", message.getHeader("To", null));
+            assertEquals("Template", message.getSubject());
+
+            final MimeMessageParser parser = new MimeMessageParser(message).parse();
+            assertEquals("<b>Hello</b>", parser.getHtmlContent());
+            assertEquals(1, parser.getAttachmentList().size());
+            assertArrayEquals(Files.readAllBytes(ATTACHMENT.toPath()),
+                    IOUtils.toByteArray(parser.getAttachmentList().get(0).getInputStream()));
+        }
+    }
+
+    @Test
+    public void testMessagesOnlyDifferInHeaders() throws Exception
+    {
+        final HtmlEmail email = createEmail();
+        email.addTo("template@example.com");
+        email.addBcc("hidden@example.com");
+        final EmailTemplate template = new EmailTemplate(email);
+
+        final MimeMessage first = template.createMimeMessage(new InternetAddress("first@example.com"));
+        final MimeMessage second = template.createMimeMessage(new InternetAddress("second@example.com"));
+        second.setSubject("Changed");
+
+        assertNull(first.getRecipients(Message.RecipientType.BCC));
+        assertEquals("first@example.com", first.getHeader("To", null));
+        assertEquals("Template", first.getSubject());
+        assertNotEquals(first.getMessageID(), second.getMessageID());
+        assertEquals(body(first), body(second));
+        assertTrue(body(first).length() > ATTACHMENT.length());
+    }
+
+    @Test
+    public void testSendHonoursRateLimiter() throws Exception
+    {
+        this.getMailServer();
+        final SmtpRateLimiter limiter = new SmtpRateLimiter();
+        final HtmlEmail email = createEmail();
+        email.setRateLimiter(limiter);
+        final EmailTemplate template = new EmailTemplate(email);
+
+        template.send(new InternetAddress("first@example.com"));
+        template.send(new InternetAddress("second@example.com"));
+
+        assertEquals(2, limiter.getAcquiredCount());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void testSendThroughRelayGroup() throws Exception
+    {
+        this.getMailServer();
+        final int closedPort;
+        try (ServerSocket socket = new ServerSocket(0))
+        {
+            closedPort = socket.getLocalPort();
+        }
+
+        // the first relay is down, the messages fail over to the second one
+        final SmtpRelayGroup group = new SmtpRelayGroup(new SmtpRelay(this.strTestMailServer, closedPort),
+                new SmtpRelay(this.strTestMailServer, this.getMailServerPort()));
+        final AtomicInteger sent = new AtomicInteger();
+        final AtomicInteger sendPhases = new AtomicInteger();
+
+        final HtmlEmail email = new HtmlEmail();
+        email.setRelayGroup(group);
+        email.setFrom(this.strTestMailFrom);
+        email.setSubject("Template");
+        email.setHtmlMsg("<b>Hello</b>");
+        email.setMetrics(new EmailMetrics()
+        {
+            @Override
+            public void phaseCompleted(final EmailPhase phase, final long elapsedNanos, final boolean failed)
+            {
+                if (phase == EmailPhase.SEND && !failed)
+                {
+                    sendPhases.incrementAndGet();
+                }
+            }
+
+            @Override
+            public void messageSent(final int recipients, final long bytes)
+            {
+                sent.addAndGet(recipients);
+            }
+        });
+        final EmailTemplate template = new EmailTemplate(email);
+
+        for (int i = 0; i < 3; i++)
+        {
+            template.send(new InternetAddress("recipient" + i + "@example.com"));
+        }
+
+        assertEquals(3, this.fakeMailServer.getMessages().size());
+        assertEquals(3, group.getRelays().get(1).getSentCount());
+        assertEquals(3, sent.get());
+        assertEquals(3, sendPhases.get());
+    }
+
+    @Test(expected = EmailException.class)
+    public void testSendWithoutRecipient() throws Exception
+    {
+        new EmailTemplate(createEmail()).send();
+    }
+
+    private HtmlEmail createEmail() throws EmailException
+    {
+        final HtmlEmail email = new HtmlEmail();
+        email.setHostName(this.strTestMailServer);
+        email.setSmtpPort(this.getMailServerPort());
+        email.setFrom(this.strTestMailFrom);
+        email.setSubject("Template");
+        email.setHtmlMsg("<b>Hello</b>");
+
+        final EmailAttachment attachment = new EmailAttachment();
+        attachment.setPath(ATTACHMENT.getPath());
+        attachment.setName("logo.pdf");
+        email.attach(attachment);
+        return email;
+    }
+
+    private static String body(final MimeMessage message) throws Exception
+    {
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        message.writeTo(os);
+        final String text = os.toString("US-ASCII");
+        return text.substring(text.indexOf("\r\n\r\n"));
+    }
+}
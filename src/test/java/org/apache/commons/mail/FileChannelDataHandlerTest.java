@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+
+import javax.activation.DataSource;
+import javax.activation.FileDataSource;
+
+import org.apache.commons.mail.util.BufferPool;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.subethamail.wiser.Wiser;
+
+/**
+ * JUnit test case for FileChannelDataHandler and the heap used when
+ * sending large attachments.
+ *
+ * @since 1.6.0
+ */
+public class FileChannelDataHandlerTest
+{
+    /** the heap a send may allocate besides the content */
+    private static final long MAX_ALLOCATED_BYTES = 4 * 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWriteTo() throws Exception
+    {
+        final File file = new File("./src/test/resources/attachments/logo.pdf");
+        final BufferPool pool = new BufferPool(1000, 1);
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+
+        new FileChannelDataHandler(new FileDataSource(file), pool).writeTo(os);
+
+        assertArrayEquals(Files.readAllBytes(file.toPath()), os.toByteArray());
+        assertEquals(1, pool.getPooled());
+    }
+
+    @Test
+    public void testSendLargeFileWithBoundedHeap() throws Exception
+    {
+        final File file = folder.newFile("large.bin");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw"))
+        {
+            raf.setLength(50L * 1024 * 1024);
+        }
+
+        assertBoundedHeap(new FileDataSource(file));
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testSendByteArrayWithoutCopies() throws Exception
+    {
+        // the content is allocated before measuring, sending must not copy it
+        final DataSource dataSource = new ByteArrayDataSource(new byte[10 * 1024 * 1024], "application/octet-stream");
+
+        assertBoundedHeap(dataSource);
+    }
+
+    @SuppressWarnings("deprecation")
+    private void assertBoundedHeap(final DataSource dataSource) throws Exception
+    {
+        final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        final int port;
+        try (ServerSocket socket = new ServerSocket(0))
+        {
+            port = socket.getLocalPort();
+        }
+
+        final Wiser server = new DiscardingWiser();
+        server.setPort(port);
+        server.start();
+
+        try
+        {
+            // warm up so that class loading is not measured
+            send(port, new ByteArrayDataSource(new byte[1000], "application/octet-stream"));
+
+            final long threadId = Thread.currentThread().getId();
+            final long before = threads.getThreadAllocatedBytes(threadId);
+            send(port, dataSource);
+            final long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+            assertTrue("allocated " + allocated + " bytes", allocated < MAX_ALLOCATED_BYTES);
+        }
+        finally
+        {
+            server.stop();
+        }
+    }
+
+    private static void send(final int port, final DataSource dataSource) throws EmailException
+    {
+        final MultiPartEmail email = new MultiPartEmail();
+        email.setHostName("localhost");
+        email.setSmtpPort(port);
+        email.setFrom("from@example.com");
+        email.addTo("to@example.com");
+        email.setSubject("large attachment");
+        email.setMsg("see attachment");
+        email.attach(dataSource, "large.bin", null);
+        email.send();
+    }
+
+    /** Reads and discards the received messages. */
+    private static final class DiscardingWiser extends Wiser
+    {
+        @Override
+        public void deliver(final String from, final String recipient, final InputStream data) throws IOException
+        {
+            final byte[] buffer = new byte[8192];
+            while (data.read(buffer) != -1)
+            {
+                // discard
+            }
+        }
+    }
+}
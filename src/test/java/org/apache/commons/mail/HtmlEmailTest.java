@@ -50,6 +50,7 @@ import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
@@ -59,6 +60,7 @@ import org.powermock.modules.junit4.PowerMockRunner;
  * @since 1.0
  */
 @RunWith(PowerMockRunner.class)
+@PowerMockIgnore("javax.net.*")
 @PrepareForTest( { MockHtmlEmailConcrete.class })
 public class HtmlEmailTest extends AbstractEmailTest
 {
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Compares replacing the resource locations of a large newsletter style HTML
+ * document with two regular expression passes, as ImageHtmlEmail did before,
+ * against the single pass {@link HtmlResourceRewriter}. Resolving is left out,
+ * every location maps to a fixed content id.
+ * Run it with {@link org.apache.commons.mail.util.BenchmarkRunner}.
+ */
+@State(Scope.Benchmark)
+public class HtmlResourceRewriterBenchmark
+{
+    private static final Pattern IMG_PATTERN = Pattern.compile(ImageHtmlEmail.REGEX_IMG_SRC);
+
+    private static final Pattern SCRIPT_PATTERN = Pattern.compile(ImageHtmlEmail.REGEX_SCRIPT_SRC);
+
+    private String html;
+
+    private Map<String, String> cids;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        final StringBuilder sb = new StringBuilder("<html><head><script src=\"js/tracking.js\"></script></head><body>");
+        cids = new HashMap<>();
+        cids.put("js/tracking.js", "abcdefghij");
+
+        for (int i = 0; i < 2000; i++)
+        {
+            final String image = "images/product" + i % 50 + ".png";
+            cids.put(image, "cid" + i % 50);
+            sb.append("<table class=\"row\" width=\"100%\"><tr><td class=\"item\" align=\"left\">")
+                    .append("<p style=\"font-family: Arial; color: #333333\">Product number ").append(i)
+                    .append(" is on sale this week only</p><img alt=\"product\" width=\"120\" src=\"")
+                    .append(image).append("\"></td></tr></table>\n");
+        }
+        html = sb.append("</body></html>").toString();
+    }
+
+    @Fork(value = 1, warmups = 1)
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public String benchRegexTwoPasses()
+    {
+        return replacePattern(replacePattern(html, IMG_PATTERN), SCRIPT_PATTERN);
+    }
+
+    @Fork(value = 1, warmups = 1)
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public String benchSinglePass()
+    {
+        return new HtmlResourceRewriter(html).rewrite(cids);
+    }
+
+    private String replacePattern(final String htmlMessage, final Pattern pattern)
+    {
+        final StringBuffer stringBuffer = new StringBuffer();
+        final Matcher matcher = pattern.matcher(htmlMessage);
+
+        while (matcher.find())
+        {
+            final String cid = cids.get(matcher.group(2));
+            if (cid != null)
+            {
+                matcher.appendReplacement(stringBuffer,
+                        Matcher.quoteReplacement(matcher.group(1) + "cid:" + cid + matcher.group(3)));
+            }
+        }
+        matcher.appendTail(stringBuffer);
+        return stringBuffer.toString();
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * JUnit test case for HtmlResourceRewriter.
+ *
+ * @since 1.6.0
+ */
+public class HtmlResourceRewriterTest
+{
+    @Test
+    public void testFindsAllReferenceKinds()
+    {
+        final String html = "<html><head><script type=\"text/javascript\" SRC='js/app.js'></script>"
+                + "<style type=\"text/css\">body { background: URL( \"images/bg.png\" ) } "
+                + "h1 { background: url(images/h1.png) }</style></head>"
+                + "<body background=images/body.png><IMG\nalt=\"x\" src = \"images/logo.gif\"/>"
+                + "<div style=\"background-image: url('images/div.png')\"></div>"
+                + "<img data-src=\"images/lazy.gif\" src=\"images/logo.gif\"></body></html>";
+
+        assertEquals(Arrays.asList("js/app.js", "images/bg.png", "images/h1.png", "images/body.png",
+                "images/logo.gif", "images/div.png"), new ArrayList<>(new HtmlResourceRewriter(html).getLocations()));
+    }
+
+    @Test
+    public void testIgnoresOtherReferences()
+    {
+        final String html = "<p>src=\"images/text.gif\" url(images/text.png)</p>"
+                + "<a href=\"images/link.gif\" src=\"images/a.gif\">link</a>"
+                + "<img src=\"cid:abc\"><img src=\"data:image/gif;base64,R0lGOD\"><img src=\"\">"
+                + "<!-- <img src=\"images/comment.gif\"> --><iframe src=\"frame.html\"></iframe>";
+
+        assertEquals(Collections.singletonList("images/comment.gif"),
+                new ArrayList<>(new HtmlResourceRewriter(html).getLocations()));
+    }
+
+    @Test
+    public void testRewriteUsesContentIds()
+    {
+        final String html = "<img src=\"images/logo.gif\"><td background='images/logo.gif'>"
+                + "<span style=\"background: url(images/bg.png)\"><img src=\"images/missing.gif\">";
+        final Map<String, String> cids = new HashMap<>();
+        cids.put("images/logo.gif", "logo");
+        cids.put("images/bg.png", "bg");
+
+        assertEquals("<img src=\"cid:logo\"><td background='cid:logo'>"
+                + "<span style=\"background: url(cid:bg)\"><img src=\"images/missing.gif\">",
+                new HtmlResourceRewriter(html).rewrite(cids));
+    }
+
+    @Test
+    public void testMalformedHtml()
+    {
+        final String html = "<img src=\"images/a.gif\" <img src=images/b.gif> <script src=\"unterminated";
+        final HtmlResourceRewriter rewriter = new HtmlResourceRewriter(html);
+
+        assertEquals(Arrays.asList("images/a.gif", "images/b.gif"), new ArrayList<>(rewriter.getLocations()));
+        assertSame(html, rewriter.rewrite(Collections.<String, String>emptyMap()));
+    }
+}
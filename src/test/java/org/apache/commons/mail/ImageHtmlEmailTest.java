@@ -20,6 +20,7 @@ import static org.junit.Assert.*;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.mail.resolver.DataSourceBaseResolver;
 import org.apache.commons.mail.resolver.DataSourceClassPathResolver;
 import org.apache.commons.mail.resolver.DataSourceCompositeResolver;
 import org.apache.commons.mail.resolver.DataSourceUrlResolver;
@@ -35,8 +36,16 @@ import javax.mail.internet.MimeMessage;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.LinkedList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
@@ -242,6 +251,222 @@ public class ImageHtmlEmailTest extends HtmlEmailTest {
         assertEquals(1, mimeMessageParser.getAttachmentList().size());
     }
 
+    @Test
+    public void testSendHtmlReplacesAllResourceReferences() throws Exception {
+        getMailServer();
+
+        email = new MockImageHtmlEmailConcrete();
+        email.setDataSourceResolver(new DataSourceClassPathResolver("/", TEST_IS_LENIENT));
+        email.setHostName(strTestMailServer);
+        email.setSmtpPort(getMailServerPort());
+        email.setFrom(strTestMailFrom);
+        email.addTo(strTestMailTo);
+        email.setSubject("Test HTML resource references");
+
+        email.setHtmlMsg("<html><head><style>body { background: url('images/asf_logo_wide.gif') }</style></head>"
+                + "<body><table><tr><td background=images/asf_logo_wide.gif>"
+                + "<img src=\"images/asf_logo_wide.gif\"><img src=\"images/missing.gif\">"
+                + "<div style=\"background-image: url(images/contentTypeTest.png)\"></div>"
+                + "</td></tr></table></body></html>");
+        email.send();
+
+        fakeMailServer.stop();
+
+        assertEquals(1, fakeMailServer.getMessages().size());
+        final MimeMessage mimeMessage = fakeMailServer.getMessages().get(0).getMimeMessage();
+
+        final MimeMessageParser mimeMessageParser = new MimeMessageParser(mimeMessage).parse();
+        final String html = mimeMessageParser.getHtmlContent();
+        assertEquals(2, mimeMessageParser.getContentIds().size());
+        assertFalse(html.contains("images/asf_logo_wide.gif"));
+        assertFalse(html.contains("images/contentTypeTest.png"));
+        assertTrue(html.contains("images/missing.gif"));
+
+        for (final String cid : mimeMessageParser.getContentIds()) {
+            assertTrue(html.contains("cid:" + cid));
+        }
+    }
+
+    @Test
+    public void testIdenticalContentIsEmbeddedOnce() throws Exception {
+        final String html = "<html><body><img src=\"spacer-1.gif\"><img src=\"logo.gif\">"
+                + "<img src=\"http://tracking.example.com/spacer-2.gif\"><td background=\"spacer-3.gif\"></td></body></html>";
+
+        email = createSpacerEmail(html);
+        email.buildMimeMessage();
+
+        MimeMessageParser mimeMessageParser = new MimeMessageParser(email.getMimeMessage()).parse();
+        assertEquals(2, mimeMessageParser.getContentIds().size());
+
+        final Matcher matcher = Pattern.compile("cid:([a-z]+)").matcher(mimeMessageParser.getHtmlContent());
+        final List<String> cids = new ArrayList<>();
+        while (matcher.find()) {
+            cids.add(matcher.group(1));
+        }
+        assertEquals(4, cids.size());
+        assertEquals(cids.get(0), cids.get(2));
+        assertEquals(cids.get(0), cids.get(3));
+        assertNotEquals(cids.get(0), cids.get(1));
+
+        email = createSpacerEmail(html);
+        email.setDeduplicateContent(false);
+        email.buildMimeMessage();
+
+        mimeMessageParser = new MimeMessageParser(email.getMimeMessage()).parse();
+        assertEquals(4, mimeMessageParser.getContentIds().size());
+    }
+
+    private MockImageHtmlEmailConcrete createSpacerEmail(final String html) throws EmailException {
+        final MockImageHtmlEmailConcrete spacerEmail = new MockImageHtmlEmailConcrete();
+        spacerEmail.setDataSourceResolver(new DataSourceBaseResolver() {
+            @Override
+            public DataSource resolve(final String resourceLocation) throws IOException {
+                return resolve(resourceLocation, isLenient());
+            }
+
+            @Override
+            public DataSource resolve(final String resourceLocation, final boolean isLenient) {
+                // the spacers share their content, the logo differs
+                final String content = resourceLocation.contains("spacer") ? "spacer" : resourceLocation;
+                return new ByteBufferDataSource(content.getBytes(StandardCharsets.US_ASCII), "image/gif", resourceLocation);
+            }
+        });
+        spacerEmail.setHostName(strTestMailServer);
+        spacerEmail.setFrom(strTestMailFrom);
+        spacerEmail.addTo(strTestMailTo);
+        spacerEmail.setSubject("Test identical content");
+        spacerEmail.setHtmlMsg(html);
+        return spacerEmail;
+    }
+
+    @Test
+    public void testResolveConcurrently() throws Exception {
+        final SlowResolver resolver = new SlowResolver(false, 100);
+
+        email = createConcurrentlyResolvingEmail(resolver);
+        email.setMaxConcurrentResolves(3);
+        email.setHtmlMsg("<html><body><img src=\"a.gif\"><img src=\"b.gif\"><img src=\"a.gif\">"
+                + "<img src=\"c.gif\"><img src=\"d.gif\"><img src=\"e.gif\"><img src=\"f.gif\"></body></html>");
+        email.buildMimeMessage();
+
+        assertEquals(6, resolver.resolved.get());
+        assertEquals(3, resolver.maxConcurrent.get());
+
+        final MimeMessageParser mimeMessageParser = new MimeMessageParser(email.getMimeMessage()).parse();
+        final List<String> names = new ArrayList<>();
+        for (final DataSource attachment : mimeMessageParser.getAttachmentList()) {
+            names.add(attachment.getName());
+        }
+        assertEquals(Arrays.asList("a.gif", "b.gif", "c.gif", "d.gif", "e.gif", "f.gif"), names);
+        assertFalse(mimeMessageParser.getHtmlContent().contains(".gif"));
+    }
+
+    @Test
+    public void testResolveConcurrentlyReportsFirstFailure() throws Exception {
+        email = createConcurrentlyResolvingEmail(new SlowResolver(false, 10));
+        email.setHtmlMsg("<img src=\"a.gif\"><img src=\"missing-1.gif\"><img src=\"c.gif\">"
+                + "<img src=\"missing-2.gif\"><img src=\"e.gif\">");
+        try {
+            email.buildMimeMessage();
+            fail("Should have thrown an exception");
+        } catch (final EmailException e) {
+            assertEquals("missing-1.gif", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void testResolveConcurrentlyTimeout() throws Exception {
+        // the slow resource comes first, so the executor resolves it while this thread resolves the others
+        final String html = "<img src=\"slow.gif\"><img src=\"a.gif\"><img src=\"c.gif\">";
+
+        email = createSlowFirstEmail(new SlowResolver(true, 10));
+        email.setHtmlMsg(html);
+        email.buildMimeMessage();
+
+        final MimeMessageParser mimeMessageParser = new MimeMessageParser(email.getMimeMessage()).parse();
+        assertEquals(2, mimeMessageParser.getAttachmentList().size());
+        assertTrue(mimeMessageParser.getHtmlContent().contains("\"slow.gif\""));
+
+        email = createSlowFirstEmail(new SlowResolver(false, 10));
+        email.setHtmlMsg(html);
+        try {
+            email.buildMimeMessage();
+            fail("Should have thrown an exception");
+        } catch (final EmailException e) {
+            assertTrue(e.getCause().getMessage().contains("500 ms"));
+        }
+    }
+
+    private MockImageHtmlEmailConcrete createSlowFirstEmail(final SlowResolver resolver) throws EmailException {
+        final MockImageHtmlEmailConcrete result = createConcurrentlyResolvingEmail(resolver);
+        result.setMaxConcurrentResolves(2);
+        result.setResolveTimeoutMillis(500);
+        // hand back once the worker started resolving the first resource
+        result.setResolveExecutor(runnable -> {
+            final Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            thread.start();
+            final long deadline = System.currentTimeMillis() + 5000;
+            while (resolver.concurrent.get() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.yield();
+            }
+        });
+        return result;
+    }
+
+    @Test
+    public void testResolveOnSendingExecutor() throws Exception {
+        getMailServer();
+        final SingleThreadExecutor executor = new SingleThreadExecutor();
+        try {
+            email = createConcurrentlyResolvingEmail(new SlowResolver(false, 10));
+            email.setResolveExecutor(executor);
+            email.setResolveTimeoutMillis(30000);
+            email.setSmtpPort(getMailServerPort());
+            email.setHtmlMsg("<img src=\"a.gif\"><img src=\"b.gif\"><img src=\"c.gif\">");
+
+            // the only thread of the executor sends, its queued resolve workers cannot run meanwhile
+            final AtomicReference<Object> result = new AtomicReference<>();
+            executor.execute(() -> {
+                try {
+                    result.set(email.send());
+                } catch (final EmailException | RuntimeException e) {
+                    result.set(e);
+                }
+            });
+
+            final long deadline = System.currentTimeMillis() + 10000;
+            while (result.get() == null && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(String.valueOf(result.get()), result.get() instanceof String);
+        } finally {
+            executor.thread.interrupt();
+        }
+
+        assertEquals(1, fakeMailServer.getMessages().size());
+        final MimeMessageParser mimeMessageParser =
+                new MimeMessageParser(fakeMailServer.getMessages().get(0).getMimeMessage()).parse();
+        assertEquals(3, mimeMessageParser.getAttachmentList().size());
+    }
+
+    private MockImageHtmlEmailConcrete createConcurrentlyResolvingEmail(final DataSourceResolver resolver)
+            throws EmailException {
+        final MockImageHtmlEmailConcrete result = new MockImageHtmlEmailConcrete();
+        result.setDataSourceResolver(resolver);
+        // a thread per task, the resolves are bounded by the email
+        result.setResolveExecutor(runnable -> {
+            final Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            thread.start();
+        });
+        result.setHostName(strTestMailServer);
+        result.setFrom(strTestMailFrom);
+        result.addTo(strTestMailTo);
+        result.setSubject("Test concurrent resolving");
+        return result;
+    }
+
     @Test
     public void testSendClassPathFileWithNullName() throws Exception {
         Logger.getLogger(ImageHtmlEmail.class.getName()).setLevel(Level.FINEST);
@@ -500,11 +725,93 @@ public class ImageHtmlEmailTest extends HtmlEmailTest {
 
         @Override
         public DataSource resolve(final String resourceLocation, final boolean isLenient) throws IOException {
-            final javax.mail.util.ByteArrayDataSource ds =
-                    (javax.mail.util.ByteArrayDataSource) super.resolve(resourceLocation, isLenient);
-            ds.setName(null);
-            return ds;
+            final ByteBufferDataSource ds = (ByteBufferDataSource) super.resolve(resourceLocation, isLenient);
+            return new ByteBufferDataSource(ds.asByteBuffer(), ds.getContentType(), null);
+        }
+
+    }
+
+    /**
+     * Resolves every location to a small GIF of its own after a delay, except "missing"
+     * locations which are not found and "slow" locations which take 5 seconds.
+     */
+    /** Runs the tasks one after the other on a single daemon thread. */
+    private static final class SingleThreadExecutor implements Executor {
+
+        private final LinkedList<Runnable> tasks = new LinkedList<>();
+
+        private final Thread thread = new Thread(() -> {
+            try {
+                while (true) {
+                    final Runnable task;
+                    synchronized (this.tasks) {
+                        while (this.tasks.isEmpty()) {
+                            this.tasks.wait();
+                        }
+                        task = this.tasks.removeFirst();
+                    }
+                    task.run();
+                }
+            } catch (final InterruptedException e) {
+                // stopped
+            }
+        });
+
+        SingleThreadExecutor() {
+            thread.setDaemon(true);
+            thread.start();
         }
 
+        @Override
+        public void execute(final Runnable task) {
+            synchronized (tasks) {
+                tasks.add(task);
+                tasks.notifyAll();
+            }
+        }
+    }
+
+    private static final class SlowResolver extends DataSourceBaseResolver {
+
+        private final long delayMillis;
+
+        private final AtomicInteger concurrent = new AtomicInteger();
+
+        private final AtomicInteger maxConcurrent = new AtomicInteger();
+
+        private final AtomicInteger resolved = new AtomicInteger();
+
+
+        SlowResolver(final boolean lenient, final long delayMillis) {
+            super(lenient);
+            this.delayMillis = delayMillis;
+        }
+
+        @Override
+        public DataSource resolve(final String resourceLocation) throws IOException {
+            return resolve(resourceLocation, isLenient());
+        }
+
+        @Override
+        public DataSource resolve(final String resourceLocation, final boolean isLenient) throws IOException {
+            maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(resourceLocation.startsWith("slow") ? 5000 : delayMillis);
+            } catch (final InterruptedException e) {
+                throw new InterruptedIOException(resourceLocation);
+            } finally {
+                concurrent.decrementAndGet();
+            }
+
+            if (resourceLocation.startsWith("missing")) {
+                if (isLenient) {
+                    return null;
+                }
+                throw new IOException(resourceLocation);
+            }
+            resolved.incrementAndGet();
+            return new ByteBufferDataSource(("GIF" + resourceLocation).getBytes(StandardCharsets.US_ASCII), "image/gif",
+                    resourceLocation);
+        }
     }
 }
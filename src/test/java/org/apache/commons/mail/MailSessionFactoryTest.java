@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.Properties;
+
+import javax.mail.Session;
+
+import org.junit.Test;
+
+/**
+ * JUnit test case for MailSessionConfig and MailSessionFactory.
+ *
+ * @since 1.6.0
+ */
+public class MailSessionFactoryTest extends AbstractEmailTest
+{
+    @Test
+    public void testEqualConfigsShareSession()
+    {
+        final MailSessionFactory factory = new MailSessionFactory();
+
+        final Session first = factory.getSession(config("user", "secret").build());
+        final Session second = factory.getSession(config("user", "secret").build());
+        final Session other = factory.getSession(config("other", "secret").build());
+
+        assertSame(first, second);
+        assertNotSame(first, other);
+        assertEquals(2, factory.size());
+
+        factory.clear();
+        assertEquals(0, factory.size());
+    }
+
+    @Test
+    public void testConfigEquality()
+    {
+        final MailSessionConfig config = config("user", "secret").build();
+
+        assertEquals(config, config("user", "secret").build());
+        assertEquals(config.hashCode(), config("user", "secret").build().hashCode());
+        assertNotEquals(config, config("user", "secret").setStartTLSEnabled(true).build());
+        assertNotEquals(config, config("user", "secret").setBounceAddress("bounce@example.com").build());
+        assertNotEquals(config, config("user", "other").build());
+    }
+
+    @Test
+    public void testToProperties()
+    {
+        final Properties properties = config("user", "secret")
+                .setSSLOnConnect(true)
+                .setSslSmtpPort("2465")
+                .setBounceAddress("bounce@example.com")
+                .build()
+                .toProperties();
+
+        assertEquals("localhost", properties.getProperty(EmailConstants.MAIL_HOST));
+        assertEquals("2465", properties.getProperty(EmailConstants.MAIL_PORT));
+        assertEquals("true", properties.getProperty(EmailConstants.MAIL_SMTP_AUTH));
+        assertEquals("javax.net.ssl.SSLSocketFactory", properties.getProperty(EmailConstants.MAIL_SMTP_SOCKET_FACTORY_CLASS));
+        assertEquals("bounce@example.com", properties.getProperty(EmailConstants.MAIL_SMTP_FROM));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBuildWithoutHostName()
+    {
+        MailSessionConfig.builder().build();
+    }
+
+    @Test
+    public void testCacheLimit()
+    {
+        final MailSessionFactory factory = new MailSessionFactory(1);
+
+        factory.getSession(config("user", "secret").build());
+        final MailSessionConfig uncached = config("other", "secret").build();
+
+        assertNotSame(factory.getSession(uncached), factory.getSession(uncached));
+        assertEquals(1, factory.size());
+    }
+
+    @Test
+    public void testEmailsShareSession() throws Exception
+    {
+        this.getMailServer();
+
+        final MailSessionFactory factory = new MailSessionFactory();
+        final Email first = createEmail(factory);
+        final Email second = createEmail(factory);
+
+        first.send();
+        second.send();
+
+        assertSame(first.getMailSession(), second.getMailSession());
+        assertEquals(2, this.fakeMailServer.getMessages().size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSetMailSessionFactoryAfterSessionCreated() throws Exception
+    {
+        final Email email = new SimpleEmail();
+        email.setHostName(this.strTestMailServer);
+        email.getMailSession();
+
+        email.setMailSessionFactory(new MailSessionFactory());
+    }
+
+    private Email createEmail(final MailSessionFactory factory) throws EmailException
+    {
+        final Email email = new SimpleEmail();
+        email.setMailSessionFactory(factory);
+        email.setHostName(this.strTestMailServer);
+        email.setSmtpPort(this.getMailServerPort());
+        email.setAuthenticator(new DefaultAuthenticator("user", "secret"));
+        email.setFrom(this.strTestMailFrom);
+        email.addTo(this.strTestMailTo);
+        email.setSubject("shared session");
+        email.setMsg("shared session");
+        return email;
+    }
+
+    private MailSessionConfig.Builder config(final String userName, final String password)
+    {
+        return MailSessionConfig.builder()
+                .setHostName("localhost")
+                .setSmtpPort(2525)
+                .setAuthenticator(new DefaultAuthenticator(userName, password));
+    }
+}
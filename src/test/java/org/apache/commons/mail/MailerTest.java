@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.mail.transport.PooledTransport;
+import org.apache.commons.mail.transport.SmtpConnectionPool;
+import org.apache.commons.mail.transport.SmtpRateLimiter;
+import org.junit.Test;
+
+/**
+ * JUnit test case for Mailer.
+ *
+ * @since 1.6.0
+ */
+public class MailerTest extends AbstractEmailTest
+{
+    @Test
+    public void testSendAll() throws Exception
+    {
+        this.getMailServer();
+
+        final List<Email> emails = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+        {
+            emails.add(createEmail(i));
+        }
+
+        final List<SendResult> results = new Mailer().sendAll(emails);
+
+        assertEquals(10, results.size());
+        for (int i = 0; i < 10; i++)
+        {
+            final SendResult result = results.get(i);
+            assertTrue(result.toString(), result.isSent());
+            assertNotNull(result.getMessageId());
+            assertNull(result.getException());
+            assertEquals(emails.get(i), result.getEmail());
+        }
+        assertEquals(10, this.fakeMailServer.getMessages().size());
+    }
+
+    @Test
+    public void testFailingEmailDoesNotAbortBatch() throws Exception
+    {
+        this.getMailServer();
+
+        final Email invalid = new SimpleEmail();
+        invalid.setHostName(this.strTestMailServer);
+        invalid.setSmtpPort(this.getMailServerPort());
+        invalid.addTo(this.strTestMailTo);
+        invalid.setMsg("no from address");
+
+        final List<SendResult> results = new Mailer().sendAll(
+                Arrays.asList(createEmail(0), invalid, createEmail(2)));
+
+        assertTrue(results.get(0).isSent());
+        assertFalse(results.get(1).isSent());
+        assertEquals("From address required", results.get(1).getException().getMessage());
+        assertNull(results.get(1).getMessageId());
+        assertTrue(results.get(2).isSent());
+        assertEquals(2, this.fakeMailServer.getMessages().size());
+    }
+
+    @Test
+    public void testSendAllUsesSingleConnection() throws Exception
+    {
+        this.getMailServer();
+
+        try (SmtpConnectionPool pool = new SmtpConnectionPool())
+        {
+            final List<SendResult> results = new Mailer(null, pool).sendAll(
+                    Arrays.asList(createEmail(0), createEmail(1), createEmail(2)));
+
+            assertEquals(3, results.size());
+            assertEquals(1, pool.getCreatedCount());
+            assertEquals(3, pool.getBorrowedCount());
+            assertEquals(1, pool.getIdleCount());
+        }
+        assertEquals(3, this.fakeMailServer.getMessages().size());
+    }
+
+    @Test
+    public void testSendAllHonoursRateLimiter() throws Exception
+    {
+        this.getMailServer();
+
+        final SmtpRateLimiter limiter = new SmtpRateLimiter();
+        final List<Email> emails = new ArrayList<>();
+        for (int i = 0; i < 3; i++)
+        {
+            final Email email = createEmail(i);
+            email.setRateLimiter(limiter);
+            emails.add(email);
+        }
+
+        new Mailer().sendAll(emails);
+
+        assertEquals(3, limiter.getAcquiredCount());
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(3, this.fakeMailServer.getMessages().size());
+    }
+
+    @Test
+    public void testSendAllHonoursMaxMessagesPerConnection() throws Exception
+    {
+        this.getMailServer();
+
+        try (SmtpConnectionPool pool = new SmtpConnectionPool())
+        {
+            pool.setMaxMessagesPerConnection(2);
+
+            final List<Email> emails = new ArrayList<>();
+            for (int i = 0; i < 5; i++)
+            {
+                emails.add(createEmail(i));
+            }
+            new Mailer(null, pool).sendAll(emails);
+
+            assertEquals(3, pool.getCreatedCount());
+        }
+        assertEquals(5, this.fakeMailServer.getMessages().size());
+    }
+
+    @Test
+    public void testBrokenConnectionIsRetriedOnce() throws Exception
+    {
+        this.getMailServer();
+
+        try (SmtpConnectionPool pool = new SmtpConnectionPool())
+        {
+            final Email email = createEmail(0);
+            try (PooledTransport transport = pool.borrow(email.getMailSession()))
+            {
+                // the server drops the idle connection unnoticed by the pool
+                transport.getTransport().close();
+            }
+
+            final List<SendResult> results = new Mailer(null, pool).sendAll(Arrays.asList(email));
+
+            assertTrue(results.get(0).toString(), results.get(0).isSent());
+            assertEquals(2, pool.getCreatedCount());
+        }
+        assertEquals(1, this.fakeMailServer.getMessages().size());
+    }
+
+    @Test
+    public void testSendAllWithSharedSession() throws Exception
+    {
+        this.getMailServer();
+
+        final Email template = createEmail(0);
+        final Mailer mailer = new Mailer(template.getMailSession());
+
+        final Email email = new SimpleEmail();
+        email.setFrom(this.strTestMailFrom);
+        email.addTo(this.strTestMailTo);
+        email.setMsg("uses the session of the mailer");
+
+        final List<SendResult> results = mailer.sendAll(Arrays.asList(template, email));
+
+        assertTrue(results.get(0).isSent());
+        assertTrue(results.get(1).isSent());
+        assertEquals(2, this.fakeMailServer.getMessages().size());
+    }
+
+    private Email createEmail(final int index) throws EmailException
+    {
+        final Email email = new SimpleEmail();
+        email.setHostName(this.strTestMailServer);
+        email.setSmtpPort(this.getMailServerPort());
+        email.setFrom(this.strTestMailFrom);
+        email.addTo(this.strTestMailTo);
+        email.setSubject("Batch message " + index);
+        email.setMsg("Test Msg Body " + index);
+        return email;
+    }
+}
@@ -43,6 +43,7 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
@@ -52,6 +53,7 @@ import org.powermock.modules.junit4.PowerMockRunner;
  * @since 1.0
  */
 @RunWith(PowerMockRunner.class)
+@PowerMockIgnore("javax.net.*")
 @PrepareForTest( { MockMultiPartEmailConcrete.class, URLDataSource.class })
 public class MultiPartEmailTest extends AbstractEmailTest
 {
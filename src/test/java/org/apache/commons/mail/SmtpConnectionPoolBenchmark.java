@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail;
+
+import org.apache.commons.mail.transport.SmtpConnectionPool;
+import org.openjdk.jmh.annotations.*;
+import org.subethamail.wiser.Wiser;
+
+/**
+ * Compares sending with a new connection per message ({@code Transport.send})
+ * against sending over pooled connections, using a local SubEthaSMTP server.
+ * Run it with {@link org.apache.commons.mail.util.BenchmarkRunner}.
+ */
+@State(Scope.Benchmark)
+public class SmtpConnectionPoolBenchmark
+{
+    private static final int PORT = 2600;
+
+    private Wiser wiser;
+
+    private SmtpConnectionPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        wiser = new Wiser();
+        wiser.setPort(PORT);
+        wiser.start();
+        pool = new SmtpConnectionPool();
+        pool.setMaxMessagesPerConnection(Integer.MAX_VALUE);
+    }
+
+    @Setup(Level.Iteration)
+    public void clearMessages()
+    {
+        // Wiser keeps every message on the heap
+        wiser.getMessages().clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        pool.close();
+        wiser.stop();
+    }
+
+    @Fork(value = 1, warmups = 1)
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public String benchSendPerMessageConnection() throws EmailException
+    {
+        return createEmail().send();
+    }
+
+    @Fork(value = 1, warmups = 1)
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public String benchSendPooledConnection() throws EmailException
+    {
+        return createEmail().setConnectionPool(pool).send();
+    }
+
+    private Email createEmail() throws EmailException
+    {
+        final Email email = new SimpleEmail();
+        email.setHostName("localhost");
+        email.setSmtpPort(PORT);
+        email.setFrom("test_from@apache.org");
+        email.addTo("test_to@apache.org");
+        email.setSubject("Benchmark");
+        email.setMsg("Benchmark message body");
+        return email;
+    }
+}
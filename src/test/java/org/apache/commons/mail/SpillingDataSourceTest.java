@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.mail.util.MimeMessageParser;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * JUnit test case for SpillingDataSource.
+ *
+ * @since 1.6.0
+ */
+public class SpillingDataSourceTest extends AbstractEmailTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSmallContentStaysOnHeap() throws Exception
+    {
+        final byte[] data = createData(1000);
+
+        try (SpillingDataSource ds = new SpillingDataSource(new ByteArrayInputStream(data), "text/plain", "small.txt",
+                1000, folder.getRoot()))
+        {
+            assertFalse(ds.isSpilled());
+            assertNull(ds.getFile());
+            assertEquals(1000, ds.getSize());
+            assertArrayEquals(data, IOUtils.toByteArray(ds.getInputStream()));
+            assertEquals(0, folder.getRoot().list().length);
+        }
+    }
+
+    @Test
+    public void testLargeContentSpillsToDisk() throws Exception
+    {
+        final byte[] data = createData(100000);
+        final SpillingDataSource ds = new SpillingDataSource(new ByteArrayInputStream(data), null, "large.bin",
+                1000, folder.getRoot());
+
+        assertTrue(ds.isSpilled());
+        assertEquals(folder.getRoot(), ds.getFile().getParentFile());
+        assertEquals(100000, ds.getSize());
+        assertEquals(100000, ds.getFile().length());
+        assertArrayEquals(data, IOUtils.toByteArray(ds.getInputStream()));
+        assertArrayEquals(data, IOUtils.toByteArray(ds.getInputStream()));
+
+        ds.close();
+        assertFalse(ds.getFile().exists());
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadAfterClose() throws Exception
+    {
+        final SpillingDataSource ds = new SpillingDataSource(new ByteArrayInputStream(createData(5000)), null,
+                "large.bin", 1000, folder.getRoot());
+        ds.close();
+        ds.getInputStream();
+    }
+
+    @Test
+    public void testTemporaryFileIsDeletedAfterSend() throws Exception
+    {
+        this.getMailServer();
+        final byte[] data = createData(100000);
+        final SpillingDataSource ds = new SpillingDataSource(new ByteArrayInputStream(data),
+                "application/octet-stream", "upload.bin", 1000, folder.getRoot());
+
+        final MultiPartEmail email = new MultiPartEmail();
+        email.setHostName(this.strTestMailServer);
+        email.setSmtpPort(this.getMailServerPort());
+        email.setFrom(this.strTestMailFrom);
+        email.addTo(this.strTestMailTo);
+        email.setSubject("upload");
+        email.setMsg("see attachment");
+        email.attach(ds, "upload.bin", null);
+        email.addResource(ds);
+        email.send();
+
+        final File file = ds.getFile();
+        assertFalse(file.exists());
+
+        final MimeMessageParser parser =
+                new MimeMessageParser(this.fakeMailServer.getMessages().get(0).getMimeMessage()).parse();
+        assertArrayEquals(data, IOUtils.toByteArray(parser.findAttachmentByName("upload.bin").getInputStream()));
+    }
+
+    @Test
+    public void testAttachedDataSourceStaysOwnedByCaller() throws Exception
+    {
+        this.getMailServer();
+        final byte[] data = createData(100000);
+
+        try (SpillingDataSource ds = new SpillingDataSource(new ByteArrayInputStream(data),
+                "application/octet-stream", "upload.bin", 1000, folder.getRoot()))
+        {
+            for (int i = 0; i < 2; i++)
+            {
+                final HtmlEmail email = new HtmlEmail();
+                email.setHostName(this.strTestMailServer);
+                email.setSmtpPort(this.getMailServerPort());
+                email.setFrom(this.strTestMailFrom);
+                email.addTo(this.strTestMailTo);
+                email.setSubject("upload " + i);
+                email.setHtmlMsg("<img src=\"cid:upload\">");
+                email.embed(ds, "upload.bin", "upload");
+                email.attach(ds, "upload.bin", null);
+                email.send();
+            }
+            assertTrue(ds.getFile().exists());
+        }
+
+        assertEquals(2, this.fakeMailServer.getMessages().size());
+        final MimeMessageParser parser =
+                new MimeMessageParser(this.fakeMailServer.getMessages().get(1).getMimeMessage()).parse();
+        assertArrayEquals(data, IOUtils.toByteArray(parser.findAttachmentByName("upload.bin").getInputStream()));
+    }
+
+    private static byte[] createData(final int size)
+    {
+        final byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Random;
+
+import javax.activation.FileDataSource;
+import javax.mail.internet.MimeBodyPart;
+import javax.mail.internet.MimeMessage;
+import javax.mail.util.ByteArrayDataSource;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.mail.AbstractEmailTest;
+import org.apache.commons.mail.HtmlEmail;
+import org.apache.commons.mail.MultiPartEmail;
+import org.apache.commons.mail.util.MimeMessageParser;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * JUnit test case for AttachmentCache.
+ *
+ * @since 1.6.0
+ */
+public class AttachmentCacheTest extends AbstractEmailTest
+{
+    private static final File PDF = new File("./src/test/resources/attachments/logo.pdf");
+
+    private static final File IMAGE = new File("./src/test/resources/images/asf_logo_wide.gif");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSameAttachmentIsEncodedOnce() throws Exception
+    {
+        final AttachmentCache cache = new AttachmentCache();
+
+        final String first = write(createEmail(cache));
+        final String second = write(createEmail(cache));
+
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(encodedAttachment(first), encodedAttachment(second));
+
+        final MimeMessageParser parser = new MimeMessageParser(createEmail(cache).getMimeMessage()).parse();
+        assertArrayEquals(Files.readAllBytes(PDF.toPath()),
+                IOUtils.toByteArray(parser.findAttachmentByName("logo.pdf").getInputStream()));
+        assertArrayEquals(Files.readAllBytes(IMAGE.toPath()),
+                IOUtils.toByteArray(parser.findAttachmentByCid("logo").getInputStream()));
+    }
+
+    @Test
+    public void testModifiedFileIsEncodedAgain() throws Exception
+    {
+        final AttachmentCache cache = new AttachmentCache();
+        final File file = folder.newFile("data.txt");
+        Files.write(file.toPath(), "first".getBytes("US-ASCII"));
+
+        assertEquals("first", decode(cache.createBodyPart(new FileDataSource(file))));
+
+        Files.write(file.toPath(), "second".getBytes("US-ASCII"));
+        file.setLastModified(file.lastModified() + 2000);
+
+        assertEquals("second", decode(cache.createBodyPart(new FileDataSource(file))));
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testLargeAttachmentIsSpilledToDisk() throws Exception
+    {
+        final AttachmentCache cache = new AttachmentCache();
+        cache.setSpillThreshold(1024);
+        cache.setDirectory(folder.getRoot());
+
+        final byte[] data = new byte[100000];
+        new Random(42).nextBytes(data);
+        final ByteArrayDataSource dataSource = new ByteArrayDataSource(data, "application/octet-stream");
+
+        final MimeBodyPart first = cache.createBodyPart(dataSource);
+        final MimeBodyPart second = cache.createBodyPart(dataSource);
+
+        assertEquals(0, cache.getMemoryBytes());
+        assertTrue(cache.getDiskBytes() > data.length);
+        assertEquals(1, folder.getRoot().list().length);
+        assertEquals("base64", first.getEncoding());
+        assertArrayEquals(data, IOUtils.toByteArray(first.getInputStream()));
+        assertArrayEquals(data, IOUtils.toByteArray(second.getInputStream()));
+
+        cache.clear();
+        assertEquals(0, cache.getDiskBytes());
+        assertEquals(1, folder.getRoot().list().length);
+
+        cache.release(first);
+        cache.release(second);
+        assertEquals(0, folder.getRoot().list().length);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() throws Exception
+    {
+        final AttachmentCache cache = new AttachmentCache();
+        cache.setMaxMemoryBytes(200);
+
+        final ByteArrayDataSource a = new ByteArrayDataSource(new byte[60], "application/octet-stream");
+        final ByteArrayDataSource b = new ByteArrayDataSource(new byte[61], "application/octet-stream");
+        final ByteArrayDataSource c = new ByteArrayDataSource(new byte[62], "application/octet-stream");
+
+        cache.createBodyPart(a);
+        cache.createBodyPart(b);
+        cache.createBodyPart(a);
+        cache.createBodyPart(c);
+
+        assertEquals(2, cache.size());
+        assertTrue(cache.getMemoryBytes() <= 200);
+
+        cache.createBodyPart(a);
+        assertEquals(2, cache.getHitCount());
+        cache.createBodyPart(b);
+        assertEquals(4, cache.getMissCount());
+    }
+
+    @Test
+    public void testEvictedEntryStaysReadableUntilReleased() throws Exception
+    {
+        this.getMailServer();
+        final AttachmentCache cache = new AttachmentCache();
+        cache.setSpillThreshold(1024);
+        cache.setMaxDiskBytes(200000);
+        cache.setDirectory(folder.getRoot());
+
+        final byte[] data = random(100000, 1);
+        final MultiPartEmail email = new MultiPartEmail();
+        email.setAttachmentCache(cache);
+        email.setHostName(strTestMailServer);
+        email.setSmtpPort(this.getMailServerPort());
+        email.setFrom(strTestMailFrom);
+        email.addTo(strTestMailTo);
+        email.setSubject("evicted");
+        email.setMsg("see the attachment");
+        email.attach(new ByteArrayDataSource(data, "application/octet-stream"), "data.bin", "data");
+        email.buildMimeMessage();
+
+        // another large attachment evicts the entry of the built message
+        final MimeBodyPart other = cache.createBodyPart(
+                new ByteArrayDataSource(random(100000, 2), "application/octet-stream"));
+        assertEquals(1, cache.size());
+        assertEquals(2, folder.getRoot().list().length);
+
+        email.sendMimeMessage();
+        email.releaseResources();
+        assertEquals(1, folder.getRoot().list().length);
+
+        final MimeMessageParser parser = new MimeMessageParser(
+                this.fakeMailServer.getMessages().get(0).getMimeMessage()).parse();
+        assertArrayEquals(data, IOUtils.toByteArray(parser.findAttachmentByName("data.bin").getInputStream()));
+
+        cache.clear();
+        assertEquals(1, folder.getRoot().list().length);
+        cache.release(other);
+        assertEquals(0, folder.getRoot().list().length);
+    }
+
+    private static byte[] random(final int length, final long seed)
+    {
+        final byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    private static HtmlEmail createEmail(final AttachmentCache cache) throws Exception
+    {
+        final HtmlEmail email = new HtmlEmail();
+        email.setAttachmentCache(cache);
+        email.setHostName("localhost");
+        email.setFrom("from@example.com");
+        email.addTo("to@example.com");
+        email.setSubject("cached");
+        email.embed(new FileDataSource(IMAGE), "logo.gif", "logo");
+        email.setHtmlMsg("<img src=\"cid:logo\">");
+        ((MultiPartEmail) email).attach(new FileDataSource(PDF), "logo.pdf", "the logo");
+        email.buildMimeMessage();
+        return email;
+    }
+
+    private static String write(final HtmlEmail email) throws Exception
+    {
+        final MimeMessage message = email.getMimeMessage();
+        message.saveChanges();
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        message.writeTo(os);
+        return os.toString("US-ASCII");
+    }
+
+    private static String encodedAttachment(final String message)
+    {
+        final int start = message.indexOf("\r\n\r\n", message.indexOf("Content-Description: the logo"));
+        return message.substring(start, message.indexOf("\r\n--", start));
+    }
+
+    private static String decode(final MimeBodyPart part) throws Exception
+    {
+        return new String(IOUtils.toByteArray(part.getInputStream()), "US-ASCII");
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.jfr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+
+import org.apache.commons.mail.AbstractEmailTest;
+import org.apache.commons.mail.EmailAttachment;
+import org.apache.commons.mail.ImageHtmlEmail;
+import org.apache.commons.mail.resolver.DataSourceFileResolver;
+import org.apache.commons.mail.util.MimeMessageParser;
+import org.apache.commons.mail.util.MimeMessageUtils;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * JUnit test case for EmailEvent.
+ *
+ * @since 1.6.0
+ */
+public class EmailEventTest extends AbstractEmailTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void assumeJfr()
+    {
+        Assume.assumeTrue(FlightRecorder.isAvailable());
+    }
+
+    @Test
+    public void testDisabledWithoutRecording()
+    {
+        assertFalse(EmailEvent.isEnabled(EmailEventType.SEND));
+        assertSame(EmailEvent.DISABLED, EmailEvent.begin(EmailEventType.SEND));
+    }
+
+    @Test
+    public void testEventsAreRecorded() throws Exception
+    {
+        this.getMailServer();
+        final Path file = folder.newFile("mail.jfr").toPath();
+
+        try (Recording recording = new Recording())
+        {
+            for (final String name : new String[] { "Build", "Send", "Embed", "Resolve", "Parse" })
+            {
+                recording.enable("org.apache.commons.mail." + name).withThreshold(Duration.ZERO);
+            }
+            recording.start();
+            assertTrue(EmailEvent.isEnabled(EmailEventType.SEND));
+
+            final ImageHtmlEmail email = new ImageHtmlEmail();
+            email.setHostName(this.strTestMailServer);
+            email.setSmtpPort(this.getMailServerPort());
+            email.setFrom(this.strTestMailFrom);
+            email.addTo(this.strTestMailTo);
+            email.setSubject("recorded");
+            email.setDataSourceResolver(new DataSourceFileResolver(new File("./src/test/resources"), true));
+            email.setHtmlMsg("<html><body><img src=\"images/asf_logo_wide.gif\"/>"
+                    + "<img src=\"images/missing.gif\"/></body></html>");
+            final EmailAttachment attachment = new EmailAttachment();
+            attachment.setPath("./src/test/resources/attachments/logo.pdf");
+            email.attach(attachment);
+            email.send();
+
+            final Session session = Session.getInstance(System.getProperties());
+            final MimeMessage received = MimeMessageUtils.createMimeMessage(session,
+                    this.fakeMailServer.getMessages().get(0).getData());
+            new MimeMessageParser(received).parse();
+
+            recording.stop();
+            recording.dump(file);
+        }
+
+        final List<RecordedEvent> events = new ArrayList<>();
+        for (final RecordedEvent event : RecordingFile.readAllEvents(file))
+        {
+            if (event.getEventType().getName().startsWith("org.apache.commons.mail."))
+            {
+                events.add(event);
+            }
+        }
+
+        final RecordedEvent send = find(events, "Send");
+        assertEquals(this.strTestMailServer, send.getString("host"));
+        assertEquals(EmailEvent.SUCCESS, send.getString("outcome"));
+        assertTrue(send.getLong("size") > 0);
+        assertEquals(2, send.getInt("attachmentCount"));
+
+        assertEquals(EmailEvent.SUCCESS, find(events, "Build").getString("outcome"));
+        assertEquals(1, find(events, "Embed").getInt("attachmentCount"));
+        assertEquals(2, find(events, "Parse").getInt("attachmentCount"));
+
+        int resolved = 0;
+        for (final RecordedEvent event : events)
+        {
+            if (event.getEventType().getName().endsWith(".Resolve"))
+            {
+                resolved++;
+                final String outcome = event.getString("outcome");
+                assertEquals(event.getString("resource").contains("missing") ? "not found" : EmailEvent.SUCCESS, outcome);
+            }
+        }
+        assertEquals(2, resolved);
+    }
+
+    private static RecordedEvent find(final List<RecordedEvent> events, final String name)
+    {
+        for (final RecordedEvent event : events)
+        {
+            if (event.getEventType().getName().equals("org.apache.commons.mail." + name))
+            {
+                return event;
+            }
+        }
+        throw new AssertionError("no " + name + " event in " + events);
+    }
+}
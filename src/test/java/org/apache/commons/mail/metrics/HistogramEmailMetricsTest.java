@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.apache.commons.mail.AbstractEmailTest;
+import org.apache.commons.mail.Email;
+import org.apache.commons.mail.EmailException;
+import org.apache.commons.mail.ImageHtmlEmail;
+import org.apache.commons.mail.SimpleEmail;
+import org.apache.commons.mail.resolver.DataSourceFileResolver;
+import org.apache.commons.mail.transport.SmtpConnectionPool;
+import org.junit.Test;
+
+/**
+ * JUnit test case for HistogramEmailMetrics.
+ *
+ * @since 1.6.0
+ */
+public class HistogramEmailMetricsTest extends AbstractEmailTest
+{
+    @Test
+    public void testSendRecordsPhases() throws Exception
+    {
+        this.getMailServer();
+        final HistogramEmailMetrics metrics = new HistogramEmailMetrics();
+
+        final Email email = createEmail(metrics);
+        email.addCc("cc@example.com");
+        email.send();
+
+        for (final EmailPhase phase : new EmailPhase[] { EmailPhase.BUILD, EmailPhase.SESSION,
+            EmailPhase.CONNECT, EmailPhase.TRANSFER, EmailPhase.SEND })
+        {
+            assertEquals(phase.name(), 1, metrics.getHistogram(phase).getCount());
+            assertEquals(phase.name(), 0, metrics.getFailureCount(phase));
+        }
+        assertEquals(0, metrics.getHistogram(EmailPhase.RESOLVE).getCount());
+        assertEquals(1, metrics.getMessageCount());
+        assertEquals(2, metrics.getRecipientCount());
+
+        final long size = this.fakeMailServer.getMessages().get(0).getData().length;
+        assertTrue(metrics.getByteCount() > 0);
+        // the server adds a Received header
+        assertTrue(metrics.getByteCount() < size);
+    }
+
+    @Test
+    public void testPooledSendRecordsPhases() throws Exception
+    {
+        this.getMailServer();
+        final HistogramEmailMetrics metrics = new HistogramEmailMetrics();
+
+        try (SmtpConnectionPool pool = new SmtpConnectionPool())
+        {
+            for (int i = 0; i < 3; i++)
+            {
+                final Email email = createEmail(metrics);
+                email.setConnectionPool(pool);
+                email.send();
+            }
+        }
+
+        assertEquals(3, metrics.getHistogram(EmailPhase.CONNECT).getCount());
+        assertEquals(3, metrics.getHistogram(EmailPhase.TRANSFER).getCount());
+        assertEquals(3, metrics.getMessageCount());
+    }
+
+    @Test
+    public void testFailedSendIsRecorded() throws Exception
+    {
+        this.getMailServer();
+        final int port = this.getMailServerPort();
+        this.fakeMailServer.stop();
+
+        final HistogramEmailMetrics metrics = new HistogramEmailMetrics();
+        final Email email = createEmail(metrics);
+        email.setSmtpPort(port);
+
+        try
+        {
+            email.send();
+        }
+        catch (final EmailException e)
+        {
+            // expected
+        }
+
+        assertEquals(1, metrics.getFailureCount(EmailPhase.CONNECT));
+        assertEquals(1, metrics.getFailureCount(EmailPhase.SEND));
+        assertEquals(0, metrics.getHistogram(EmailPhase.TRANSFER).getCount());
+        assertEquals(0, metrics.getMessageCount());
+    }
+
+    @Test
+    public void testResolvingIsRecorded() throws Exception
+    {
+        this.getMailServer();
+        final HistogramEmailMetrics metrics = new HistogramEmailMetrics();
+
+        final ImageHtmlEmail email = new ImageHtmlEmail();
+        email.setMetrics(metrics);
+        email.setHostName(this.strTestMailServer);
+        email.setSmtpPort(this.getMailServerPort());
+        email.setFrom(this.strTestMailFrom);
+        email.addTo(this.strTestMailTo);
+        email.setSubject("images");
+        email.setDataSourceResolver(new DataSourceFileResolver(new File("./src/test/resources")));
+        email.setHtmlMsg("<html><body><img src=\"images/asf_logo_wide.gif\"/>"
+                + "<img src=\"images/contentTypeTest.gif\"/></body></html>");
+        email.send();
+
+        assertEquals(2, metrics.getHistogram(EmailPhase.RESOLVE).getCount());
+        assertTrue(metrics.toString().contains("RESOLVE"));
+    }
+
+    private Email createEmail(final EmailMetrics metrics) throws EmailException
+    {
+        final Email email = new SimpleEmail();
+        email.setMetrics(metrics);
+        email.setHostName(this.strTestMailServer);
+        email.setSmtpPort(this.getMailServerPort());
+        email.setFrom(this.strTestMailFrom);
+        email.addTo(this.strTestMailTo);
+        email.setSubject("metrics");
+        email.setMsg("measured message");
+        return email;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * JUnit test case for LatencyHistogram.
+ *
+ * @since 1.6.0
+ */
+public class LatencyHistogramTest
+{
+    @Test
+    public void testEmpty()
+    {
+        final LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        assertEquals(0, histogram.getMean(), 0);
+    }
+
+    @Test
+    public void testBucketsCoverAllValues()
+    {
+        int previous = -1;
+        for (long value = 0; value < 1 << 20; value++)
+        {
+            final int index = LatencyHistogram.indexOf(value);
+            assertTrue(index == previous || index == previous + 1);
+            assertTrue(value <= LatencyHistogram.highestValueAt(index));
+            previous = index;
+        }
+    }
+
+    @Test
+    public void testPercentilesWithinPrecision()
+    {
+        final LatencyHistogram histogram = new LatencyHistogram();
+
+        // 1 to 10000 microseconds
+        for (long micros = 1; micros <= 10000; micros++)
+        {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(micros));
+        }
+
+        assertEquals(10000, histogram.getCount());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(10), histogram.getMax());
+        assertClose(TimeUnit.MICROSECONDS.toNanos(5000), histogram.getValueAtPercentile(50));
+        assertClose(TimeUnit.MICROSECONDS.toNanos(9900), histogram.getValueAtPercentile(99));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(10), histogram.getValueAtPercentile(100));
+        assertClose(TimeUnit.MICROSECONDS.toNanos(5000), (long) histogram.getMean());
+    }
+
+    @Test
+    public void testOutOfRangeValues()
+    {
+        final LatencyHistogram histogram = new LatencyHistogram();
+
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(2, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        assertTrue(histogram.getValueAtPercentile(100) > TimeUnit.HOURS.toNanos(2));
+    }
+
+    @Test
+    public void testConcurrentRecording() throws Exception
+    {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        for (int t = 0; t < 4; t++)
+        {
+            executor.execute(() -> {
+                for (int i = 0; i < 100000; i++)
+                {
+                    histogram.record(i);
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertEquals(400000, histogram.getCount());
+        assertEquals(99999, histogram.getMax());
+    }
+
+    private static void assertClose(final long expected, final long actual)
+    {
+        assertTrue("expected " + expected + " but was " + actual,
+                Math.abs(actual - expected) <= expected / 50);
+    }
+}
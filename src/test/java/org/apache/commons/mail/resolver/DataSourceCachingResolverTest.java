@@ -0,0 +1,207 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.resolver;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.activation.DataSource;
+
+import org.apache.commons.mail.ByteBufferDataSource;
+import org.apache.commons.mail.DataSourceResolver;
+import org.junit.Test;
+
+/**
+ * JUnit test case for DataSourceCachingResolver.
+ *
+ * @since 1.6.0
+ */
+public class DataSourceCachingResolverTest extends AbstractDataSourceResolverTest
+{
+    @Test
+    public void testCachesResolvedContent() throws Exception
+    {
+        final CountingResolver counting = new CountingResolver(new DataSourceClassPathResolver("/", true));
+        final DataSourceCachingResolver resolver = new DataSourceCachingResolver(counting);
+
+        assertTrue(resolver.isLenient());
+
+        final DataSource first = resolver.resolve("images/asf_logo_wide.gif");
+        final DataSource second = resolver.resolve("images/asf_logo_wide.gif");
+
+        assertEquals(IMG_SIZE, toByteArray(first).length);
+        assertArrayEquals(toByteArray(first), toByteArray(second));
+        assertEquals("image/gif", second.getContentType());
+        assertEquals(1, counting.count.get());
+        assertEquals(1, resolver.getMissCount());
+        assertEquals(1, resolver.getHitCount());
+        assertEquals(IMG_SIZE, resolver.getBytes());
+
+        // resources which were not found are asked for again
+        assertNull(resolver.resolve("images/missing.gif"));
+        assertNull(resolver.resolve("images/missing.gif"));
+        assertEquals(3, counting.count.get());
+        assertEquals(1, resolver.size());
+    }
+
+    @Test
+    public void testResolvingNonLenient() throws Exception
+    {
+        final DataSourceResolver dataSourceResolver =
+                new DataSourceCachingResolver(new DataSourceClassPathResolver("/", false));
+        assertNotNull(dataSourceResolver.resolve("images/asf_logo_wide.gif"));
+
+        assertThrows(IOException.class, () -> dataSourceResolver.resolve("asf_logo_wide.gif"));
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() throws Exception
+    {
+        final CountingResolver counting = new CountingResolver(null);
+        final DataSourceCachingResolver resolver = new DataSourceCachingResolver(counting);
+        resolver.setMaxBytes(250);
+
+        resolver.resolve("a");
+        resolver.resolve("b");
+        resolver.resolve("a");
+        resolver.resolve("c");
+
+        assertEquals(2, resolver.size());
+        assertEquals(200, resolver.getBytes());
+        assertEquals(1, resolver.getEvictionCount());
+
+        resolver.resolve("a");
+        assertEquals(3, counting.count.get());
+        resolver.resolve("b");
+        assertEquals(4, counting.count.get());
+    }
+
+    @Test
+    public void testEntriesExpire() throws Exception
+    {
+        final CountingResolver counting = new CountingResolver(null);
+        final DataSourceCachingResolver resolver = new DataSourceCachingResolver(counting);
+        resolver.setTtlMillis(50);
+
+        resolver.resolve("a");
+        resolver.resolve("a");
+        assertEquals(1, counting.count.get());
+
+        Thread.sleep(100);
+
+        resolver.resolve("a");
+        assertEquals(2, counting.count.get());
+        assertEquals(1, resolver.getEvictionCount());
+    }
+
+    @Test
+    public void testConcurrentMissesCollapse() throws Exception
+    {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountingResolver counting = new CountingResolver(null)
+        {
+            @Override
+            public DataSource resolve(final String resourceLocation, final boolean isLenient) throws IOException
+            {
+                try
+                {
+                    release.await(10, TimeUnit.SECONDS);
+                }
+                catch (final InterruptedException e)
+                {
+                    throw new IOException(e);
+                }
+                return super.resolve(resourceLocation, isLenient);
+            }
+        };
+        final DataSourceCachingResolver resolver = new DataSourceCachingResolver(counting);
+        final List<Thread> threads = new ArrayList<>();
+        final AtomicInteger resolved = new AtomicInteger();
+
+        for (int i = 0; i < 8; i++)
+        {
+            final Thread thread = new Thread(() -> {
+                try
+                {
+                    if (resolver.resolve("a") != null)
+                    {
+                        resolved.incrementAndGet();
+                    }
+                }
+                catch (final IOException e)
+                {
+                    // counted as not resolved
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        Thread.sleep(200);
+        release.countDown();
+
+        for (final Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        assertEquals(8, resolved.get());
+        assertEquals(1, counting.count.get());
+        assertEquals(1, resolver.getMissCount());
+        assertEquals(7, resolver.getHitCount());
+    }
+
+    /**
+     * Counts the resolves, delegating them or answering every location with 100 bytes.
+     */
+    private static class CountingResolver extends DataSourceBaseResolver
+    {
+        private final DataSourceResolver delegate;
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        CountingResolver(final DataSourceBaseResolver delegate)
+        {
+            super(delegate == null || delegate.isLenient());
+            this.delegate = delegate;
+        }
+
+        @Override
+        public DataSource resolve(final String resourceLocation) throws IOException
+        {
+            return resolve(resourceLocation, isLenient());
+        }
+
+        @Override
+        public DataSource resolve(final String resourceLocation, final boolean isLenient) throws IOException
+        {
+            count.incrementAndGet();
+            if (delegate != null)
+            {
+                return delegate.resolve(resourceLocation, isLenient);
+            }
+            return new ByteBufferDataSource(new byte[100], "application/octet-stream", resourceLocation);
+        }
+    }
+}
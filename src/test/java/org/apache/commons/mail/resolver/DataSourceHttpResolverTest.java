@@ -0,0 +1,211 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.resolver;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.activation.DataSource;
+
+import org.apache.commons.mail.MultiPartEmail;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * JUnit test case for DataSourceHttpResolver.
+ *
+ * @since 1.6.0
+ */
+public class DataSourceHttpResolverTest extends AbstractDataSourceResolverTest
+{
+    private static final byte[] CONTENT = "GIF89a-not-really".getBytes();
+
+    private static final byte[] LARGE_CONTENT = new byte[CONTENT.length * 4];
+
+    private static final String ETAG = "\"v1\"";
+
+    private HttpServer server;
+
+    private URL baseUrl;
+
+    private final AtomicInteger requests = new AtomicInteger();
+
+    @Before
+    public void setUpServer() throws Exception
+    {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/images/", this::serve);
+        server.createContext("/slow", exchange -> {
+            try
+            {
+                Thread.sleep(2000);
+            }
+            catch (final InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            serve(exchange);
+        });
+        server.start();
+        baseUrl = new URL("http://localhost:" + server.getAddress().getPort() + "/");
+    }
+
+    @After
+    public void tearDownServer()
+    {
+        server.stop(0);
+    }
+
+    private void serve(final HttpExchange exchange) throws IOException
+    {
+        requests.incrementAndGet();
+
+        if (exchange.getRequestURI().getPath().contains("missing"))
+        {
+            exchange.sendResponseHeaders(404, -1);
+        }
+        else if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match")))
+        {
+            exchange.sendResponseHeaders(304, -1);
+        }
+        else
+        {
+            final byte[] content = exchange.getRequestURI().getPath().contains("large") ? LARGE_CONTENT : CONTENT;
+            exchange.getResponseHeaders().set("Content-Type", "image/gif");
+            exchange.getResponseHeaders().set("ETag", ETAG);
+            exchange.sendResponseHeaders(200, content.length);
+            try (OutputStream os = exchange.getResponseBody())
+            {
+                os.write(content);
+            }
+        }
+        exchange.close();
+    }
+
+    @Test
+    public void testFetchesOnceAndRevalidates() throws Exception
+    {
+        final DataSourceHttpResolver resolver = new DataSourceHttpResolver(baseUrl, true);
+
+        final DataSource first = resolver.resolve("images/logo.gif");
+        assertEquals(1, requests.get());
+        assertArrayEquals(CONTENT, toByteArray(first));
+        assertArrayEquals(CONTENT, toByteArray(first));
+        assertEquals("image/gif", first.getContentType());
+        assertEquals("/images/logo.gif", first.getName());
+        assertEquals(1, requests.get());
+
+        final DataSource second = resolver.resolve("images/logo.gif");
+        assertEquals(2, requests.get());
+        assertArrayEquals(CONTENT, toByteArray(second));
+        assertEquals(1, resolver.getFetchCount());
+        assertEquals(1, resolver.getNotModifiedCount());
+    }
+
+    @Test
+    public void testRevalidatedResponsesAreBoundedByBytes() throws Exception
+    {
+        final DataSourceHttpResolver resolver = new DataSourceHttpResolver(baseUrl, true);
+        resolver.setMaxRevalidatedBytes(CONTENT.length - 1);
+
+        resolver.resolve("images/logo.gif");
+        resolver.resolve("images/logo.gif");
+
+        assertEquals(2, resolver.getFetchCount());
+        assertEquals(0, resolver.getNotModifiedCount());
+    }
+
+    @Test
+    public void testLargeResponseDoesNotEvictRememberedResponses() throws Exception
+    {
+        final DataSourceHttpResolver resolver = new DataSourceHttpResolver(baseUrl, true);
+        resolver.setMaxRevalidatedBytes(CONTENT.length * 2);
+
+        resolver.resolve("images/logo.gif");
+        assertEquals(LARGE_CONTENT.length, toByteArray(resolver.resolve("images/large.gif")).length);
+        resolver.resolve("images/logo.gif");
+        resolver.resolve("images/large.gif");
+
+        assertEquals(3, resolver.getFetchCount());
+        assertEquals(1, resolver.getNotModifiedCount());
+    }
+
+    @Test
+    public void testNotFound() throws Exception
+    {
+        assertNull(new DataSourceHttpResolver(baseUrl, true).resolve("images/missing.gif"));
+        assertNull(new DataSourceHttpResolver(baseUrl, true).resolve("cid:logo"));
+
+        final DataSourceHttpResolver resolver = new DataSourceHttpResolver(baseUrl, false);
+        assertThrows(IOException.class, () -> resolver.resolve("images/missing.gif"));
+    }
+
+    @Test
+    public void testReadTimeout() throws Exception
+    {
+        final DataSourceHttpResolver resolver = new DataSourceHttpResolver(baseUrl, false);
+        resolver.setReadTimeoutMillis(200);
+
+        final long start = System.currentTimeMillis();
+        assertThrows(IOException.class, () -> resolver.resolve("slow"));
+        assertTrue(System.currentTimeMillis() - start < 1500);
+    }
+
+    @Test
+    public void testAttachedUrlIsStreamedByDefault() throws Exception
+    {
+        final MultiPartEmail email = new MultiPartEmail();
+        email.setHostName("localhost");
+        email.setFrom("from@example.com");
+        email.addTo("to@example.com");
+        email.setMsg("see the attachment");
+        email.attach(new URL(baseUrl, "images/attached.gif"), "attached.gif", "an attachment");
+        email.buildMimeMessage();
+        assertEquals(1, requests.get());
+        email.getMimeMessage().writeTo(new ByteArrayOutputStream());
+
+        // checked when attached, opened again when written
+        assertTrue(requests.get() > 1);
+    }
+
+    @Test
+    public void testAttachedUrlIsDownloadedOnce() throws Exception
+    {
+        final MultiPartEmail email = new MultiPartEmail();
+        email.setUrlResolver(new DataSourceHttpResolver(null));
+        email.setHostName("localhost");
+        email.setFrom("from@example.com");
+        email.addTo("to@example.com");
+        email.setMsg("see the attachment");
+        email.attach(new URL(baseUrl, "images/attached.gif"), "attached.gif", "an attachment");
+        email.buildMimeMessage();
+        email.getMimeMessage().writeTo(new ByteArrayOutputStream());
+
+        assertEquals(1, requests.get());
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.resolver;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.activation.DataSource;
+import javax.activation.FileDataSource;
+
+import org.apache.commons.mail.ByteBufferDataSource;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * JUnit test case for DataSourceIndexedFileResolver.
+ *
+ * @since 1.6.0
+ */
+public class DataSourceIndexedFileResolverTest extends AbstractDataSourceResolverTest
+{
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testResolvesFromIndexAndMemory() throws Exception
+    {
+        final File baseDir = folder.newFolder();
+        write(new File(baseDir, "logo.gif"), "GIF89a");
+        write(new File(baseDir, "images/nested.png"), "png");
+
+        try (DataSourceIndexedFileResolver resolver = new DataSourceIndexedFileResolver(baseDir, true))
+        {
+            assertEquals(2, resolver.size());
+
+            final DataSource first = resolver.resolve("logo.gif");
+            assertTrue(first instanceof ByteBufferDataSource);
+            assertEquals("image/gif", first.getContentType());
+            assertEquals("logo.gif", first.getName());
+            assertEquals("GIF89a", new String(toByteArray(first), StandardCharsets.US_ASCII));
+            assertSame(first, resolver.resolve("./logo.gif"));
+            assertEquals(6, resolver.getMemoryBytes());
+
+            assertNotNull(resolver.resolve("images/nested.png"));
+            assertNotNull(resolver.resolve("images/../images/nested.png"));
+            assertNotNull(resolver.resolve(new File(baseDir, "images/nested.png").getAbsolutePath()));
+
+            assertNull(resolver.resolve("cid:logo.gif"));
+            assertNull(resolver.resolve("missing.gif"));
+            assertNull(resolver.resolve("../" + baseDir.getName() + "/../escape.gif"));
+        }
+    }
+
+    @Test
+    public void testLargeFilesAreNotKeptInMemory() throws Exception
+    {
+        final File baseDir = folder.newFolder();
+        write(new File(baseDir, "a.txt"), "0123456789");
+        write(new File(baseDir, "b.txt"), "0123456789");
+
+        try (DataSourceIndexedFileResolver resolver = new DataSourceIndexedFileResolver(baseDir, true))
+        {
+            resolver.setMaxMemoryBytes(15);
+
+            assertTrue(resolver.resolve("a.txt") instanceof ByteBufferDataSource);
+            assertTrue(resolver.resolve("b.txt") instanceof ByteBufferDataSource);
+            assertEquals(10, resolver.getMemoryBytes());
+
+            resolver.setMaxFileBytes(5);
+            assertTrue(resolver.resolve("a.txt") instanceof FileDataSource);
+        }
+    }
+
+    @Test
+    public void testResolvingNonLenient() throws Exception
+    {
+        try (DataSourceIndexedFileResolver resolver = new DataSourceIndexedFileResolver(folder.newFolder(), false))
+        {
+            assertThrows(IOException.class, () -> resolver.resolve("missing.gif"));
+        }
+    }
+
+    @Test
+    public void testChangesInvalidateTheIndex() throws Exception
+    {
+        final File baseDir = folder.newFolder();
+        final File file = new File(baseDir, "logo.txt");
+        write(file, "old");
+
+        try (DataSourceIndexedFileResolver resolver = new DataSourceIndexedFileResolver(baseDir, true))
+        {
+            assertEquals("old", new String(toByteArray(resolver.resolve("logo.txt")), StandardCharsets.US_ASCII));
+
+            write(file, "changed");
+            await(() -> "changed".equals(new String(toByteArray(resolver.resolve("logo.txt")), StandardCharsets.US_ASCII)));
+
+            write(new File(baseDir, "added/new.txt"), "new");
+            await(() -> resolver.resolve("added/new.txt") != null);
+
+            assertTrue(file.delete());
+            await(() -> resolver.resolve("logo.txt") == null);
+            assertEquals(1, resolver.size());
+        }
+    }
+
+    @Test
+    public void testReindexKeepsServingLookups() throws Exception
+    {
+        final File baseDir = folder.newFolder();
+        for (int i = 0; i < 200; i++)
+        {
+            write(new File(baseDir, "files/" + i + ".txt"), "content");
+        }
+        write(new File(baseDir, "logo.gif"), "GIF89a");
+
+        try (DataSourceIndexedFileResolver resolver = new DataSourceIndexedFileResolver(baseDir, false))
+        {
+            final AtomicBoolean done = new AtomicBoolean();
+            final Thread reindexer = new Thread(() -> {
+                for (int i = 0; i < 50; i++)
+                {
+                    resolver.reindex();
+                }
+                done.set(true);
+            });
+            reindexer.start();
+
+            while (!done.get())
+            {
+                assertNotNull(resolver.resolve("logo.gif"));
+            }
+            reindexer.join();
+            assertEquals(201, resolver.size());
+        }
+    }
+
+    private static void await(final Callable<Boolean> condition) throws Exception
+    {
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.call().booleanValue() && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(20);
+        }
+        assertTrue(condition.call().booleanValue());
+    }
+
+    private static void write(final File file, final String content) throws IOException
+    {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.US_ASCII));
+    }
+}
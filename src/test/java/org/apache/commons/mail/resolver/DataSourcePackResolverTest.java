@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.resolver;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import javax.activation.DataSource;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * JUnit test case for DataSourcePackResolver and ResourcePackWriter.
+ *
+ * @since 1.6.0
+ */
+public class DataSourcePackResolverTest extends AbstractDataSourceResolverTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testResolvesPackedResources() throws Exception
+    {
+        final File pack = new File(folder.getRoot(), "images.pack");
+        ResourcePackWriter.write(new File("src/test/resources/images"), pack);
+
+        final DataSourcePackResolver resolver = new DataSourcePackResolver(pack, true);
+        final DataSource classPath = new DataSourceClassPathResolver("/images").resolve("asf_logo_wide.gif");
+
+        final DataSource dataSource = resolver.resolve("asf_logo_wide.gif");
+        assertEquals(IMG_SIZE, toByteArray(dataSource).length);
+        assertArrayEquals(toByteArray(classPath), toByteArray(dataSource));
+        assertEquals("image/gif", dataSource.getContentType());
+        assertEquals("asf_logo_wide.gif", dataSource.getName());
+
+        // resources are shared, not read again
+        assertSame(dataSource, resolver.resolve("/asf_logo_wide.gif"));
+        assertSame(dataSource, resolver.resolve("./asf_logo_wide.gif"));
+
+        assertNotNull(resolver.resolve("contentTypeTest.png"));
+        assertNull(resolver.resolve("missing.gif"));
+        assertNull(resolver.resolve("cid:asf_logo_wide.gif"));
+        assertNull(resolver.resolve("http://www.apache.org/images/feather-small.gif"));
+    }
+
+    @Test
+    public void testNestedDirectories() throws Exception
+    {
+        final File baseDir = folder.newFolder("templates");
+        new File(baseDir, "css").mkdirs();
+        Files.write(new File(baseDir, "css/main.css").toPath(), "body {}".getBytes(StandardCharsets.US_ASCII));
+        Files.write(new File(baseDir, "empty.txt").toPath(), new byte[0]);
+
+        final File pack = new File(folder.getRoot(), "out/templates.pack");
+        ResourcePackWriter.main(new String[] {baseDir.getPath(), pack.getPath()});
+
+        final DataSourcePackResolver resolver =
+                new DataSourcePackResolver(ByteBuffer.wrap(Files.readAllBytes(pack.toPath())), false);
+
+        assertEquals(2, resolver.size());
+        assertEquals("body {}", new String(toByteArray(resolver.resolve("css/main.css")), StandardCharsets.US_ASCII));
+        assertEquals(0, toByteArray(resolver.resolve("empty.txt")).length);
+        assertEquals("text/plain", resolver.resolve("empty.txt").getContentType());
+    }
+
+    @Test
+    public void testResolvingNonLenient() throws Exception
+    {
+        final File pack = new File(folder.getRoot(), "images.pack");
+        ResourcePackWriter.write(new File("src/test/resources/images"), pack);
+
+        final DataSourcePackResolver resolver = new DataSourcePackResolver(pack, false);
+        assertThrows(IOException.class, () -> resolver.resolve("missing.gif"));
+    }
+
+    @Test
+    public void testInvalidPack() throws Exception
+    {
+        assertThrows(IOException.class,
+                () -> new DataSourcePackResolver(ByteBuffer.wrap("not a pack at all".getBytes(StandardCharsets.US_ASCII)), true));
+        assertThrows(IOException.class, () -> DataSourcePackResolver.fromClassPath("/missing.pack", true));
+    }
+}
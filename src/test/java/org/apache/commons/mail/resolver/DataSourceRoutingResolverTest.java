@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.resolver;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.mail.DataSourceResolver;
+import org.junit.Test;
+
+/**
+ * JUnit test case for DataSourceRoutingResolver.
+ *
+ * @since 1.6.0
+ */
+public class DataSourceRoutingResolverTest extends AbstractDataSourceResolverTest
+{
+    @Test
+    public void testRoutesByScheme() throws Exception
+    {
+        final DataSourceRoutingResolver resolver = new DataSourceRoutingResolver(true);
+        resolver.addRoute("file", new DataSourceUrlResolver(null, true));
+        resolver.addPrefixRoute("classpath", new DataSourceClassPathResolver("/", true));
+        resolver.setRelativeResolver(new DataSourceFileResolver(new File("./src/test/resources"), true));
+
+        final String fileUrl = new File("./src/test/resources/images/asf_logo_wide.gif").toURI().toURL().toString();
+
+        assertEquals(IMG_SIZE, toByteArray(resolver.resolve(fileUrl)).length);
+        assertEquals(IMG_SIZE, toByteArray(resolver.resolve("CLASSPATH:images/asf_logo_wide.gif")).length);
+        assertEquals(IMG_SIZE, toByteArray(resolver.resolve("images/asf_logo_wide.gif")).length);
+        assertNull(resolver.resolve("classpath:images/missing.gif"));
+        assertNull(resolver.resolve("cid:logo"));
+        assertNull(resolver.resolve("https://www.example.com/logo.gif"));
+
+        assertEquals(1, resolver.getHitCount("file"));
+        assertEquals(2, resolver.getHitCount("classpath"));
+        assertEquals(1, resolver.getHitCount(null));
+        assertEquals(0, resolver.getHitCount("cid"));
+        assertEquals(1, resolver.getFallbackCount());
+    }
+
+    @Test
+    public void testFallsBackToChain() throws Exception
+    {
+        final DataSourceResolver[] fallback = {
+            new DataSourceFileResolver(new File("./src/test/resources/images"), true),
+            new DataSourceClassPathResolver("/", true)
+        };
+        final DataSourceRoutingResolver resolver = new DataSourceRoutingResolver(fallback, false);
+        resolver.addRoute("https", new DataSourceUrlResolver(null, false));
+
+        assertEquals(IMG_SIZE, toByteArray(resolver.resolve("asf_logo_wide.gif")).length);
+        assertEquals(IMG_SIZE, toByteArray(resolver.resolve("images/asf_logo_wide.gif")).length);
+        assertEquals(2, resolver.getFallbackCount());
+        assertEquals(0, resolver.getHitCount("https"));
+
+        assertThrows(IOException.class, () -> resolver.resolve("images/missing.gif"));
+    }
+
+    @Test
+    public void testWindowsPathIsRelative() throws Exception
+    {
+        final DataSourceRoutingResolver resolver = new DataSourceRoutingResolver(true);
+        resolver.addRoute("c", new DataSourceUrlResolver(null, true));
+        resolver.setRelativeResolver(new DataSourceFileResolver(new File("."), true));
+
+        resolver.resolve("C:\\images\\logo.gif");
+        resolver.resolve("./c:logo.gif");
+
+        assertEquals(2, resolver.getHitCount(null));
+        assertEquals(0, resolver.getFallbackCount());
+    }
+}
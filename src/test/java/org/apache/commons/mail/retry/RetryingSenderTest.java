@@ -0,0 +1,316 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.retry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.mail.internet.InternetAddress;
+
+import org.apache.commons.mail.AbstractEmailTest;
+import org.apache.commons.mail.Email;
+import org.apache.commons.mail.EmailException;
+import org.apache.commons.mail.SimpleEmail;
+import org.apache.commons.mail.transport.SmtpConnectionPool;
+import org.apache.commons.mail.transport.SmtpRateLimiter;
+import org.apache.commons.mail.transport.SmtpRelay;
+import org.apache.commons.mail.transport.SmtpRelayGroup;
+import org.junit.Before;
+import org.junit.Test;
+import org.subethamail.smtp.RejectException;
+import org.subethamail.smtp.TooMuchDataException;
+import org.subethamail.wiser.Wiser;
+import org.subethamail.wiser.WiserMessage;
+
+/**
+ * JUnit test case for RetryingSender.
+ *
+ * @since 1.6.0
+ */
+public class RetryingSenderTest extends AbstractEmailTest
+{
+    private static final String OK = "ok@example.com";
+    private static final String FLAKY = "flaky@example.com";
+    private static final String BAD = "bad@example.com";
+
+    private FlakyWiser server;
+
+    private RetryingSender sender;
+
+    @Before
+    public void setUp()
+    {
+        this.getMailServer();
+        final int port = this.getMailServerPort();
+        this.fakeMailServer.stop();
+
+        server = new FlakyWiser();
+        server.setPort(port);
+        server.start();
+        this.fakeMailServer = server;
+
+        sender = new RetryingSender();
+        sender.setInitialDelayMillis(1);
+        sender.setMaxDelayMillis(5);
+    }
+
+    @Test
+    public void testRetriesOnlyTransientlyFailedRecipients() throws Exception
+    {
+        server.transientRejects.put(FLAKY, new AtomicInteger(2));
+        server.permanentRejects.add(BAD);
+
+        final DeliveryReport report = sender.send(createEmail(true, OK, FLAKY, BAD));
+
+        assertEquals(3, report.getAttempts());
+        assertEquals(2, report.getDelivered().size());
+        assertEquals(1, report.getFailures().size());
+        final SmtpFailure failure = report.getFailures().get(new InternetAddress(BAD));
+        assertEquals(550, failure.getReturnCode());
+        assertTrue(failure.isPermanent());
+        assertEquals(1, countReceived(OK));
+        assertEquals(1, countReceived(FLAKY));
+        assertEquals(0, countReceived(BAD));
+    }
+
+    @Test
+    public void testRetriesAbortedRecipientsWithoutSendPartial() throws Exception
+    {
+        server.transientRejects.put(FLAKY, new AtomicInteger(2));
+
+        final DeliveryReport report = sender.send(createEmail(false, OK, FLAKY));
+
+        assertTrue(report.toString(), report.isComplete());
+        assertEquals(3, report.getAttempts());
+        assertEquals(1, countReceived(OK));
+        assertEquals(1, countReceived(FLAKY));
+    }
+
+    @Test
+    public void testRetriesTransientDataFailure() throws Exception
+    {
+        server.dataRejects.set(1);
+
+        final DeliveryReport report = sender.send(createEmail(false, OK));
+
+        assertTrue(report.isComplete());
+        assertEquals(2, report.getAttempts());
+        assertEquals(1, countReceived(OK));
+    }
+
+    @Test
+    public void testPermanentFailureIsNotRetried() throws Exception
+    {
+        server.permanentRejects.add(BAD);
+
+        final DeliveryReport report = sender.send(createEmail(false, BAD));
+
+        assertFalse(report.isComplete());
+        assertEquals(1, report.getAttempts());
+        assertTrue(report.getDelivered().isEmpty());
+    }
+
+    @Test
+    public void testMaxAttempts() throws Exception
+    {
+        server.transientRejects.put(FLAKY, new AtomicInteger(10));
+        sender.setMaxAttempts(2);
+
+        final DeliveryReport report = sender.send(createEmail(true, OK, FLAKY));
+
+        assertEquals(2, report.getAttempts());
+        final SmtpFailure failure = report.getFailures().get(new InternetAddress(FLAKY));
+        assertEquals(451, failure.getReturnCode());
+        assertTrue(failure.isTransient());
+        assertEquals(1, countReceived(OK));
+    }
+
+    @Test
+    public void testExhaustedRetryBudgetStopsRetries() throws Exception
+    {
+        server.transientRejects.put(FLAKY, new AtomicInteger(10));
+        sender.setRetryBurst(1);
+        sender.setRetryRatio(0);
+
+        final DeliveryReport first = sender.send(createEmail(false, FLAKY));
+        final DeliveryReport second = sender.send(createEmail(false, FLAKY));
+
+        assertEquals(2, first.getAttempts());
+        assertEquals(1, second.getAttempts());
+        assertEquals(0, sender.getRetryBudget(this.strTestMailServer + ":" + this.getMailServerPort()).getAvailableRetries());
+    }
+
+    @Test
+    public void testConnectionFailureIsTransient() throws Exception
+    {
+        server.stop();
+        sender.setMaxAttempts(3);
+
+        final DeliveryReport report = sender.send(createEmail(false, OK));
+
+        assertEquals(3, report.getAttempts());
+        assertTrue(report.getFailures().get(new InternetAddress(OK)).isTransient());
+    }
+
+    @Test
+    public void testUsesConnectionPool() throws Exception
+    {
+        server.transientRejects.put(FLAKY, new AtomicInteger(1));
+
+        try (SmtpConnectionPool pool = new SmtpConnectionPool())
+        {
+            final Email email = createEmail(true, OK, FLAKY);
+            email.setConnectionPool(pool);
+
+            assertTrue(sender.send(email).isComplete());
+            assertEquals(1, pool.getCreatedCount());
+        }
+    }
+
+    @Test
+    public void testEveryAttemptHonoursRateLimiter() throws Exception
+    {
+        server.transientRejects.put(FLAKY, new AtomicInteger(1));
+        final SmtpRateLimiter limiter = new SmtpRateLimiter();
+        final Email email = createEmail(true, OK, FLAKY);
+        email.setRateLimiter(limiter);
+
+        assertTrue(sender.send(email).isComplete());
+        assertEquals(2, limiter.getAcquiredCount());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void testRetriesThroughRelayGroup() throws Exception
+    {
+        final int closedPort;
+        try (ServerSocket socket = new ServerSocket(0))
+        {
+            closedPort = socket.getLocalPort();
+        }
+
+        server.transientRejects.put(FLAKY, new AtomicInteger(1));
+        final Email email = createEmail(true, OK, FLAKY);
+        email.setBounceAddress("bounce@example.com");
+        email.setRelayGroup(new SmtpRelayGroup(new SmtpRelay(this.strTestMailServer, closedPort),
+                new SmtpRelay(this.strTestMailServer, this.getMailServerPort())));
+        email.setHostName("unknown.invalid");
+
+        final DeliveryReport report = sender.send(email);
+
+        assertTrue(report.toString(), report.isComplete());
+        assertEquals(2, report.getAttempts());
+        assertEquals(1, countReceived(OK));
+        assertEquals(1, countReceived(FLAKY));
+        for (final WiserMessage message : server.getMessages())
+        {
+            assertEquals("bounce@example.com", message.getEnvelopeSender());
+        }
+    }
+
+    @Test
+    public void testDelayGrowsExponentially()
+    {
+        sender.setInitialDelayMillis(100);
+        sender.setMaxDelayMillis(1000);
+        sender.setJitter(0);
+
+        assertEquals(100, sender.getDelayMillis(1));
+        assertEquals(200, sender.getDelayMillis(2));
+        assertEquals(800, sender.getDelayMillis(4));
+        assertEquals(1000, sender.getDelayMillis(5));
+        assertEquals(1000, sender.getDelayMillis(100));
+
+        sender.setJitter(0.5);
+        for (int i = 0; i < 100; i++)
+        {
+            final long delay = sender.getDelayMillis(2);
+            assertTrue(delay > 100 && delay <= 200);
+        }
+    }
+
+    private int countReceived(final String recipient)
+    {
+        int count = 0;
+        for (final WiserMessage message : server.getMessages())
+        {
+            if (message.getEnvelopeReceiver().equals(recipient))
+            {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private Email createEmail(final boolean sendPartial, final String... recipients) throws EmailException
+    {
+        final Email email = new SimpleEmail();
+        email.setHostName(this.strTestMailServer);
+        email.setSmtpPort(this.getMailServerPort());
+        email.setSendPartial(sendPartial);
+        email.setFrom(this.strTestMailFrom);
+        email.addTo(recipients);
+        email.setSubject("retry");
+        email.setMsg("retry");
+        return email;
+    }
+
+    /**
+     * Rejects selected recipients with a transient or permanent reply code.
+     */
+    private static final class FlakyWiser extends Wiser
+    {
+        final Map<String, AtomicInteger> transientRejects = new ConcurrentHashMap<>();
+        final Set<String> permanentRejects = ConcurrentHashMap.newKeySet();
+        final AtomicInteger dataRejects = new AtomicInteger();
+
+        @Override
+        public boolean accept(final String from, final String recipient)
+        {
+            if (permanentRejects.contains(recipient))
+            {
+                throw new RejectException(550, "<" + recipient + "> No such user");
+            }
+            final AtomicInteger rejects = transientRejects.get(recipient);
+            if (rejects != null && rejects.getAndDecrement() > 0)
+            {
+                throw new RejectException(451, "<" + recipient + "> Try again later");
+            }
+            return true;
+        }
+
+        @Override
+        public void deliver(final String from, final String recipient, final InputStream data)
+                throws TooMuchDataException, IOException
+        {
+            if (dataRejects.getAndDecrement() > 0)
+            {
+                throw new RejectException(452, "Insufficient system storage");
+            }
+            super.deliver(from, recipient, data);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.retry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.ConnectException;
+import java.util.Map;
+
+import javax.mail.Address;
+import javax.mail.AuthenticationFailedException;
+import javax.mail.MessagingException;
+import javax.mail.internet.InternetAddress;
+
+import org.apache.commons.mail.EmailException;
+import org.junit.Test;
+
+import com.sun.mail.smtp.SMTPAddressFailedException;
+import com.sun.mail.smtp.SMTPSendFailedException;
+
+/**
+ * JUnit test case for SmtpFailure.
+ *
+ * @since 1.6.0
+ */
+public class SmtpFailureTest
+{
+    @Test
+    public void testClassifyReturnCodes()
+    {
+        final SmtpFailure busy = SmtpFailure.classify(new EmailException("failed",
+                new SMTPSendFailedException("DATA", 421, "421 Service not available", null, null, null, null)));
+        assertEquals(421, busy.getReturnCode());
+        assertTrue(busy.isTransient());
+
+        final SmtpFailure rejected = SmtpFailure.classify(
+                new SMTPSendFailedException("DATA", 554, "554 Transaction failed", null, null, null, null));
+        assertEquals(554, rejected.getReturnCode());
+        assertTrue(rejected.isPermanent());
+    }
+
+    @Test
+    public void testClassifyWithoutReturnCode()
+    {
+        assertTrue(SmtpFailure.classify(new MessagingException("Could not connect", new ConnectException())).isTransient());
+        assertTrue(SmtpFailure.classify(new AuthenticationFailedException("535 invalid credentials")).isPermanent());
+        assertTrue(SmtpFailure.classify(new MessagingException("unknown")).isPermanent());
+        assertEquals(SmtpFailure.UNKNOWN_RETURN_CODE, SmtpFailure.classify(null).getReturnCode());
+    }
+
+    @Test
+    public void testClassifyRecipients() throws Exception
+    {
+        final InternetAddress full = new InternetAddress("full@example.com");
+        final InternetAddress unknown = new InternetAddress("unknown@example.com");
+        final InternetAddress aborted = new InternetAddress("aborted@example.com");
+
+        final SMTPAddressFailedException fullFailure = new SMTPAddressFailedException(full, "RCPT TO", 452, "452 Mailbox full");
+        final SMTPAddressFailedException unknownFailure = new SMTPAddressFailedException(unknown, "RCPT TO", 550, "550 No such user");
+        fullFailure.setNextException(unknownFailure);
+
+        final Map<Address, SmtpFailure> failures = SmtpFailure.classifyRecipients(new SMTPSendFailedException(
+                "RCPT TO", -1, "Invalid Addresses", fullFailure, null, new Address[] { full, aborted }, new Address[] { unknown }));
+
+        assertEquals(3, failures.size());
+        assertEquals(452, failures.get(full).getReturnCode());
+        assertTrue(failures.get(full).isTransient());
+        assertEquals(550, failures.get(unknown).getReturnCode());
+        assertTrue(failures.get(unknown).isPermanent());
+        assertEquals(SmtpFailure.UNKNOWN_RETURN_CODE, failures.get(aborted).getReturnCode());
+        assertTrue(failures.get(aborted).isTransient());
+    }
+}
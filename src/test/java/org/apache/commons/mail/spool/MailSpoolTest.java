@@ -0,0 +1,347 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.spool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.mail.Session;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.mail.AbstractEmailTest;
+import org.apache.commons.mail.Email;
+import org.apache.commons.mail.EmailException;
+import org.apache.commons.mail.SimpleEmail;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.subethamail.smtp.RejectException;
+import org.subethamail.wiser.Wiser;
+import org.subethamail.wiser.WiserMessage;
+
+/**
+ * JUnit test case for MailSpool.
+ *
+ * @since 1.6.0
+ */
+public class MailSpoolTest extends AbstractEmailTest
+{
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    private static final String FLAKY = "flaky@example.com";
+
+    private static final String BAD = "bad@example.com";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testEnqueueAndDeliver() throws Exception
+    {
+        this.getMailServer();
+        final File directory = folder.newFolder();
+
+        try (MailSpool spool = new MailSpool(directory, createSession(this.getMailServerPort())))
+        {
+            spool.setParallelism(4);
+            spool.start();
+
+            for (int i = 0; i < 20; i++)
+            {
+                spool.enqueue(createEmail(i));
+            }
+
+            awaitCount(spool, SpoolState.SENT, 20);
+        }
+
+        assertEquals(20, this.fakeMailServer.getMessages().size());
+
+        final Set<String> subjects = new HashSet<>();
+        for (final WiserMessage message : this.fakeMailServer.getMessages())
+        {
+            subjects.add(message.getMimeMessage().getSubject());
+        }
+        assertEquals(20, subjects.size());
+    }
+
+    @Test
+    public void testMessagesSurviveRestart() throws Exception
+    {
+        this.getMailServer();
+        final File directory = folder.newFolder();
+        final Session session = createSession(this.getMailServerPort());
+
+        try (MailSpool spool = new MailSpool(directory, session))
+        {
+            for (int i = 0; i < 5; i++)
+            {
+                spool.enqueue(createEmail(i));
+            }
+        }
+
+        try (MailSpool spool = new MailSpool(directory, session))
+        {
+            assertEquals(5, spool.getCount(SpoolState.PENDING));
+            spool.start();
+            awaitCount(spool, SpoolState.SENT, 5);
+        }
+
+        assertEquals(5, this.fakeMailServer.getMessages().size());
+    }
+
+    @Test
+    public void testFailedDeliveryIsRetriedThenFailed() throws Exception
+    {
+        this.getMailServer();
+        final int port = this.getMailServerPort();
+        this.fakeMailServer.stop();
+
+        try (MailSpool spool = new MailSpool(folder.newFolder(), createSession(port)))
+        {
+            spool.setMaxAttempts(3);
+            spool.setInitialRetryDelayMillis(10);
+            spool.start();
+            spool.enqueue(createEmail(0));
+
+            awaitCount(spool, SpoolState.FAILED, 1);
+            assertEquals(0, spool.getCount(SpoolState.PENDING));
+        }
+    }
+
+    @Test
+    public void testPartialDeliveryRetriesOnlyRemainingRecipients() throws Exception
+    {
+        this.getMailServer();
+        final int port = this.getMailServerPort();
+        this.fakeMailServer.stop();
+
+        final AtomicInteger flakyRejects = new AtomicInteger(1);
+        this.fakeMailServer = new Wiser()
+        {
+            @Override
+            public boolean accept(final String from, final String recipient)
+            {
+                if (BAD.equals(recipient))
+                {
+                    throw new RejectException(550, "<" + recipient + "> No such user");
+                }
+                if (FLAKY.equals(recipient) && flakyRejects.getAndDecrement() > 0)
+                {
+                    throw new RejectException(451, "<" + recipient + "> Try again later");
+                }
+                return true;
+            }
+        };
+        this.fakeMailServer.setPort(port);
+        this.fakeMailServer.start();
+
+        final Email email = createEmail(0);
+        email.getMailSession().getProperties().setProperty("mail.smtp.sendpartial", "true");
+        email.addTo(FLAKY).addTo(BAD);
+
+        try (MailSpool spool = new MailSpool(folder.newFolder(), email.getMailSession()))
+        {
+            spool.setInitialRetryDelayMillis(10);
+            spool.start();
+            email.buildMimeMessage();
+            spool.enqueue(email.getMimeMessage());
+
+            awaitCount(spool, SpoolState.SENT, 2);
+            assertEquals(0, spool.getCount(SpoolState.PENDING));
+            assertEquals(0, spool.getCount(SpoolState.FAILED));
+        }
+
+        final List<String> receivers = new ArrayList<>();
+        for (final WiserMessage message : this.fakeMailServer.getMessages())
+        {
+            receivers.add(message.getEnvelopeReceiver());
+            assertNull(message.getMimeMessage().getHeader(MailSpool.RECIPIENTS_HEADER));
+        }
+        Collections.sort(receivers);
+        assertEquals(Arrays.asList(FLAKY, this.strTestMailTo), receivers);
+    }
+
+    @Test
+    public void testCompactionDeletesDeliveredSegments() throws Exception
+    {
+        this.getMailServer();
+        final File directory = folder.newFolder();
+
+        try (MailSpool spool = new MailSpool(directory, createSession(this.getMailServerPort())))
+        {
+            // every message gets a segment of its own
+            spool.setMaxSegmentSize(1);
+
+            for (int i = 0; i < 5; i++)
+            {
+                spool.enqueue(createEmail(i));
+            }
+            assertEquals(5, spool.getSegmentCount());
+
+            spool.start();
+            awaitCount(spool, SpoolState.SENT, 5);
+            spool.compact();
+
+            assertEquals(0, spool.getCount(SpoolState.SENT));
+            assertEquals(1, spool.getSegmentCount());
+        }
+
+        try (MailSpool spool = new MailSpool(directory, createSession(this.getMailServerPort())))
+        {
+            assertEquals(0, spool.getCount(SpoolState.PENDING));
+            assertEquals(0, spool.getCount(SpoolState.SENT));
+        }
+    }
+
+    @Test
+    public void testFailedCompactionKeepsTheIndexConsistent() throws Exception
+    {
+        this.getMailServer();
+        final File directory = folder.newFolder();
+        final Session session = createSession(this.getMailServerPort());
+
+        try (MailSpool spool = new MailSpool(directory, session))
+        {
+            for (int i = 0; i < 3; i++)
+            {
+                spool.enqueue(createEmail(i));
+            }
+            spool.start();
+            awaitCount(spool, SpoolState.SENT, 3);
+        }
+
+        try (MailSpool spool = new MailSpool(directory, session))
+        {
+            spool.enqueue(createEmail(3));
+            spool.enqueue(createEmail(4));
+
+            // a directory in the way of the temporary index makes the rewrite fail
+            final File obstacle = new File(directory, MailSpool.INDEX_FILE_NAME + ".tmp");
+            assertTrue(new File(obstacle, "file").mkdirs());
+            try
+            {
+                spool.compact();
+                fail("Should have thrown an exception");
+            }
+            catch (final IOException e)
+            {
+                // expected
+            }
+            FileUtils.deleteDirectory(obstacle);
+
+            spool.start();
+            awaitCount(spool, SpoolState.SENT, 5);
+        }
+
+        try (MailSpool spool = new MailSpool(directory, session))
+        {
+            assertEquals(0, spool.getCount(SpoolState.PENDING));
+            assertEquals(5, spool.getCount(SpoolState.SENT));
+        }
+        assertEquals(5, this.fakeMailServer.getMessages().size());
+    }
+
+    @Test
+    public void testConcurrentEnqueue() throws Exception
+    {
+        final File directory = folder.newFolder();
+        final Session session = createSession(this.getMailServerPort());
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        try (MailSpool spool = new MailSpool(directory, session))
+        {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++)
+            {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 25; i++)
+                    {
+                        spool.enqueue(createEmail(i));
+                    }
+                    return null;
+                }));
+            }
+            for (final Future<?> future : futures)
+            {
+                future.get();
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+
+        try (MailSpool spool = new MailSpool(directory, session))
+        {
+            assertEquals(200, spool.getCount(SpoolState.PENDING));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testEnqueueAfterClose() throws Exception
+    {
+        final MailSpool spool = new MailSpool(folder.newFolder(), createSession(this.getMailServerPort()));
+        spool.close();
+        spool.enqueue(createEmail(0));
+    }
+
+    private void awaitCount(final MailSpool spool, final SpoolState state, final int expected)
+            throws InterruptedException
+    {
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (spool.getCount(state) < expected && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(20);
+        }
+        assertTrue("expected " + expected + " " + state + " but was " + spool.getCount(state),
+                spool.getCount(state) >= expected);
+    }
+
+    private Session createSession(final int port) throws EmailException
+    {
+        final Email email = new SimpleEmail();
+        email.setHostName(this.strTestMailServer);
+        email.setSmtpPort(port);
+        return email.getMailSession();
+    }
+
+    private Email createEmail(final int i) throws EmailException
+    {
+        final Email email = new SimpleEmail();
+        email.setMailSession(createSession(this.getMailServerPort()));
+        email.setFrom(this.strTestMailFrom);
+        email.addTo(this.strTestMailTo);
+        email.setSubject("spooled " + i + " " + Thread.currentThread().getName());
+        email.setMsg("spooled message " + i);
+        return email;
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.transport;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.Properties;
+
+import javax.mail.Session;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.apache.commons.mail.EmailConstants;
+import org.apache.commons.mail.MailSessionConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit test case for CachingSSLSocketFactory.
+ *
+ * @since 1.6.0
+ */
+public class CachingSSLSocketFactoryTest
+{
+    private static final char[] PASSWORD = "changeit".toCharArray();
+
+    private static final String[] PROTOCOLS = { "TLSv1.2" };
+
+    private KeyStore keyStore;
+
+    private ServerSocket serverSocket;
+
+    private Thread acceptor;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream in = getClass().getResourceAsStream("/tls/localhost.p12"))
+        {
+            keyStore.load(in, PASSWORD);
+        }
+
+        final KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(keyStore, PASSWORD);
+        final SSLContext serverContext = SSLContext.getInstance("TLS");
+        serverContext.init(keyManagers.getKeyManagers(), null, null);
+
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        acceptor = new Thread(() -> {
+            while (!serverSocket.isClosed())
+            {
+                try (Socket plain = serverSocket.accept();
+                     SSLSocket socket = (SSLSocket) serverContext.getSocketFactory()
+                             .createSocket(plain, null, plain.getPort(), false))
+                {
+                    socket.setUseClientMode(false);
+                    socket.startHandshake();
+                    socket.getInputStream().read();
+                }
+                catch (final IOException e)
+                {
+                    // closed by the test or the client
+                }
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        serverSocket.close();
+        acceptor.join(5000);
+    }
+
+    @Test
+    public void testSslOnConnectResumesSession() throws Exception
+    {
+        final CachingSSLSocketFactory factory = new CachingSSLSocketFactory(createClientContext(), PROTOCOLS, null);
+
+        final byte[] first = handshake(factory);
+        final byte[] second = handshake(factory);
+
+        assertArrayEquals(first, second);
+
+        // another context does not know the session
+        final CachingSSLSocketFactory other = new CachingSSLSocketFactory(createClientContext(), PROTOCOLS, null);
+        assertFalse(Arrays.equals(first, handshake(other)));
+    }
+
+    @Test
+    public void testStartTlsResumesSession() throws Exception
+    {
+        final CachingSSLSocketFactory factory = new CachingSSLSocketFactory(createClientContext(), PROTOCOLS, null);
+
+        final byte[] first = layeredHandshake(factory);
+        final byte[] second = layeredHandshake(factory);
+
+        assertArrayEquals(first, second);
+        assertArrayEquals(first, handshake(factory));
+    }
+
+    @Test
+    public void testEnablesConfiguredProtocolsAndCipherSuites() throws Exception
+    {
+        final SSLContext context = createClientContext();
+        final String cipherSuite = context.getSocketFactory().getDefaultCipherSuites()[0];
+        final CachingSSLSocketFactory factory =
+                new CachingSSLSocketFactory(context, PROTOCOLS, new String[] { cipherSuite });
+
+        try (SSLSocket socket = (SSLSocket) factory.createSocket())
+        {
+            assertArrayEquals(PROTOCOLS, socket.getEnabledProtocols());
+            assertArrayEquals(new String[] { cipherSuite }, socket.getEnabledCipherSuites());
+        }
+        assertArrayEquals(new String[] { cipherSuite }, factory.getDefaultCipherSuites());
+        assertEquals(CachingSSLSocketFactory.DEFAULT_SESSION_CACHE_SIZE, factory.getSessionContext().getSessionCacheSize());
+    }
+
+    @Test
+    public void testDefaultIsShared()
+    {
+        final CachingSSLSocketFactory factory = CachingSSLSocketFactory.getDefault();
+
+        assertSame(factory, CachingSSLSocketFactory.getDefault());
+        assertNull(factory.getProtocols());
+    }
+
+    @Test
+    public void testSessionProperties()
+    {
+        final CachingSSLSocketFactory factory = CachingSSLSocketFactory.create(PROTOCOLS, null);
+
+        final MailSessionConfig ssl = MailSessionConfig.builder().setHostName("localhost")
+                .setSSLOnConnect(true).setSSLSocketFactory(factory).build();
+        final Properties sslProperties = ssl.toProperties();
+        assertSame(factory, sslProperties.get(EmailConstants.MAIL_SMTP_SOCKET_FACTORY));
+        assertNull(sslProperties.getProperty(EmailConstants.MAIL_SMTP_SOCKET_FACTORY_CLASS));
+        assertTrue(SmtpConnectionKey.of(Session.getInstance(sslProperties)).isSslOnConnect());
+
+        final MailSessionConfig startTls = MailSessionConfig.builder().setHostName("localhost")
+                .setStartTLSEnabled(true).setSSLSocketFactory(factory).build();
+        assertSame(factory, startTls.toProperties().get(EmailConstants.MAIL_SMTP_SSL_SOCKET_FACTORY));
+
+        assertFalse(ssl.equals(MailSessionConfig.builder().setHostName("localhost").setSSLOnConnect(true).build()));
+    }
+
+    private SSLContext createClientContext() throws Exception
+    {
+        final TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagers.init(keyStore);
+        final SSLContext context = SSLContext.getInstance("TLS");
+        context.init(null, trustManagers.getTrustManagers(), null);
+        return context;
+    }
+
+    private byte[] handshake(final CachingSSLSocketFactory factory) throws IOException
+    {
+        try (SSLSocket socket = (SSLSocket) factory.createSocket("localhost", serverSocket.getLocalPort()))
+        {
+            socket.startHandshake();
+            return socket.getSession().getId();
+        }
+    }
+
+    private byte[] layeredHandshake(final CachingSSLSocketFactory factory) throws IOException
+    {
+        try (Socket plain = new Socket("localhost", serverSocket.getLocalPort());
+             SSLSocket socket = (SSLSocket) factory.createSocket(plain, "localhost", serverSocket.getLocalPort(), true))
+        {
+            socket.startHandshake();
+            return socket.getSession().getId();
+        }
+    }
+}
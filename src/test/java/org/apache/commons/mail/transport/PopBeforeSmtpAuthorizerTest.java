@@ -0,0 +1,271 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.mail.AuthenticationFailedException;
+import javax.mail.Folder;
+import javax.mail.MessagingException;
+import javax.mail.Provider;
+import javax.mail.Session;
+import javax.mail.Store;
+import javax.mail.URLName;
+
+import org.apache.commons.mail.Email;
+import org.apache.commons.mail.SimpleEmail;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit test case for PopBeforeSmtpAuthorizer.
+ *
+ * @since 1.6.0
+ */
+public class PopBeforeSmtpAuthorizerTest
+{
+    /** A POP3 store counting its logins. */
+    public static class CountingStore extends Store
+    {
+        static final AtomicInteger CONNECTED = new AtomicInteger();
+
+        static final AtomicInteger OPEN = new AtomicInteger();
+
+        public CountingStore(final Session session, final URLName urlName)
+        {
+            super(session, urlName);
+        }
+
+        @Override
+        protected boolean protocolConnect(final String host, final int port, final String user, final String password)
+                throws MessagingException
+        {
+            if ("wrong".equals(password))
+            {
+                throw new AuthenticationFailedException("-ERR invalid password");
+            }
+            CONNECTED.incrementAndGet();
+            OPEN.incrementAndGet();
+            return true;
+        }
+
+        @Override
+        public synchronized void close() throws MessagingException
+        {
+            OPEN.decrementAndGet();
+            super.close();
+        }
+
+        @Override
+        public Folder getDefaultFolder()
+        {
+            return null;
+        }
+
+        @Override
+        public Folder getFolder(final String name)
+        {
+            return null;
+        }
+
+        @Override
+        public Folder getFolder(final URLName url)
+        {
+            return null;
+        }
+    }
+
+    private Session session;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        CountingStore.CONNECTED.set(0);
+        CountingStore.OPEN.set(0);
+
+        final Properties properties = new Properties();
+        properties.setProperty("mail.host", "localhost");
+        session = Session.getInstance(properties);
+        session.setProvider(new Provider(Provider.Type.STORE, "pop3", CountingStore.class.getName(), "test", "1.0"));
+    }
+
+    @Test
+    public void testLoginIsReusedWithinWindow() throws Exception
+    {
+        final PopBeforeSmtpAuthorizer authorizer = createAuthorizer();
+
+        for (int i = 0; i < 10; i++)
+        {
+            authorizer.authorize(session, "pop.example.com", "user", "secret");
+        }
+
+        assertEquals(1, CountingStore.CONNECTED.get());
+        assertEquals(0, CountingStore.OPEN.get());
+        assertEquals(1, authorizer.getLoginCount());
+    }
+
+    @Test
+    public void testWindowsArePerHostAndUser() throws Exception
+    {
+        final PopBeforeSmtpAuthorizer authorizer = createAuthorizer();
+
+        authorizer.authorize(session, "pop.example.com", "user", "secret");
+        authorizer.authorize(session, "pop.example.com", "other", "secret");
+        authorizer.authorize(session, "pop2.example.com", "user", "secret");
+        authorizer.authorize(session, "pop.example.com", "user", "secret");
+
+        assertEquals(3, CountingStore.CONNECTED.get());
+    }
+
+    @Test
+    public void testExpiredAndInvalidatedWindowsLogInAgain() throws Exception
+    {
+        final PopBeforeSmtpAuthorizer authorizer = createAuthorizer();
+
+        authorizer.authorize(session, "pop.example.com", "user", "secret");
+        authorizer.invalidate("pop.example.com", "user");
+        authorizer.authorize(session, "pop.example.com", "user", "secret");
+        assertEquals(2, CountingStore.CONNECTED.get());
+
+        authorizer.setValidityMillis(0);
+        authorizer.clear();
+        authorizer.authorize(session, "pop.example.com", "user", "secret");
+        authorizer.authorize(session, "pop.example.com", "user", "secret");
+        assertEquals(4, CountingStore.CONNECTED.get());
+    }
+
+    @Test
+    public void testWindowsArePerPassword() throws Exception
+    {
+        final PopBeforeSmtpAuthorizer authorizer = createAuthorizer();
+
+        authorizer.authorize(session, "pop.example.com", "user", "secret");
+        try
+        {
+            authorizer.authorize(session, "pop.example.com", "user", "wrong");
+            fail("Should have thrown an exception");
+        }
+        catch (final AuthenticationFailedException e)
+        {
+            // expected
+        }
+        authorizer.authorize(session, "pop.example.com", "user", "secret");
+
+        assertEquals(1, CountingStore.CONNECTED.get());
+    }
+
+    @Test
+    public void testEveryMessageLogsInByDefault() throws Exception
+    {
+        final PopBeforeSmtpAuthorizer authorizer = new PopBeforeSmtpAuthorizer();
+
+        authorizer.authorize(session, "pop.example.com", "user", "secret");
+        authorizer.authorize(session, "pop.example.com", "user", "secret");
+
+        assertEquals(0, PopBeforeSmtpAuthorizer.getDefault().getValidityMillis());
+        assertEquals(2, CountingStore.CONNECTED.get());
+    }
+
+    @Test
+    public void testFailedLoginIsNotCached() throws Exception
+    {
+        final PopBeforeSmtpAuthorizer authorizer = createAuthorizer();
+
+        for (int i = 0; i < 2; i++)
+        {
+            try
+            {
+                authorizer.authorize(session, "pop.example.com", "user", "wrong");
+                fail("Should have thrown an exception");
+            }
+            catch (final AuthenticationFailedException e)
+            {
+                // expected
+            }
+        }
+
+        authorizer.authorize(session, "pop.example.com", "user", "secret");
+        assertEquals(1, CountingStore.CONNECTED.get());
+    }
+
+    @Test
+    public void testConcurrentSendersShareLogin() throws Exception
+    {
+        final PopBeforeSmtpAuthorizer authorizer = createAuthorizer();
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        try
+        {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 64; i++)
+            {
+                futures.add(executor.submit(() -> {
+                    authorizer.authorize(session, "pop.example.com", "user", "secret");
+                    return null;
+                }));
+            }
+            for (final Future<?> future : futures)
+            {
+                future.get();
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+
+        assertEquals(1, CountingStore.CONNECTED.get());
+    }
+
+    @Test
+    public void testEmailUsesAuthorizer() throws Exception
+    {
+        final PopBeforeSmtpAuthorizer authorizer = createAuthorizer();
+
+        for (int i = 0; i < 3; i++)
+        {
+            final Email email = new SimpleEmail();
+            email.setMailSession(session);
+            email.setPopBeforeSmtp(true, "pop.example.com", "user", "secret");
+            email.setPopBeforeSmtpAuthorizer(authorizer);
+            email.setFrom("me@example.com");
+            email.addTo("you@example.com");
+            email.setMsg("message " + i);
+            email.buildMimeMessage();
+        }
+
+        assertEquals(1, CountingStore.CONNECTED.get());
+        assertEquals(0, CountingStore.OPEN.get());
+    }
+
+    private static PopBeforeSmtpAuthorizer createAuthorizer()
+    {
+        final PopBeforeSmtpAuthorizer authorizer = new PopBeforeSmtpAuthorizer();
+        authorizer.setValidityMillis(TimeUnit.MINUTES.toMillis(5));
+        return authorizer;
+    }
+}
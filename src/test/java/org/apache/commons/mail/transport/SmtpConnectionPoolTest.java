@@ -0,0 +1,264 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Properties;
+
+import javax.mail.Address;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.URLName;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+
+import org.apache.commons.mail.AbstractEmailTest;
+import org.apache.commons.mail.Email;
+import org.apache.commons.mail.EmailException;
+import org.apache.commons.mail.SimpleEmail;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit test case for SmtpConnectionPool.
+ *
+ * @since 1.6.0
+ */
+public class SmtpConnectionPoolTest extends AbstractEmailTest
+{
+    private SmtpConnectionPool pool;
+
+    @Before
+    public void setUpSmtpConnectionPoolTest()
+    {
+        this.pool = new SmtpConnectionPool();
+    }
+
+    @After
+    public void tearDownSmtpConnectionPoolTest()
+    {
+        this.pool.close();
+    }
+
+    @Test
+    public void testConnectionIsReused() throws Exception
+    {
+        this.getMailServer();
+
+        for (int i = 0; i < 5; i++)
+        {
+            createEmail(i).send();
+        }
+
+        assertEquals(5, this.fakeMailServer.getMessages().size());
+        assertEquals(1, this.pool.getCreatedCount());
+        assertEquals(5, this.pool.getBorrowedCount());
+        assertEquals(1, this.pool.getIdleCount());
+    }
+
+    @Test
+    public void testMaxMessagesPerConnection() throws Exception
+    {
+        this.getMailServer();
+        this.pool.setMaxMessagesPerConnection(2);
+
+        for (int i = 0; i < 5; i++)
+        {
+            createEmail(i).send();
+        }
+
+        assertEquals(5, this.fakeMailServer.getMessages().size());
+        assertEquals(3, this.pool.getCreatedCount());
+        assertEquals(2, this.pool.getDestroyedCount());
+    }
+
+    @Test
+    public void testIdleConnectionsAreEvicted() throws Exception
+    {
+        this.getMailServer();
+        this.pool.setMaxIdleMillis(0);
+
+        createEmail(0).send();
+        assertEquals(1, this.pool.getIdleCount());
+
+        Thread.sleep(5);
+        this.pool.evictIdleConnections();
+
+        assertEquals(0, this.pool.getIdleCount());
+        assertEquals(1, this.pool.getDestroyedCount());
+    }
+
+    @Test
+    public void testBrokenConnectionIsReplaced() throws Exception
+    {
+        this.getMailServer();
+        this.pool.setValidationIntervalMillis(0);
+
+        final Email email = createEmail(0);
+        try (PooledTransport transport = this.pool.borrow(email.getMailSession()))
+        {
+            // simulate a connection dropped by the server while idle
+            transport.getTransport().close();
+        }
+        assertEquals(1, this.pool.getIdleCount());
+
+        email.send();
+
+        assertEquals(2, this.pool.getCreatedCount());
+        assertEquals(1, this.pool.getDestroyedCount());
+        assertEquals(1, this.fakeMailServer.getMessages().size());
+    }
+
+    @Test
+    public void testDroppedConnectionIsInvalidatedAfterSendFailure() throws Exception
+    {
+        final Session session = Session.getInstance(new Properties());
+        final Transport dropped = new Transport(session, new URLName("smtp://localhost"))
+        {
+            @Override
+            public void sendMessage(final Message message, final Address[] addresses) throws MessagingException
+            {
+                throw new SendFailedException("421 closing connection");
+            }
+
+            @Override
+            public boolean isConnected()
+            {
+                return false;
+            }
+        };
+        final PooledTransport transport = new PooledTransport(this.pool, SmtpConnectionKey.of(session), dropped);
+
+        try
+        {
+            transport.sendMessage(new MimeMessage(session), new Address[] {new InternetAddress("to@example.com")});
+            fail("Should have thrown an exception");
+        }
+        catch (final SendFailedException e)
+        {
+            assertTrue(transport.isInvalid());
+        }
+    }
+
+    @Test
+    public void testClosedPoolRejectsBorrow() throws Exception
+    {
+        this.getMailServer();
+        this.pool.close();
+
+        try
+        {
+            createEmail(0).send();
+            fail("Should have thrown an exception");
+        }
+        catch (final EmailException e)
+        {
+            assertTrue(e.getCause().getMessage().contains("closed"));
+        }
+    }
+
+    @Test
+    public void testConnectionKey() throws Exception
+    {
+        this.getMailServer();
+        final Email first = createEmail(0);
+        final Email second = createEmail(1);
+        final Email other = createEmail(2);
+        other.setAuthentication("other", "secret");
+
+        final SmtpConnectionKey firstKey = SmtpConnectionKey.of(first.getMailSession());
+
+        assertEquals(firstKey, SmtpConnectionKey.of(second.getMailSession()));
+        assertEquals(firstKey.hashCode(), SmtpConnectionKey.of(second.getMailSession()).hashCode());
+        assertNotEquals(firstKey, SmtpConnectionKey.of(other.getMailSession()));
+        assertEquals("localhost", firstKey.getHost());
+        assertEquals(getMailServerPort(), firstKey.getPort());
+        assertEquals("other", SmtpConnectionKey.of(other.getMailSession()).getUserName());
+    }
+
+    @Test
+    public void testDifferentBounceAddressesUseDifferentConnections() throws Exception
+    {
+        this.getMailServer();
+        final Email first = createEmail(0);
+        first.setBounceAddress("bounce-first@example.com");
+        final Email second = createEmail(1);
+        second.setBounceAddress("bounce-second@example.com");
+
+        assertNotEquals(SmtpConnectionKey.of(first.getMailSession()), SmtpConnectionKey.of(second.getMailSession()));
+
+        first.send();
+        second.send();
+
+        assertEquals(2, this.pool.getCreatedCount());
+        assertEquals(2, this.fakeMailServer.getMessages().size());
+        assertEquals("bounce-first@example.com", this.fakeMailServer.getMessages().get(0).getEnvelopeSender());
+        assertEquals("bounce-second@example.com", this.fakeMailServer.getMessages().get(1).getEnvelopeSender());
+    }
+
+    @Test
+    public void testKeysWithoutConnectionsAreRemoved() throws Exception
+    {
+        this.getMailServer();
+        this.pool.setMaxIdleMillis(0);
+
+        for (int i = 0; i < 3; i++)
+        {
+            final Email email = createEmail(i);
+            email.setBounceAddress("bounce-" + i + "@example.com");
+            email.send();
+        }
+        assertEquals(3, this.pool.getKeyCount());
+
+        Thread.sleep(5);
+        this.pool.evictIdleConnections();
+        assertEquals(0, this.pool.getKeyCount());
+
+        // a key whose only connection is discarded on release is removed at once
+        this.pool.setMaxMessagesPerConnection(1);
+        createEmail(3).send();
+        assertEquals(0, this.pool.getKeyCount());
+        assertEquals(4, this.fakeMailServer.getMessages().size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaxConnectionsPerKey()
+    {
+        this.pool.setMaxConnectionsPerKey(0);
+    }
+
+    private Email createEmail(final int index) throws EmailException
+    {
+        final Email email = new SimpleEmail();
+        email.setHostName(this.strTestMailServer);
+        email.setSmtpPort(this.getMailServerPort());
+        email.setFrom(this.strTestMailFrom);
+        email.addTo(this.strTestMailTo);
+        email.setSubject("Pooled message " + index);
+        email.setMsg("Test Msg Body " + index);
+        email.setConnectionPool(this.pool);
+        return email;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.mail.MessagingException;
+
+import org.apache.commons.mail.AbstractEmailTest;
+import org.apache.commons.mail.Email;
+import org.apache.commons.mail.SimpleEmail;
+import org.junit.Test;
+
+/**
+ * JUnit test case for SmtpRateLimiter.
+ *
+ * @since 1.6.0
+ */
+public class SmtpRateLimiterTest extends AbstractEmailTest
+{
+    @Test
+    public void testUnlimitedByDefault()
+    {
+        final SmtpRateLimiter limiter = new SmtpRateLimiter();
+
+        for (int i = 0; i < 1000; i++)
+        {
+            assertNotNull(limiter.tryAcquire());
+        }
+        assertEquals(1000, limiter.getInFlight());
+        assertEquals(0, limiter.getThrottledCount());
+    }
+
+    @Test
+    public void testMaxConcurrent()
+    {
+        final SmtpRateLimiter limiter = new SmtpRateLimiter();
+        limiter.setMaxConcurrent(2);
+
+        final SmtpRateLimiter.Permit first = limiter.tryAcquire();
+        final SmtpRateLimiter.Permit second = limiter.tryAcquire();
+        assertNotNull(first);
+        assertNotNull(second);
+        assertNull(limiter.tryAcquire());
+        assertEquals(2, limiter.getInFlight());
+
+        first.close();
+        first.close();
+        assertEquals(1, limiter.getInFlight());
+
+        // lowering the limit leaves the sends in progress alone
+        limiter.setMaxConcurrent(1);
+        assertNull(limiter.tryAcquire());
+        second.close();
+        assertNotNull(limiter.tryAcquire());
+        assertEquals(2, limiter.getThrottledCount());
+    }
+
+    @Test
+    public void testRateLimit() throws Exception
+    {
+        final SmtpRateLimiter limiter = new SmtpRateLimiter();
+        limiter.setRatePerSecond(20);
+
+        limiter.tryAcquire().close();
+        assertNull(limiter.tryAcquire());
+
+        final long start = System.nanoTime();
+        limiter.acquire().close();
+        limiter.acquire().close();
+        final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue("waited " + elapsedMillis + "ms", elapsedMillis >= 80);
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void testBurst() throws Exception
+    {
+        final SmtpRateLimiter limiter = new SmtpRateLimiter();
+        limiter.setRatePerSecond(100);
+        limiter.setBurst(5);
+        Thread.sleep(60);
+
+        for (int i = 0; i < 5; i++)
+        {
+            assertNotNull(limiter.tryAcquire());
+        }
+        assertNull(limiter.tryAcquire());
+    }
+
+    @Test
+    public void testAcquireTimeout()
+    {
+        final SmtpRateLimiter limiter = new SmtpRateLimiter();
+        limiter.setRatePerSecond(0.1);
+        limiter.setAcquireTimeoutMillis(50);
+        limiter.tryAcquire().close();
+
+        try
+        {
+            limiter.acquire();
+            fail("the next token is 10 seconds away");
+        }
+        catch (final MessagingException e)
+        {
+            assertTrue(e.getMessage().startsWith("Timed out waiting for the send rate limit"));
+        }
+        assertEquals(0, limiter.getInFlight());
+        assertTrue(limiter.toString().contains("rate=0.1/s"));
+    }
+
+    @Test
+    public void testEmailHonoursRateLimiter() throws Exception
+    {
+        this.getMailServer();
+        final SmtpRateLimiter limiter = new SmtpRateLimiter();
+        limiter.setRatePerSecond(20);
+
+        final long start = System.nanoTime();
+        for (int i = 0; i < 3; i++)
+        {
+            final Email email = new SimpleEmail();
+            email.setHostName(this.strTestMailServer);
+            email.setSmtpPort(this.getMailServerPort());
+            email.setRateLimiter(limiter);
+            email.setFrom(this.strTestMailFrom);
+            email.addTo(this.strTestMailTo);
+            email.setSubject("rate limited " + i);
+            email.setMsg("rate limited");
+            email.send();
+        }
+        final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(3, this.fakeMailServer.getMessages().size());
+        assertTrue("waited " + elapsedMillis + "ms", elapsedMillis >= 80);
+        assertEquals(3, limiter.getAcquiredCount());
+    }
+}
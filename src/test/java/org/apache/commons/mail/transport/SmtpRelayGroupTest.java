@@ -0,0 +1,356 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+
+import org.apache.commons.mail.Email;
+import org.apache.commons.mail.EmailException;
+import org.apache.commons.mail.SimpleEmail;
+import org.junit.After;
+import org.junit.Test;
+import org.subethamail.smtp.TooMuchDataException;
+import org.subethamail.wiser.Wiser;
+
+/**
+ * JUnit test case for SmtpRelayGroup.
+ *
+ * @since 1.6.0
+ */
+public class SmtpRelayGroupTest
+{
+    private final List<Wiser> servers = new ArrayList<>();
+
+    @After
+    public void tearDownSmtpRelayGroupTest()
+    {
+        for (final Wiser server : servers)
+        {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testFailsOverToNextRelay() throws Exception
+    {
+        final SmtpRelay down = new SmtpRelay("localhost", freePort());
+        final SmtpRelay up = new SmtpRelay("localhost", startServer(0).getServer().getPort());
+        final SmtpRelayGroup group = new SmtpRelayGroup(down, up);
+
+        for (int i = 0; i < 4; i++)
+        {
+            assertSame(up, group.send(createMessage(group, i)));
+        }
+
+        assertEquals(4, up.getSentCount());
+        assertTrue(down.getFailedCount() > 0);
+        assertTrue(down.getErrorRate() > 0);
+    }
+
+    @Test
+    public void testCircuitBreakerSkipsFailingRelay() throws Exception
+    {
+        final SmtpRelay down = new SmtpRelay("localhost", freePort());
+        down.setFailureThreshold(2);
+        final SmtpRelay up = new SmtpRelay("localhost", startServer(0).getServer().getPort());
+        final SmtpRelayGroup group = new SmtpRelayGroup(down, up);
+
+        while (down.getCircuitState() != SmtpRelay.CircuitState.OPEN)
+        {
+            group.send(createMessage(group, 0));
+        }
+        assertEquals(2, down.getFailedCount());
+
+        for (int i = 0; i < 10; i++)
+        {
+            group.send(createMessage(group, i));
+        }
+        assertEquals(2, down.getFailedCount());
+    }
+
+    @Test
+    public void testHalfOpenProbeClosesCircuit() throws Exception
+    {
+        final int port = freePort();
+        final SmtpRelay relay = new SmtpRelay("localhost", port);
+        relay.setFailureThreshold(1);
+        relay.setOpenMillis(50);
+        final SmtpRelayGroup group = new SmtpRelayGroup(relay);
+
+        try
+        {
+            group.send(createMessage(group, 0));
+            fail("the relay is down");
+        }
+        catch (final MessagingException e)
+        {
+            assertEquals(SmtpRelay.CircuitState.OPEN, relay.getCircuitState());
+        }
+
+        try
+        {
+            group.send(createMessage(group, 1));
+            fail("the circuit is open");
+        }
+        catch (final MessagingException e)
+        {
+            assertTrue(e.getMessage().startsWith("No SMTP relay available"));
+        }
+
+        startServer(port, 0);
+        Thread.sleep(60);
+
+        group.send(createMessage(group, 2));
+        assertEquals(SmtpRelay.CircuitState.CLOSED, relay.getCircuitState());
+    }
+
+    @Test
+    public void testUnexpectedFailureOfProbeReopensCircuit() throws Exception
+    {
+        final int port = freePort();
+        final SmtpRelay relay = new SmtpRelay("localhost", port);
+        relay.setFailureThreshold(1);
+        relay.setOpenMillis(50);
+        final SmtpRelayGroup group = new SmtpRelayGroup(relay);
+
+        try
+        {
+            group.send(createMessage(group, 0));
+            fail("the relay is down");
+        }
+        catch (final MessagingException e)
+        {
+            assertEquals(SmtpRelay.CircuitState.OPEN, relay.getCircuitState());
+        }
+
+        Thread.sleep(60);
+
+        try (SmtpConnectionPool broken = new SmtpConnectionPool()
+        {
+            @Override
+            public PooledTransport borrow(final Session session)
+            {
+                throw new IllegalStateException("broken pool");
+            }
+        })
+        {
+            group.send(createMessage(group, 1), broken);
+            fail("the pool is broken");
+        }
+        catch (final IllegalStateException e)
+        {
+            assertEquals(SmtpRelay.CircuitState.OPEN, relay.getCircuitState());
+        }
+
+        startServer(port, 0);
+        Thread.sleep(60);
+
+        group.send(createMessage(group, 2));
+        assertEquals(SmtpRelay.CircuitState.CLOSED, relay.getCircuitState());
+    }
+
+    @Test
+    public void testPrefersFasterRelay() throws Exception
+    {
+        final SmtpRelay slow = new SmtpRelay("localhost", startServer(50).getServer().getPort());
+        final SmtpRelay fast = new SmtpRelay("localhost", startServer(0).getServer().getPort());
+        final SmtpRelayGroup group = new SmtpRelayGroup(slow, fast);
+
+        try (SmtpConnectionPool pool = new SmtpConnectionPool())
+        {
+            for (int i = 0; i < 30; i++)
+            {
+                group.send(createMessage(group, i), pool);
+            }
+        }
+
+        assertEquals(30, slow.getSentCount() + fast.getSentCount());
+        assertTrue(slow + " " + fast, fast.getSentCount() > slow.getSentCount());
+        assertTrue(slow.getLatencyMillis() > fast.getLatencyMillis());
+    }
+
+    @Test
+    public void testSkipsThrottledRelay() throws Exception
+    {
+        final SmtpRelay limited = new SmtpRelay("localhost", startServer(0).getServer().getPort());
+        limited.getRateLimiter().setMaxConcurrent(1);
+        final SmtpRelay other = new SmtpRelay("localhost", startServer(0).getServer().getPort());
+        final SmtpRelayGroup group = new SmtpRelayGroup(limited, other);
+
+        try (SmtpRateLimiter.Permit busy = limited.getRateLimiter().tryAcquire())
+        {
+            for (int i = 0; i < 5; i++)
+            {
+                assertSame(other, group.send(createMessage(group, i)));
+            }
+        }
+
+        assertEquals(0, limited.getSentCount());
+        assertTrue(limited.toString().contains("inFlight=0"));
+    }
+
+    @Test
+    public void testAllRelaysDown() throws Exception
+    {
+        final SmtpRelayGroup group = new SmtpRelayGroup(
+                new SmtpRelay("localhost", freePort()),
+                new SmtpRelay("localhost", freePort()));
+
+        try
+        {
+            group.send(createMessage(group, 0));
+            fail("all relays are down");
+        }
+        catch (final MessagingException e)
+        {
+            assertEquals(1, e.getSuppressed().length);
+        }
+    }
+
+    @Test
+    public void testEmailWithRelayGroup() throws Exception
+    {
+        final Wiser server = startServer(0);
+        final SmtpRelayGroup group = new SmtpRelayGroup(
+                new SmtpRelay("localhost", freePort()),
+                new SmtpRelay("localhost", server.getServer().getPort()));
+
+        final Email email = new SimpleEmail();
+        email.setRelayGroup(group);
+        email.setFrom("test_from@apache.org");
+        email.addTo("test_to@apache.org");
+        email.setSubject("relay group");
+        email.setMsg("relay group");
+        email.send();
+
+        assertEquals(1, server.getMessages().size());
+    }
+
+    @Test
+    public void testEmailEnvelopeIsMergedIntoRelaySession() throws Exception
+    {
+        final Wiser server = startServer(0);
+        final SmtpRelayGroup group = new SmtpRelayGroup(new SmtpRelay("localhost", server.getServer().getPort()));
+
+        try (SmtpConnectionPool pool = new SmtpConnectionPool())
+        {
+            for (final String bounceAddress : new String[] { "bounce1@apache.org", "bounce2@apache.org" })
+            {
+                final Email email = new SimpleEmail();
+                email.setRelayGroup(group);
+                email.setConnectionPool(pool);
+                email.setBounceAddress(bounceAddress);
+                email.setFrom("test_from@apache.org");
+                email.addTo("test_to@apache.org");
+                email.setSubject("relay group");
+                email.setMsg("relay group");
+                email.send();
+            }
+        }
+
+        assertEquals(2, server.getMessages().size());
+        assertEquals("bounce1@apache.org", server.getMessages().get(0).getEnvelopeSender());
+        assertEquals("bounce2@apache.org", server.getMessages().get(1).getEnvelopeSender());
+    }
+
+    @Test
+    public void testEnvelopeSessionsAreShared() throws Exception
+    {
+        final SmtpRelay relay = new SmtpRelay("localhost", 25);
+        final Properties envelope = new Properties();
+        envelope.setProperty("mail.smtp.from", "bounce@apache.org");
+
+        final Session session = relay.getSession(envelope);
+        assertEquals("bounce@apache.org", session.getProperty("mail.smtp.from"));
+        assertEquals("localhost", session.getProperty("mail.smtp.host"));
+
+        final Properties same = new Properties();
+        same.setProperty("mail.smtp.from", "bounce@apache.org");
+        assertSame(session, relay.getSession(same));
+
+        same.setProperty("mail.smtp.from", "other@apache.org");
+        assertNotSame(session, relay.getSession(same));
+        assertEquals("bounce@apache.org", relay.getSession(envelope).getProperty("mail.smtp.from"));
+        assertSame(relay.getSession(), relay.getSession(new Properties()));
+    }
+
+    private MimeMessage createMessage(final SmtpRelayGroup group, final int i) throws EmailException, MessagingException
+    {
+        final Email email = new SimpleEmail();
+        email.setMailSession(group.getRelays().get(0).getSession());
+        email.setFrom("test_from@apache.org");
+        email.addTo("test_to@apache.org");
+        email.setSubject("relay " + i);
+        email.setMsg("relay " + i);
+        email.buildMimeMessage();
+        email.getMimeMessage().saveChanges();
+        return email.getMimeMessage();
+    }
+
+    private Wiser startServer(final long delayMillis) throws IOException
+    {
+        return startServer(freePort(), delayMillis);
+    }
+
+    private Wiser startServer(final int port, final long delayMillis)
+    {
+        final Wiser server = new Wiser()
+        {
+            @Override
+            public void deliver(final String from, final String recipient, final InputStream data)
+                    throws TooMuchDataException, IOException
+            {
+                try
+                {
+                    Thread.sleep(delayMillis);
+                }
+                catch (final InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                super.deliver(from, recipient, data);
+            }
+        };
+        server.setPort(port);
+        server.start();
+        servers.add(server);
+        return server;
+    }
+
+    private static int freePort() throws IOException
+    {
+        try (ServerSocket socket = new ServerSocket(0))
+        {
+            return socket.getLocalPort();
+        }
+    }
+}
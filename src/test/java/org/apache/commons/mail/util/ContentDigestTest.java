@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail.util;
+
+import static org.junit.Assert.*;
+
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import javax.activation.URLDataSource;
+import javax.mail.util.ByteArrayDataSource;
+
+import org.apache.commons.mail.ByteBufferDataSource;
+import org.junit.Test;
+
+/**
+ * JUnit test case for ContentDigest.
+ *
+ * @since 1.6.0
+ */
+public class ContentDigestTest
+{
+    private static final byte[] CONTENT = "GIF89a".getBytes(StandardCharsets.US_ASCII);
+
+    @Test
+    public void testSameContentHasSameKey() throws Exception
+    {
+        final String key = ContentDigest.of(new ByteArrayDataSource(CONTENT, "image/gif"));
+
+        assertTrue(key.startsWith("sha-256:"));
+        assertTrue(key.endsWith(";image/gif"));
+        assertEquals(key, ContentDigest.of(new ByteBufferDataSource(CONTENT, "image/gif")));
+        assertNotEquals(key, ContentDigest.of(new ByteBufferDataSource(CONTENT, "image/png")));
+        assertNotEquals(key, ContentDigest.of(new ByteArrayDataSource(new byte[] {1}, "image/gif")));
+    }
+
+    @Test
+    public void testUrlIsKeyedWithoutReadingIt() throws Exception
+    {
+        final URL url = new URL("http://localhost:1/logo.gif");
+
+        assertTrue(ContentDigest.of(new URLDataSource(url)).startsWith("url:http://localhost:1/logo.gif;"));
+    }
+}